@@ -100,6 +100,11 @@ public class Aircraft extends MobilePlatform
     public void setRCS(double rcs)
     {
         this.rcs = rcs;
+
+        if (getWorld() != null)
+        {
+            getWorld().aircraftRCSChanged();
+        }
     }
 
     /**
@@ -46,6 +46,16 @@ public class ArgsHandler
 
     private boolean outputXML = false;
 
+    private int num_threads = 1;
+
+    private Long seed = null;
+
+    private String los_cache_file = null;
+
+    private int los_cache_size = 1 << 22;
+
+    private String terrain_cache_directory = null;
+
     private boolean bhelp = false;
 
     private static final Logger logger = LogManager.getLogger(ArgsHandler.class);
@@ -152,6 +162,68 @@ public class ArgsHandler
         return this.num_evaluations;
     }
 
+    /**
+     * Returns the number of threads over which to spread the evaluations.
+     * This is specified on the command line using "-threads".
+     * @return number of threads.
+     */
+    public int getNumThreads()
+    {
+        return this.num_threads;
+    }
+
+    /**
+     * Returns the base seed from which the per-evaluation random number streams
+     * are derived, whatever the number of threads.  This is specified on the
+     * command line using "-seed".
+     * @return base seed, or null if not specified.
+     */
+    public Long getSeed()
+    {
+        return this.seed;
+    }
+
+    /**
+     * Returns the file of the persistent LOS cache shared by repeated launches.
+     * This is specified on the command line using "-loscache".
+     * @return cache file, or null if no persistent cache is used.
+     */
+    public File getLOSCacheFile()
+    {
+        if (this.los_cache_file == null)
+        {
+            return null;
+        }
+        File file = new File(this.los_cache_file);
+        return file.isAbsolute() ? file : getFile(this.los_cache_file);
+    }
+
+    /**
+     * Returns the number of entries in a new persistent LOS cache file.
+     * This is specified on the command line using "-loscachesize".
+     * @return number of entries.
+     */
+    public int getLOSCacheSize()
+    {
+        return this.los_cache_size;
+    }
+
+    /**
+     * Returns the directory in which binary terrain caches are kept.  This is
+     * specified on the command line using "-terraincache", and defaults to
+     * the temporary directory.
+     * @return terrain cache directory.
+     */
+    public File getTerrainCacheDirectory()
+    {
+        if (this.terrain_cache_directory == null)
+        {
+            return new File(System.getProperty("java.io.tmpdir"));
+        }
+        File file = new File(this.terrain_cache_directory);
+        return file.isAbsolute() ? file : getFile(this.terrain_cache_directory);
+    }
+
     /**
      * Returns whether to write out the scenario in XML.  This is specified on
      * the command line using "-xml".
@@ -248,6 +320,54 @@ public class ArgsHandler
                         num_evaluations);
                 }
             }
+            else if (args[i].equals("-threads"))
+            {
+                try
+                {
+                    num_threads = Math.max(1, Integer.parseInt(args[i + 1]));
+                }
+                catch (NumberFormatException e)
+                {
+                    logger.warn("Number of threads not of integer type. Found: " +
+                        args[i + 1]);
+                    logger.warn("Using default number of threads: " +
+                        num_threads);
+                }
+            }
+            else if (args[i].equals("-seed"))
+            {
+                try
+                {
+                    seed = Long.parseLong(args[i + 1]);
+                }
+                catch (NumberFormatException e)
+                {
+                    logger.warn("Seed not of integer type. Found: " +
+                        args[i + 1]);
+                }
+            }
+            else if (args[i].equals("-loscache"))
+            {
+                los_cache_file = args[i + 1];
+            }
+            else if (args[i].equals("-loscachesize"))
+            {
+                try
+                {
+                    los_cache_size = Math.max(1, Integer.parseInt(args[i + 1]));
+                }
+                catch (NumberFormatException e)
+                {
+                    logger.warn("LOS cache size not of integer type. Found: " +
+                        args[i + 1]);
+                    logger.warn("Using default LOS cache size: " +
+                        los_cache_size);
+                }
+            }
+            else if (args[i].equals("-terraincache"))
+            {
+                terrain_cache_directory = args[i + 1];
+            }
             else if (args[i].equalsIgnoreCase("-s"))
             {
                 this.asi_file_name = args[i + 1];
@@ -258,6 +378,11 @@ public class ArgsHandler
                 logger.info(" -d\tDIR\t\tloads the working directory from which all files will be read/written");
                 logger.info(" -it\tINT\t\tspecifies the number of times to evaluate the scenario");
                 logger.info(" -s\tSTR\t\tspecifies that SIMDIS output should be written to the specified filename");
+                logger.info(" -threads\tINT\tspecifies the number of threads over which to run the evaluations");
+                logger.info(" -seed\tLONG\t\tspecifies the base random number seed of the evaluations");
+                logger.info(" -loscache\tFILE\tspecifies a file in which to keep LOS results across launches");
+                logger.info(" -loscachesize\tINT\tspecifies the number of entries in a new LOS cache file");
+                logger.info(" -terraincache\tDIR\tspecifies the directory in which to keep binary terrain caches");
                 logger.info(" file:[path-to-scenario]\tspecifies the URL of the XML scenario file");
                 logger.info(" -xml\t\t\tspecifies that the individual[s] should be output as XML");
 
@@ -288,12 +413,22 @@ public class ArgsHandler
         runTempDesc = ("\nPre-Runtime Summary Data Follows: \n");
         runTempDesc += ("Start Time: " + new Date() + "\n");
         runTempDesc += ("Num Evaluations: " + this.num_evaluations + "\n");
+        runTempDesc += ("Num Threads: " + this.num_threads + "\n");
         runTempDesc += ("Working directory set to: " +
             this.working_directory.getAbsolutePath() + "\n");
         for (String url : scenario_urls)
         {
             runTempDesc += ("Scenario file URL: " + url + "\n");
         }
+        if (this.los_cache_file != null)
+        {
+            runTempDesc += ("LOS cache file: " + this.los_cache_file + "\n");
+        }
+        if (this.terrain_cache_directory != null)
+        {
+            runTempDesc += ("Terrain cache directory: " +
+                this.terrain_cache_directory + "\n");
+        }
 
         logger.info(runTempDesc);
     }
@@ -302,6 +437,19 @@ public class ArgsHandler
      * Outputs a summary of the run performance following a run.
      */
     public void outputPostRunSummary()
+    {
+        this.outputPostRunSummary(null, null);
+    }
+
+    /**
+     * Outputs a summary of the run performance following a run, including
+     * the line-of-site and detection counters of the run.
+     * @param los_statistics LOS counters summed over all evaluations, or null.
+     * @param detection_statistics detection pipeline counters summed over
+     * all evaluations, or null.
+     */
+    public void outputPostRunSummary(LOSStatistics los_statistics,
+        DetectionPipeline detection_statistics)
     {
         Long runEndTime = System.nanoTime();
         String runTempDesc = ("\nPost-Runtime Summary Data Follows: \n");
@@ -311,6 +459,14 @@ public class ArgsHandler
         runTempDesc += ("Estimated runtime per each evaluation: " + (seconds /
             num_evaluations) + " seconds \n");
         runTempDesc += ("Total RunTime = " + seconds + " seconds");
+        if (los_statistics != null)
+        {
+            runTempDesc += ("\n" + los_statistics);
+        }
+        if (detection_statistics != null)
+        {
+            runTempDesc += ("\n" + detection_statistics);
+        }
 
         logger.info(runTempDesc);
     }
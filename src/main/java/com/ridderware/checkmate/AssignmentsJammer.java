@@ -23,12 +23,17 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import com.ridderware.fuse.Double2D;
 import com.ridderware.fuse.Double3D;
+import com.ridderware.fuse.Universe;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -44,17 +49,38 @@ import org.w3c.dom.NodeList;
  */
 public class AssignmentsJammer extends Jammer
 {
+    /**
+     * Policies for choosing which tracks receive reactive assignments when
+     * there are not enough resources for all of them.
+     */
+    public enum ReactivePolicy
+    {
+        /** Issue assignments to tracks in iteration order while resources last. */
+        TRACK_ORDER,
+        /** Issue assignments in decreasing priority while resources last. */
+        PRIORITY,
+        /** Issue the assignments of greatest total priority that fit the free
+         * resources. */
+        KNAPSACK
+    }
+
     //  The maximum number of assignments this jammer can carry.
     private int total_resources;
 
     //  We keep track of the current assignments in two ways:
-    //  1) A set of all assignments so that we can quickly determine how many jamming
-    //     resources have been expended and how many are available.
+    //  1) A map of all assignments to the number of radars each covers, together
+    //     with a running total of their resources, so that we can quickly determine
+    //     how many jamming resources have been expended and how many are available.
     //  2) Maps of specific radars to preemptive and reactive jamming assignments to enable rapid lookup
     //     of jamming vs. a radar.
-    //  This is the set of current assignments
-    private HashSet<JammingAssignment> current_assignments =
-        new HashSet<JammingAssignment>();
+    //  This is the map of current assignments
+    private HashMap<JammingAssignment, Integer> current_assignments =
+        new HashMap<JammingAssignment, Integer>();
+
+    //  Resources consumed by the current assignments.
+    private int num_resources = 0;
+
+    private ReactivePolicy reactive_policy = ReactivePolicy.TRACK_ORDER;
 
     //  This is the map of each radar (key) to the preemptive assignment covering
     private HashMap<Radar, JammingAssignment> pa_coverages =
@@ -126,19 +152,21 @@ public class AssignmentsJammer extends Jammer
     {
         super.initialize();
 
-        //  Reset jamming assignments to initial state
+        //  Reset jamming assignments to initial state.  The base class has
+        //  already marked the assignments as changed.
         current_assignments.clear();
+        num_resources = 0;
         pa_coverages.clear();
         ra_coverages.clear();
 
         simdis_beams_on.clear();
 
-        int num_resources = 0;
+        int planned_resources = 0;
         //  Now load PAs until we run out of resources.
         for (JammingAssignment pa : preemptive_assignments)
         {
-            num_resources += pa.getResourcesRequired();
-            if (num_resources <= this.total_resources)
+            planned_resources += pa.getResourcesRequired();
+            if (planned_resources <= this.total_resources)
             {
                 for (Integer classification : pa.getRadarsCovered())
                 {
@@ -146,15 +174,14 @@ public class AssignmentsJammer extends Jammer
                     {
                         if (r.getClassification() == classification)
                         {
-                            pa_coverages.put(r, pa);
+                            cover(pa_coverages, r, pa);
                         }
                     }
                 }
             }
         }
 
-        simdisUpdate(getParent().getUniverse().getCurrentTime(), getWorld().
-            getASIFile());
+        simdisUpdate(currentTime(), getWorld().getASIFile());
     }
 
     /**
@@ -183,7 +210,8 @@ public class AssignmentsJammer extends Jammer
      * Uses the input track data to check for reactive jamming conditions.  If any
      * conditions are met, then new reactive assignments are issued.  If conditions
      * are no longer sufficient to maintain existing reactive assignments, they are
-     * dropped.
+     * dropped.  When resources are short, the reactive policy decides which
+     * tracks receive new assignments.
      * @param tracks tracks of emitters.
      */
     @Override
@@ -192,24 +220,23 @@ public class AssignmentsJammer extends Jammer
         //  First, look for reactive assignments on emitters that are no
         //  longer actively tracked.  Remove them.
 
-        Set<Radar> keys = ra_coverages.keySet();
-        Iterator<Radar> it = keys.iterator();
+        boolean changed = false;
+
+        Iterator<Map.Entry<Radar, JammingAssignment>> it =
+            ra_coverages.entrySet().iterator();
         while (it.hasNext())
         {
-            Radar r = it.next();
-            if (ra_coverages.get(r).getAssignmentType() ==
+            Map.Entry<Radar, JammingAssignment> e = it.next();
+            if (e.getValue().getAssignmentType() ==
                 JammingAssignment.AssignmentType.REACTIVE &&
-                !tracks.contains(r))
+                !tracks.contains(e.getKey()))
             {
                 it.remove();
+                release(e.getValue());
+                changed = true;
             }
         }
 
-        keys = ra_coverages.keySet();
-
-        //  Number of resources currently in use.
-        int num_resources = this.getNumResources();
-
         //  Loop over all the tracks.
         //  RA will happen IF:
         //  1) The radar is not already reactively jammed.
@@ -217,42 +244,246 @@ public class AssignmentsJammer extends Jammer
         //  3) There are sufficient resources for the assignment.
         //  Extensions of this class could also check other criteria, such as
         //  geo-feasibility.
+        ArrayList<Radar> candidates = new ArrayList<>();
         for (Radar r : tracks)
         {
-            if (!keys.contains(r) &&
-                reactive_assignments.containsKey(r.getClassification()) &&
-                num_resources + reactive_assignments.get(r.getClassification()).
-                getResourcesRequired() <= this.total_resources)
+            if (!ra_coverages.containsKey(r) &&
+                reactive_assignments.containsKey(r.getClassification()))
+            {
+                candidates.add(r);
+            }
+        }
+
+        if (!candidates.isEmpty())
+        {
+            switch (reactive_policy)
+            {
+                case PRIORITY:
+                {
+                    sortByPriority(candidates);
+                    break;
+                }
+                case KNAPSACK:
+                {
+                    chooseByKnapsack(candidates);
+                    break;
+                }
+                case TRACK_ORDER:
+                default:
+                {
+                }
+            }
+
+            for (Radar r : candidates)
+            {
+                JammingAssignment ra =
+                    reactive_assignments.get(r.getClassification());
+
+                if (num_resources + ra.getResourcesRequired() <=
+                    this.total_resources)
+                {
+                    cover(ra_coverages, r, ra.clone());
+                    changed = true;
+                }
+            }
+        }
+
+        if (changed)
+        {
+            assignmentsChanged();
+        }
+
+        simdisUpdate(currentTime(), getWorld().getASIFile());
+    }
+
+    /**
+     * Sorts the candidate tracks into decreasing priority of their reactive
+     * assignments.  Tracks of equal priority keep their order.
+     * @param candidates tracks eligible for a reactive assignment.
+     */
+    private void sortByPriority(ArrayList<Radar> candidates)
+    {
+        Collections.sort(candidates, new Comparator<Radar>()
+        {
+            @Override
+            public int compare(Radar r1, Radar r2)
             {
-                JammingAssignment ra = reactive_assignments.get(r.getClassification()).
-                    clone();
+                return Double.compare(
+                    reactive_assignments.get(r2.getClassification()).getPriority(),
+                    reactive_assignments.get(r1.getClassification()).getPriority());
+            }
+        });
+    }
+
+    /**
+     * Reorders the candidate tracks so that the set of reactive assignments of
+     * greatest total priority that fits within the free resources comes first,
+     * followed by the rest in decreasing priority to take up any resources left
+     * over.  The set is found by 0/1 knapsack over the free resources.
+     * @param candidates tracks eligible for a reactive assignment.
+     */
+    private void chooseByKnapsack(ArrayList<Radar> candidates)
+    {
+        sortByPriority(candidates);
+
+        int capacity = this.total_resources - num_resources;
+        if (capacity <= 0)
+        {
+            return;
+        }
+
+        int n = candidates.size();
+        double[] best = new double[capacity + 1];
+        boolean[][] taken = new boolean[n][capacity + 1];
+
+        for (int i = 0; i < n; i++)
+        {
+            JammingAssignment ra = reactive_assignments.get(candidates.get(i).
+                getClassification());
+            int w = Math.max(ra.getResourcesRequired(), 0);
+            double v = ra.getPriority();
+
+            for (int c = capacity; c >= w; c--)
+            {
+                if (best[c - w] + v > best[c])
+                {
+                    best[c] = best[c - w] + v;
+                    taken[i][c] = true;
+                }
+            }
+        }
 
-                ra_coverages.put(r, ra);
+        //  Walk back through the table to recover the chosen set.
+        boolean[] chosen = new boolean[n];
+        int c = capacity;
+        for (int i = n - 1; i >= 0; i--)
+        {
+            if (taken[i][c])
+            {
+                chosen[i] = true;
+                c -= Math.max(reactive_assignments.get(candidates.get(i).
+                    getClassification()).getResourcesRequired(), 0);
+            }
+        }
 
-                num_resources += ra.getResourcesRequired();
+        ArrayList<Radar> ordered = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+        {
+            if (chosen[i])
+            {
+                ordered.add(candidates.get(i));
+            }
+        }
+        for (int i = 0; i < n; i++)
+        {
+            if (!chosen[i])
+            {
+                ordered.add(candidates.get(i));
             }
         }
 
-        simdisUpdate(getParent().getUniverse().getCurrentTime(), getWorld().
-            getASIFile());
+        candidates.clear();
+        candidates.addAll(ordered);
     }
 
     /**
-     * Computes and returns the number of jamming resources currently being consumed.
+     * Returns the current time of the parent's universe, or 0 if the parent is
+     * not in one.
+     * @return time.
+     */
+    private double currentTime()
+    {
+        Universe universe = getParent().getUniverse();
+        return universe != null ? universe.getCurrentTime() : 0.;
+    }
+
+    /**
+     * Returns the number of jamming resources currently being consumed.  This
+     * is a running total kept as assignments are issued and dropped.
      * @return number of jamming resources used.
      */
     public int getNumResources()
     {
-        current_assignments.clear();
-        current_assignments.addAll(this.pa_coverages.values());
-        current_assignments.addAll(this.ra_coverages.values());
-        int num = 0;
-        for (JammingAssignment a : current_assignments)
+        return num_resources;
+    }
+
+    /**
+     * Sets the policy for choosing which tracks receive reactive assignments
+     * when resources are short.
+     * @param reactive_policy reactive assignment policy.
+     */
+    public void setReactivePolicy(ReactivePolicy reactive_policy)
+    {
+        this.reactive_policy = reactive_policy;
+    }
+
+    /**
+     * Returns the policy for choosing which tracks receive reactive assignments.
+     * @return reactive assignment policy.
+     */
+    public ReactivePolicy getReactivePolicy()
+    {
+        return this.reactive_policy;
+    }
+
+    /**
+     * Records that an assignment covers a radar, replacing any assignment that
+     * covered it in the same map, and updates the resources in use.
+     * @param coverages map of radars to assignments in which to record it.
+     * @param r covered radar.
+     * @param a covering assignment.
+     */
+    private void cover(HashMap<Radar, JammingAssignment> coverages, Radar r,
+        JammingAssignment a)
+    {
+        JammingAssignment old = coverages.put(r, a);
+        if (old != null)
         {
-            num += a.getResourcesRequired();
+            release(old);
         }
 
-        return num;
+        Integer count = current_assignments.get(a);
+        if (count == null)
+        {
+            current_assignments.put(a, 1);
+            num_resources += a.getResourcesRequired();
+        }
+        else
+        {
+            current_assignments.put(a, count + 1);
+        }
+    }
+
+    /**
+     * Records that an assignment no longer covers one of its radars.  The
+     * resources of the assignment are freed with its last radar.
+     * @param a assignment.
+     */
+    private void release(JammingAssignment a)
+    {
+        int count = current_assignments.get(a) - 1;
+        if (count == 0)
+        {
+            current_assignments.remove(a);
+            num_resources -= a.getResourcesRequired();
+        }
+        else
+        {
+            current_assignments.put(a, count);
+        }
+    }
+
+    /**
+     * Override of base class method.  The jammer only affects radars covered by
+     * one of its current assignments.
+     * @param tgt a Radar object.
+     * @return true if jammingEffectiveness may be greater than 0.
+     */
+    @Override
+    public boolean canJam(Radar tgt)
+    {
+        return this.ra_coverages.containsKey(tgt) ||
+            this.pa_coverages.containsKey(tgt);
     }
 
     /**
@@ -276,8 +507,8 @@ public class AssignmentsJammer extends Jammer
         if (a != null)
         {
             //  I'm assuming this distance is in n.mi.  If not, then need to fix the calculation here.
-            double distanceSq = CMWorld.getEarthModel().trueDistanceSq(getParent().
-                getLocation(), tgt.getParent().getLocation());
+            double distanceSq = getWorld().getPairGeometry().trueDistanceSq(
+                getParent(), tgt.getParent());
 
             Double2D assign_effectiveness = a.getCoverage(tgt);
 
@@ -299,7 +530,8 @@ public class AssignmentsJammer extends Jammer
 
     /**
      * Returns the map of individual radars to the preemptive assignments
-     * covering those radars (if any).
+     * covering those radars (if any).  The map must not be modified, since the
+     * resources in use are accounted as coverages are issued and dropped.
      * @return map of current preemptive coverages
      */
     protected HashMap<Radar, JammingAssignment> getPACoverages()
@@ -309,7 +541,8 @@ public class AssignmentsJammer extends Jammer
 
     /**
      * Returns the map of individual radars to the reactive assignments
-     * covering those radars (if any).
+     * covering those radars (if any).  The map must not be modified, since the
+     * resources in use are accounted as coverages are issued and dropped.
      * @return map of current reactive coverages
      */
     protected HashMap<Radar, JammingAssignment> getRACoverages()
@@ -372,6 +605,11 @@ public class AssignmentsJammer extends Jammer
             {
                 this.total_resources = Integer.parseInt(child.getTextContent());
             }
+            else if (child.getNodeName().equalsIgnoreCase("reactive-policy"))
+            {
+                this.reactive_policy = ReactivePolicy.valueOf(child.
+                    getTextContent().trim().toUpperCase());
+            }
         }
     }
 
@@ -414,6 +652,13 @@ public class AssignmentsJammer extends Jammer
         e = document.createElement("total-resources");
         e.setTextContent(String.valueOf(this.total_resources));
         node.appendChild(e);
+
+        if (this.reactive_policy != ReactivePolicy.TRACK_ORDER)
+        {
+            e = document.createElement("reactive-policy");
+            e.setTextContent(this.reactive_policy.toString());
+            node.appendChild(e);
+        }
     }
 
     /**
@@ -550,12 +795,12 @@ public class AssignmentsJammer extends Jammer
                     String color = "yellow";
 
                     Double3D aimpoint = r.getParent().getLocation();
-                    double az_angle = CMWorld.getEarthModel().azimuthAngle(getParent().
+                    double az_angle = getWorld().getGeometry().azimuthAngle(getParent().
                         getLocation(), aimpoint);
-                    double el_angle = CMWorld.getEarthModel().elevationAngle(getParent().
+                    double el_angle = getWorld().getGeometry().elevationAngle(getParent().
                         getLocation(), aimpoint,
                         IEarthModel.EarthFactor.REAL_EARTH);
-                    double distance = LengthUnit.NAUTICAL_MILES.convert(CMWorld.getEarthModel().
+                    double distance = LengthUnit.NAUTICAL_MILES.convert(getWorld().getGeometry().
                         trueDistance(getParent().getLocation(), aimpoint),
                         LengthUnit.METERS);
 
@@ -572,12 +817,12 @@ public class AssignmentsJammer extends Jammer
                     String color = "blue";
 
                     Double3D aimpoint = r.getParent().getLocation();
-                    double az_angle = CMWorld.getEarthModel().azimuthAngle(getParent().
+                    double az_angle = getWorld().getGeometry().azimuthAngle(getParent().
                         getLocation(), aimpoint);
-                    double el_angle = CMWorld.getEarthModel().elevationAngle(getParent().
+                    double el_angle = getWorld().getGeometry().elevationAngle(getParent().
                         getLocation(), aimpoint,
                         IEarthModel.EarthFactor.REAL_EARTH);
-                    double distance = LengthUnit.NAUTICAL_MILES.convert(CMWorld.getEarthModel().
+                    double distance = LengthUnit.NAUTICAL_MILES.convert(getWorld().getGeometry().
                         trueDistance(getParent().getLocation(), aimpoint),
                         LengthUnit.METERS);
 
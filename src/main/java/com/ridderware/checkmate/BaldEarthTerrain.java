@@ -30,6 +30,8 @@ import com.ridderware.fuse.Double3D;
  */
 public class BaldEarthTerrain implements ITerrainModel
 {
+    private IEarthModel earth_model = new FlatEarth();
+
     /**
      *  Creates a new instance of BaldEarthTerrain
      */
@@ -37,6 +39,17 @@ public class BaldEarthTerrain implements ITerrainModel
     {
     }
 
+    /**
+     *  Binds the Earth model used to compute distances to the horizon.
+     *
+     * @param  earth_model  Earth model of the world.
+     */
+    @Override
+    public void setEarthModel(IEarthModel earth_model)
+    {
+        this.earth_model = earth_model;
+    }
+
     /**
      *  Returns the terrain elevation at the specified point.
      *
@@ -58,7 +71,7 @@ public class BaldEarthTerrain implements ITerrainModel
      * @return terrain cell index (or -1 if not applicable or outside terrain bounds).
      */
     @Override
-    public int terrainCell(double x, double y)
+    public long terrainCell(double x, double y)
     {
         return -1;
     }
@@ -75,7 +88,7 @@ public class BaldEarthTerrain implements ITerrainModel
     public boolean hasLOS(Double3D location1, Double3D location2,
         IEarthModel.EarthFactor k)
     {
-        double distance = CMWorld.getEarthModel().trueDistance(location1,
+        double distance = earth_model.trueDistance(location1,
             location2);
 
         // horizonMultiplier accounts for k factor and conversion
@@ -103,4 +116,28 @@ public class BaldEarthTerrain implements ITerrainModel
 
         return los;
     }
+
+    /**
+     *  Check for unobstructed Line Of Sight between two points for every Earth factor
+     *  at once.
+     *
+     * @param  location1    Location to check line of sight from.
+     * @param  location2    Location to check line of sight to.
+     * @return the smallest Earth factor with Line Of Sight, or null if there is none
+     */
+    @Override
+    public IEarthModel.EarthFactor losEarthFactor(Double3D location1,
+        Double3D location2)
+    {
+        IEarthModel.EarthFactor los = null;
+        if (hasLOS(location1, location2, IEarthModel.EarthFactor.REAL_EARTH))
+        {
+            los = IEarthModel.EarthFactor.REAL_EARTH;
+        }
+        else if (hasLOS(location1, location2, IEarthModel.EarthFactor.EM_EARTH))
+        {
+            los = IEarthModel.EarthFactor.EM_EARTH;
+        }
+        return los;
+    }
 }
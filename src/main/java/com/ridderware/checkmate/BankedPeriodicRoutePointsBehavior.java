@@ -71,7 +71,7 @@ public class BankedPeriodicRoutePointsBehavior extends RoutePointsBehavior
         {
             final MobilePlatform p = (MobilePlatform) getPlatform();
 
-            final IEarthModel e = CMWorld.getEarthModel();
+            final IEarthModel e = getPlatform().getWorld().getGeometry();
 
             //  Get the current and destination route points.
             BankedRoutePoint p_current = (BankedRoutePoint) getRoute().
@@ -259,7 +259,7 @@ public class BankedPeriodicRoutePointsBehavior extends RoutePointsBehavior
 
         MobilePlatform p = (MobilePlatform) getPlatform();
 
-        IEarthModel e = CMWorld.getEarthModel();
+        IEarthModel e = getPlatform().getWorld().getGeometry();
 
         //  Get the current and destination route points.
         BankedRoutePoint p_current = (BankedRoutePoint) getRoute().
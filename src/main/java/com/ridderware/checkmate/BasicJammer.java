@@ -98,8 +98,25 @@ public class BasicJammer extends Jammer
     @Override
     public void checkForReactiveAssignments(Set<Radar> tracks)
     {
-        ras.clear();
-        ras.addAll(tracks);
+        if (!ras.equals(tracks))
+        {
+            ras.clear();
+            ras.addAll(tracks);
+            assignmentsChanged();
+        }
+    }
+
+    /**
+     * Override of base class method.  The jammer has no effect on a radar if
+     * the effectiveness of its preemptive or reactive techniques, whichever
+     * applies, is 0.
+     * @param tgt a Radar object.
+     * @return true if jammingEffectiveness may be greater than 0.
+     */
+    @Override
+    public boolean canJam(Radar tgt)
+    {
+        return (ras.contains(tgt) ? ra_effectiveness : pa_effectiveness) > 0.;
     }
 
     /**
@@ -123,8 +140,8 @@ public class BasicJammer extends Jammer
 
         //  getRelativeGain checks for directional radars, and whether we're in the mainlobe or sidelobe.
         double rr2 = this.getRelativeGain(tgt) * reference_range *
-            reference_range / CMWorld.getEarthModel().trueDistanceSq(getParent().
-            getLocation(), tgt.getParent().getLocation());
+            reference_range / getWorld().getPairGeometry().trueDistanceSq(getParent(),
+            tgt.getParent());
 
         double fj = 1. - k * Math.sqrt(Math.sqrt(1. / (k4 + (1. - k4) * rr2)));
 
@@ -265,12 +282,12 @@ public class BasicJammer extends Jammer
                     }
 
                     Double3D aimpoint = r.getParent().getLocation();
-                    double az_angle = CMWorld.getEarthModel().azimuthAngle(getParent().
+                    double az_angle = getWorld().getGeometry().azimuthAngle(getParent().
                         getLocation(), aimpoint);
-                    double el_angle = CMWorld.getEarthModel().elevationAngle(getParent().
+                    double el_angle = getWorld().getGeometry().elevationAngle(getParent().
                         getLocation(), aimpoint,
                         IEarthModel.EarthFactor.REAL_EARTH);
-                    double distance = LengthUnit.NAUTICAL_MILES.convert(CMWorld.getEarthModel().
+                    double distance = LengthUnit.NAUTICAL_MILES.convert(getWorld().getGeometry().
                         trueDistance(getParent().getLocation(), aimpoint),
                         LengthUnit.METERS);
 
@@ -0,0 +1,282 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import org.apache.logging.log4j.*;
+
+/**
+ * Off-heap store of terrain elevation posts, indexed by a long so that grids
+ * of more than 2^31 posts can be held.  The posts are kept in fixed-size
+ * segments of memory-mapped or direct buffers, so a large grid neither bloats
+ * the heap nor adds to garbage collection scans, and a grid mapped from a
+ * terrain cache shares its pages with every other process mapping the same
+ * file.  Posts are stored big-endian, in the same order as the index.
+ * <p>
+ * A large new store is mapped from a scratch file in the temporary directory,
+ * which is deleted at once and so lives only as long as the mapping.  Its
+ * size is bounded by neither the heap nor -XX:MaxDirectMemorySize, and the
+ * operating system pages it to the file rather than to swap.  Small stores
+ * are held in direct buffers.
+ *
+ * @author Jeff Ridder
+ */
+public class BufferElevationStore implements ElevationStore
+{
+    private static final Logger logger =
+        LogManager.getLogger(BufferElevationStore.class);
+
+    //  Stores of at least this many posts are mapped from a scratch file.
+    private static final long MAPPED_THRESHOLD = 1L << 22;
+
+    //  Posts per segment.  Keeps each segment well under the 2 GB limit of a buffer.
+    private static final int SEGMENT_SHIFT = 27;
+
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final long size;
+
+    private final ShortBuffer[] segments;
+
+    private final ByteBuffer[] bytes;
+
+    //  Whether the posts are mapped from a file that other processes may map.
+    private final boolean shared;
+
+    private BufferElevationStore(long size, ByteBuffer[] bytes, boolean shared)
+    {
+        this.size = size;
+        this.shared = shared;
+        this.bytes = bytes;
+        this.segments = new ShortBuffer[bytes.length];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            this.segments[i] = bytes[i].asShortBuffer();
+        }
+    }
+
+    /**
+     * Creates a store of the specified number of posts, with all posts at
+     * zero.  A large store is mapped from a scratch file, and falls back to
+     * direct buffers if the file cannot be mapped.
+     * @param size number of posts.
+     * @return the store.
+     */
+    public static BufferElevationStore allocate(long size)
+    {
+        if (size >= MAPPED_THRESHOLD)
+        {
+            try
+            {
+                return allocateMapped(size);
+            }
+            catch (IOException ex)
+            {
+                logger.warn("Unable to map a scratch file for " + size +
+                    " terrain posts, holding them in direct memory: " + ex);
+            }
+        }
+
+        ByteBuffer[] bytes = new ByteBuffer[numSegments(size)];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = ByteBuffer.allocateDirect(2 * segmentLength(size, i));
+        }
+        return new BufferElevationStore(size, bytes, false);
+    }
+
+    /**
+     * Creates a store of the specified number of posts mapped from a new
+     * scratch file, with all posts at zero.
+     * @param size number of posts.
+     * @return the store.
+     * @throws IOException if the file cannot be created or mapped.
+     */
+    private static BufferElevationStore allocateMapped(long size)
+        throws IOException
+    {
+        File file = File.createTempFile("checkmate-terrain", ".tmp");
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            ByteBuffer[] bytes = new ByteBuffer[numSegments(size)];
+            for (int i = 0; i < bytes.length; i++)
+            {
+                bytes[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                    2 * ((long) i << SEGMENT_SHIFT), 2L * segmentLength(size,
+                    i));
+            }
+            return new BufferElevationStore(size, bytes, false);
+        }
+        finally
+        {
+            //  The mappings outlive the file where the platform allows it.
+            if (!file.delete())
+            {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Creates a read-only store over posts held in a file.
+     * @param channel the file.
+     * @param position byte offset of the first post in the file.
+     * @param size number of posts.
+     * @return the store.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public static BufferElevationStore map(FileChannel channel, long position,
+        long size) throws IOException
+    {
+        ByteBuffer[] bytes = new ByteBuffer[numSegments(size)];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = channel.map(FileChannel.MapMode.READ_ONLY, position +
+                2 * ((long) i << SEGMENT_SHIFT), 2L * segmentLength(size, i));
+        }
+        return new BufferElevationStore(size, bytes, true);
+    }
+
+    /**
+     * Returns a store holding a copy of the specified posts.
+     * @param posts elevation posts.
+     * @return the store.
+     */
+    public static BufferElevationStore copyOf(short[] posts)
+    {
+        BufferElevationStore store = allocate(posts.length);
+        store.put(0, posts, 0, posts.length);
+        return store;
+    }
+
+    private static int numSegments(long size)
+    {
+        return (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+    }
+
+    private static int segmentLength(long size, int segment)
+    {
+        return (int) Math.min(size - ((long) segment << SEGMENT_SHIFT),
+            1L << SEGMENT_SHIFT);
+    }
+
+    /**
+     * Returns whether the posts are mapped from a file, and so may share
+     * their pages with other processes.
+     * @return true if the store was mapped from a file.
+     */
+    public boolean isShared()
+    {
+        return shared;
+    }
+
+    @Override
+    public long size()
+    {
+        return size;
+    }
+
+    @Override
+    public short get(long index)
+    {
+        return segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index &
+            SEGMENT_MASK));
+    }
+
+    @Override
+    public void get(long index, short[] dst, int offset, int length)
+    {
+        while (length > 0)
+        {
+            int segment = (int) (index >>> SEGMENT_SHIFT);
+            int start = (int) (index & SEGMENT_MASK);
+            int n = Math.min(length, segmentLength(size, segment) - start);
+
+            ShortBuffer s = segments[segment].duplicate();
+            s.position(start);
+            s.get(dst, offset, n);
+
+            index += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Sets the post at the specified index.
+     * @param index post index.
+     * @param elevation elevation.
+     */
+    public void put(long index, short elevation)
+    {
+        segments[(int) (index >>> SEGMENT_SHIFT)].put((int) (index &
+            SEGMENT_MASK), elevation);
+    }
+
+    /**
+     * Copies a run of posts into the store.
+     * @param index index of the first post to set.
+     * @param src posts to copy.
+     * @param offset offset of the first post in src.
+     * @param length number of posts to copy.
+     */
+    public void put(long index, short[] src, int offset, int length)
+    {
+        while (length > 0)
+        {
+            int segment = (int) (index >>> SEGMENT_SHIFT);
+            int start = (int) (index & SEGMENT_MASK);
+            int n = Math.min(length, segmentLength(size, segment) - start);
+
+            ShortBuffer s = segments[segment].duplicate();
+            s.position(start);
+            s.put(src, offset, n);
+
+            index += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Writes all posts to a channel, in index order.
+     * @param channel channel to write to.
+     * @throws IOException if the write fails.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException
+    {
+        for (ByteBuffer b : bytes)
+        {
+            ByteBuffer d = b.duplicate();
+            d.clear();
+            while (d.hasRemaining())
+            {
+                channel.write(d);
+            }
+        }
+    }
+}
@@ -22,6 +22,7 @@ package com.ridderware.checkmate;
 import java.awt.Color;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import com.ridderware.fuse.Agent;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -35,7 +36,9 @@ import org.w3c.dom.NodeList;
  */
 public abstract class CMAgent extends Agent implements IXML
 {
-    private static int last_id = 0;
+    //  IDs for agents created outside of any world.  Agents in a world are
+    //  numbered by the world so that concurrent replicas do not interfere.
+    private static final AtomicInteger last_orphan_id = new AtomicInteger();
 
     private int id;
 
@@ -56,14 +59,18 @@ public abstract class CMAgent extends Agent implements IXML
 
     private void generateId()
     {
-        id = ++last_id;
         if (this.world != null)
         {
+            id = this.world.nextId();
             while (!this.world.addId(id, this))
             {
-                id = ++last_id;
+                id = this.world.nextId();
             }
         }
+        else
+        {
+            id = last_orphan_id.incrementAndGet();
+        }
     }
 
     /**
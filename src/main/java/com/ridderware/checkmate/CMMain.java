@@ -20,7 +20,6 @@
 package com.ridderware.checkmate;
 
 import java.io.File;
-import com.ridderware.fuse.Scenario;
 
 /**
  * A main routine that runs a basic CHECKMATE simulation.
@@ -51,40 +50,17 @@ public class CMMain
             System.exit(0);
         }
 
-        Scenario scenario = new Scenario();
+        //  Every thread count, including 1, runs the same seeded evaluations.
+        MonteCarloExecutor executor = new MonteCarloExecutor(args_handler);
 
-        CMWorld world = new CMWorld();
+        executor.execute();
 
-        scenario.setAgentFactory(world);
-
-        world.readScenario(args_handler.getScenarioURL(), scenario);
-
-        world.simdisInitialize(args_handler);
-
-        for (long i = 0; i < args_handler.getNumEvaluations(); i++)
-        {
-            world.populateUniverse(scenario.getUniverse());
-            //  Randomize target locations
-            for (Platform t : world.getTargets())
-            {
-                if ( (t instanceof SAMSite && !(t.getSuperior() instanceof SAMBattalion )) || 
-                    t instanceof SAMBattalion ||
-                    t instanceof EarlyWarningSite ||
-                    (t instanceof PassThroughC2 && !(t instanceof SAMSite || t instanceof SAMBattalion))  ||
-                    (t instanceof RadarPlatform && t.getSuperior() == null) ||
-                    (t instanceof SAMTEL && t.getSuperior() == null))
-                {
-                    t.setLocation(((UncertainLocationPlatform) t).getRandomPointGenerator().
-                        randomGaussianPoint());
-                }
-            }
-
-            //  Execute
-            scenario.execute();
-        }
+        args_handler.outputPostRunSummary(executor.getLOSStatistics(),
+            executor.getDetectionStatistics());
 
         if (args_handler.getOutputXML())
         {
+            CMWorld world = executor.getWorld();
             String xmlfilename = args_handler.getWorkingDirectory().
                 getAbsolutePath() + File.separator + "xml_scenario.xml";
             world.writeScenario(xmlfilename);
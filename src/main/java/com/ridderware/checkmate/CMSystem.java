@@ -35,4 +35,14 @@ public abstract class CMSystem extends CMAgent
     {
         super(name, world);
     }
+
+    /**
+     * Returns the detection pipeline of the world, through which the system
+     * makes its detection tests.
+     * @return DetectionPipeline object.
+     */
+    protected DetectionPipeline getDetectionPipeline()
+    {
+        return getWorld().getDetectionPipeline();
+    }
 }
@@ -36,6 +36,10 @@ import com.ridderware.fuse.IAgentFactory;
 import com.ridderware.fuse.Cartesian2DSpace;
 import com.ridderware.fuse.SimpleUniverse;
 import com.ridderware.fuse.Universe;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
@@ -87,9 +91,34 @@ public class CMWorld implements IAgentFactory
 
     private Space space = null;
 
-    private static IEarthModel earthModel = new FlatEarth();
+    private IEarthModel earthModel = new FlatEarth();
 
-    private static ITerrainModel terrainModel = new BaldEarthTerrain();
+    private ITerrainModel terrainModel = new BaldEarthTerrain();
+
+    //  Earth and terrain services of this world, bound when the scenario is loaded.
+    private GeometryContext geometry =
+        new GeometryContext(earthModel, terrainModel);
+
+    private final PairGeometryCache pair_geometry =
+        new PairGeometryCache(this);
+
+    private final JammingMatrix jamming_matrix = new JammingMatrix(this);
+
+    //  Grid of aircraft locations for range-limited scans, built on first use.
+    private PlatformGrid<Aircraft> aircraft_grid = null;
+
+    //  Largest RCS of any aircraft, or NaN if it must be recomputed.
+    private double max_aircraft_rcs = Double.NaN;
+
+    //  Grid of the platforms carrying radars for range-limited receiver scans,
+    //  and the radars of each, built on first use.
+    private PlatformGrid<Platform> emitter_grid = null;
+
+    private final HashMap<Platform, ArrayList<Radar>> emitters =
+        new HashMap<>();
+
+    //  Scratch list of the emitter platforms of a query.
+    private final ArrayList<Platform> emitter_candidates = new ArrayList<>();
 
     private final LOSUtil emLOSUtil = new LOSUtil(this,
         IEarthModel.EarthFactor.EM_EARTH);
@@ -97,8 +126,33 @@ public class CMWorld implements IAgentFactory
     private final LOSUtil realLOSUtil = new LOSUtil(this,
         IEarthModel.EarthFactor.REAL_EARTH);
 
+    //  LOS counters of all completed runs
+    private final LOSStatistics los_totals = new LOSStatistics();
+
+    //  Detection tests of the radars and receivers, with their counters for
+    //  the current run and for all completed runs.
+    private final DetectionPipeline detection_pipeline =
+        new DetectionPipeline();
+
+    private final DetectionPipeline detection_totals = new DetectionPipeline();
+
     private RandomNumberGenerator rng = null;
 
+    //  Class name of the random number generator requested by the scenario.
+    private String rng_class = "MersenneTwisterFast";
+
+    //  If set, the scenario's generator is a private stream with this seed
+    //  rather than the process-wide instance.
+    private Long scenario_seed = null;
+
+    private final ArgsHandler args_handler;
+
+    //  Last agent ID handed out by this world.
+    private int last_id = 0;
+
+    private final SAMFlyoutBehavior.ThrottleState sam_throttle_state =
+        new SAMFlyoutBehavior.ThrottleState();
+
     private File asi_file = null;
 
     /** Keeps track of all fonts used to draw objects in the FUSE GUI */
@@ -130,10 +184,52 @@ public class CMWorld implements IAgentFactory
     private static final Logger logger = LogManager.getLogger(CMWorld.class);
 
     /**
-     * Creates a new instance of CMWorld.
+     * Creates a new instance of CMWorld using the process-wide command line
+     * arguments.
      */
     public CMWorld()
     {
+        this(ArgsHandler.getInstance());
+    }
+
+    /**
+     * Creates a new instance of CMWorld.
+     * @param args_handler command line arguments used by this world.
+     */
+    public CMWorld(ArgsHandler args_handler)
+    {
+        this.args_handler = args_handler;
+        this.emLOSUtil.setPair(realLOSUtil);
+        this.realLOSUtil.setPair(emLOSUtil);
+    }
+
+    /**
+     * Returns the command line arguments used by this world.
+     * @return ArgsHandler object.
+     */
+    public ArgsHandler getArgsHandler()
+    {
+        return this.args_handler;
+    }
+
+    /**
+     * Returns the next candidate agent ID for this world.  IDs are unique only
+     * within a world, so independent replicas number their agents identically.
+     * @return candidate ID.
+     */
+    protected int nextId()
+    {
+        return ++last_id;
+    }
+
+    /**
+     * Returns the missile throttling state shared by the SAM flyouts in this
+     * world.
+     * @return throttle state.
+     */
+    protected SAMFlyoutBehavior.ThrottleState getSAMThrottleState()
+    {
+        return this.sam_throttle_state;
     }
 
     /**
@@ -235,6 +331,9 @@ public class CMWorld implements IAgentFactory
     public void addAircraft(Aircraft ac)
     {
         this.aircraft.add(ac);
+        this.aircraft_grid = null;
+        this.emitter_grid = null;
+        this.max_aircraft_rcs = Double.NaN;
     }
 
     /**
@@ -246,6 +345,109 @@ public class CMWorld implements IAgentFactory
         return this.aircraft;
     }
 
+    /**
+     * Adds to the collection the aircraft that may be within the specified
+     * range of a point.  The result can include aircraft beyond the range, but
+     * never omits one within it.
+     * @param origin point from which the range is measured.
+     * @param range range in nmi.
+     * @param out collection to which the aircraft are added.
+     */
+    public void collectAircraft(Double3D origin, double range,
+        Collection<? super Aircraft> out)
+    {
+        if (this.aircraft_grid == null)
+        {
+            this.aircraft_grid = new PlatformGrid<>(this.geometry);
+            for (Aircraft ac : this.aircraft)
+            {
+                this.aircraft_grid.add(ac);
+            }
+        }
+
+        this.aircraft_grid.collect(origin, range, out);
+    }
+
+    /**
+     * Returns the largest radar cross-section of any aircraft in the world.
+     * @return largest RCS, or 0 if there are no aircraft.
+     */
+    public double getMaxAircraftRCS()
+    {
+        if (Double.isNaN(this.max_aircraft_rcs))
+        {
+            this.max_aircraft_rcs = 0.;
+            for (Aircraft ac : this.aircraft)
+            {
+                this.max_aircraft_rcs = Math.max(this.max_aircraft_rcs,
+                    ac.getRCS());
+            }
+        }
+
+        return this.max_aircraft_rcs;
+    }
+
+    /**
+     * Adds to the collection the radars whose platforms may be within the
+     * specified range of a point.  The result can include radars beyond the
+     * range, but never omits one within it.
+     * @param origin point from which the range is measured.
+     * @param range range in nmi.
+     * @param out collection to which the radars are added.
+     */
+    public void collectRadars(Double3D origin, double range,
+        Collection<? super Radar> out)
+    {
+        if (this.emitter_grid == null)
+        {
+            this.emitter_grid = new PlatformGrid<>(this.geometry);
+            this.emitters.clear();
+            for (Radar r : this.radars)
+            {
+                ArrayList<Radar> on_platform = this.emitters.get(r.getParent());
+                if (on_platform == null)
+                {
+                    on_platform = new ArrayList<>();
+                    this.emitters.put(r.getParent(), on_platform);
+                    this.emitter_grid.add(r.getParent());
+                }
+                on_platform.add(r);
+            }
+        }
+
+        emitter_candidates.clear();
+        this.emitter_grid.collect(origin, range, emitter_candidates);
+        for (Platform p : emitter_candidates)
+        {
+            out.addAll(this.emitters.get(p));
+        }
+    }
+
+    /**
+     * Called by a platform when its location changes so that the spatial
+     * indexes of the world can be kept current.
+     * @param p platform that has moved.
+     */
+    void platformMoved(Platform p)
+    {
+        if (this.aircraft_grid != null && p instanceof Aircraft)
+        {
+            this.aircraft_grid.update(p);
+        }
+        if (this.emitter_grid != null)
+        {
+            this.emitter_grid.update(p);
+        }
+    }
+
+    /**
+     * Called by an aircraft when its radar cross-section changes.
+     */
+    void aircraftRCSChanged()
+    {
+        this.max_aircraft_rcs = Double.NaN;
+    }
+
     /**
      * Returns a Map of ViewFrame objects accessed by name.
      *
@@ -309,6 +511,7 @@ public class CMWorld implements IAgentFactory
     public void addRadar(Radar r)
     {
         this.radars.add(r);
+        this.emitter_grid = null;
     }
 
     /**
@@ -401,8 +604,43 @@ public class CMWorld implements IAgentFactory
             universe.addAgent(rx);
         }
 
+        //  Fold the LOS counters of the previous run into the totals.
+        LOSStatistics run_statistics = this.getLOSStatistics();
+        if (run_statistics.getQueries() > 0)
+        {
+            logger.debug(run_statistics);
+            los_totals.add(run_statistics);
+        }
+        if (getTerrainModel() instanceof TwoLevelTerrain)
+        {
+            ((TwoLevelTerrain) getTerrainModel()).getStatistics().clear();
+        }
+
+        //  Likewise the detection counters.
+        if (detection_pipeline.getTested(DetectionPipeline.Stage.STATUS) > 0)
+        {
+            logger.debug(detection_pipeline);
+            detection_totals.add(detection_pipeline);
+            detection_pipeline.clear();
+        }
+
+        int los_index = 0;
+        for (Platform p : this.platforms)
+        {
+            p.setLOSIndex(los_index++);
+        }
+
         this.emLOSUtil.reset();
         this.realLOSUtil.reset();
+
+        this.aircraft_grid = null;
+        this.max_aircraft_rcs = Double.NaN;
+
+        logger.debug(this.pair_geometry);
+        this.pair_geometry.reset(universe);
+
+        logger.debug(this.jamming_matrix);
+        this.jamming_matrix.reset(universe);
     }
 
     /**
@@ -425,14 +663,50 @@ public class CMWorld implements IAgentFactory
         return this.rng;
     }
 
+    /**
+     * Sets the seed of the random number generator created when the scenario
+     * is read.  If not set, the scenario uses the process-wide generator
+     * instance.  Must be called before readScenario.
+     * @param scenario_seed seed, or null to use the process-wide instance.
+     */
+    public void setScenarioSeed(Long scenario_seed)
+    {
+        this.scenario_seed = scenario_seed;
+    }
+
+    /**
+     * Replaces the random number generator with a new stream of the class
+     * requested by the scenario, seeded with the specified value, and makes it
+     * the default generator of the universe.
+     *
+     * @param seed seed of the new stream.
+     * @param universe universe whose agents draw from the generator.
+     */
+    public void seedRNG(long seed, Universe universe)
+    {
+        if (rng_class.equals("MersenneTwister"))
+        {
+            this.rng = new MersenneTwister(seed);
+        }
+        else
+        {
+            this.rng = new MersenneTwisterFast(seed);
+        }
+
+        universe.setDefaultRandomNumberGenerator(this.rng);
+    }
+
     /**
      * Sets the Earth model for this simulation.
      *
      * @param earthModel earth model object.
      */
-    static void setEarthModel(IEarthModel earthModel)
+    void setEarthModel(IEarthModel earthModel)
     {
-        CMWorld.earthModel = earthModel;
+        this.earthModel = earthModel;
+        this.bindGeometry();
+        this.aircraft_grid = null;
+        this.emitter_grid = null;
     }
 
     /**
@@ -440,9 +714,9 @@ public class CMWorld implements IAgentFactory
      *
      * @return IEarthModel object.
      */
-    public static IEarthModel getEarthModel()
+    public IEarthModel getEarthModel()
     {
-        return earthModel;
+        return this.geometry.getEarthModel();
     }
 
     /**
@@ -450,9 +724,9 @@ public class CMWorld implements IAgentFactory
      *
      * @return ITerrainModel object.
      */
-    public static ITerrainModel getTerrainModel()
+    public ITerrainModel getTerrainModel()
     {
-        return terrainModel;
+        return this.geometry.getTerrainModel();
     }
 
     /**
@@ -460,9 +734,97 @@ public class CMWorld implements IAgentFactory
      *
      * @param terrainModel terrain model object.
      */
-    static void setTerrainModel(ITerrainModel terrainModel)
+    void setTerrainModel(ITerrainModel terrainModel)
+    {
+        this.terrainModel = terrainModel;
+        this.bindGeometry();
+    }
+
+    /**
+     * Binds the terrain model to the Earth model, and makes a new geometry
+     * context of the two.
+     */
+    private void bindGeometry()
     {
-        CMWorld.terrainModel = terrainModel;
+        this.terrainModel.setEarthModel(earthModel);
+        this.geometry = new GeometryContext(earthModel, terrainModel);
+    }
+
+    /**
+     * Returns the cache of range, azimuth and elevation between pairs of
+     * platforms in this world.
+     *
+     * @return PairGeometryCache object.
+     */
+    public PairGeometryCache getPairGeometry()
+    {
+        return this.pair_geometry;
+    }
+
+    /**
+     * Returns the cache of the effectiveness of each jammer against each radar
+     * in this world.
+     *
+     * @return JammingMatrix object.
+     */
+    public JammingMatrix getJammingMatrix()
+    {
+        return this.jamming_matrix;
+    }
+
+    /**
+     * Returns the geometry services -- Earth and terrain models -- of this
+     * world.  Agents should make their geometry computations through this
+     * object.
+     *
+     * @return GeometryContext object.
+     */
+    public GeometryContext getGeometry()
+    {
+        return this.geometry;
+    }
+
+    /**
+     * Draws new locations for the targets whose locations are uncertain, and
+     * lets the LOS utilities prepare for the sites where they now are.  This
+     * is called before each evaluation.
+     * <p>
+     * Targets draw in ID order, so that a given random number stream produces
+     * the same laydown in every replica of the scenario.  Earlier releases
+     * drew in the iteration order of a hash set of platforms, which follows
+     * identity hash codes, so their laydowns are not reproduced for the same
+     * seed.
+     */
+    public void randomizeTargetLocations()
+    {
+        //  Draw in ID order so that a given random number stream always
+        //  produces the same target laydown.
+        ArrayList<Platform> sorted_targets = new ArrayList<>(targets);
+        Collections.sort(sorted_targets, new Comparator<Platform>()
+        {
+            @Override
+            public int compare(Platform p1, Platform p2)
+            {
+                return Integer.compare(p1.getId(), p2.getId());
+            }
+        });
+
+        for (Platform t : sorted_targets)
+        {
+            if ((t instanceof SAMSite && !(t.getSuperior() instanceof SAMBattalion)) ||
+                t instanceof SAMBattalion ||
+                t instanceof EarlyWarningSite ||
+                (t instanceof PassThroughC2 && !(t instanceof SAMSite || t instanceof SAMBattalion)) ||
+                (t instanceof RadarPlatform && t.getSuperior() == null) ||
+                (t instanceof SAMTEL && t.getSuperior() == null))
+            {
+                t.setLocation(((UncertainLocationPlatform) t).getRandomPointGenerator().
+                    randomGaussianPoint());
+            }
+        }
+
+        this.emLOSUtil.placeSites();
+        this.realLOSUtil.placeSites();
     }
 
     /**
@@ -485,6 +847,58 @@ public class CMWorld implements IAgentFactory
         return realLOSUtil;
     }
 
+    /**
+     * Returns the LOS counters of the current run, summed over both Earth
+     * factors and the terrain model.
+     * @return LOS statistics.
+     */
+    public LOSStatistics getLOSStatistics()
+    {
+        LOSStatistics s = new LOSStatistics();
+        s.add(emLOSUtil.getStatistics());
+        s.add(realLOSUtil.getStatistics());
+        if (getTerrainModel() instanceof TwoLevelTerrain)
+        {
+            s.add(((TwoLevelTerrain) getTerrainModel()).getStatistics());
+        }
+        return s;
+    }
+
+    /**
+     * Returns the detection pipeline shared by the radars and receivers of this
+     * world, whose counters cover the current run.
+     * @return DetectionPipeline object.
+     */
+    public DetectionPipeline getDetectionPipeline()
+    {
+        return this.detection_pipeline;
+    }
+
+    /**
+     * Returns the detection counters of all runs of this world, including the
+     * current one.
+     * @return DetectionPipeline object holding the totals.
+     */
+    public DetectionPipeline getTotalDetectionStatistics()
+    {
+        DetectionPipeline p = new DetectionPipeline();
+        p.add(detection_pipeline);
+        p.add(detection_totals);
+        return p;
+    }
+
+    /**
+     * Returns the LOS counters of all runs of this world, including the
+     * current one.
+     * @return LOS statistics.
+     */
+    public LOSStatistics getTotalLOSStatistics()
+    {
+        LOSStatistics s = this.getLOSStatistics();
+        s.add(los_totals);
+        return s;
+    }
+
     /**
      * Parses the XML node and creates the weapons specified therein.
      * @param node XML node.
@@ -924,6 +1338,7 @@ public class CMWorld implements IAgentFactory
         e.setAttribute("type", rp.getClass().getSimpleName());
         node.appendChild(e);
 
+        rp.setCoordinateSystem(geometry.getCoordinateSystem());
         rp.toXML(e);
     }
 
@@ -1400,13 +1815,19 @@ public class CMWorld implements IAgentFactory
 
                     if (rngClass.equals("MersenneTwisterFast"))
                     {
-                        this.rng = MersenneTwisterFast.getInstance();
+                        this.rng = scenario_seed != null ?
+                            new MersenneTwisterFast(scenario_seed) :
+                            MersenneTwisterFast.getInstance();
+                        this.rng_class = rngClass;
                     }
                     else
                     {
                         if (rngClass.equals("MersenneTwister"))
                         {
-                            this.rng = MersenneTwister.getInstance();
+                            this.rng = scenario_seed != null ?
+                                new MersenneTwister(scenario_seed) :
+                                MersenneTwister.getInstance();
+                            this.rng_class = rngClass;
                         }
                     }
                 }
@@ -1437,7 +1858,7 @@ public class CMWorld implements IAgentFactory
                     else if (child.getTextContent().
                         equalsIgnoreCase("TwoLevel"))
                     {
-                        terrainModel = new TwoLevelTerrain();
+                        terrainModel = new TwoLevelTerrain(args_handler);
                         if (dted != null)
                         {
                             ((TwoLevelTerrain) terrainModel).fromXML(child);
@@ -1464,6 +1885,10 @@ public class CMWorld implements IAgentFactory
                     100.);
             }
 
+            this.bindGeometry();
+            this.aircraft_grid = null;
+            this.emitter_grid = null;
+
             if (this.rng == null)
             {
                 this.rng = MersenneTwisterFast.getInstance();
@@ -2157,7 +2582,7 @@ public class CMWorld implements IAgentFactory
                         refLLA.getY() + "\t" + refLLA.getZ());
                 }
 
-                pw.println("CoordSystem\t\"" + getEarthModel().
+                pw.println("CoordSystem\t\"" + this.geometry.
                     getCoordinateSystem() + "\"");
 
                 if (this.gog_file != null)
@@ -0,0 +1,330 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import java.util.Arrays;
+
+/**
+ * Grid of terrain elevation posts held compressed.  The grid is cut into
+ * square tiles, and each tile keeps its first post and the differences of
+ * every other post from its neighbour, zigzag-coded and packed at the fewest
+ * bits that hold the largest difference of the tile.  Since neighbouring posts
+ * seldom differ by much, terrain packs into a fraction of the 16 bits per post
+ * of an uncompressed store.
+ * <p>
+ * The compressed posts are immutable, so one copy may be shared by every
+ * world in the process.  Posts are read through a {@link #reader(int)}, which
+ * holds a small cache of decoded tiles so that the posts of a tile are
+ * decoded once for a run of nearby reads.  A reader is not safe for
+ * concurrent use, so each world takes its own.
+ *
+ * @author Jeff Ridder
+ */
+public class CompressedElevationStore
+{
+    //  Tiles are TILE_SIZE by TILE_SIZE posts.
+    private static final int TILE_SHIFT = 4;
+
+    private static final int TILE_SIZE = 1 << TILE_SHIFT;
+
+    private static final int TILE_MASK = TILE_SIZE - 1;
+
+    //  Posts per row and per column of the grid.
+    private final int cols;
+
+    private final int rows;
+
+    //  Tiles per row of the grid.
+    private final int tile_cols;
+
+    //  Packed differences of all tiles.
+    private final long[] packed;
+
+    //  Bit offset of the differences of each tile.
+    private final long[] offset;
+
+    //  Bits per difference of each tile.
+    private final byte[] width;
+
+    //  First post of each tile.
+    private final short[] first;
+
+    private CompressedElevationStore(int cols, int rows, long[] packed,
+        long[] offset, byte[] width, short[] first)
+    {
+        this.cols = cols;
+        this.rows = rows;
+        this.tile_cols = (cols + TILE_MASK) >>> TILE_SHIFT;
+        this.packed = packed;
+        this.offset = offset;
+        this.width = width;
+        this.first = first;
+    }
+
+    /**
+     * Returns a compressed copy of a grid of posts.
+     * @param posts posts of the grid, in rows of cols posts.
+     * @param cols posts per row.
+     * @param rows number of rows.
+     * @return the compressed store.
+     */
+    public static CompressedElevationStore compress(ElevationStore posts,
+        int cols, int rows)
+    {
+        int tile_cols = (cols + TILE_MASK) >>> TILE_SHIFT;
+        int tile_rows = (rows + TILE_MASK) >>> TILE_SHIFT;
+        int tiles = tile_cols * tile_rows;
+
+        long[] offset = new long[tiles];
+        byte[] width = new byte[tiles];
+        short[] first = new short[tiles];
+        int[] deltas = new int[TILE_SIZE * TILE_SIZE];
+
+        //  First pass sizes each tile.
+        long bits = 0L;
+        for (int t = 0; t < tiles; t++)
+        {
+            int n = deltas(posts, cols, rows, tile_cols, t, deltas, first);
+            int max = 0;
+            for (int k = 0; k < n; k++)
+            {
+                max |= deltas[k];
+            }
+            offset[t] = bits;
+            width[t] = (byte) (32 - Integer.numberOfLeadingZeros(max));
+            bits += (long) n * width[t];
+        }
+
+        //  Second pass packs the differences.
+        long[] packed = new long[(int) ((bits + 63) >>> 6) + 1];
+        for (int t = 0; t < tiles; t++)
+        {
+            int n = deltas(posts, cols, rows, tile_cols, t, deltas, first);
+            int w = width[t];
+            long position = offset[t];
+            for (int k = 0; k < n && w > 0; k++)
+            {
+                int word = (int) (position >>> 6);
+                int shift = (int) (position & 63);
+                packed[word] |= (long) deltas[k] << shift;
+                if (shift + w > 64)
+                {
+                    packed[word + 1] |= (long) deltas[k] >>> (64 - shift);
+                }
+                position += w;
+            }
+        }
+
+        return new CompressedElevationStore(cols, rows, packed, offset, width,
+            first);
+    }
+
+    /**
+     * Computes the zigzag-coded differences of the posts of a tile, in rows.
+     * The first post of each row is taken from the first post of the row
+     * above, and every other post from the post to its left.
+     * @return number of posts in the tile.
+     */
+    private static int deltas(ElevationStore posts, int cols, int rows,
+        int tile_cols, int tile, int[] deltas, short[] first)
+    {
+        int col0 = (tile % tile_cols) << TILE_SHIFT;
+        int row0 = (tile / tile_cols) << TILE_SHIFT;
+        int w = Math.min(TILE_SIZE, cols - col0);
+        int h = Math.min(TILE_SIZE, rows - row0);
+
+        first[tile] = posts.get((long) row0 * cols + col0);
+        int n = 0;
+        int row_first = first[tile];
+        for (int r = 0; r < h; r++)
+        {
+            long base = (long) (row0 + r) * cols + col0;
+            int previous = row_first;
+            for (int c = 0; c < w; c++)
+            {
+                int el = posts.get(base + c);
+                if (r > 0 || c > 0)
+                {
+                    int d = el - previous;
+                    deltas[n++] = (d << 1) ^ (d >> 31);
+                }
+                if (c == 0)
+                {
+                    row_first = el;
+                }
+                previous = el;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the number of bytes held by the compressed posts.
+     * @return bytes.
+     */
+    public long getCompressedBytes()
+    {
+        return 8L * packed.length + 11L * offset.length;
+    }
+
+    /**
+     * Returns the number of posts in the grid.
+     * @return size.
+     */
+    public long size()
+    {
+        return (long) cols * rows;
+    }
+
+    /**
+     * Returns a new reader of the posts, for use by one thread at a time.
+     * @param cache_tiles number of decoded tiles to hold, rounded down to a
+     * power of two.
+     * @return the reader.
+     */
+    public ElevationStore reader(int cache_tiles)
+    {
+        return new Reader(cache_tiles);
+    }
+
+    /**
+     * Decodes the posts of a tile into rows of TILE_SIZE posts.
+     * @param tile tile to decode.
+     * @param posts receives the posts.
+     */
+    private void decode(int tile, short[] posts)
+    {
+        int w = Math.min(TILE_SIZE, cols - ((tile % tile_cols) << TILE_SHIFT));
+        int h = Math.min(TILE_SIZE, rows - ((tile / tile_cols) << TILE_SHIFT));
+        int bits = width[tile];
+        long mask = (1L << bits) - 1;
+        long position = offset[tile];
+
+        int row_first = first[tile];
+        for (int r = 0; r < h; r++)
+        {
+            int previous = row_first;
+            for (int c = 0; c < w; c++)
+            {
+                if (r > 0 || c > 0)
+                {
+                    int z = 0;
+                    if (bits > 0)
+                    {
+                        int word = (int) (position >>> 6);
+                        int shift = (int) (position & 63);
+                        long v = packed[word] >>> shift;
+                        if (shift + bits > 64)
+                        {
+                            v |= packed[word + 1] << (64 - shift);
+                        }
+                        z = (int) (v & mask);
+                        position += bits;
+                    }
+                    previous += (z >>> 1) ^ -(z & 1);
+                }
+                if (c == 0)
+                {
+                    row_first = previous;
+                }
+                posts[(r << TILE_SHIFT) | c] = (short) previous;
+            }
+        }
+    }
+
+    /**
+     * Reads the posts through a cache of decoded tiles.
+     */
+    private final class Reader implements ElevationStore
+    {
+        //  Decoded tiles, and the tile held in each slot.
+        private final short[][] decoded;
+
+        private final int[] decoded_tile;
+
+        private final int slot_mask;
+
+        private Reader(int cache_tiles)
+        {
+            int slots = Integer.highestOneBit(Math.max(1, Math.min(cache_tiles,
+                1 << 16)));
+            this.slot_mask = slots - 1;
+            this.decoded = new short[slots][TILE_SIZE * TILE_SIZE];
+            this.decoded_tile = new int[slots];
+            Arrays.fill(decoded_tile, -1);
+        }
+
+        @Override
+        public long size()
+        {
+            return (long) cols * rows;
+        }
+
+        @Override
+        public short get(long index)
+        {
+            int row = (int) (index / cols);
+            int col = (int) (index - (long) row * cols);
+            return tile(row, col)[((row & TILE_MASK) << TILE_SHIFT) |
+                (col & TILE_MASK)];
+        }
+
+        @Override
+        public void get(long index, short[] dst, int offset, int length)
+        {
+            while (length > 0)
+            {
+                int row = (int) (index / cols);
+                int col = (int) (index - (long) row * cols);
+
+                //  Posts to the end of the tile's row, or of the grid's.
+                int n = Math.min(length, Math.min(TILE_SIZE - (col &
+                    TILE_MASK), cols - col));
+                System.arraycopy(tile(row, col), ((row & TILE_MASK) <<
+                    TILE_SHIFT) | (col & TILE_MASK), dst, offset, n);
+
+                index += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        /**
+         * Returns the decoded posts of the tile holding a post, decoding
+         * the tile if it is not held.
+         * @param row row of the post.
+         * @param col column of the post.
+         * @return posts of the tile, in rows of TILE_SIZE.
+         */
+        private short[] tile(int row, int col)
+        {
+            int tile = (row >>> TILE_SHIFT) * tile_cols + (col >>> TILE_SHIFT);
+
+            //  Hashed so that tiles above and below each other seldom share a slot.
+            int slot = ((tile * 0x9E3779B1) >>> 16) & slot_mask;
+            if (decoded_tile[slot] != tile)
+            {
+                decode(tile, decoded[slot]);
+                decoded_tile[slot] = tile;
+            }
+            return decoded[slot];
+        }
+    }
+}
@@ -23,7 +23,6 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import com.ridderware.fuse.Double3D;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -71,30 +70,21 @@ public class CookieCutterReceiver extends Receiver
     {
         getTracks().clear();
 
-        Double3D myLocation = getParent().getLocation();
-
         double dr_sq = detection_range * detection_range;
 
-        for (Radar r : getWorld().getRadars())
+        DetectionPipeline pipeline = getDetectionPipeline();
+
+        for (Radar r : getScanRadars(detection_range))
         {
             Platform r_parent = r.getParent();
 
-            if (r_parent.getStatus() == Platform.Status.ACTIVE && getWorld().
-                getEMLOSUtil().hasLOS(getParent(), r_parent))
+            if (pipeline.status(r_parent) && pipeline.emitting(r) &&
+                pipeline.range(getWorld().getPairGeometry().trueDistanceSq(
+                getParent(), r_parent), dr_sq) &&
+                pipeline.los(getWorld().getEMLOSUtil(), getParent(), r_parent))
             {
-                if (r.isEmitting())
-                {
-                    Double3D r_loc = r_parent.getLocation();
-
-                    double dsq =
-                        CMWorld.getEarthModel().trueDistanceSq(myLocation,
-                        r_loc);
-
-                    if (dsq <= dr_sq)
-                    {
-                        getTracks().add(r);
-                    }
-                }
+                pipeline.detected();
+                getTracks().add(r);
             }
         }
     }
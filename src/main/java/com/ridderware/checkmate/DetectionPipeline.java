@@ -0,0 +1,239 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+/**
+ * The staged tests through which radars and receivers decide detections, with
+ * counters of how many candidates each stage examined and rejected.  Scanners
+ * chain the stages with short-circuit ANDs in the order of the Stage enum,
+ * which is the order of increasing cost, so that the terrain LOS walk is only
+ * made for candidates that have passed every other test.  Stages that do not
+ * apply to a scanner are omitted.  One pipeline is shared by all systems of
+ * a world and reached through {@link CMSystem#getDetectionPipeline()}.
+ *
+ * @author Jeff Ridder
+ */
+public class DetectionPipeline
+{
+    /**
+     * Stages of the pipeline, in the order in which they are applied.
+     */
+    public enum Stage
+    {
+        /** Platform of the candidate is active. */
+        STATUS,
+        /** Candidate radar is emitting. */
+        EMITTING,
+        /** Scanner has a nonzero entry for the candidate: a detection range
+         * for its classification, a band covering its frequency, or a radar
+         * cross-section. */
+        CLASSIFICATION,
+        /** Squared distance to the candidate is within the squared detection
+         * range. */
+        RANGE,
+        /** Candidate lies within the antenna lobe or beam that decides the
+         * detection range. */
+        LOBE,
+        /** Terrain does not block the line of site. */
+        LOS
+    }
+
+    private final long[] tested = new long[Stage.values().length];
+
+    private final long[] rejected = new long[Stage.values().length];
+
+    private long detections = 0;
+
+    /**
+     * Creates a new instance of DetectionPipeline with all counters at zero.
+     */
+    public DetectionPipeline()
+    {
+    }
+
+    /**
+     * Counts the outcome of a stage.
+     * @param stage stage being applied.
+     * @param passed true if the candidate passed the stage.
+     * @return passed.
+     */
+    public boolean pass(Stage stage, boolean passed)
+    {
+        tested[stage.ordinal()]++;
+        if (!passed)
+        {
+            rejected[stage.ordinal()]++;
+        }
+        return passed;
+    }
+
+    /**
+     * Applies the STATUS stage.
+     * @param p platform of the candidate.
+     * @return true if the platform is active.
+     */
+    public boolean status(Platform p)
+    {
+        return pass(Stage.STATUS, p.getStatus() == Platform.Status.ACTIVE);
+    }
+
+    /**
+     * Applies the EMITTING stage.
+     * @param r candidate radar.
+     * @return true if the radar is emitting.
+     */
+    public boolean emitting(Radar r)
+    {
+        return pass(Stage.EMITTING, r.isEmitting());
+    }
+
+    /**
+     * Applies the CLASSIFICATION stage.
+     * @param known true if the scanner has a nonzero entry for the candidate.
+     * @return known.
+     */
+    public boolean classification(boolean known)
+    {
+        return pass(Stage.CLASSIFICATION, known);
+    }
+
+    /**
+     * Applies the RANGE stage.
+     * @param range_sq square of the distance to the candidate in nmi-squared.
+     * @param max_range_sq square of the detection range in nmi-squared.
+     * @return true if the candidate is within the detection range.
+     */
+    public boolean range(double range_sq, double max_range_sq)
+    {
+        return pass(Stage.RANGE, range_sq <= max_range_sq);
+    }
+
+    /**
+     * Applies the RANGE stage, excluding a candidate at exactly the detection
+     * range, as the radars always have.
+     * @param range_sq square of the distance to the candidate in nmi-squared.
+     * @param max_range_sq square of the detection range in nmi-squared.
+     * @return true if the candidate is strictly within the detection range.
+     */
+    public boolean rangeStrict(double range_sq, double max_range_sq)
+    {
+        return pass(Stage.RANGE, range_sq < max_range_sq);
+    }
+
+    /**
+     * Applies the LOBE stage.
+     * @param covered true if the candidate lies within the lobe or beam.
+     * @return covered.
+     */
+    public boolean lobe(boolean covered)
+    {
+        return pass(Stage.LOBE, covered);
+    }
+
+    /**
+     * Applies the LOS stage.
+     * @param los_util LOS utilities of the Earth factor to use.
+     * @param p1 platform 1.
+     * @param p2 platform 2.
+     * @return true if there is line of site between the platforms.
+     */
+    public boolean los(LOSUtil los_util, Platform p1, Platform p2)
+    {
+        return pass(Stage.LOS, los_util.hasLOS(p1, p2));
+    }
+
+    /**
+     * Counts a detection made by a candidate that passed the pipeline.
+     */
+    public void detected()
+    {
+        detections++;
+    }
+
+    /**
+     * Returns the number of candidates examined by a stage.
+     * @param stage pipeline stage.
+     * @return candidates tested.
+     */
+    public long getTested(Stage stage)
+    {
+        return tested[stage.ordinal()];
+    }
+
+    /**
+     * Returns the number of candidates rejected by a stage.
+     * @param stage pipeline stage.
+     * @return candidates rejected.
+     */
+    public long getRejected(Stage stage)
+    {
+        return rejected[stage.ordinal()];
+    }
+
+    /**
+     * Returns the number of detections.
+     * @return detections.
+     */
+    public long getDetections()
+    {
+        return detections;
+    }
+
+    /**
+     * Sets all counters to zero.
+     */
+    public void clear()
+    {
+        for (int i = 0; i < tested.length; i++)
+        {
+            tested[i] = 0;
+            rejected[i] = 0;
+        }
+        detections = 0;
+    }
+
+    /**
+     * Adds the counters of another pipeline to these.
+     * @param p pipeline whose counters are added.
+     */
+    public void add(DetectionPipeline p)
+    {
+        for (int i = 0; i < tested.length; i++)
+        {
+            tested[i] += p.tested[i];
+            rejected[i] += p.rejected[i];
+        }
+        detections += p.detections;
+    }
+
+    @Override
+    public String toString()
+    {
+        String s = "Detection pipeline:";
+        for (Stage stage : Stage.values())
+        {
+            s += "\n  " + stage.name().toLowerCase() + ": " +
+                getTested(stage) + " tested, " + getRejected(stage) +
+                " rejected";
+        }
+        s += "\n  detections: " + detections;
+        return s;
+    }
+}
@@ -184,9 +184,9 @@ public class DirectionalRadar extends Radar
                             Double3D tgt_loc = site.getEngagedTarget().getTarget().
                                 getLocation();
 
-                            this.antenna.setBoresight(CMWorld.getEarthModel().
+                            this.antenna.setBoresight(getWorld().getGeometry().
                                 azimuthAngle(location, tgt_loc),
-                                CMWorld.getEarthModel().elevationAngle(location,
+                                getWorld().getGeometry().elevationAngle(location,
                                 tgt_loc, IEarthModel.EarthFactor.EM_EARTH));
                         }
                     }
@@ -265,9 +265,9 @@ public class DirectionalRadar extends Radar
                 Double3D acLoc = ac.getLocation();
 
                 //  We need to plant it on the target AC
-                this.antenna.setBoresight(CMWorld.getEarthModel().
+                this.antenna.setBoresight(getWorld().getGeometry().
                     azimuthAngle(myLoc, acLoc),
-                    CMWorld.getEarthModel().elevationAngle(myLoc, acLoc,
+                    getWorld().getGeometry().elevationAngle(myLoc, acLoc,
                     IEarthModel.EarthFactor.EM_EARTH));
 //                if ( this.getFunction() != Function.TT )
 //                {
@@ -286,7 +286,7 @@ public class DirectionalRadar extends Radar
                 {
                     //  I need true distance.
                     double d_sq =
-                        CMWorld.getEarthModel().trueDistanceSq(myLoc, acLoc);
+                        getWorld().getGeometry().trueDistanceSq(myLoc, acLoc);
 
 //                    if ( this.getFunction() != Function.TT )
 //                    {
@@ -314,48 +314,56 @@ public class DirectionalRadar extends Radar
         {
             //  This is an EW or TA radar, circular scanning with single beam covering lowest elevation.
 
-            for (Aircraft ac : getWorld().getAircraft())
+            //  Jamming can only shorten the range, so aircraft beyond the
+            //  unjammed range against their RCS cannot be detected.  While a
+            //  jammer is active, though, finding the jammed range for a target
+            //  also tracks the jammers, so every target is examined as before.
+            boolean track_jammers = isJammerActive();
+            int n = computeScanGeometry(myLoc, track_jammers ?
+                Double.POSITIVE_INFINITY : maxDetectionRange(getReferenceRange()),
+                true);
+            Aircraft[] scan_aircraft = getScanAircraft();
+            double ref_sq = getReferenceRange() * getReferenceRange();
+
+            DetectionPipeline pipeline = getDetectionPipeline();
+
+            for (int i = 0; i < n; i++)
             {
-                if (ac.getRCS() > 0. &&
-                    getWorld().getEMLOSUtil().hasLOS(ac, getParent()) &&
-                    ac.getStatus() == Platform.Status.ACTIVE)
+                Aircraft ac = scan_aircraft[i];
+
+                //  The beam only covers the lowest elevations, so a target above
+                //  it is rejected before the LOS walk.
+                if (pipeline.status(ac) &&
+                    pipeline.classification(ac.getRCS() > 0.) &&
+                    (track_jammers || pipeline.rangeStrict(getScanRangeSq()[i],
+                    ref_sq * Math.sqrt(ac.getRCS()))) &&
+                    pipeline.lobe(getScanElevation()[i] <=
+                    antenna.getMainlobeEl() * 2.) &&
+                    pipeline.los(getWorld().getEMLOSUtil(), ac, getParent()))
                 {
-                    Double3D acLoc = ac.getLocation();
-                    //  If the AC has an RCS, is active, and we have LOS to the target, then...
-
                     //  Put the beam on the AC.
-                    double theta =
-                        CMWorld.getEarthModel().azimuthAngle(myLoc, acLoc);
+                    double theta = getScanAzimuth()[i];
                     double phi = boresight.getY();
                     antenna.setBoresight(theta, phi);
 
-                    //  Determine the elevation of the target so that we can determine whether it is within the beam.
-                    double el = CMWorld.getEarthModel().elevationAngle(myLoc,
-                        acLoc, IEarthModel.EarthFactor.EM_EARTH);
-                    //  If the target aircraft is within the elevation coverage of the beam, then see if it is within range.
-                    if (el <= antenna.getMainlobeEl() * 2.)
+                    //  Jamming depends on the orientation of the beam, so the
+                    //  jammed range is found for each target.
+                    findJammedRange();
+                    double j_sq = getJammedRange() * getJammedRange();
+                    double r_sq = j_sq * Math.sqrt(ac.getRCS());
+
+                    if (r_sq > 0. && getScanRangeSq()[i] < r_sq)
                     {
-                        findJammedRange();
-                        double j_sq = getJammedRange() * getJammedRange();
-                        double r_sq = j_sq * Math.sqrt(ac.getRCS());
-                        if (r_sq > 0.)
-                        {
+                        pipeline.detected();
 
-                            double d_sq = CMWorld.getEarthModel().
-                                trueDistanceSq(myLoc, acLoc);
-
-                            if (d_sq < r_sq)
-                            {
-                                //  Add a blip
-                                getBlips().add(ac);
-
-                                //  This checks for a track condition of 2 consecutive blips
-                                if (getPreviousBlips().contains(ac))
-                                {
-                                    getTracks().add(ac);
-                                    dropped_tracks.remove(ac);
-                                }
-                            }
+                        //  Add a blip
+                        getBlips().add(ac);
+
+                        //  This checks for a track condition of 2 consecutive blips
+                        if (getPreviousBlips().contains(ac))
+                        {
+                            getTracks().add(ac);
+                            dropped_tracks.remove(ac);
                         }
                     }
                 }
@@ -526,10 +534,10 @@ public class DirectionalRadar extends Radar
 
                             Double3D acLoc = ac.getLocation();
 
-                            az = CMWorld.getEarthModel().azimuthAngle(myLoc,
+                            az = getWorld().getGeometry().azimuthAngle(myLoc,
                                 acLoc);
                             el =
-                                CMWorld.getEarthModel().elevationAngle(myLoc,
+                                getWorld().getGeometry().elevationAngle(myLoc,
                                 acLoc, IEarthModel.EarthFactor.REAL_EARTH);
                         }
                     }
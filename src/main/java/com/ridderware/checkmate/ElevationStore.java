@@ -0,0 +1,53 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+/**
+ * Read-only view of a grid of terrain elevation posts, indexed by a long so
+ * that grids of more than 2^31 posts can be held.  Posts are in rows, in the
+ * same order as the index.  Stores that can be written, such as
+ * {@link BufferElevationStore}, add their own mutators.
+ *
+ * @author Jeff Ridder
+ */
+public interface ElevationStore
+{
+    /**
+     * Returns the number of posts in the store.
+     * @return size.
+     */
+    long size();
+
+    /**
+     * Returns the post at the specified index.
+     * @param index post index.
+     * @return elevation.
+     */
+    short get(long index);
+
+    /**
+     * Copies a run of posts out of the store.
+     * @param index index of the first post to copy.
+     * @param dst receives the posts.
+     * @param offset offset in dst of the first post.
+     * @param length number of posts to copy.
+     */
+    void get(long index, short[] dst, int offset, int length);
+}
@@ -0,0 +1,138 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+/**
+ * Outcome of a single evaluation of the scenario, recorded so that the results
+ * of evaluations run in parallel can be merged in evaluation order.
+ *
+ * @author Jeff Ridder
+ */
+public class EvaluationOutcome
+{
+    private final int evaluation;
+
+    private final long seed;
+
+    private int num_aircraft = 0;
+
+    private int aircraft_killed = 0;
+
+    private int num_targets = 0;
+
+    private int targets_killed = 0;
+
+    /**
+     * Creates a new instance of EvaluationOutcome by examining the final state
+     * of the platforms in the world.
+     * @param evaluation index of the evaluation.
+     * @param seed seed of the random number stream used by the evaluation.
+     * @param world CMWorld at the end of the evaluation.
+     */
+    public EvaluationOutcome(int evaluation, long seed, CMWorld world)
+    {
+        this.evaluation = evaluation;
+        this.seed = seed;
+
+        for (Aircraft a : world.getAircraft())
+        {
+            num_aircraft++;
+            if (a.getStatus() == Platform.Status.DEAD)
+            {
+                aircraft_killed++;
+            }
+        }
+
+        for (Platform t : world.getTargets())
+        {
+            num_targets++;
+            if (t.getStatus() == Platform.Status.DEAD)
+            {
+                targets_killed++;
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the evaluation.
+     * @return evaluation index.
+     */
+    public int getEvaluation()
+    {
+        return evaluation;
+    }
+
+    /**
+     * Returns the seed of the random number stream used by the evaluation.
+     * @return seed.
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Returns the number of aircraft in the evaluation.
+     * @return number of aircraft.
+     */
+    public int getNumAircraft()
+    {
+        return num_aircraft;
+    }
+
+    /**
+     * Returns the number of aircraft killed during the evaluation.
+     * @return number of aircraft killed.
+     */
+    public int getAircraftKilled()
+    {
+        return aircraft_killed;
+    }
+
+    /**
+     * Returns the number of targets in the evaluation.
+     * @return number of targets.
+     */
+    public int getNumTargets()
+    {
+        return num_targets;
+    }
+
+    /**
+     * Returns the number of targets killed during the evaluation.
+     * @return number of targets killed.
+     */
+    public int getTargetsKilled()
+    {
+        return targets_killed;
+    }
+
+    /**
+     * Returns a one line summary of the outcome.
+     * @return summary string.
+     */
+    @Override
+    public String toString()
+    {
+        return "Evaluation " + evaluation + " (seed " + seed + "): " +
+            aircraft_killed + "/" + num_aircraft + " aircraft killed, " +
+            targets_killed + "/" + num_targets + " targets killed";
+    }
+}
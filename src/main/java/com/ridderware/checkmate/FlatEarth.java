@@ -149,4 +149,47 @@ public class FlatEarth implements IEarthModel
     {
         return pt1.anglePhi(pt2);
     }
+
+    /**
+     *  Computes the range-squared, azimuth and elevation from one origin to each of a set of
+     *  target points in a single pass.
+     *
+     * @param  origin     origin point.
+     * @param  targets    target points.
+     * @param  count      number of targets to process.
+     * @param  k          Earth factor (unused in Flat Earth).
+     * @param  range_sq   receives the square of the distances in nmi-squared, or null.
+     * @param  azimuth    receives the azimuth angles in radians, or null.
+     * @param  elevation  receives the elevation angles in radians, or null.
+     */
+    @Override
+    public final void bulkGeometry(Double3D origin, Double3D[] targets,
+        int count, EarthFactor k, double[] range_sq, double[] azimuth,
+        double[] elevation)
+    {
+        final double x0 = origin.getX();
+        final double y0 = origin.getY();
+        final double z0 = origin.getZ();
+
+        for (int i = 0; i < count; i++)
+        {
+            final Double3D pt = targets[i];
+
+            if (range_sq != null)
+            {
+                final double dx = pt.getX() - x0;
+                final double dy = pt.getY() - y0;
+                final double dz = pt.getZ() - z0;
+                range_sq[i] = dx * dx + dy * dy + dz * dz;
+            }
+            if (azimuth != null)
+            {
+                azimuth[i] = origin.angleTheta(pt);
+            }
+            if (elevation != null)
+            {
+                elevation[i] = origin.anglePhi(pt);
+            }
+        }
+    }
 }
@@ -0,0 +1,215 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import com.ridderware.fuse.Double3D;
+
+/**
+ * The geometry services of a world: its Earth model and its terrain model.
+ * Each CMWorld binds one context when its scenario is loaded, and agents reach
+ * it through getWorld().getGeometry(), so worlds with different Earth models
+ * may share a JVM.  The class is final so that its calls bind statically, and
+ * a process running a single Earth model sees one receiver at each call into
+ * the model.  A Round Earth model is also held as such for its platform
+ * overloads, which use the Earth-centered unit vectors cached on platforms.
+ * <p>
+ * The context does not bind the terrain model to the Earth model; the world
+ * does so when it sets either.
+ *
+ * @author Jeff Ridder
+ */
+public final class GeometryContext implements IEarthModel
+{
+    private final IEarthModel earth_model;
+
+    //  The Earth model if it is a Round Earth, else null.
+    private final RoundEarth round_earth;
+
+    private final ITerrainModel terrain_model;
+
+    //  Scratch array of target locations for the bulk geometry of platforms.
+    private Double3D[] bulk_locations = new Double3D[0];
+
+    /**
+     * Creates a new instance of GeometryContext.
+     * @param earth_model Earth model of the world.
+     * @param terrain_model terrain model of the world.
+     */
+    public GeometryContext(IEarthModel earth_model,
+        ITerrainModel terrain_model)
+    {
+        this.earth_model = earth_model;
+        this.round_earth = earth_model instanceof RoundEarth ?
+            (RoundEarth) earth_model : null;
+        this.terrain_model = terrain_model;
+    }
+
+    /**
+     * Returns the Earth model of the world.
+     * @return IEarthModel object.
+     */
+    public IEarthModel getEarthModel()
+    {
+        return this.earth_model;
+    }
+
+    /**
+     * Returns the terrain model of the world.
+     * @return ITerrainModel object.
+     */
+    public ITerrainModel getTerrainModel()
+    {
+        return this.terrain_model;
+    }
+
+    @Override
+    public String getCoordinateSystem()
+    {
+        return earth_model.getCoordinateSystem();
+    }
+
+    @Override
+    public double trueDistance(Double3D pt1, Double3D pt2)
+    {
+        return earth_model.trueDistance(pt1, pt2);
+    }
+
+    @Override
+    public double trueDistanceSq(Double3D pt1, Double3D pt2)
+    {
+        return earth_model.trueDistanceSq(pt1, pt2);
+    }
+
+    @Override
+    public Double3D projectLocation(Double3D pt, double distance,
+        double azimuth)
+    {
+        return earth_model.projectLocation(pt, distance, azimuth);
+    }
+
+    @Override
+    public Double3D interpolateLocation(Double3D pt1, Double3D pt2,
+        double distance)
+    {
+        return earth_model.interpolateLocation(pt1, pt2, distance);
+    }
+
+    @Override
+    public double azimuthAngle(Double3D pt1, Double3D pt2)
+    {
+        return earth_model.azimuthAngle(pt1, pt2);
+    }
+
+    @Override
+    public double elevationAngle(Double3D pt1, Double3D pt2, EarthFactor k)
+    {
+        return earth_model.elevationAngle(pt1, pt2, k);
+    }
+
+    @Override
+    public void bulkGeometry(Double3D origin, Double3D[] targets, int count,
+        EarthFactor k, double[] range_sq, double[] azimuth, double[] elevation)
+    {
+        earth_model.bulkGeometry(origin, targets, count, k, range_sq, azimuth,
+            elevation);
+    }
+
+    /**
+     * Returns the line-of-site distance between two platforms.
+     * @param p1 platform 1.
+     * @param p2 platform 2.
+     * @return distance in nmi.
+     */
+    public double trueDistance(Platform p1, Platform p2)
+    {
+        if (round_earth != null)
+        {
+            return round_earth.trueDistance(p1, p2);
+        }
+        return earth_model.trueDistance(p1.getLocation(), p2.getLocation());
+    }
+
+    /**
+     * Returns the square of the line-of-site distance between two platforms.
+     * @param p1 platform 1.
+     * @param p2 platform 2.
+     * @return square of the distance in nmi-squared.
+     */
+    public double trueDistanceSq(Platform p1, Platform p2)
+    {
+        if (round_earth != null)
+        {
+            return round_earth.trueDistanceSq(p1, p2);
+        }
+        return earth_model.trueDistanceSq(p1.getLocation(), p2.getLocation());
+    }
+
+    /**
+     * Returns the elevation angle from one platform to another.
+     * @param p1 platform from which the angle is measured.
+     * @param p2 platform to which the angle is measured.
+     * @param k Earth factor.
+     * @return elevation angle in radians.
+     */
+    public double elevationAngle(Platform p1, Platform p2, EarthFactor k)
+    {
+        if (round_earth != null)
+        {
+            return round_earth.elevationAngle(p1, p2, k);
+        }
+        return earth_model.elevationAngle(p1.getLocation(), p2.getLocation(),
+            k);
+    }
+
+    /**
+     * Computes the range-squared, azimuth and elevation from one origin to each
+     * of a set of target platforms in a single pass.  Any of the output arrays
+     * may be null if that quantity is not needed.
+     * @param origin origin point.
+     * @param targets target platforms.
+     * @param count number of targets to process.
+     * @param k Earth factor for the elevation angles.
+     * @param range_sq receives the square of the distances in nmi-squared.
+     * @param azimuth receives the azimuth angles between +/- PI in radians.
+     * @param elevation receives the elevation angles in radians.
+     */
+    public void bulkGeometry(Double3D origin, Platform[] targets, int count,
+        EarthFactor k, double[] range_sq, double[] azimuth, double[] elevation)
+    {
+        if (round_earth != null)
+        {
+            round_earth.bulkGeometry(origin, targets, count, k, range_sq,
+                azimuth, elevation);
+            return;
+        }
+
+        if (bulk_locations.length < count)
+        {
+            bulk_locations = new Double3D[targets.length];
+        }
+        for (int i = 0; i < count; i++)
+        {
+            bulk_locations[i] = targets[i].getLocation();
+        }
+
+        earth_model.bulkGeometry(origin, bulk_locations, count, k, range_sq,
+            azimuth, elevation);
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import java.util.Arrays;
+import com.ridderware.fuse.Double3D;
+
+/**
+ * Horizon profile of a fixed site: the elevation angles of the terrain around
+ * the site, binned by azimuth and by range ring.  For each bin and ring the
+ * profile holds an upper bound on the elevation angle of any terrain out to
+ * the outer edge of the ring, and a lower bound on the highest elevation
+ * angle that any ray within the bin must pass over before reaching the
+ * ring.  LOS from the site to a target is then clear if the target's
+ * elevation angle is above the upper bound at its range, and blocked if it is
+ * below the lower bound of the rings inside it.  Targets between the two
+ * bounds, and targets beyond the profile, are left to the terrain model.
+ * <p>
+ * Terrain is taken as a block of constant height over the cell of each fine
+ * post, as in {@link TwoLevelTerrain}, and the elevation angle of a point is
+ * measured in the effective Earth of the profile's Earth factor, in which
+ * rays are straight.  Terrain beyond the edge of the grid is at sea level.
+ *
+ * @author Jeff Ridder
+ */
+public class HorizonProfile
+{
+    /**
+     * Returned by test() when the profile cannot decide the LOS.
+     */
+    public static final int UNDECIDED = -1;
+
+    //  Number of azimuth bins
+    private static final int BINS = 360;
+
+    //  Bound on the number of range rings
+    private static final int MAX_RINGS = 256;
+
+    //  Allowance in radians for the approximations made in binning the terrain
+    private static final double ANGLE_MARGIN = 1.e-5;
+
+    private static final double TWO_PI = 2. * Math.PI;
+
+    private final double x;
+
+    private final double y;
+
+    //  Height of the site in n.mi.
+    private final double h;
+
+    private final boolean round;
+
+    //  Effective Earth radius in n.mi. (round Earth only)
+    private final double rk;
+
+    private final double max_range;
+
+    private final int rings;
+
+    private final double ring_width;
+
+    private final double bin_width = TWO_PI / BINS;
+
+    //  Highest terrain elevation angle seen in each bin and ring while the
+    //  profile is being built, then its cumulative upper bound by ring.
+    private double[] max_angle;
+
+    //  Lowest terrain elevation angle seen in each bin and ring while the
+    //  profile is being built.
+    private double[] min_angle;
+
+    private float[] upper;
+
+    private float[] lower;
+
+    /**
+     * Creates a new, empty instance of HorizonProfile.  Terrain is added with
+     * add() and the profile is completed with finish().
+     * @param site location of the site.
+     * @param round true for a round Earth (LLA radians), false for a flat Earth (ENU n.mi.).
+     * @param k Earth factor (round Earth only).
+     * @param max_range range in n.mi. covered by the profile.
+     */
+    HorizonProfile(Double3D site, boolean round, IEarthModel.EarthFactor k,
+        double max_range)
+    {
+        this.x = site.getX();
+        this.y = site.getY();
+        this.h = site.getZ();
+        this.round = round;
+        this.rk = RoundEarth.EARTH_RADIUS_NMI * k.value();
+        this.max_range = max_range;
+        this.rings = Math.max(1, Math.min(MAX_RINGS,
+            (int) Math.ceil(max_range)));
+        this.ring_width = max_range / rings;
+
+        this.max_angle = new double[BINS * rings];
+        this.min_angle = new double[BINS * rings];
+        Arrays.fill(max_angle, Double.NEGATIVE_INFINITY);
+        Arrays.fill(min_angle, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Returns whether the profile is of a site at the specified location.
+     * @param location location of the site.
+     * @return true if the profile was computed for the location.
+     */
+    public boolean isAt(Double3D location)
+    {
+        return location.getX() == x && location.getY() == y &&
+            location.getZ() == h;
+    }
+
+    /**
+     * Returns the range covered by the profile.
+     * @return range in n.mi.
+     */
+    public double getMaxRange()
+    {
+        return max_range;
+    }
+
+    /**
+     * Returns the ground range from the site to a point.
+     * @param px x-coordinate of the point.
+     * @param py y-coordinate of the point.
+     * @return range in n.mi.
+     */
+    double groundRange(double px, double py)
+    {
+        return groundRange(x, y, round, px, py);
+    }
+
+    /**
+     * Returns the ground range between two points.
+     * @param x x-coordinate of point 1.
+     * @param y y-coordinate of point 1.
+     * @param round true for a round Earth (LLA radians), false for a flat Earth (ENU n.mi.).
+     * @param px x-coordinate of point 2.
+     * @param py y-coordinate of point 2.
+     * @return range in n.mi.
+     */
+    static double groundRange(double x, double y, boolean round, double px,
+        double py)
+    {
+        if (round)
+        {
+            double sin_lat = Math.sin(0.5 * (px - x));
+            double sin_long = Math.sin(0.5 * (py - y));
+            double a = sin_lat * sin_lat + Math.cos(x) * Math.cos(px) *
+                sin_long * sin_long;
+            return 2. * Math.asin(Math.min(1., Math.sqrt(a))) *
+                RoundEarth.EARTH_RADIUS_NMI;
+        }
+        else
+        {
+            return Math.hypot(px - x, py - y);
+        }
+    }
+
+    /**
+     * Returns the azimuth from the site to a point.  Rays from the site keep a
+     * constant azimuth, as great circles do from their origin.
+     * @param px x-coordinate of the point.
+     * @param py y-coordinate of the point.
+     * @return azimuth in radians.
+     */
+    double azimuth(double px, double py)
+    {
+        if (round)
+        {
+            double dlong = py - y;
+            return Math.atan2(Math.sin(dlong) * Math.cos(px), Math.cos(x) *
+                Math.sin(px) - Math.sin(x) * Math.cos(px) * Math.cos(dlong));
+        }
+        else
+        {
+            return Math.atan2(py - y, px - x);
+        }
+    }
+
+    /**
+     * Adds the cell of a fine terrain post to the profile.
+     * @param azimuth azimuth of the post from the site.
+     * @param half_width half the azimuth width of the cell as seen from the
+     * site, or PI or more if the cell may surround the site.
+     * @param range0 nearest ground range of the cell in n.mi.
+     * @param range1 farthest ground range of the cell in n.mi.
+     * @param elevation elevation of the post in meters.
+     */
+    void add(double azimuth, double half_width, double range0, double range1,
+        double elevation)
+    {
+        int r0 = (int) (range0 / ring_width);
+        if (r0 >= rings)
+        {
+            return;
+        }
+        int r1 = Math.min(rings - 1, (int) (range1 / ring_width));
+
+        double th = LengthUnit.METERS.convert(elevation,
+            LengthUnit.NAUTICAL_MILES);
+        double hi = upperAngle(th, range0, range1);
+        double lo = lowerAngle(th, range0, range1);
+
+        int b0 = 0;
+        int b1 = BINS - 1;
+        if (half_width < Math.PI)
+        {
+            b0 = (int) Math.floor((azimuth - half_width) / bin_width);
+            b1 = (int) Math.floor((azimuth + half_width) / bin_width);
+        }
+
+        for (int b = b0; b <= b1; b++)
+        {
+            int row = Math.floorMod(b, BINS) * rings;
+            for (int r = r0; r <= r1; r++)
+            {
+                max_angle[row + r] = Math.max(max_angle[row + r], hi);
+                min_angle[row + r] = Math.min(min_angle[row + r], lo);
+            }
+        }
+    }
+
+    /**
+     * Completes the profile once all terrain has been added.
+     * @param grid_range ground range in n.mi. within which every point around
+     * the site lies on the terrain grid.
+     */
+    void finish(double grid_range)
+    {
+        upper = new float[BINS * rings];
+        lower = new float[BINS * rings];
+
+        for (int b = 0; b < BINS; b++)
+        {
+            int row = b * rings;
+            double hi = Double.NEGATIVE_INFINITY;
+            double lo = Double.NEGATIVE_INFINITY;
+            for (int r = 0; r < rings; r++)
+            {
+                double m = min_angle[row + r];
+                double inner = r * ring_width;
+                double outer = (r + 1) * ring_width;
+                if (outer > grid_range)
+                {
+                    //  Part of the ring may be off the grid, at sea level.
+                    hi = Math.max(hi, upperAngle(0., Math.max(inner,
+                        grid_range), outer));
+                    m = Math.min(m, lowerAngle(0., Math.max(inner, grid_range),
+                        outer));
+                }
+                if (m == Double.POSITIVE_INFINITY)
+                {
+                    m = Double.NEGATIVE_INFINITY;
+                }
+
+                hi = Math.max(hi, max_angle[row + r]);
+                lo = Math.max(lo, m);
+
+                upper[row + r] = roundUp(hi);
+                lower[row + r] = roundDown(lo);
+            }
+        }
+
+        max_angle = null;
+        min_angle = null;
+    }
+
+    /**
+     * Decides the LOS from the site to a target, if the profile can.
+     * @param target location of the target.
+     * @return 1 if LOS is clear, 0 if it is blocked, or UNDECIDED.
+     */
+    public int test(Double3D target)
+    {
+        double range = groundRange(target.getX(), target.getY());
+        if (!(range < max_range))
+        {
+            return UNDECIDED;
+        }
+
+        double angle = elevationAngle(target.getZ(), range);
+
+        int r = Math.min(rings - 1, (int) (range / ring_width));
+        int row = Math.floorMod((int) Math.floor(azimuth(target.getX(),
+            target.getY()) / bin_width), BINS) * rings;
+
+        if (angle > upper[row + r] + ANGLE_MARGIN)
+        {
+            return 1;
+        }
+        else if (r > 0 && angle < lower[row + r - 1] - ANGLE_MARGIN)
+        {
+            return 0;
+        }
+        return UNDECIDED;
+    }
+
+    /**
+     * Returns the memory held by the profile.
+     * @return bytes.
+     */
+    public long getBytes()
+    {
+        return 8L * BINS * rings;
+    }
+
+    //  Elevation angle from the site of a point at height th (n.mi.) and ground range d (n.mi.).
+    private double elevationAngle(double th, double d)
+    {
+        if (round)
+        {
+            double a = d / rk;
+            return Math.atan2((rk + th) * Math.cos(a) - (rk + h), (rk + th) *
+                Math.sin(a));
+        }
+        else
+        {
+            return Math.atan2(th - h, d);
+        }
+    }
+
+    //  Highest elevation angle of terrain at height th between ranges d0 and d1.
+    //  Below the site, the angle on a round Earth peaks at about sqrt(2 rk (h - th)).
+    private double upperAngle(double th, double d0, double d1)
+    {
+        double angle = Math.max(elevationAngle(th, d0), elevationAngle(th,
+            d1));
+        if (round && th < h)
+        {
+            double d = Math.sqrt(2. * rk * (h - th));
+            if (d > d0 && d < d1)
+            {
+                angle = Math.max(angle, elevationAngle(th, d));
+            }
+        }
+        return angle;
+    }
+
+    //  Lowest elevation angle of terrain at height th between ranges d0 and d1.
+    private double lowerAngle(double th, double d0, double d1)
+    {
+        return Math.min(elevationAngle(th, d0), elevationAngle(th, d1));
+    }
+
+    private static float roundUp(double d)
+    {
+        float f = (float) d;
+        return f < d ? Math.nextUp(f) : f;
+    }
+
+    private static float roundDown(double d)
+    {
+        float f = (float) d;
+        return f > d ? Math.nextDown(f) : f;
+    }
+}
@@ -132,4 +132,21 @@ public interface IEarthModel
      * @return         elevation angle in radians.
      */
     public double elevationAngle(Double3D pt1, Double3D pt2, EarthFactor k);
+
+    /**
+     *  Computes the range-squared, azimuth and elevation from one origin to each of a set of
+     *  target points in a single pass, without allocating any objects.  The results are the
+     *  same as those of separate calls to trueDistanceSq, azimuthAngle and elevationAngle.
+     *  Any of the output arrays may be null if that quantity is not needed.
+     *
+     * @param  origin     origin point.
+     * @param  targets    target points.
+     * @param  count      number of targets to process.
+     * @param  k          Earth factor for the elevation angles.
+     * @param  range_sq   receives the square of the line of site distances in nmi-squared.
+     * @param  azimuth    receives the azimuth angles between +/- PI in radians.
+     * @param  elevation  receives the elevation angles in radians.
+     */
+    public void bulkGeometry(Double3D origin, Double3D[] targets, int count,
+        EarthFactor k, double[] range_sq, double[] azimuth, double[] elevation);
 }
@@ -47,7 +47,7 @@ public interface ITerrainModel
      * @param  y y-coordinate in n.mi. (ENU) or radians (LLA)
      * @return terrain cell index (or -1 if not applicable or outside terrain bounds).
      */
-    public int terrainCell(double x, double y);
+    public long terrainCell(double x, double y);
 
     /**
      *  Check for unobstructed Line Of Sight between two points on earth.
@@ -59,4 +59,25 @@ public interface ITerrainModel
      */
     public boolean hasLOS(Double3D location1, Double3D location2,
         IEarthModel.EarthFactor k);
+
+    /**
+     *  Check for unobstructed Line Of Sight between two points for every Earth factor
+     *  at once.  A larger Earth factor only lowers the Earth between the points, so LOS
+     *  for one factor implies LOS for every larger one, and the result is the smallest
+     *  factor with LOS.
+     *
+     * @param  location1    Location to check line of sight from.
+     * @param  location2    Location to check line of sight to.
+     * @return the smallest Earth factor with Line Of Sight, or null if there is none
+     */
+    public IEarthModel.EarthFactor losEarthFactor(Double3D location1,
+        Double3D location2);
+
+    /**
+     *  Binds the Earth model used by the terrain services.  This is called by the world when
+     *  the scenario is loaded.
+     *
+     * @param  earth_model  Earth model of the world.
+     */
+    public void setEarthModel(IEarthModel earth_model);
 }
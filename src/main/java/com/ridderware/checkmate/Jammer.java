@@ -20,7 +20,6 @@
 package com.ridderware.checkmate;
 
 import java.util.Set;
-import com.ridderware.fuse.Double3D;
 import org.w3c.dom.Node;
 
 /**
@@ -31,6 +30,10 @@ public abstract class Jammer extends CMSystem implements ISIMDIS
 {
     private Platform parent;
 
+    //  Incremented whenever the assignments of the jammer change, so that
+    //  cached effectiveness values can be discarded.
+    private long assignment_version = 0;
+
     /**
      * Creates a new instance of Jammer.
      * @param name name of the jammer.
@@ -55,7 +58,38 @@ public abstract class Jammer extends CMSystem implements ISIMDIS
      */
     public void initialize()
     {
+        assignmentsChanged();
+    }
+
+    /**
+     * Called by subclasses whenever a change of assignments may change the
+     * value of jammingEffectiveness against any radar.
+     */
+    protected void assignmentsChanged()
+    {
+        this.assignment_version++;
+    }
+
+    /**
+     * Returns a counter that changes every time the assignments of the jammer
+     * change.
+     * @return assignment version.
+     */
+    public long getAssignmentVersion()
+    {
+        return this.assignment_version;
+    }
 
+    /**
+     * Returns whether the jammer can have any effect on a radar with its
+     * current assignments, regardless of geometry.  Radars cull jammers with
+     * this before checking LOS.  By default every radar can be jammed.
+     * @param tgt a Radar object.
+     * @return true if jammingEffectiveness may be greater than 0.
+     */
+    public boolean canJam(Radar tgt)
+    {
+        return true;
     }
 
     /**
@@ -112,13 +146,12 @@ public abstract class Jammer extends CMSystem implements ISIMDIS
 
             if (r.getAntenna() != null)
             {
-                Double3D r_loc = r.getParent().getLocation();
-                Double3D j_loc = this.getParent().getLocation();
                 //  Get angle theta and phi between radar and jammer, and compare to the antenna boresight.
-                double theta = CMWorld.getEarthModel().azimuthAngle(r_loc,
-                    j_loc);
-                double phi = CMWorld.getEarthModel().elevationAngle(r_loc,
-                    j_loc, IEarthModel.EarthFactor.EM_EARTH);
+                double theta = getWorld().getPairGeometry().azimuthAngle(
+                    r.getParent(), getParent());
+                double phi = getWorld().getPairGeometry().elevationAngle(
+                    r.getParent(), getParent(),
+                    IEarthModel.EarthFactor.EM_EARTH);
 
                 //  Get az and el angles relative to antenna boresight
                 double az = theta - r.getAntenna().getBoresight().getX();
@@ -52,6 +52,9 @@ public class JammingAssignment implements Cloneable, IXML
 
     private int resources_required;
 
+    //  Value of the assignment when reactive assignments compete for resources.
+    private double priority;
+
     private final static Logger logger =
         LogManager.getLogger(JammingAssignment.class);
 
@@ -63,6 +66,8 @@ public class JammingAssignment implements Cloneable, IXML
         this.assignment = AssignmentType.PREEMPTIVE;
 
         this.resources_required = 1;
+
+        this.priority = 0.;
     }
 
     /**
@@ -148,6 +153,25 @@ public class JammingAssignment implements Cloneable, IXML
         return this.resources_required;
     }
 
+    /**
+     * Sets the priority of this assignment, used by AssignmentsJammer to choose
+     * among reactive assignments when resources are short.
+     * @param priority priority; higher values are preferred.
+     */
+    public void setPriority(double priority)
+    {
+        this.priority = priority;
+    }
+
+    /**
+     * Returns the priority of this assignment.
+     * @return priority.
+     */
+    public double getPriority()
+    {
+        return this.priority;
+    }
+
     /**
      * Method to safely clone the assignment.
      * @return clone of the assignment.
@@ -225,6 +249,10 @@ public class JammingAssignment implements Cloneable, IXML
             {
                 this.setResourcesRequired(Integer.parseInt(child.getTextContent()));
             }
+            else if (child.getNodeName().equalsIgnoreCase("priority"))
+            {
+                this.setPriority(Double.parseDouble(child.getTextContent()));
+            }
         }
     }
 
@@ -244,6 +272,13 @@ public class JammingAssignment implements Cloneable, IXML
         e.setTextContent(String.valueOf(this.resources_required));
         node.appendChild(e);
 
+        if (this.priority != 0.)
+        {
+            e = document.createElement("priority");
+            e.setTextContent(String.valueOf(this.priority));
+            node.appendChild(e);
+        }
+
         Integer[] radars = getRadarsCovered();
         for (int i : radars)
         {
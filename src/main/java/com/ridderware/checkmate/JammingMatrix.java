@@ -0,0 +1,255 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import java.util.Arrays;
+import com.ridderware.fuse.Double2D;
+import com.ridderware.fuse.Universe;
+
+/**
+ * Cache of the effectiveness of each jammer against each radar.  Radars
+ * consult it on every scan, and directional radars once per target, so the
+ * effectiveness of a jammer is only recomputed within a time step when the
+ * jammer or radar has moved, the jammer has changed its assignments, or the
+ * antenna of the radar has been turned.  Whether the jammer can affect the
+ * radar at all and whether it has LOS to the radar do not depend on the
+ * antenna, and are kept across changes of orientation.  Jammers that cannot
+ * affect the radar are culled before their LOS is checked.
+ * <p>
+ * The entries are held in an open-addressing table keyed by the two IDs
+ * packed into a long, so that a lookup allocates nothing.  The table holds an
+ * entry for every jammer and radar pair looked up, and doubles when it is
+ * three-quarters full.
+ *
+ * @author Jeff Ridder
+ */
+public class JammingMatrix
+{
+    private final CMWorld world;
+
+    //  Initial number of slots in the table
+    private static final int INITIAL_CAPACITY = 1 << 6;
+
+    //  IDs of the pair in each slot, jammer ID in the high word
+    private long[] keys = new long[INITIAL_CAPACITY];
+
+    //  Entry in each slot, or null if the slot is empty
+    private Entry[] entries = new Entry[INITIAL_CAPACITY];
+
+    private int size = 0;
+
+    private Universe universe = null;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    /**
+     * Creates a new instance of JammingMatrix.
+     * @param world the world serviced by this cache.
+     */
+    public JammingMatrix(CMWorld world)
+    {
+        this.world = world;
+    }
+
+    /**
+     * Called by the world to clear the cache at the beginning of each run.
+     * @param universe universe whose clock keys the cache entries.
+     */
+    public void reset(Universe universe)
+    {
+        this.universe = universe;
+        Arrays.fill(entries, null);
+        size = 0;
+    }
+
+    /**
+     * Returns the effectiveness of a jammer against a radar, as computed by
+     * Jammer.jammingEffectiveness, if the jammer can affect the radar and has
+     * LOS to it, and 0 otherwise.
+     * @param j jammer.
+     * @param r target radar.
+     * @return value between 0 and 1 indicating the jamming effectiveness.
+     */
+    public double effectiveness(Jammer j, Radar r)
+    {
+        Entry e = getEntry(j, r);
+
+        if (!e.reachable)
+        {
+            hits++;
+            return 0.;
+        }
+
+        double az = Double.NaN;
+        double el = Double.NaN;
+        if (r instanceof DirectionalRadar &&
+            ((DirectionalRadar) r).getAntenna() != null)
+        {
+            Double2D boresight = ((DirectionalRadar) r).getAntenna().
+                getBoresight();
+            az = boresight.getX();
+            el = boresight.getY();
+        }
+
+        if (Double.isNaN(e.effectiveness) || !same(e.az, az) ||
+            !same(e.el, el))
+        {
+            misses++;
+            e.az = az;
+            e.el = el;
+            e.effectiveness = j.jammingEffectiveness(r);
+        }
+        else
+        {
+            hits++;
+        }
+
+        return e.effectiveness;
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache since the cache
+     * was created.
+     * @return number of hits.
+     */
+    public long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that had to be computed since the cache
+     * was created.
+     * @return number of misses.
+     */
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Returns a summary of the cache performance.
+     * @return summary string.
+     */
+    @Override
+    public String toString()
+    {
+        long lookups = hits + misses;
+        return "Jamming matrix: " + hits + " hits, " + misses +
+            " misses, hit rate " + (lookups > 0 ? (double) hits / lookups : 0.);
+    }
+
+    private static boolean same(double a, double b)
+    {
+        return a == b || (Double.isNaN(a) && Double.isNaN(b));
+    }
+
+    private Entry getEntry(Jammer j, Radar r)
+    {
+        long key = ((long) j.getId() << 32) | (r.getId() & 0xffffffffL);
+
+        int slot = find(key);
+        Entry e = entries[slot];
+        if (e == null)
+        {
+            e = new Entry();
+            keys[slot] = key;
+            entries[slot] = e;
+            if (++size * 4 > entries.length * 3)
+            {
+                grow();
+            }
+        }
+
+        double time = universe != null ? universe.getCurrentTime() : 0.;
+        Platform jp = j.getParent();
+        Platform rp = r.getParent();
+
+        if (e.time != time ||
+            e.jammer_version != jp.getLocationVersion() ||
+            e.radar_version != rp.getLocationVersion() ||
+            e.assignment_version != j.getAssignmentVersion())
+        {
+            e.time = time;
+            e.jammer_version = jp.getLocationVersion();
+            e.radar_version = rp.getLocationVersion();
+            e.assignment_version = j.getAssignmentVersion();
+            e.effectiveness = Double.NaN;
+
+            //  Cull before the LOS check.
+            e.reachable = j.canJam(r) &&
+                world.getEMLOSUtil().hasLOS(jp, rp);
+        }
+
+        return e;
+    }
+
+    //  Returns the slot holding the key, or the empty slot where it belongs.
+    private int find(long key)
+    {
+        int mask = entries.length - 1;
+        int slot = (int) (PersistentLOSCache.mix(key) >>> 32) & mask;
+        while (entries[slot] != null && keys[slot] != key)
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow()
+    {
+        long[] old_keys = keys;
+        Entry[] old_entries = entries;
+        keys = new long[2 * old_keys.length];
+        entries = new Entry[2 * old_entries.length];
+        for (int s = 0; s < old_entries.length; s++)
+        {
+            if (old_entries[s] != null)
+            {
+                int slot = find(old_keys[s]);
+                keys[slot] = old_keys[s];
+                entries[slot] = old_entries[s];
+            }
+        }
+    }
+
+    /**
+     * Cached effectiveness of one jammer against one radar.
+     */
+    private static class Entry
+    {
+        private double time = Double.NaN;
+
+        private int jammer_version;
+
+        private int radar_version;
+
+        private long assignment_version;
+
+        private boolean reachable;
+
+        //  Antenna orientation of the radar when the effectiveness was computed.
+        private double az, el;
+
+        private double effectiveness;
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+/**
+ * Counters describing how line-of-site queries were answered: by which cache,
+ * by the bald earth shortcut, or by walking terrain.  {@link LOSUtil} counts
+ * the queries and cache outcomes and {@link TwoLevelTerrain} counts how its
+ * traversals ended, so that the coarse resolution of the terrain can be tuned
+ * from evidence.
+ *
+ * @author Jeff Ridder
+ */
+public class LOSStatistics
+{
+    long queries;
+
+    long bald_earth;
+
+    long whiteboard_hits;
+
+    long site_hits;
+
+    long persistent_hits;
+
+    long profile_hits;
+
+    long profiles_built;
+
+    long pair_hits;
+
+    long invalidations;
+
+    long traversals;
+
+    long horizon_checks;
+
+    long coarse_accepts;
+
+    long coarse_rejects;
+
+    long fine_walks;
+
+    long fine_steps;
+
+    long skipped_steps;
+
+    /**
+     * Creates a new instance of LOSStatistics with all counters at zero.
+     */
+    public LOSStatistics()
+    {
+    }
+
+    /**
+     * Sets all counters to zero.
+     */
+    public void clear()
+    {
+        queries = 0;
+        bald_earth = 0;
+        whiteboard_hits = 0;
+        site_hits = 0;
+        persistent_hits = 0;
+        profile_hits = 0;
+        profiles_built = 0;
+        pair_hits = 0;
+        invalidations = 0;
+        traversals = 0;
+        horizon_checks = 0;
+        coarse_accepts = 0;
+        coarse_rejects = 0;
+        fine_walks = 0;
+        fine_steps = 0;
+        skipped_steps = 0;
+    }
+
+    /**
+     * Adds the counters of another set of statistics to these.
+     * @param s statistics to add.
+     */
+    public void add(LOSStatistics s)
+    {
+        queries += s.queries;
+        bald_earth += s.bald_earth;
+        whiteboard_hits += s.whiteboard_hits;
+        site_hits += s.site_hits;
+        persistent_hits += s.persistent_hits;
+        profile_hits += s.profile_hits;
+        profiles_built += s.profiles_built;
+        pair_hits += s.pair_hits;
+        invalidations += s.invalidations;
+        traversals += s.traversals;
+        horizon_checks += s.horizon_checks;
+        coarse_accepts += s.coarse_accepts;
+        coarse_rejects += s.coarse_rejects;
+        fine_walks += s.fine_walks;
+        fine_steps += s.fine_steps;
+        skipped_steps += s.skipped_steps;
+    }
+
+    /**
+     * Returns the number of LOS queries made to LOSUtil.
+     * @return queries.
+     */
+    public long getQueries()
+    {
+        return queries;
+    }
+
+    /**
+     * Returns the number of queries answered by the bald earth shortcut.
+     * @return bald earth queries.
+     */
+    public long getBaldEarth()
+    {
+        return bald_earth;
+    }
+
+    /**
+     * Returns the number of queries answered by the per-run LOS whiteboard or
+     * sparse cache.
+     * @return whiteboard hits.
+     */
+    public long getWhiteboardHits()
+    {
+        return whiteboard_hits;
+    }
+
+    /**
+     * Returns the number of queries answered by the ground site cache.
+     * @return site cache hits.
+     */
+    public long getSiteHits()
+    {
+        return site_hits;
+    }
+
+    /**
+     * Returns the number of queries answered by the persistent LOS cache file.
+     * @return persistent cache hits.
+     */
+    public long getPersistentHits()
+    {
+        return persistent_hits;
+    }
+
+    /**
+     * Returns the number of queries decided by the horizon profile of a fixed
+     * site.
+     * @return horizon profile hits.
+     */
+    public long getProfileHits()
+    {
+        return profile_hits;
+    }
+
+    /**
+     * Returns the number of horizon profiles computed.
+     * @return profiles built.
+     */
+    public long getProfilesBuilt()
+    {
+        return profiles_built;
+    }
+
+    /**
+     * Returns the number of queries decided by the whiteboard of the other
+     * Earth factor, whose answer implied this one.
+     * @return paired whiteboard hits.
+     */
+    public long getPairHits()
+    {
+        return pair_hits;
+    }
+
+    /**
+     * Returns the number of cached LOS invalidations triggered by platforms
+     * moving into a different terrain cell.
+     * @return invalidations.
+     */
+    public long getInvalidations()
+    {
+        return invalidations;
+    }
+
+    /**
+     * Returns the number of queries that had to be computed from terrain.
+     * @return traversals.
+     */
+    public long getTraversals()
+    {
+        return traversals;
+    }
+
+    /**
+     * Returns the number of terrain LOS checks decided by the radar horizon
+     * because no terrain lay between the points.
+     * @return horizon checks.
+     */
+    public long getHorizonChecks()
+    {
+        return horizon_checks;
+    }
+
+    /**
+     * Returns the number of terrain LOS checks accepted against the maximum
+     * elevation beneath the path without walking the fine grid.
+     * @return coarse accepts.
+     */
+    public long getCoarseAccepts()
+    {
+        return coarse_accepts;
+    }
+
+    /**
+     * Returns the number of terrain LOS checks rejected at the point of
+     * closest approach, or by a stretch of the path lying below the lowest
+     * elevation beneath it, without walking the fine grid.
+     * @return coarse rejects.
+     */
+    public long getCoarseRejects()
+    {
+        return coarse_rejects;
+    }
+
+    /**
+     * Returns the number of terrain LOS checks that walked the fine grid.
+     * @return fine walks.
+     */
+    public long getFineWalks()
+    {
+        return fine_walks;
+    }
+
+    /**
+     * Returns the total number of fine grid steps walked.
+     * @return fine steps.
+     */
+    public long getFineSteps()
+    {
+        return fine_steps;
+    }
+
+    /**
+     * Returns the number of fine grid steps that were not walked because the
+     * max-elevation pyramid showed the terrain beneath them to be clear.
+     * @return skipped steps.
+     */
+    public long getSkippedSteps()
+    {
+        return skipped_steps;
+    }
+
+    private static String percent(long n, long d)
+    {
+        return d > 0 ? String.format("%.1f%%", 100. * n / d) : "-";
+    }
+
+    @Override
+    public String toString()
+    {
+        long hits = whiteboard_hits + site_hits + persistent_hits +
+            profile_hits + pair_hits;
+        long terrain = horizon_checks + coarse_accepts + coarse_rejects +
+            fine_walks;
+        String s = "LOS queries: " + queries + "\n";
+        s += "  bald earth: " + bald_earth + "\n";
+        s += "  cache hits: " + hits + " (" + percent(hits, queries -
+            bald_earth) + ") whiteboard " + whiteboard_hits + ", sites " +
+            site_hits + ", file " + persistent_hits + ", horizon profiles " +
+            profile_hits + " (" + profiles_built + " built), other earth " +
+            pair_hits + "\n";
+        s += "  invalidations: " + invalidations + "\n";
+        s += "  traversals: " + traversals + "\n";
+        s += "Terrain LOS checks: " + terrain + "\n";
+        s += "  horizon only: " + horizon_checks + "\n";
+        s += "  coarse accepts: " + coarse_accepts + " (" +
+            percent(coarse_accepts, terrain) + ")\n";
+        s += "  coarse rejects: " + coarse_rejects + " (" +
+            percent(coarse_rejects, terrain) + ")\n";
+        s += "  fine walks: " + fine_walks + " (" + percent(fine_walks,
+            terrain) + "), " + fine_steps + " steps" +
+            (fine_walks > 0 ? String.format(", %.1f per walk",
+            (double) fine_steps / fine_walks) : "") + ", " + skipped_steps +
+            " skipped";
+        return s;
+    }
+}
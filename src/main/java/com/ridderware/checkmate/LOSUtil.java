@@ -19,7 +19,10 @@
  */
 package com.ridderware.checkmate;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import com.ridderware.fuse.Double3D;
@@ -28,36 +31,144 @@ import com.ridderware.fuse.Double3D;
  * Utility class to provide rapid line-of-site services to platforms.  LOSUtil remembers the
  * last grid cell which each platform was in for its last LOS check and will only recompute LOS
  * whenever either of the two platforms of interest has moved into a different terrain grid cell.
- * When a platform does move into a new terrain cell, we invalidate all LOS entries to that platform,
- * forcing any LOS check involving that platform to recompute on next request.  The los data is stored in
- * a lower triangular matrix to reduce storage and duplicate reference to the same los between two platforms.
- * e.g., id = 0 refs ID's {1...N-1}
- * id = 1 refs ID's {2...N-1}
- * .
- * .
- * .
- * id = N-2 refs ID {N-1}
+ * When a platform does move into a new terrain cell, we bump its cell generation.  Each platform
+ * owns one row of the LOS whiteboard, and a row is cleared lazily the next time it is read with a
+ * stale generation, so invalidation costs nothing at the time of the move.
+ * <p>
+ * The whiteboard is a dense N x N matrix of 2-bit entries packed 32 to a long:
+ * bit 1 marks the entry as known and bit 0 holds the LOS.  The LOS between platforms i and j is
+ * stored in both row i and row j, and is trusted only when both rows know it, so clearing a
+ * single row invalidates every pair involving that platform.
+ * <p>
+ * Scenarios with more than {@link #SPARSE_THRESHOLD} platforms switch to a
+ * {@link SparseLOSCache}, which holds only the pairs actually queried by sensors and shooters.
+ * <p>
+ * The terrain cell of a platform is only recomputed when its location has changed since the
+ * last check, so static ground sites pay for {@code terrainCell()} once per run.  LOS between
+ * two ground platforms is also kept in a second-level cache, keyed by the exact locations of the
+ * two sites, that survives {@link #reset()} so that fixed sites are only traversed once per batch.
+ * Since the key is exact, a hit is always the answer a traversal would give, whatever runs came
+ * before.  The least recently used pairs are dropped first, so pairs of sites whose locations are
+ * drawn anew each run age out of the cache.
+ * When a {@link PersistentLOSCache} file is given on the command line, it backs the ground site
+ * cache: it is consulted for a pair of ground platforms before traversing terrain, and the result
+ * is appended afterward.  Pairs with an aircraft are never kept in the file, since exact aircraft
+ * locations seldom recur.  They stay in the whiteboard.
+ * <p>
+ * A ground platform that keeps its location for {@link #PROFILE_MIN_QUERIES} cache misses is
+ * treated as a fixed site, and from then on is given a {@link HorizonProfile}, which decides most
+ * LOS queries from the site by a table lookup, each time the world places the sites of a run.
+ * Profiles are never built on the query path.  A site that moves loses its profile until the next
+ * placement.  The most recently used profiles are kept across runs by site location.  Since a
+ * profile only decides LOS where a traversal would give the same answer, which sites have one
+ * affects the time taken but never the outcome of a run.
  *
  * @author Jeff Ridder
  */
 public class LOSUtil
 {
+    private static final int ENTRIES_PER_WORD = 32;
+
+    private static final long KNOWN = 2L;
+
+    private static final long LOS = 1L;
+
+    /**
+     * Platform count above which the sparse cache replaces the dense whiteboard.
+     */
+    public static final int SPARSE_THRESHOLD = 2048;
+
+    //  Bounds on the number of pairs held by the sparse cache
+    private static final int MIN_SPARSE_PAIRS = 1 << 12;
+
+    private static final int MAX_SPARSE_PAIRS = 1 << 20;
+
+    //  Bound on the number of entries in the ground site cache
+    private static final int MAX_SITE_PAIRS = 1 << 16;
+
+    /**
+     * Number of cache misses at one location after which a ground platform is
+     * treated as a fixed site and given horizon profiles.
+     */
+    public static final int PROFILE_MIN_QUERIES = 1 << 10;
+
+    //  Bound on the number of horizon profiles kept
+    private static final int MAX_PROFILES = 64;
+
     private CMWorld world;
 
-    //  Map of platform ID to LOS matrix ID.  This is filled out as platforms call this
-    //  class to get LOS services.
-    private Map<Integer, Integer> id_id_map;
+    //  Number of platforms with a row in the whiteboard
+    private int num_platforms;
+
+    private int words_per_row;
+
+    //  The LOS whiteboard, or null in sparse mode
+    private long[] los_bits;
 
-    //  Map of ID's to the their current terrain cell
-    private Map<Integer, Integer> id_cell_map;
+    //  The sparse LOS cache, or null in dense mode
+    private SparseLOSCache sparse_cache;
 
-    //  Now, how to store the LOS matrix for quickest access to LOS data and invalidation?
-    private Map<Integer, int[]> los_map;
+    //  Terrain cell of each platform at its last LOS check
+    private long[] cell;
 
-    private int last_id;
+    //  Location version of each platform at its last LOS check
+    private int[] location_version;
+
+    //  Incremented whenever a platform moves into a different terrain cell
+    private int[] generation;
+
+    //  Generation of each platform when its row was last cleared
+    private int[] row_generation;
 
     private IEarthModel.EarthFactor earth_factor;
 
+    //  LOS between ground platforms, kept across runs of the batch
+    private final Map<SiteKey, Boolean> site_cache =
+        new LinkedHashMap<SiteKey, Boolean>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SiteKey, Boolean> e)
+            {
+                return size() > MAX_SITE_PAIRS;
+            }
+        };
+
+    //  Terrain model for which the ground site cache was filled
+    private ITerrainModel site_terrain = null;
+
+    //  Horizon profile of each platform, if it has one
+    private HorizonProfile[] profile;
+
+    //  Cache misses of each platform since it last moved
+    private int[] profile_queries;
+
+    //  Whether each platform has been found to be a fixed site, kept across runs
+    private boolean[] fixed_site;
+
+    //  Horizon profiles of fixed sites, kept across runs
+    private final Map<LocationKey, HorizonProfile> profiles =
+        new LinkedHashMap<LocationKey, HorizonProfile>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<LocationKey, HorizonProfile> e)
+            {
+                return size() > MAX_PROFILES;
+            }
+        };
+
+    //  LOS results kept across launches, or null if none
+    private PersistentLOSCache persistent_cache = null;
+
+    //  Utility of the world for the other Earth factor, or null.
+    private LOSUtil pair = null;
+
+    //  Whether each platform has been in a query since the reset.
+    private boolean[] queried;
+
+    //  Counters for the current run
+    private final LOSStatistics statistics = new LOSStatistics();
+
     /**
      * Creates a new instance of LOSUtil.
      * @param world the world serviced by this utility.
@@ -66,48 +177,107 @@ public class LOSUtil
     public LOSUtil(CMWorld world, IEarthModel.EarthFactor earth_factor)
     {
         this.world = world;
-        id_id_map = new HashMap<>();
-        id_cell_map = new HashMap<>();
-        los_map = new HashMap<>();
-        last_id = 0;
         this.earth_factor = earth_factor;
+        this.allocate(0);
     }
 
     /**
-     * Called by the world to reset the LOS maps at the beginning of each run.
+     * Pairs this utility with the world's utility for another Earth factor.
+     * Since LOS for an Earth factor implies LOS for every larger one, an answer
+     * in either whiteboard may decide the other, and a terrain traversal for a
+     * pair of platforms that both utilities have seen answers for both.
+     * @param pair utility for the other Earth factor.
      */
-    public void reset()
+    public void setPair(LOSUtil pair)
     {
-        last_id = 0;
-        id_id_map.clear();
-        id_cell_map.clear();
-        los_map.clear();
+        this.pair = pair;
+    }
 
+    /**
+     * Called by the world to reset the LOS whiteboard at the beginning of each run.
+     * The world must have assigned LOS indices to its platforms beforehand.
+     */
+    public void reset()
+    {
         Set<Platform> platforms = world.getPlatforms();
-        //  Fill the id_id_map and create the los whiteboard
-        for (Platform p : platforms)
+
+        statistics.clear();
+
+        if (world.getTerrainModel() != site_terrain)
         {
-            id_id_map.put(p.getId(), this.getID(p));
+            site_cache.clear();
+            profiles.clear();
+            site_terrain = world.getTerrainModel();
         }
 
-        assert (platforms.size() == last_id);
+        persistent_cache = null;
+        File file = world.getArgsHandler().getLOSCacheFile();
+        if (file != null && site_terrain instanceof TwoLevelTerrain)
+        {
+            //  LOS also depends on the coordinate system of the Earth model.
+            long hash = PersistentLOSCache.mix(((TwoLevelTerrain) site_terrain).
+                getTerrainHash() ^ world.getEarthModel().getCoordinateSystem().
+                toUpperCase().hashCode());
+            persistent_cache = PersistentLOSCache.getInstance(file, hash,
+                world.getArgsHandler().getLOSCacheSize());
+        }
 
-        //  Create the LOS whiteboard as a lower triangular matrix.
-        //  e.g., id = 0 refs ID's {1...N-1}
-        //  id = 1 refs ID's {2...N-1}
-        //  .
-        //  .
-        //  id = N-2 refs ID {N-1}
+        if (platforms.size() != num_platforms)
+        {
+            this.allocate(platforms.size());
+        }
+        else if (sparse_cache != null)
+        {
+            sparse_cache.clear();
+            Arrays.fill(generation, 0);
+        }
+        else
+        {
+            Arrays.fill(los_bits, 0L);
+            Arrays.fill(generation, 0);
+            Arrays.fill(row_generation, 0);
+        }
+
+        //  Forces the terrain cell of every platform to be computed on first use.
+        Arrays.fill(location_version, -1);
+        Arrays.fill(profile, null);
+        Arrays.fill(queried, false);
+        Arrays.fill(cell, Long.MIN_VALUE);
+    }
 
-        for (int i = 0; i <= last_id - 2; i++)
+    /**
+     * Returns the counters of LOS queries made since the last reset.
+     * @return LOS statistics.
+     */
+    public LOSStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+    private void allocate(int n)
+    {
+        num_platforms = n;
+        if (n > SPARSE_THRESHOLD)
         {
-            int[] a = new int[last_id - 1 - i];
-            for (int j = 0; j < a.length; j++)
-            {
-                a[j] = -1;  //  marked as invalidated LOS
-            }
-            los_map.put(i, a);
+            words_per_row = 0;
+            los_bits = null;
+            sparse_cache = new SparseLOSCache(Math.max(MIN_SPARSE_PAIRS,
+                (int) Math.min(MAX_SPARSE_PAIRS, 64L * n)));
+        }
+        else
+        {
+            words_per_row = (n + ENTRIES_PER_WORD - 1) / ENTRIES_PER_WORD;
+            los_bits = new long[n * words_per_row];
+            sparse_cache = null;
         }
+        cell = new long[n];
+        location_version = new int[n];
+        queried = new boolean[n];
+        profile = new HorizonProfile[n];
+        profile_queries = new int[n];
+        fixed_site = new boolean[n];
+        generation = new int[n];
+        row_generation = new int[n];
     }
 
     /**
@@ -118,126 +288,449 @@ public class LOSUtil
      */
     public boolean hasLOS(Platform p1, Platform p2)
     {
-        boolean los = false;
+        boolean los;
+
+        int i = p1.getLOSIndex();
+        int j = p2.getLOSIndex();
 
-        if (CMWorld.getTerrainModel() instanceof BaldEarthTerrain)
+        statistics.queries++;
+
+        if (world.getTerrainModel() instanceof BaldEarthTerrain ||
+            i < 0 || i >= num_platforms || j < 0 || j >= num_platforms)
         {
             //  This is a hack because it is specific to a particular terrain model.  But we do this
             //  for the sake of efficiency when there is no terrain.  There will always be only one
             //  model like Bald earth (RIGHT???), so testing for this in order to accelerate should be okay
-            //  even if it looks and feels dirty.
-            los = CMWorld.getTerrainModel().hasLOS(p1.getLocation(),
+            //  even if it looks and feels dirty.  Platforms created after the reset have no
+            //  row in the whiteboard and are computed directly as well.
+            if (world.getTerrainModel() instanceof BaldEarthTerrain)
+            {
+                statistics.bald_earth++;
+            }
+            else
+            {
+                statistics.traversals++;
+            }
+            los = world.getTerrainModel().hasLOS(p1.getLocation(),
                 p2.getLocation(), earth_factor);
         }
         else
         {
-            //  The general case where terrain data exists.  This section works for bald earth as well, but isn't
-            //  as fast.
-            int id1 = getID(p1);
-            int id2 = getID(p2);
+            //  The general case where terrain data exists.
+            this.updateCell(i, p1);
+            this.updateCell(j, p2);
+            queried[i] = true;
+            queried[j] = true;
+
+            if (sparse_cache != null)
+            {
+                return this.sparseLOS(i, j, p1, p2);
+            }
 
-            Double3D loc1 = p1.getLocation();
-            Integer cell1 =
-                CMWorld.getTerrainModel().terrainCell(loc1.getX(),
-                loc1.getY());
+            long e1 = this.entry(i, j);
+            long e2 = this.entry(j, i);
 
-            if (!cell1.equals(this.id_cell_map.get(id1)) || cell1 < 0)
+            if ((e1 & e2 & KNOWN) != 0L)
             {
-                invalidate(id1);
-                id_cell_map.put(id1, cell1);
+                //  retrieve the LOS from the stored data
+                statistics.whiteboard_hits++;
+                los = (e1 & LOS) != 0L;
             }
+            else
+            {
+                //  Compute and store new LOS data
+                los = this.computeLOS(i, j, p1, p2);
+
+                long e = los ? KNOWN | LOS : KNOWN;
+                this.store(i, j, e);
+                this.store(j, i, e);
+            }
+        }
 
-            Double3D loc2 = p2.getLocation();
-            Integer cell2 =
-                CMWorld.getTerrainModel().terrainCell(loc2.getX(),
-                loc2.getY());
+        return los;
+    }
+
+    private boolean sparseLOS(int i, int j, Platform p1, Platform p2)
+    {
+        int lo = Math.min(i, j);
+        int hi = Math.max(i, j);
+
+        int cached = lo < hi ?
+            sparse_cache.get(lo, hi, generation[lo], generation[hi]) : -1;
+        if (cached >= 0)
+        {
+            statistics.whiteboard_hits++;
+            return cached == 1;
+        }
 
-            if (!cell2.equals(this.id_cell_map.get(id2)) || cell2 < 0)
+        boolean los = this.computeLOS(i, j, p1, p2);
+        if (lo < hi)
+        {
+            sparse_cache.put(lo, hi, generation[lo], generation[hi], los);
+        }
+
+        return los;
+    }
+
+    private boolean computeLOS(int i, int j, Platform p1, Platform p2)
+    {
+        boolean ground = p1.getPlatformType() == Platform.PlatformType.GROUND &&
+            p2.getPlatformType() == Platform.PlatformType.GROUND;
+
+        int decided = this.pairLOS(i, j, p1, p2);
+        if (decided >= 0)
+        {
+            statistics.pair_hits++;
+            return decided == 1;
+        }
+
+        decided = this.profileLOS(i, j, p1, p2);
+        if (decided != HorizonProfile.UNDECIDED)
+        {
+            statistics.profile_hits++;
+            return decided == 1;
+        }
+
+        if (cell[i] < 0 || cell[j] < 0 || !ground)
+        {
+            return this.traverse(i, j, p1, p2);
+        }
+
+        SiteKey key = new SiteKey(p1.getLocation(), p2.getLocation());
+        Boolean los = site_cache.get(key);
+        if (los != null)
+        {
+            statistics.site_hits++;
+            return los;
+        }
+
+        if (persistent_cache != null)
+        {
+            int cached = persistent_cache.get(p1.getLocation(),
+                p2.getLocation(), earth_factor);
+            if (cached >= 0)
             {
-                invalidate(id2);
-                id_cell_map.put(id2, cell2);
+                statistics.persistent_hits++;
+                los = cached == 1;
             }
+        }
+
+        if (los == null)
+        {
+            los = this.traverse(i, j, p1, p2);
+            if (persistent_cache != null)
+            {
+                persistent_cache.put(p1.getLocation(), p2.getLocation(),
+                    earth_factor, los);
+            }
+        }
 
+        site_cache.put(key, los);
+        return los;
+    }
+
+    //  Computes the LOS from terrain.  If the paired utility has seen both
+    //  platforms it is likely to ask for them too, so both Earth factors are
+    //  decided in one traversal and its answer is put in its whiteboard.
+    private boolean traverse(int i, int j, Platform p1, Platform p2)
+    {
+        statistics.traversals++;
+        if (pair == null || i >= pair.num_platforms || j >= pair.num_platforms ||
+            !pair.queried[i] || !pair.queried[j])
+        {
+            return world.getTerrainModel().hasLOS(p1.getLocation(),
+                p2.getLocation(), earth_factor);
+        }
 
+        IEarthModel.EarthFactor smallest = world.getTerrainModel().
+            losEarthFactor(p1.getLocation(), p2.getLocation());
+        pair.learn(i, j, p1, p2, smallest != null &&
+            smallest.value() <= pair.earth_factor.value());
+        return smallest != null && smallest.value() <= earth_factor.value();
+    }
 
-            int id = id1 < id2 ? id1 : id2;
-            int[] a = los_map.get(id);
-            int j = Math.max(id1, id2) - id - 1;
+    //  Decides the LOS from the whiteboard of the paired utility where its
+    //  answer implies this one: LOS for a smaller Earth factor, or none for a
+    //  larger one.  Returns -1 if undecided.
+    private int pairLOS(int i, int j, Platform p1, Platform p2)
+    {
+        if (pair == null || i >= pair.num_platforms || j >= pair.num_platforms)
+        {
+            return -1;
+        }
+
+        int known = pair.known(i, j, p1, p2);
+        double k = earth_factor.value();
+        double pair_k = pair.earth_factor.value();
+        if ((known == 1 && pair_k <= k) || (known == 0 && pair_k >= k))
+        {
+            return known;
+        }
+        return -1;
+    }
 
-            if (a[j] < 0)
+    //  Returns the whiteboard entry for two platforms: 1 for LOS, 0 for none,
+    //  or -1 if it is not known.
+    private int known(int i, int j, Platform p1, Platform p2)
+    {
+        this.updateCell(i, p1);
+        this.updateCell(j, p2);
+
+        if (sparse_cache != null)
+        {
+            int lo = Math.min(i, j);
+            int hi = Math.max(i, j);
+            return lo < hi ?
+                sparse_cache.get(lo, hi, generation[lo], generation[hi]) : -1;
+        }
+
+        long e1 = this.entry(i, j);
+        long e2 = this.entry(j, i);
+        if ((e1 & e2 & KNOWN) == 0L)
+        {
+            return -1;
+        }
+        return (e1 & LOS) != 0L ? 1 : 0;
+    }
+
+    //  Stores an LOS computed for this utility by its pair.
+    private void learn(int i, int j, Platform p1, Platform p2, boolean los)
+    {
+        this.updateCell(i, p1);
+        this.updateCell(j, p2);
+
+        if (sparse_cache != null)
+        {
+            int lo = Math.min(i, j);
+            int hi = Math.max(i, j);
+            if (lo < hi)
             {
-                //  We found an invalidated los_map entry...must re-compute
+                sparse_cache.put(lo, hi, generation[lo], generation[hi], los);
+            }
+        }
+        else
+        {
+            long e = los ? KNOWN | LOS : KNOWN;
+            this.store(i, j, e);
+            this.store(j, i, e);
+        }
+    }
 
-                //  Compute and store new LOS data
-                los = CMWorld.getTerrainModel().hasLOS(loc1, loc2,
-                    earth_factor);
+    //  Decides the LOS from the horizon profile of either platform, if possible.
+    private int profileLOS(int i, int j, Platform p1, Platform p2)
+    {
+        int los = HorizonProfile.UNDECIDED;
 
-                if (los)
-                {
-                    a[j] = 1;
-                }
-                else
-                {
-                    a[j] = 0;
-                }
+        HorizonProfile hp = this.profileOf(i, p1);
+        if (hp != null)
+        {
+            los = hp.test(p2.getLocation());
+        }
+
+        if (los == HorizonProfile.UNDECIDED)
+        {
+            hp = this.profileOf(j, p2);
+            if (hp != null)
+            {
+                los = hp.test(p1.getLocation());
             }
-            else
+        }
+        return los;
+    }
+
+    //  Returns the horizon profile of a platform, if it has one, and counts
+    //  the miss toward its being a fixed site.
+    private HorizonProfile profileOf(int i, Platform p)
+    {
+        if (profile[i] == null && !fixed_site[i] &&
+            ++profile_queries[i] >= PROFILE_MIN_QUERIES &&
+            p.getPlatformType() == Platform.PlatformType.GROUND)
+        {
+            fixed_site[i] = true;
+        }
+        return profile[i];
+    }
+
+    /**
+     * Called by the world once the sites of a run have been placed, after the
+     * reset.  Gives each fixed site a horizon profile at its location, taken
+     * from the profiles kept across runs or else computed now.
+     */
+    public void placeSites()
+    {
+        if (!(site_terrain instanceof TwoLevelTerrain))
+        {
+            return;
+        }
+
+        for (Platform p : world.getPlatforms())
+        {
+            int i = p.getLOSIndex();
+            if (i < 0 || i >= num_platforms || !fixed_site[i] ||
+                p.getPlatformType() != Platform.PlatformType.GROUND)
             {
-                //  retrieve the LOS from the stored data
-                if (a[j] == 1)
-                {
-                    los = true;
-                }
-                else if (a[j] == 0)
-                {
-                    los = false;
-                }
-                else
+                continue;
+            }
+
+            this.updateCell(i, p);
+
+            LocationKey key = new LocationKey(p.getLocation());
+            HorizonProfile hp = profiles.get(key);
+            if (hp == null)
+            {
+                hp = ((TwoLevelTerrain) site_terrain).computeHorizonProfile(
+                    p.getLocation(), earth_factor);
+                if (hp != null)
                 {
-                    assert (false) : "unreachable condition reached!";
+                    profiles.put(key, hp);
+                    statistics.profiles_built++;
                 }
             }
+            profile[i] = hp;
         }
+    }
 
-        return los;
+    private void updateCell(int i, Platform p)
+    {
+        int version = p.getLocationVersion();
+        if (version == location_version[i])
+        {
+            return;
+        }
+        location_version[i] = version;
+
+        //  A site that moves must settle again to count as a fixed site, and
+        //  keeps no profile until the next placement.
+        Double3D loc = p.getLocation();
+        if (profile[i] == null || !profile[i].isAt(loc))
+        {
+            profile[i] = null;
+            profile_queries[i] = 0;
+        }
+
+        long c = world.getTerrainModel().terrainCell(loc.getX(), loc.getY());
+
+        //  Off-grid locations have no cell to compare, so any move invalidates.
+        if (c != cell[i] || c < 0)
+        {
+            if (cell[i] != Long.MIN_VALUE)
+            {
+                statistics.invalidations++;
+            }
+            generation[i]++;
+            cell[i] = c;
+        }
     }
 
-    private int getID(Platform p)
+    private long entry(int row, int col)
     {
-        Integer id = id_id_map.get(p.getId());
-        if (id == null)
+        int start = row * words_per_row;
+        if (row_generation[row] != generation[row])
         {
-            id = last_id++;
-            id_id_map.put(p.getId(), id);
+            Arrays.fill(los_bits, start, start + words_per_row, 0L);
+            row_generation[row] = generation[row];
         }
-        return id;
+
+        int shift = (col % ENTRIES_PER_WORD) << 1;
+        return (los_bits[start + col / ENTRIES_PER_WORD] >>> shift) & 3L;
     }
 
-    private void invalidate(int id)
+    private void store(int row, int col, long e)
     {
-        //
-        //  Invalidate los data for the specified ID resets all LOS results concerning that ID
-        //
+        int w = row * words_per_row + col / ENTRIES_PER_WORD;
+        int shift = (col % ENTRIES_PER_WORD) << 1;
+        los_bits[w] = (los_bits[w] & ~(3L << shift)) | (e << shift);
+    }
 
-        //  First, invalidate the map entry itself.
-        int[] a = los_map.get(id);
+    //  Exact location of a site, the key of its horizon profile.
+    private static final class LocationKey implements Comparable<LocationKey>
+    {
+        private final double x;
 
+        private final double y;
 
-        if (a != null)
+        private final double z;
+
+        LocationKey(Double3D location)
+        {
+            this.x = location.getX();
+            this.y = location.getY();
+            this.z = location.getZ();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof LocationKey))
+            {
+                return false;
+            }
+            LocationKey k = (LocationKey) o;
+            return Double.compare(x, k.x) == 0 && Double.compare(y, k.y) == 0 &&
+                Double.compare(z, k.z) == 0;
+        }
+
+        @Override
+        public int compareTo(LocationKey k)
+        {
+            int c = Double.compare(x, k.x);
+            if (c == 0)
+            {
+                c = Double.compare(y, k.y);
+            }
+            return c != 0 ? c : Double.compare(z, k.z);
+        }
+
+        @Override
+        public int hashCode()
         {
-            for (int j = 0; j < a.length; j++)
+            long h = Double.doubleToLongBits(x);
+            h = 31 * h + Double.doubleToLongBits(y);
+            h = 31 * h + Double.doubleToLongBits(z);
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    //  Key of the ground site cache: the exact locations of the two sites.
+    //  The two ends are ordered so that the key is the same whichever
+    //  platform asks.
+    private static final class SiteKey
+    {
+        private final LocationKey end1;
+
+        private final LocationKey end2;
+
+        SiteKey(Double3D loc1, Double3D loc2)
+        {
+            LocationKey k1 = new LocationKey(loc1);
+            LocationKey k2 = new LocationKey(loc2);
+            if (k1.compareTo(k2) <= 0)
             {
-                a[j] = -1;
+                this.end1 = k1;
+                this.end2 = k2;
+            }
+            else
+            {
+                this.end1 = k2;
+                this.end2 = k1;
             }
         }
 
-        //  Now invalidate all reference to id in lower map entries
-        for (int i = 0; i < id; i++)
+        @Override
+        public boolean equals(Object o)
         {
-            a = los_map.get(i);
+            if (!(o instanceof SiteKey))
+            {
+                return false;
+            }
+            SiteKey k = (SiteKey) o;
+            return end1.equals(k.end1) && end2.equals(k.end2);
+        }
 
-            int j = id - i - 1;
-            a[j] = -1;
+        @Override
+        public int hashCode()
+        {
+            return 31 * end1.hashCode() + end2.hashCode();
         }
     }
 }
@@ -415,12 +415,12 @@ public abstract class MobilePlatform extends Platform
         if (this.getStatus() == Status.ACTIVE)
         {
             Double3D loc = null;
-            if (CMWorld.getEarthModel().getCoordinateSystem().
+            if (getWorld().getGeometry().getCoordinateSystem().
                 equalsIgnoreCase("ENU"))
             {
                 loc = this.getLocation();
             }
-            else if (CMWorld.getEarthModel().getCoordinateSystem().
+            else if (getWorld().getGeometry().getCoordinateSystem().
                 equalsIgnoreCase("LLA"))
             {
                 loc = new Double3D(getLocation().getY(), getLocation().getX(), getLocation().
@@ -451,7 +451,7 @@ public abstract class MobilePlatform extends Platform
             {
                 String simdis_output = "";
 
-                if (CMWorld.getEarthModel().getCoordinateSystem().
+                if (getWorld().getGeometry().getCoordinateSystem().
                     equalsIgnoreCase("ENU"))
                 {
                     simdis_output = LengthUnit.NAUTICAL_MILES.convert(getLocation().
@@ -461,7 +461,7 @@ public abstract class MobilePlatform extends Platform
                         "\t" + LengthUnit.NAUTICAL_MILES.convert(getLocation().
                         getZ(), LengthUnit.METERS);
                 }
-                else if (CMWorld.getEarthModel().getCoordinateSystem().
+                else if (getWorld().getGeometry().getCoordinateSystem().
                     equalsIgnoreCase("LLA"))
                 {
                     //  round earth
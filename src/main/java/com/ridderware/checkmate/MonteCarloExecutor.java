@@ -0,0 +1,266 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.ridderware.fuse.Scenario;
+import com.ridderware.fuse.gui.GUIUniverse;
+import org.apache.logging.log4j.*;
+
+/**
+ * Runs the Monte Carlo evaluations of a scenario over one or more threads.
+ * Each thread reads its own replica of the scenario -- its own CMWorld,
+ * Scenario, random number stream and LOS caches -- and pulls evaluations from
+ * a shared counter until all have been run.  Every evaluation is run with a
+ * random number stream seeded from the base seed and the evaluation index, so
+ * the outcomes do not depend on the number of threads or on which thread ran
+ * which evaluation.  A single thread runs its replica on the calling thread,
+ * and is the only case in which SIMDIS output is written.
+ *
+ * @author Jeff Ridder
+ */
+public class MonteCarloExecutor
+{
+    private final ArgsHandler args_handler;
+
+    private final int num_threads;
+
+    private final int num_evaluations;
+
+    private final long base_seed;
+
+    private final AtomicInteger next_evaluation = new AtomicInteger();
+
+    private final EvaluationOutcome[] outcomes;
+
+    private final List<CMWorld> worlds = new ArrayList<>();
+
+    private static final Logger logger =
+        LogManager.getLogger(MonteCarloExecutor.class);
+
+    /**
+     * Creates a new instance of MonteCarloExecutor.
+     * @param args_handler command line arguments giving the scenario, the
+     * number of evaluations, the number of threads, and the base seed.
+     */
+    public MonteCarloExecutor(ArgsHandler args_handler)
+    {
+        this.args_handler = args_handler;
+        this.num_threads = args_handler.getNumThreads();
+        this.num_evaluations = args_handler.getNumEvaluations();
+        this.base_seed = args_handler.getSeed() != null ? args_handler.getSeed()
+            : System.nanoTime();
+        this.outcomes = new EvaluationOutcome[num_evaluations];
+    }
+
+    /**
+     * Returns the base seed from which the per-evaluation seeds are derived.
+     * @return base seed.
+     */
+    public long getBaseSeed()
+    {
+        return base_seed;
+    }
+
+    /**
+     * Returns the seed of the random number stream for the specified
+     * evaluation.
+     * @param base_seed base seed of the run.
+     * @param evaluation index of the evaluation.
+     * @return seed.
+     */
+    public static long evaluationSeed(long base_seed, int evaluation)
+    {
+        //  SplitMix64 finalizer, so that neighboring evaluations get
+        //  uncorrelated streams.
+        long z = base_seed + (evaluation + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Runs all evaluations and returns their outcomes in evaluation order.
+     * @return array of outcomes indexed by evaluation.
+     */
+    public EvaluationOutcome[] execute()
+    {
+        if (num_threads > 1 && args_handler.getASIFileName() != null)
+        {
+            logger.warn("SIMDIS output is not written in multi-threaded runs.");
+        }
+
+        logger.info("Running " + num_evaluations + " evaluations on " +
+            num_threads + " threads with base seed " + base_seed);
+
+        next_evaluation.set(0);
+
+        if (num_threads <= 1)
+        {
+            new Replica().run();
+            for (EvaluationOutcome outcome : outcomes)
+            {
+                logger.info(outcome);
+            }
+            return outcomes;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(num_threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < num_threads; i++)
+        {
+            futures.add(pool.submit(new Replica()));
+        }
+        pool.shutdown();
+
+        try
+        {
+            for (Future<?> f : futures)
+            {
+                f.get();
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Monte Carlo run interrupted", ex);
+        }
+        catch (ExecutionException ex)
+        {
+            pool.shutdownNow();
+            logger.error("Evaluation failed", ex.getCause());
+            throw new IllegalStateException("Evaluation failed", ex.getCause());
+        }
+
+        for (EvaluationOutcome outcome : outcomes)
+        {
+            logger.info(outcome);
+        }
+
+        return outcomes;
+    }
+
+    /**
+     * Returns the LOS counters summed over all replica worlds.
+     * @return LOS statistics.
+     */
+    public LOSStatistics getLOSStatistics()
+    {
+        LOSStatistics s = new LOSStatistics();
+        synchronized (worlds)
+        {
+            for (CMWorld world : worlds)
+            {
+                s.add(world.getTotalLOSStatistics());
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Returns the detection pipeline counters summed over all replica worlds.
+     * @return detection statistics.
+     */
+    public DetectionPipeline getDetectionStatistics()
+    {
+        DetectionPipeline p = new DetectionPipeline();
+        synchronized (worlds)
+        {
+            for (CMWorld world : worlds)
+            {
+                p.add(world.getTotalDetectionStatistics());
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Returns one of the replica worlds created by the run, e.g., for writing
+     * out the scenario.
+     * @return a CMWorld object, or null if execute has not been called.
+     */
+    public CMWorld getWorld()
+    {
+        synchronized (worlds)
+        {
+            return worlds.isEmpty() ? null : worlds.get(0);
+        }
+    }
+
+    /**
+     * A replica of the scenario, run by one thread.
+     */
+    private class Replica implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            Scenario scenario = new Scenario();
+
+            CMWorld world = new CMWorld(args_handler);
+
+            //  Every replica must read the scenario identically.
+            world.setScenarioSeed(base_seed);
+
+            scenario.setAgentFactory(world);
+
+            world.readScenario(args_handler.getScenarioURL(), scenario);
+
+            if (num_threads <= 1)
+            {
+                world.simdisInitialize(args_handler);
+            }
+            else if (scenario.getUniverse() instanceof GUIUniverse)
+            {
+                logger.warn("GUIUniverse in a multi-threaded run -- " +
+                    "each thread will open its own views.");
+            }
+
+            synchronized (worlds)
+            {
+                worlds.add(world);
+            }
+
+            int i;
+            while ((i = next_evaluation.getAndIncrement()) <
+                num_evaluations)
+            {
+                long seed = evaluationSeed(base_seed, i);
+
+                world.seedRNG(seed, scenario.getUniverse());
+
+                world.populateUniverse(scenario.getUniverse());
+
+                world.randomizeTargetLocations();
+
+                scenario.execute();
+
+                outcomes[i] = new EvaluationOutcome(i, seed, world);
+            }
+        }
+    }
+}
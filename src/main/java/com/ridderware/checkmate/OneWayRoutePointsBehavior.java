@@ -65,7 +65,7 @@ public class OneWayRoutePointsBehavior extends RoutePointsBehavior
                 this.getRoute().getRoutePoints().get(getCurrentPoint() + 1);
 
             double dist_to_dest =
-                CMWorld.getEarthModel().trueDistance(location,
+                getPlatform().getWorld().getGeometry().trueDistance(location,
                 destination.getPoint());
 
 //            double dist_to_dest = location.distance(destination.getPoint());
@@ -105,7 +105,7 @@ public class OneWayRoutePointsBehavior extends RoutePointsBehavior
                 if (destination != null && destination.getPoint() != location)
                 {
                     dist_to_dest =
-                        CMWorld.getEarthModel().trueDistance(location,
+                        getPlatform().getWorld().getGeometry().trueDistance(location,
                         destination.getPoint());
                 }
                 else
@@ -116,7 +116,7 @@ public class OneWayRoutePointsBehavior extends RoutePointsBehavior
 
             if (dist_to_dest > 0.)
             {
-                Double3D new_loc = CMWorld.getEarthModel().
+                Double3D new_loc = getPlatform().getWorld().getGeometry().
                     interpolateLocation(location, destination.getPoint(),
                     distance);
                 p.setLocation(new_loc);
@@ -125,11 +125,11 @@ public class OneWayRoutePointsBehavior extends RoutePointsBehavior
             //  Set heading
             if (p.getStatus() == Platform.Status.ACTIVE && destination != null)
             {
-                p.setHeading(CMWorld.getEarthModel().azimuthAngle(location,
+                p.setHeading(getPlatform().getWorld().getGeometry().azimuthAngle(location,
                     destination.getPoint()));
                 //  The elevation must be corrected by subtracting the elevation for the destination point, but at the same height as current location.
-                p.setElevationAngle(CMWorld.getEarthModel().elevationAngle(location,
-                    destination.getPoint(), IEarthModel.EarthFactor.REAL_EARTH) - CMWorld.getEarthModel().
+                p.setElevationAngle(getPlatform().getWorld().getGeometry().elevationAngle(location,
+                    destination.getPoint(), IEarthModel.EarthFactor.REAL_EARTH) - getPlatform().getWorld().getGeometry().
                     elevationAngle(location, new Double3D(destination.getPoint().
                     getX(), destination.getPoint().getY(),
                     location.getZ()), IEarthModel.EarthFactor.REAL_EARTH));
@@ -166,9 +166,9 @@ public class OneWayRoutePointsBehavior extends RoutePointsBehavior
 
             if (destination != null)
             {
-                p.setHeading(CMWorld.getEarthModel().azimuthAngle(location,
+                p.setHeading(getPlatform().getWorld().getGeometry().azimuthAngle(location,
                     destination.getPoint()));
-                p.setElevationAngle(CMWorld.getEarthModel().elevationAngle(location,
+                p.setElevationAngle(getPlatform().getWorld().getGeometry().elevationAngle(location,
                     destination.getPoint(), IEarthModel.EarthFactor.REAL_EARTH));
             }
 
@@ -0,0 +1,340 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import java.util.Arrays;
+import com.ridderware.fuse.Double3D;
+import com.ridderware.fuse.Universe;
+
+/**
+ * Cache of the geometry -- range, azimuth and elevation -- between pairs of
+ * platforms.  Entries are keyed by the IDs of the two platforms and the
+ * simulation time, so that radar scans, jammer gain checks and receiver scans
+ * made within the same time step share the same computations.  An entry is
+ * also discarded if either platform has moved since it was computed.
+ * <p>
+ * The entries are held in parallel arrays forming an open-addressing table of
+ * fixed capacity, keyed by the two IDs packed into a long.  A pair that finds
+ * no free slot among its probes takes the place of an entry from an earlier
+ * time, or failing that of its first probe, so the table never grows.  In a
+ * Flat Earth world the geometry is cheaper to compute than to look up, and
+ * the cache is bypassed.
+ *
+ * @author Jeff Ridder
+ */
+public class PairGeometryCache
+{
+    //  Number of slots in the table
+    private static final int CAPACITY = 1 << 14;
+
+    private static final int MASK = CAPACITY - 1;
+
+    //  Slots probed for a pair
+    private static final int MAX_PROBES = 4;
+
+    private final CMWorld world;
+
+    //  IDs of the pair in each slot, lower ID in the high word
+    private final long[] keys = new long[CAPACITY];
+
+    //  Time of the entry in each slot, or NaN if the slot is empty
+    private final double[] times = new double[CAPACITY];
+
+    //  Locations of the lower and higher ID platforms, six per slot
+    private final double[] locations = new double[6 * CAPACITY];
+
+    private final double[] range_sq = new double[CAPACITY];
+
+    private final double[] range = new double[CAPACITY];
+
+    //  Directional quantities, two per slot indexed by direction(from, to)
+    private final double[] azimuth = new double[2 * CAPACITY];
+
+    private final double[] elevation_em = new double[2 * CAPACITY];
+
+    private final double[] elevation_real = new double[2 * CAPACITY];
+
+    private Universe universe = null;
+
+    //  Whether the world's Earth model is worth caching for
+    private boolean enabled = true;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    /**
+     * Creates a new instance of PairGeometryCache.
+     * @param world the world serviced by this cache.
+     */
+    public PairGeometryCache(CMWorld world)
+    {
+        this.world = world;
+        Arrays.fill(times, Double.NaN);
+    }
+
+    /**
+     * Called by the world to clear the cache and its counters at the beginning
+     * of each run.
+     * @param universe universe whose clock keys the cache entries.
+     */
+    public void reset(Universe universe)
+    {
+        this.universe = universe;
+        this.enabled = !(world.getEarthModel() instanceof FlatEarth);
+        Arrays.fill(times, Double.NaN);
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Returns the line-of-site distance between two platforms.
+     * @param p1 platform 1.
+     * @param p2 platform 2.
+     * @return distance in nmi.
+     */
+    public double trueDistance(Platform p1, Platform p2)
+    {
+        if (!enabled)
+        {
+            return world.getGeometry().trueDistance(p1, p2);
+        }
+
+        int slot = getSlot(p1, p2);
+        if (Double.isNaN(range[slot]))
+        {
+            misses++;
+            range[slot] = Math.sqrt(rangeSq(slot, p1, p2));
+        }
+        else
+        {
+            hits++;
+        }
+        return range[slot];
+    }
+
+    /**
+     * Returns the square of the line-of-site distance between two platforms.
+     * @param p1 platform 1.
+     * @param p2 platform 2.
+     * @return square of the distance in nmi-squared.
+     */
+    public double trueDistanceSq(Platform p1, Platform p2)
+    {
+        if (!enabled)
+        {
+            return world.getGeometry().trueDistanceSq(p1, p2);
+        }
+
+        int slot = getSlot(p1, p2);
+        if (Double.isNaN(range_sq[slot]))
+        {
+            misses++;
+        }
+        else
+        {
+            hits++;
+        }
+        return rangeSq(slot, p1, p2);
+    }
+
+    /**
+     * Returns the azimuth angle from one platform to another.
+     * @param from platform from which the angle is measured.
+     * @param to platform to which the angle is measured.
+     * @return azimuth angle between +/- PI in radians.
+     */
+    public double azimuthAngle(Platform from, Platform to)
+    {
+        if (!enabled)
+        {
+            return world.getGeometry().azimuthAngle(from.getLocation(),
+                to.getLocation());
+        }
+
+        int i = 2 * getSlot(from, to) + direction(from, to);
+        if (Double.isNaN(azimuth[i]))
+        {
+            misses++;
+            azimuth[i] = world.getGeometry().azimuthAngle(from.getLocation(),
+                to.getLocation());
+        }
+        else
+        {
+            hits++;
+        }
+        return azimuth[i];
+    }
+
+    /**
+     * Returns the elevation angle from one platform to another.
+     * @param from platform from which the angle is measured.
+     * @param to platform to which the angle is measured.
+     * @param k Earth factor.
+     * @return elevation angle in radians.
+     */
+    public double elevationAngle(Platform from, Platform to,
+        IEarthModel.EarthFactor k)
+    {
+        if (!enabled)
+        {
+            return world.getGeometry().elevationAngle(from, to, k);
+        }
+
+        double[] elevation = k == IEarthModel.EarthFactor.EM_EARTH ?
+            elevation_em : elevation_real;
+        int i = 2 * getSlot(from, to) + direction(from, to);
+        if (Double.isNaN(elevation[i]))
+        {
+            misses++;
+            elevation[i] = world.getGeometry().elevationAngle(from, to, k);
+        }
+        else
+        {
+            hits++;
+        }
+        return elevation[i];
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache since the last
+     * reset.
+     * @return number of hits.
+     */
+    public long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that had to be computed since the last
+     * reset.
+     * @return number of misses.
+     */
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Returns the fraction of lookups answered from the cache.
+     * @return hit rate between 0 and 1.
+     */
+    public double getHitRate()
+    {
+        long lookups = hits + misses;
+        return lookups > 0 ? (double) hits / lookups : 0.;
+    }
+
+    /**
+     * Returns a summary of the cache performance.
+     * @return summary string.
+     */
+    @Override
+    public String toString()
+    {
+        return "Pair geometry cache: " + hits + " hits, " + misses +
+            " misses, hit rate " + getHitRate();
+    }
+
+    private double rangeSq(int slot, Platform p1, Platform p2)
+    {
+        if (Double.isNaN(range_sq[slot]))
+        {
+            range_sq[slot] = world.getGeometry().trueDistanceSq(p1, p2);
+        }
+        return range_sq[slot];
+    }
+
+    //  0 if the pair is taken from the lower to the higher ID, 1 otherwise.
+    private static int direction(Platform from, Platform to)
+    {
+        return from.getId() <= to.getId() ? 0 : 1;
+    }
+
+    private int getSlot(Platform p1, Platform p2)
+    {
+        Platform lo = p1;
+        Platform hi = p2;
+        if (p1.getId() > p2.getId())
+        {
+            lo = p2;
+            hi = p1;
+        }
+
+        long key = ((long) lo.getId() << 32) | (hi.getId() & 0xffffffffL);
+        double time = universe != null ? universe.getCurrentTime() : 0.;
+
+        int first = (int) (PersistentLOSCache.mix(key) >>> 40) & MASK;
+        int slot = -1;
+        for (int p = 0; p < MAX_PROBES; p++)
+        {
+            int s = (first + p) & MASK;
+            if (keys[s] == key && !Double.isNaN(times[s]))
+            {
+                slot = s;
+                break;
+            }
+            else if (slot < 0 && times[s] != time)
+            {
+                //  Empty, or left from an earlier time.
+                slot = s;
+            }
+        }
+        if (slot < 0)
+        {
+            slot = first;
+        }
+
+        if (keys[slot] != key || !matches(slot, time, lo.getLocation(),
+            hi.getLocation()))
+        {
+            set(slot, key, time, lo.getLocation(), hi.getLocation());
+        }
+        return slot;
+    }
+
+    private boolean matches(int slot, double time, Double3D lo, Double3D hi)
+    {
+        int l = 6 * slot;
+        return times[slot] == time &&
+            locations[l] == lo.getX() && locations[l + 1] == lo.getY() &&
+            locations[l + 2] == lo.getZ() && locations[l + 3] == hi.getX() &&
+            locations[l + 4] == hi.getY() && locations[l + 5] == hi.getZ();
+    }
+
+    private void set(int slot, long key, double time, Double3D lo, Double3D hi)
+    {
+        keys[slot] = key;
+        times[slot] = time;
+        int l = 6 * slot;
+        locations[l] = lo.getX();
+        locations[l + 1] = lo.getY();
+        locations[l + 2] = lo.getZ();
+        locations[l + 3] = hi.getX();
+        locations[l + 4] = hi.getY();
+        locations[l + 5] = hi.getZ();
+        range_sq[slot] = Double.NaN;
+        range[slot] = Double.NaN;
+        azimuth[2 * slot] = azimuth[2 * slot + 1] = Double.NaN;
+        elevation_em[2 * slot] = elevation_em[2 * slot + 1] = Double.NaN;
+        elevation_real[2 * slot] = elevation_real[2 * slot + 1] = Double.NaN;
+    }
+}
@@ -52,7 +52,7 @@ public class PeriodicRoutePointsBehavior extends RoutePointsBehavior
     {
         MobilePlatform p = getPlatform();
 
-        IEarthModel e = CMWorld.getEarthModel();
+        IEarthModel e = getPlatform().getWorld().getGeometry();
 
         double delta_time = time - this.getTimeOfLastKinematicUpdate();
 
@@ -164,7 +164,7 @@ public class PeriodicRoutePointsBehavior extends RoutePointsBehavior
 
         MobilePlatform p = getPlatform();
 
-        IEarthModel e = CMWorld.getEarthModel();
+        IEarthModel e = getPlatform().getWorld().getGeometry();
 
         //  Give SIMDIS an update, but first set the heading correctly.
         if (p != null && p.getWorld().getASIFile() != null)
@@ -0,0 +1,380 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import com.ridderware.fuse.Double3D;
+import org.apache.logging.log4j.*;
+
+/**
+ * Line-of-site cache kept in a memory-mapped file, so that repeated launches
+ * of CHECKMATE against the same terrain and threat laydown can reuse each
+ * other's terrain traversals.  Entries are keyed by the exact locations of the
+ * two endpoints and the Earth radius factor, so an entry is only ever used for
+ * the endpoints it was computed for.
+ * <p>
+ * The file holds a short header followed by a fixed-size open-addressing
+ * table of longs.  Each slot holds a 63-bit hash of the key with the LOS in
+ * the low bit, or 0 if empty.  The header records the hash of the terrain the
+ * file was built against and the version of the LOS computation that filled
+ * it, and the table is emptied whenever a different terrain is loaded, e.g.,
+ * after the contents of the DTED directory change, or the LOS computation
+ * changes.
+ * The table stops accepting entries once it is three-quarters full.
+ * <p>
+ * Several processes may share the file.  Each holds a shared lock on part of
+ * the header for as long as it has the file mapped, and the file is only
+ * emptied under an exclusive lock on it, so a file mapped by another process
+ * is never truncated under it.  Entries are added under an exclusive lock on
+ * another part of the header, and the count of entries is kept only in the
+ * file, so concurrent writers see each other's entries and counts.
+ *
+ * @author Jeff Ridder
+ */
+public class PersistentLOSCache
+{
+    private static final Logger logger =
+        LogManager.getLogger(PersistentLOSCache.class);
+
+    //  "CMLOSC02"
+    private static final long MAGIC = 0x434D4C4F53433032L;
+
+    private static final int HEADER_BYTES = 64;
+
+    private static final int TERRAIN_HASH_OFFSET = 8;
+
+    private static final int CAPACITY_OFFSET = 16;
+
+    private static final int COUNT_OFFSET = 20;
+
+    private static final int LOS_VERSION_OFFSET = 24;
+
+    //  Version of the terrain LOS computation.  Bump it whenever a change to
+    //  the traversal can change an answer, so that older files are emptied.
+    private static final int LOS_VERSION = 4;
+
+    //  Locked shared while the file is mapped, and exclusively to empty it.
+    private static final int USE_LOCK_OFFSET = 48;
+
+    //  Locked exclusively to add an entry.
+    private static final int WRITE_LOCK_OFFSET = 56;
+
+    private static final int LOCK_BYTES = 8;
+
+    private static final int MAX_PROBES = 32;
+
+    //  One cache per file for the whole process, shared by all worlds.
+    private static final Map<String, PersistentLOSCache> caches =
+        new HashMap<>();
+
+    private final long terrain_hash;
+
+    private final FileChannel channel;
+
+    //  Held for as long as the file is mapped.
+    private final FileLock use_lock;
+
+    private final int mask;
+
+    private final int max_count;
+
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Returns the cache stored in the specified file, creating or emptying the
+     * file as needed.  A file holds the cache of one terrain at a time, so a
+     * file that is in use with other terrain, by this process or another, is
+     * not used.
+     * @param file the cache file.
+     * @param terrain_hash hash of the terrain against which LOS is computed.
+     * @param capacity number of slots in a new file, rounded up to a power of two.
+     * @return the cache, or null if the file could not be mapped.
+     */
+    public static synchronized PersistentLOSCache getInstance(File file,
+        long terrain_hash, int capacity)
+    {
+        String path = file.getAbsolutePath();
+        PersistentLOSCache cache = caches.get(path);
+        if (cache == null)
+        {
+            try
+            {
+                cache = new PersistentLOSCache(file, terrain_hash, capacity);
+                caches.put(path, cache);
+            }
+            catch (IOException ex)
+            {
+                logger.warn("Unable to map LOS cache file " + path + ": " +
+                    ex.getMessage());
+                cache = null;
+            }
+        }
+        else if (cache.terrain_hash != terrain_hash)
+        {
+            logger.warn("LOS cache file " + path + " is in use with other " +
+                "terrain");
+            cache = null;
+        }
+        return cache;
+    }
+
+    private PersistentLOSCache(File file, long terrain_hash, int capacity)
+        throws IOException
+    {
+        this.terrain_hash = terrain_hash;
+        this.channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+
+        try
+        {
+            //  The file may only be emptied while no other process maps it.
+            FileLock init = channel.tryLock(USE_LOCK_OFFSET, LOCK_BYTES, false);
+            if (init != null)
+            {
+                try
+                {
+                    if (storedSlots() < 0)
+                    {
+                        int slots = Integer.highestOneBit(Math.max(capacity - 1,
+                            MAX_PROBES)) << 1;
+                        logger.info("Initializing LOS cache file " +
+                            file.getPath() + " with " + slots + " slots");
+                        initialize(slots);
+                    }
+                }
+                finally
+                {
+                    init.release();
+                }
+            }
+
+            this.use_lock = channel.lock(USE_LOCK_OFFSET, LOCK_BYTES, true);
+
+            int slots = storedSlots();
+            if (slots < 0)
+            {
+                use_lock.release();
+                throw new IOException("in use by another process with other " +
+                    "terrain");
+            }
+
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_BYTES + 8L * slots);
+            this.mask = slots - 1;
+            this.max_count = slots / 4 * 3;
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the number of slots of the file if it holds a cache of this
+     * terrain.
+     * @return number of slots, or -1 if the file must be initialized.
+     */
+    private int storedSlots() throws IOException
+    {
+        if (channel.size() < HEADER_BYTES)
+        {
+            return -1;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining())
+        {
+            if (channel.read(header, header.position()) < 0)
+            {
+                return -1;
+            }
+        }
+
+        int slots = header.getInt(CAPACITY_OFFSET);
+        boolean valid = header.getLong(0) == MAGIC &&
+            header.getLong(TERRAIN_HASH_OFFSET) == terrain_hash &&
+            header.getInt(LOS_VERSION_OFFSET) == LOS_VERSION &&
+            Integer.bitCount(slots) == 1 &&
+            channel.size() == HEADER_BYTES + 8L * slots;
+        return valid ? slots : -1;
+    }
+
+    /**
+     * Empties the file and writes the header of a table of the specified
+     * number of slots.  The caller must hold the use lock exclusively.
+     */
+    private void initialize(int slots) throws IOException
+    {
+        channel.truncate(0);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putLong(0, MAGIC);
+        header.putLong(TERRAIN_HASH_OFFSET, terrain_hash);
+        header.putInt(CAPACITY_OFFSET, slots);
+        header.putInt(COUNT_OFFSET, 0);
+        header.putInt(LOS_VERSION_OFFSET, LOS_VERSION);
+        while (header.hasRemaining())
+        {
+            channel.write(header, header.position());
+        }
+
+        //  Extends the file, leaving every slot empty.
+        ByteBuffer last = ByteBuffer.allocate(1);
+        while (last.hasRemaining())
+        {
+            channel.write(last, HEADER_BYTES + 8L * slots - 1);
+        }
+    }
+
+    /**
+     * Returns the cached LOS between two endpoints.
+     * @param loc1 location of endpoint 1.
+     * @param loc2 location of endpoint 2.
+     * @param k Earth radius factor.
+     * @return 1 for LOS, 0 for no LOS, -1 if the pair is absent.
+     */
+    public synchronized int get(Double3D loc1, Double3D loc2,
+        IEarthModel.EarthFactor k)
+    {
+        long h = hash(loc1, loc2, k);
+        int slot = (int) (h >>> 33) & mask;
+        for (int p = 0; p < MAX_PROBES; p++)
+        {
+            long v = buffer.getLong(HEADER_BYTES + 8 * ((slot + p) & mask));
+            if (v == 0L)
+            {
+                break;
+            }
+            else if ((v & ~1L) == h)
+            {
+                return (int) (v & 1L);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Appends the LOS between two endpoints to the cache, unless the cache is
+     * full.
+     * @param loc1 location of endpoint 1.
+     * @param loc2 location of endpoint 2.
+     * @param k Earth radius factor.
+     * @param los the line-of-site.
+     */
+    public synchronized void put(Double3D loc1, Double3D loc2,
+        IEarthModel.EarthFactor k, boolean los)
+    {
+        long h = hash(loc1, loc2, k);
+        int slot = (int) (h >>> 33) & mask;
+
+        try
+        {
+            FileLock lock = channel.lock(WRITE_LOCK_OFFSET, LOCK_BYTES, false);
+            try
+            {
+                int count = buffer.getInt(COUNT_OFFSET);
+                if (count >= max_count)
+                {
+                    return;
+                }
+
+                for (int p = 0; p < MAX_PROBES; p++)
+                {
+                    int index = HEADER_BYTES + 8 * ((slot + p) & mask);
+                    long v = buffer.getLong(index);
+                    if (v == 0L)
+                    {
+                        buffer.putLong(index, h | (los ? 1L : 0L));
+                        buffer.putInt(COUNT_OFFSET, count + 1);
+                        return;
+                    }
+                    else if ((v & ~1L) == h)
+                    {
+                        return;
+                    }
+                }
+            }
+            finally
+            {
+                lock.release();
+            }
+        }
+        catch (IOException ex)
+        {
+            logger.warn("Unable to lock LOS cache file: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Returns the number of entries in the cache, including those added by
+     * other processes.
+     * @return count.
+     */
+    public synchronized int size()
+    {
+        return buffer.getInt(COUNT_OFFSET);
+    }
+
+    private static long hash(Double3D loc1, Double3D loc2,
+        IEarthModel.EarthFactor k)
+    {
+        //  Order the endpoints so that the key is the same whichever asks.
+        long e1 = hash(loc1);
+        long e2 = hash(loc2);
+        if (e1 > e2)
+        {
+            long t = e1;
+            e1 = e2;
+            e2 = t;
+        }
+
+        long h = mix(mix(mix(e1) ^ e2) ^ k.ordinal()) & ~1L;
+        return h == 0L ? 2L : h;
+    }
+
+    private static long hash(Double3D loc)
+    {
+        return mix(mix(mix(Double.doubleToLongBits(loc.getX())) ^
+            Double.doubleToLongBits(loc.getY())) ^
+            Double.doubleToLongBits(loc.getZ()));
+    }
+
+    /**
+     * Mixes the bits of a long.  Also used to build terrain hashes.
+     * @param z value to mix.
+     * @return mixed value.
+     */
+    static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -99,6 +99,19 @@ public class Platform extends CMAgent implements Paintable, ISIMDIS
      */
     private MutableDouble3D location = new MutableDouble3D(0., 0., 0.);
 
+    //  Unit vector from the Earth's center through the location, used by the
+    //  Round Earth model.  Computed on first use after each change of location.
+    private final MutableDouble3D earth_unit_vector = new MutableDouble3D();
+
+    private boolean earth_unit_vector_valid = false;
+
+    //  Incremented on every change of location so that location-derived
+    //  caches can tell whether the platform has moved.
+    private int location_version = 0;
+
+    //  Row of this platform in the world's LOS whiteboards.
+    private int los_index = -1;
+
     /**
      *  Point value of the object.
      */
@@ -267,12 +280,12 @@ public class Platform extends CMAgent implements Paintable, ISIMDIS
         if (this.getStatus() == Status.ACTIVE)
         {
             Double3D loc = null;
-            if (CMWorld.getEarthModel().getCoordinateSystem().
+            if (getWorld().getGeometry().getCoordinateSystem().
                 equalsIgnoreCase("ENU"))
             {
                 loc = this.getLocation();
             }
-            else if (CMWorld.getEarthModel().getCoordinateSystem().
+            else if (getWorld().getGeometry().getCoordinateSystem().
                 equalsIgnoreCase("LLA"))
             {
                 loc = new Double3D(getLocation().getY(), getLocation().getX(), getLocation().
@@ -329,7 +342,7 @@ public class Platform extends CMAgent implements Paintable, ISIMDIS
             {
                 String simdis_output = "";
 
-                if (CMWorld.getEarthModel().getCoordinateSystem().
+                if (getWorld().getGeometry().getCoordinateSystem().
                     equalsIgnoreCase("ENU"))
                 {
                     simdis_output += LengthUnit.NAUTICAL_MILES.convert(getLocation().
@@ -338,7 +351,7 @@ public class Platform extends CMAgent implements Paintable, ISIMDIS
                         getY(), LengthUnit.METERS) + "\t" + LengthUnit.NAUTICAL_MILES.convert(getLocation().
                         getZ(), LengthUnit.METERS);
                 }
-                else if (CMWorld.getEarthModel().getCoordinateSystem().
+                else if (getWorld().getGeometry().getCoordinateSystem().
                     equalsIgnoreCase("LLA"))
                 {
                     //  round earth
@@ -445,11 +458,18 @@ public class Platform extends CMAgent implements Paintable, ISIMDIS
     public void setLocation(Double3D location)
     {
         this.location.setXYZ(location);
+        this.earth_unit_vector_valid = false;
+        this.location_version++;
 
-        //  Sets the elevation of ground platforms to the elevation of the terrain.
-        if (this.getPlatformType() == PlatformType.GROUND)
+        if (getWorld() != null)
         {
-            this.location.setZ(LengthUnit.METERS.convert(CMWorld.getTerrainModel().elevation(location.getX(), location.getY()), LengthUnit.NAUTICAL_MILES));
+            //  Sets the elevation of ground platforms to the elevation of the terrain.
+            if (this.getPlatformType() == PlatformType.GROUND)
+            {
+                this.location.setZ(LengthUnit.METERS.convert(getWorld().getTerrainModel().elevation(location.getX(), location.getY()), LengthUnit.NAUTICAL_MILES));
+            }
+
+            getWorld().platformMoved(this);
         }
 
         if (this.status == Status.ACTIVE && getUniverse() != null &&
@@ -500,6 +520,50 @@ public class Platform extends CMAgent implements Paintable, ISIMDIS
         return this.location;
     }
 
+    /**
+     * Returns a counter that changes every time the location of the platform
+     * is set.  Static sites keep the same version for the whole run.
+     * @return location version.
+     */
+    public int getLocationVersion()
+    {
+        return this.location_version;
+    }
+
+    /**
+     * Returns the index of this platform in the world's LOS whiteboards.
+     * @return LOS index, or -1 if the platform has none.
+     */
+    int getLOSIndex()
+    {
+        return this.los_index;
+    }
+
+    /**
+     * Sets the index of this platform in the world's LOS whiteboards.
+     * @param los_index LOS index.
+     */
+    void setLOSIndex(int los_index)
+    {
+        this.los_index = los_index;
+    }
+
+    /**
+     * Returns the unit vector from the Earth's center through the location of
+     * the platform, treating the location as LLA.  The vector is computed once
+     * per change of location rather than once per range computation.
+     * @return unit vector in Earth-centered, Earth-fixed axes.
+     */
+    public Double3D getEarthUnitVector()
+    {
+        if (!this.earth_unit_vector_valid)
+        {
+            RoundEarth.unitVector(this.location, this.earth_unit_vector);
+            this.earth_unit_vector_valid = true;
+        }
+        return this.earth_unit_vector;
+    }
+
     /**
      * Sets the point value of the platform.
      * @param points points.
@@ -0,0 +1,326 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import com.ridderware.fuse.Double3D;
+
+/**
+ * A uniform grid of platforms over the horizontal coordinates of their
+ * locations, used to find the platforms within a given range of a point
+ * without visiting every platform in the world.  ENU locations are bucketed
+ * in nautical miles; LLA locations are bucketed by latitude and longitude in
+ * radians, with the longitude extent of a query widened for latitude and
+ * wrapped at the date line.  The owner moves a platform between cells by
+ * calling update whenever its location changes.
+ *
+ * @author Jeff Ridder
+ */
+public class PlatformGrid<T extends Platform>
+{
+    /** Default width of a cell in nautical miles. */
+    public static final double DEFAULT_CELL_SIZE = 25.;
+
+    //  Lowest radius from the Earth's center of an indexed point, used to bound
+    //  the arc angle of a range query.  Allows for locations below sea level.
+    private static final double MIN_RADIUS_NMI =
+        RoundEarth.EARTH_RADIUS_NMI - 10.;
+
+    private final boolean lla;
+
+    //  Width of a cell in the units of the location coordinates.
+    private final double cell_size;
+
+    //  Number of longitude cells around the Earth (LLA only).
+    private final int lon_cells;
+
+    private final HashMap<Long, ArrayList<T>> cells = new HashMap<>();
+
+    //  Key of the cell in which each platform is currently filed.
+    private final HashMap<Platform, Long> keys = new HashMap<>();
+
+    /**
+     * Creates a new instance of PlatformGrid with the default cell size.
+     * @param geometry geometry of the world whose platforms are indexed.
+     */
+    public PlatformGrid(GeometryContext geometry)
+    {
+        this(geometry, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Creates a new instance of PlatformGrid.
+     * @param geometry geometry of the world whose platforms are indexed.
+     * @param cell_size_nmi width of a cell in nautical miles.
+     */
+    public PlatformGrid(GeometryContext geometry, double cell_size_nmi)
+    {
+        this.lla = geometry.getCoordinateSystem().equalsIgnoreCase("LLA");
+
+        if (lla)
+        {
+            this.lon_cells = (int) Math.ceil(2. * Math.PI /
+                (cell_size_nmi / RoundEarth.EARTH_RADIUS_NMI));
+            this.cell_size = 2. * Math.PI / lon_cells;
+        }
+        else
+        {
+            this.lon_cells = 0;
+            this.cell_size = cell_size_nmi;
+        }
+    }
+
+    /**
+     * Removes all platforms from the grid.
+     */
+    public void clear()
+    {
+        cells.clear();
+        keys.clear();
+    }
+
+    /**
+     * Returns the number of platforms in the grid.
+     * @return number of platforms.
+     */
+    public int size()
+    {
+        return keys.size();
+    }
+
+    /**
+     * Adds a platform to the grid at its current location.
+     * @param p platform to be added.
+     */
+    public void add(T p)
+    {
+        if (!keys.containsKey(p))
+        {
+            long key = key(p.getLocation());
+            keys.put(p, key);
+            cell(key).add(p);
+        }
+    }
+
+    /**
+     * Moves a platform to the cell of its current location.  Platforms that are
+     * not in the grid are ignored.
+     * @param p platform whose location has changed.
+     */
+    @SuppressWarnings("unchecked")
+    public void update(Platform p)
+    {
+        Long old_key = keys.get(p);
+        if (old_key != null)
+        {
+            long key = key(p.getLocation());
+            if (key != old_key)
+            {
+                removeFromCell(old_key, p);
+                keys.put(p, key);
+                cell(key).add((T) p);
+            }
+        }
+    }
+
+    /**
+     * Adds to the collection every platform whose distance from the origin
+     * could be within the range.  The result is a superset of the
+     * platforms within range, so callers still make their own range test.
+     * @param origin point from which the range is measured.
+     * @param range range in nautical miles.
+     * @param out collection to which the platforms are added.
+     */
+    public void collect(Double3D origin, double range,
+        Collection<? super T> out)
+    {
+        if (cells.isEmpty() || !(range > 0.))
+        {
+            return;
+        }
+
+        if (Double.isInfinite(range))
+        {
+            for (ArrayList<T> c : cells.values())
+            {
+                out.addAll(c);
+            }
+            return;
+        }
+
+        if (lla)
+        {
+            collectLLA(origin, range, out);
+        }
+        else
+        {
+            collectENU(origin, range, out);
+        }
+    }
+
+    private void collectENU(Double3D origin, double range,
+        Collection<? super T> out)
+    {
+        long x0 = index(origin.getX() - range);
+        long x1 = index(origin.getX() + range);
+        long y0 = index(origin.getY() - range);
+        long y1 = index(origin.getY() + range);
+
+        //  If the box covers more cells than are occupied, visit the occupied ones.
+        if ((double) (x1 - x0 + 1) * (y1 - y0 + 1) > cells.size())
+        {
+            for (Map.Entry<Long, ArrayList<T>> e : cells.entrySet())
+            {
+                long ix = e.getKey() >> 32;
+                long iy = (int) (long) e.getKey();
+                if (ix >= x0 && ix <= x1 && iy >= y0 && iy <= y1)
+                {
+                    out.addAll(e.getValue());
+                }
+            }
+            return;
+        }
+
+        for (long ix = x0; ix <= x1; ix++)
+        {
+            for (long iy = y0; iy <= y1; iy++)
+            {
+                ArrayList<T> c = cells.get(pack(ix, iy));
+                if (c != null)
+                {
+                    out.addAll(c);
+                }
+            }
+        }
+    }
+
+    private void collectLLA(Double3D origin, double range,
+        Collection<? super T> out)
+    {
+        //  Largest arc angle between two points separated by the range.  The
+        //  straight-line distance is at least the chord at the lowest radius.
+        double half_chord = range / (2. * MIN_RADIUS_NMI);
+        if (half_chord >= 1.)
+        {
+            for (ArrayList<T> c : cells.values())
+            {
+                out.addAll(c);
+            }
+            return;
+        }
+        double arc = 2. * Math.asin(half_chord);
+
+        double lat = origin.getX();
+        double lat_lo = Math.max(lat - arc, -Math.PI / 2.);
+        double lat_hi = Math.min(lat + arc, Math.PI / 2.);
+        long x0 = index(lat_lo + Math.PI / 2.);
+        long x1 = index(lat_hi + Math.PI / 2.);
+
+        //  Longitude half-width of the cap at the most poleward latitude of the band.
+        double cos_lat = Math.cos(Math.max(Math.abs(lat_lo), Math.abs(lat_hi)));
+        long span = lon_cells;
+        long y0 = 0;
+        if (arc < Math.PI / 2. && Math.sin(arc) < cos_lat)
+        {
+            double dlon = Math.asin(Math.sin(arc) / cos_lat);
+            double lon = origin.getY() + Math.PI;
+            y0 = index(lon - dlon);
+            span = Math.min(index(lon + dlon) - y0 + 1, lon_cells);
+        }
+
+        if ((double) (x1 - x0 + 1) * span > cells.size())
+        {
+            for (Map.Entry<Long, ArrayList<T>> e : cells.entrySet())
+            {
+                long ix = e.getKey() >> 32;
+                long iy = (int) (long) e.getKey();
+                long dy = Math.floorMod(iy - y0, (long) lon_cells);
+                if (ix >= x0 && ix <= x1 && dy < span)
+                {
+                    out.addAll(e.getValue());
+                }
+            }
+            return;
+        }
+
+        for (long ix = x0; ix <= x1; ix++)
+        {
+            for (long k = 0; k < span; k++)
+            {
+                ArrayList<T> c = cells.get(pack(ix, Math.floorMod(y0 + k,
+                    (long) lon_cells)));
+                if (c != null)
+                {
+                    out.addAll(c);
+                }
+            }
+        }
+    }
+
+    private long key(Double3D loc)
+    {
+        if (lla)
+        {
+            return pack(index(loc.getX() + Math.PI / 2.),
+                Math.floorMod(index(loc.getY() + Math.PI), (long) lon_cells));
+        }
+        else
+        {
+            return pack(index(loc.getX()), index(loc.getY()));
+        }
+    }
+
+    private long index(double v)
+    {
+        return (long) Math.floor(v / cell_size);
+    }
+
+    private static long pack(long ix, long iy)
+    {
+        return (ix << 32) | (iy & 0xFFFFFFFFL);
+    }
+
+    private ArrayList<T> cell(long key)
+    {
+        ArrayList<T> c = cells.get(key);
+        if (c == null)
+        {
+            c = new ArrayList<>();
+            cells.put(key, c);
+        }
+        return c;
+    }
+
+    private void removeFromCell(long key, Platform p)
+    {
+        ArrayList<T> c = cells.get(key);
+        int i = c.indexOf(p);
+        int last = c.size() - 1;
+        c.set(i, c.get(last));
+        c.remove(last);
+        if (c.isEmpty())
+        {
+            cells.remove(key);
+        }
+    }
+}
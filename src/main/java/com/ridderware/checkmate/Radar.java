@@ -27,8 +27,10 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import com.ridderware.fuse.Behavior;
 import com.ridderware.fuse.Double3D;
@@ -131,6 +133,19 @@ public class Radar extends CMSystem implements Paintable, ISIMDIS
     //  just a convenience.
     private boolean emitting;
 
+    //  Scratch arrays holding the geometry to each aircraft near enough to be
+    //  examined by the current scan.  These are grown as needed and reused from
+    //  scan to scan.
+    private final ArrayList<Aircraft> scan_candidates = new ArrayList<>();
+
+    private Aircraft[] scan_aircraft = new Aircraft[0];
+
+    private double[] scan_range_sq = new double[0];
+
+    private double[] scan_azimuth = new double[0];
+
+    private double[] scan_elevation = new double[0];
+
     private static final Logger logger = LogManager.getLogger(Radar.class);
 
     /**
@@ -291,10 +306,10 @@ public class Radar extends CMSystem implements Paintable, ISIMDIS
             //  Ask the earth model to project a point due east and another due north out to the jammed range.
             //  2 X difference of this point with origin is the ellipse size.
             Double3D eastpt =
-                CMWorld.getEarthModel().projectLocation(parent.getLocation(),
+                getWorld().getGeometry().projectLocation(parent.getLocation(),
                 getJammedRange(), Math.PI / 2.);
             Double3D northpt =
-                CMWorld.getEarthModel().projectLocation(parent.getLocation(),
+                getWorld().getGeometry().projectLocation(parent.getLocation(),
                 getJammedRange(), 0.);
 
             double dx = eastpt.getX() - parent.getLocation().getX();
@@ -306,12 +321,12 @@ public class Radar extends CMSystem implements Paintable, ISIMDIS
             double height = 2. * Math.sqrt(dx * dx + dy * dy);
 
             Double3D loc = null;
-            if (CMWorld.getEarthModel().getCoordinateSystem().
+            if (getWorld().getGeometry().getCoordinateSystem().
                 equalsIgnoreCase("ENU"))
             {
                 loc = parent.getLocation();
             }
-            else if (CMWorld.getEarthModel().getCoordinateSystem().
+            else if (getWorld().getGeometry().getCoordinateSystem().
                 equalsIgnoreCase("LLA"))
             {
                 loc = new Double3D(parent.getLocation().getY(), parent.getLocation().
@@ -482,6 +497,83 @@ public class Radar extends CMSystem implements Paintable, ISIMDIS
         return this.reference_range;
     }
 
+    /**
+     * Computes the range-squared, and optionally the azimuth and EM elevation
+     * angles, from the specified origin to the aircraft that may lie within the
+     * specified range, in one pass.  Aircraft are found through the world's
+     * spatial index, so the cost follows the number of aircraft nearby rather
+     * than the number in the world.  The results are indexed by the position of
+     * the aircraft in getScanAircraft().
+     * @param origin location from which the geometry is computed.
+     * @param range range in nmi beyond which aircraft need not be examined.
+     * @param angles true if azimuth and elevation angles are needed.
+     * @return number of aircraft.
+     */
+    protected int computeScanGeometry(Double3D origin, double range,
+        boolean angles)
+    {
+        List<Aircraft> aircraft = scan_candidates;
+        aircraft.clear();
+        getWorld().collectAircraft(origin, range, aircraft);
+        int n = aircraft.size();
+
+        if (scan_aircraft.length < n)
+        {
+            scan_aircraft = new Aircraft[n];
+            scan_range_sq = new double[n];
+            scan_azimuth = new double[n];
+            scan_elevation = new double[n];
+        }
+
+        int i = 0;
+        for (Aircraft ac : aircraft)
+        {
+            scan_aircraft[i++] = ac;
+        }
+
+        getWorld().getGeometry().bulkGeometry(origin, scan_aircraft, n,
+            IEarthModel.EarthFactor.EM_EARTH, scan_range_sq,
+            angles ? scan_azimuth : null, angles ? scan_elevation : null);
+
+        return n;
+    }
+
+    /**
+     * Returns the aircraft of the last call to computeScanGeometry.
+     * @return array of aircraft.
+     */
+    protected Aircraft[] getScanAircraft()
+    {
+        return scan_aircraft;
+    }
+
+    /**
+     * Returns the range-squared to each aircraft of the last call to computeScanGeometry.
+     * @return array of range-squared in n.mi.-squared.
+     */
+    protected double[] getScanRangeSq()
+    {
+        return scan_range_sq;
+    }
+
+    /**
+     * Returns the azimuth to each aircraft of the last call to computeScanGeometry.
+     * @return array of azimuth angles in radians.
+     */
+    protected double[] getScanAzimuth()
+    {
+        return scan_azimuth;
+    }
+
+    /**
+     * Returns the EM elevation to each aircraft of the last call to computeScanGeometry.
+     * @return array of elevation angles in radians.
+     */
+    protected double[] getScanElevation()
+    {
+        return scan_elevation;
+    }
+
     /**
      * Sets the jammed detection range of the radar vs. a one-square-meter target.
      * @param jammed_range jammed range in n.mi.
@@ -752,13 +844,15 @@ public class Radar extends CMSystem implements Paintable, ISIMDIS
 
         this.jamming_source = null;
 
-        //  Loop over all jammers, take the largest one
+        JammingMatrix matrix = getWorld().getJammingMatrix();
+
+        //  Loop over all jammers, take the largest one.  The matrix returns 0 for
+        //  jammers that cannot jam this radar or have no LOS to it.
         for (Jammer j : getWorld().getJammers())
         {
-            if (j.getParent().getStatus() == Platform.Status.ACTIVE && getWorld().
-                getEMLOSUtil().hasLOS(j.getParent(), getParent()))
+            if (j.getParent().getStatus() == Platform.Status.ACTIVE)
             {
-                double k = j.jammingEffectiveness(this);
+                double k = matrix.effectiveness(j, this);
 
                 //  Jammers get tracked for free if they are jamming me.
                 if (k > 0.)
@@ -782,6 +876,24 @@ public class Radar extends CMSystem implements Paintable, ISIMDIS
         this.setJammedRange(this.getReferenceRange() * (1. - j_effectiveness));
     }
 
+    /**
+     * Returns whether any jammer in the world is on an active platform.
+     * Finding the jammed range tracks such jammers as a side effect, so scans
+     * that find it once per target must not drop targets by range first.
+     * @return true if some jammer is active.
+     */
+    protected boolean isJammerActive()
+    {
+        for (Jammer j : getWorld().getJammers())
+        {
+            if (j.getParent().getStatus() == Platform.Status.ACTIVE)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Scans the radar to look for tracks.  This is called by ScanBehavior.
      * @param current_time current time.
@@ -800,8 +912,6 @@ public class Radar extends CMSystem implements Paintable, ISIMDIS
 
         findJammedRange();
 
-        Double3D myLoc = parent.getLocation();
-
         double j_sq = jammed_range * jammed_range;
         //  Now check each aircraft for detection   --  no...check assigned aircraft for detection
         if (getParent().getSuperior() instanceof SAMSite &&
@@ -820,9 +930,8 @@ public class Radar extends CMSystem implements Paintable, ISIMDIS
                 double r_sq = j_sq * Math.sqrt(ac.getRCS());
                 if (r_sq > 0.)
                 {
-                    Double3D acLoc = ac.getLocation();
                     double d_sq =
-                        CMWorld.getEarthModel().trueDistanceSq(myLoc, acLoc);
+                        getWorld().getPairGeometry().trueDistanceSq(parent, ac);
 
                     if (ac.getStatus() == Platform.Status.ACTIVE && d_sq < r_sq)
                     {
@@ -840,28 +949,30 @@ public class Radar extends CMSystem implements Paintable, ISIMDIS
         }
         else
         {
-            for (Aircraft ac : getWorld().getAircraft())
+            int n = computeScanGeometry(parent.getLocation(),
+                maxDetectionRange(jammed_range), false);
+            DetectionPipeline pipeline = getDetectionPipeline();
+
+            for (int i = 0; i < n; i++)
             {
+                Aircraft ac = scan_aircraft[i];
+
                 //  Adjust range-squared for rcs
                 double r_sq = j_sq * Math.sqrt(ac.getRCS());
 
-                if (r_sq > 0. && getWorld().getEMLOSUtil().hasLOS(getParent(),
-                    ac))
+                if (pipeline.status(ac) &&
+                    pipeline.classification(r_sq > 0.) &&
+                    pipeline.rangeStrict(scan_range_sq[i], r_sq) &&
+                    pipeline.los(getWorld().getEMLOSUtil(), getParent(), ac))
                 {
-                    Double3D acLoc = ac.getLocation();
-                    double d_sq =
-                        CMWorld.getEarthModel().trueDistanceSq(myLoc, acLoc);
+                    pipeline.detected();
+                    blips.add(ac);
 
-                    if (ac.getStatus() == Platform.Status.ACTIVE && d_sq < r_sq)
+                    //  This checks for a track condition of 2 consecutive blips
+                    if (prev_blips.contains(ac))
                     {
-                        blips.add(ac);
-
-                        //  This checks for a track condition of 2 consecutive blips
-                        if (prev_blips.contains(ac))
-                        {
-                            tracks.add(ac);
-                            dropped_tracks.remove(ac);
-                        }
+                        tracks.add(ac);
+                        dropped_tracks.remove(ac);
                     }
                 }
             }
@@ -892,6 +1003,19 @@ public class Radar extends CMSystem implements Paintable, ISIMDIS
         }
     }
 
+    /**
+     * Returns the range beyond which no aircraft can be detected when the
+     * detection range of the radar against a 1 square meter target is as
+     * specified.  Detection range scales with the fourth root of RCS, so this
+     * is the range against the largest aircraft in the world.
+     * @param range detection range against a unit RCS target in nmi.
+     * @return greatest detection range in nmi.
+     */
+    protected double maxDetectionRange(double range)
+    {
+        return range * Math.sqrt(Math.sqrt(getWorld().getMaxAircraftRCS()));
+    }
+
     /**
      * Behavior to periodically scan the radar.
      */
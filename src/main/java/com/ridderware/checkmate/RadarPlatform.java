@@ -224,12 +224,12 @@ public class RadarPlatform extends UncertainLocationPlatform implements IRadarTr
                 }
 
                 Double3D loc = null;
-                if (CMWorld.getEarthModel().getCoordinateSystem().
+                if (getWorld().getGeometry().getCoordinateSystem().
                     equalsIgnoreCase("ENU"))
                 {
                     loc = this.getLocation();
                 }
-                else if (CMWorld.getEarthModel().getCoordinateSystem().
+                else if (getWorld().getGeometry().getCoordinateSystem().
                     equalsIgnoreCase("LLA"))
                 {
                     loc = new Double3D(getLocation().getY(),
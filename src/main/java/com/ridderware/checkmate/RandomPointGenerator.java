@@ -136,7 +136,7 @@ public class RandomPointGenerator implements IXML
 
         Space space = world.getSpace();
 
-        IEarthModel e = CMWorld.getEarthModel();
+        IEarthModel e = world.getGeometry();
 
         Double3D centroid3D = new Double3D(centroid);
 
@@ -150,7 +150,7 @@ public class RandomPointGenerator implements IXML
 
         if (space != null)
         {
-            if (CMWorld.getEarthModel().getCoordinateSystem().
+            if (world.getGeometry().getCoordinateSystem().
                 equalsIgnoreCase("ENU"))
             {
                 xmin = space.getXmin();
@@ -158,7 +158,7 @@ public class RandomPointGenerator implements IXML
                 ymin = space.getYmin();
                 ymax = space.getYmax();
             }
-            else if (CMWorld.getEarthModel().getCoordinateSystem().
+            else if (world.getGeometry().getCoordinateSystem().
                 equalsIgnoreCase("LLA"))
             {
                 xmin = space.getYmin();
@@ -208,7 +208,7 @@ public class RandomPointGenerator implements IXML
 
         Space space = world.getSpace();
 
-        IEarthModel e = CMWorld.getEarthModel();
+        IEarthModel e = world.getGeometry();
 
         Double3D centroid3D = new Double3D(centroid);
 
@@ -220,14 +220,14 @@ public class RandomPointGenerator implements IXML
         double ymin = -Double.MAX_VALUE;
         double ymax = Double.MAX_VALUE;
 
-        if (CMWorld.getEarthModel().getCoordinateSystem().equalsIgnoreCase("ENU"))
+        if (world.getGeometry().getCoordinateSystem().equalsIgnoreCase("ENU"))
         {
             xmin = space.getXmin();
             xmax = space.getXmax();
             ymin = space.getYmin();
             ymax = space.getYmax();
         }
-        else if (CMWorld.getEarthModel().getCoordinateSystem().
+        else if (world.getGeometry().getCoordinateSystem().
             equalsIgnoreCase("LLA"))
         {
             xmin = space.getYmin();
@@ -290,7 +290,7 @@ public class RandomPointGenerator implements IXML
                     !random)
                 {
                     Double2D ptcentroid = CMWorld.parsePoint2DNode(chicken);
-                    if (CMWorld.getEarthModel().getCoordinateSystem().
+                    if (world.getGeometry().getCoordinateSystem().
                         equalsIgnoreCase("LLA"))
                     {
                         this.setCentroid(new Double2D(AngleUnit.DD.convert(ptcentroid.getX(),
@@ -20,7 +20,9 @@
 package com.ridderware.checkmate;
 
 import com.ridderware.checkmate.Platform.Status;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import com.ridderware.fuse.Behavior;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -44,6 +46,9 @@ public abstract class Receiver extends CMSystem implements ISIMDIS
 
     private HashSet<Radar> tracks = new HashSet<>();
 
+    //  Scratch list of the radars examined by the current scan.
+    private final ArrayList<Radar> scan_radars = new ArrayList<>();
+
     private ScanReceiverBehavior scan_receiver_behavior;
 
     /**
@@ -152,6 +157,20 @@ public abstract class Receiver extends CMSystem implements ISIMDIS
         return tracks;
     }
 
+    /**
+     * Returns the radars whose platforms may be within the specified range of
+     * the receiver, found through the world's emitter index.  The list is
+     * reused by the next call.
+     * @param range greatest range in nmi at which any radar can be detected.
+     * @return list of candidate radars.
+     */
+    protected List<Radar> getScanRadars(double range)
+    {
+        scan_radars.clear();
+        getWorld().collectRadars(getParent().getLocation(), range, scan_radars);
+        return scan_radars;
+    }
+
     /**
      * Returns the scan period of the receiver.
      * @return scan period.
@@ -190,7 +209,7 @@ public abstract class Receiver extends CMSystem implements ISIMDIS
     public double calculateAoA(Radar tgt)
     {
         //  True angle without heading
-        double angle = CMWorld.getEarthModel().azimuthAngle(getParent().
+        double angle = getWorld().getGeometry().azimuthAngle(getParent().
             getLocation(), tgt.getParent().getLocation());
 
         //  Modify relative to nose heading of the parent
@@ -23,7 +23,9 @@ import com.ridderware.fuse.Double3D;
 import com.ridderware.fuse.MutableDouble3D;
 
 /**
- * Round Earth model.  
+ * Round Earth model.  The model holds no state, so one instance may be shared
+ * by any number of callers and threads.  Callers that repeatedly need the
+ * geometry between the same platforms should use PairGeometryCache.
  *
  * @author Jeff Ridder
  */
@@ -32,23 +34,9 @@ public class RoundEarth implements IEarthModel
     /** Earth's radius in nautical miles. */
     public static final double EARTH_RADIUS_NMI = 3443.887;
 
-    //  Arc angle corresponding to the two points.  Prevents recalculation unless necessary.
-    private double arc_angle;
-
-    private double true_dist = 0;
-
-    private MutableDouble3D arc_pt1;
-
-    private MutableDouble3D arc_pt2;
-
     /** Creates a new instance of RoundEarth */
     public RoundEarth()
     {
-//        this.returnable_location = new MutableDouble3D();
-        this.arc_angle = -1;
-        this.true_dist = -1;
-        this.arc_pt1 = new MutableDouble3D();
-        this.arc_pt2 = new MutableDouble3D();
     }
 
     /**
@@ -72,23 +60,7 @@ public class RoundEarth implements IEarthModel
     @Override
     public final double trueDistance(Double3D pt1, Double3D pt2)
     {
-        double distance;
-        if (this.arc_pt1.equals(pt1) && this.arc_pt2.equals(pt2) &&
-            this.true_dist >= 0.)
-        {
-            distance = this.true_dist;
-        }
-        else
-        {
-            final double arc = gcAlpha(pt1, pt2);
-            final double h1 = pt1.getZ() + EARTH_RADIUS_NMI;
-            final double h2 = pt2.getZ() + EARTH_RADIUS_NMI;
-
-            distance = Math.sqrt(h1 * h1 + h2 * h2 - 2. * h1 * h2 *
-                Math.cos(arc));
-            this.true_dist = distance;
-        }
-        return distance;
+        return Math.sqrt(trueDistanceSq(pt1, pt2));
     }
 
     /**
@@ -103,21 +75,209 @@ public class RoundEarth implements IEarthModel
     @Override
     public final double trueDistanceSq(Double3D pt1, Double3D pt2)
     {
-        double distSq;
-        if (this.arc_pt1.equals(pt1) && this.arc_pt2.equals(pt2) &&
-            this.true_dist >= 0.)
+        return trueDistanceSq(pt1, pt2, gcAlpha(pt1, pt2));
+    }
+
+    /**
+     *  Returns the square of the true line-of-site distance between two points
+     *  given their great circle arc angle.
+     *
+     * @param  pt1  Double3D object of point 1.
+     * @param  pt2  Double3D object of point 2.
+     * @param  arc  arc angle between the points (result of gcAlpha).
+     * @return      square of the line of site distance in nmi-squared.
+     */
+    private static double trueDistanceSq(Double3D pt1, Double3D pt2,
+        double arc)
+    {
+        final double h1 = pt1.getZ() + EARTH_RADIUS_NMI;
+        final double h2 = pt2.getZ() + EARTH_RADIUS_NMI;
+
+        return h1 * h1 + h2 * h2 - 2. * h1 * h2 * Math.cos(arc);
+    }
+
+    /**
+     *  Computes the line-of-site distance between two platforms from their cached
+     *  Earth-centered unit vectors, avoiding the trig of the point-based version.
+     *
+     * @param  p1  platform 1.
+     * @param  p2  platform 2.
+     * @return     line of site distance in nmi.
+     */
+    public final double trueDistance(Platform p1, Platform p2)
+    {
+        return Math.sqrt(trueDistanceSq(p1, p2));
+    }
+
+    /**
+     *  Computes the square of the line-of-site distance between two platforms from
+     *  their cached Earth-centered unit vectors.
+     *
+     * @param  p1  platform 1.
+     * @param  p2  platform 2.
+     * @return     square of the line of site distance in nmi-squared.
+     */
+    public final double trueDistanceSq(Platform p1, Platform p2)
+    {
+        final Double3D u1 = p1.getEarthUnitVector();
+        final Double3D u2 = p2.getEarthUnitVector();
+        final double h1 = p1.getLocation().getZ() + EARTH_RADIUS_NMI;
+        final double h2 = p2.getLocation().getZ() + EARTH_RADIUS_NMI;
+
+        final double dx = h1 * u1.getX() - h2 * u2.getX();
+        final double dy = h1 * u1.getY() - h2 * u2.getY();
+        final double dz = h1 * u1.getZ() - h2 * u2.getZ();
+
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     *  Calculates the elevation angle from platform 1 to platform 2 using their
+     *  cached Earth-centered unit vectors.
+     *
+     * @param  p1     platform 1
+     * @param  p2     platform 2
+     * @param  k      Earth factor
+     * @return        elevation angle in radians.
+     */
+    public final double elevationAngle(Platform p1, Platform p2, EarthFactor k)
+    {
+        final double distance = trueDistance(p1, p2);
+
+        final double rh1 = EARTH_RADIUS_NMI * k.value() + p1.getLocation().getZ();
+        final double rh2 = EARTH_RADIUS_NMI * k.value() + p2.getLocation().getZ();
+
+        return Math.acos((rh1 * rh1 + distance * distance - rh2 * rh2) / 2. /
+            rh1 / distance) - Math.PI / 2.;
+    }
+
+    /**
+     *  Computes the range-squared, azimuth and elevation from one origin to each of a set of
+     *  target points in a single pass.  The great circle arc is computed once per target and
+     *  shared by all three quantities.
+     *
+     * @param  origin     origin point in LLA.
+     * @param  targets    target points in LLA.
+     * @param  count      number of targets to process.
+     * @param  k          Earth factor for the elevation angles.
+     * @param  range_sq   receives the square of the line of site distances in nmi-squared, or null.
+     * @param  azimuth    receives the azimuth angles between +/- PI in radians, or null.
+     * @param  elevation  receives the elevation angles in radians, or null.
+     */
+    @Override
+    public final void bulkGeometry(Double3D origin, Double3D[] targets,
+        int count, EarthFactor k, double[] range_sq, double[] azimuth,
+        double[] elevation)
+    {
+        final double rh0 = EARTH_RADIUS_NMI * k.value() + origin.getZ();
+
+        for (int i = 0; i < count; i++)
         {
-            distSq = this.true_dist * this.true_dist;
+            final Double3D pt = targets[i];
+            final double arc = gcAlpha(origin, pt);
+            final double d_sq = trueDistanceSq(origin, pt, arc);
+
+            if (range_sq != null)
+            {
+                range_sq[i] = d_sq;
+            }
+            if (azimuth != null)
+            {
+                azimuth[i] = AngleUnit.normalizeAngle(gcBearing(origin, pt, arc),
+                    -Math.PI);
+            }
+            if (elevation != null)
+            {
+                final double distance = Math.sqrt(d_sq);
+                final double rh = EARTH_RADIUS_NMI * k.value() + pt.getZ();
+                elevation[i] = Math.acos((rh0 * rh0 + d_sq - rh * rh) / 2. /
+                    rh0 / distance) - Math.PI / 2.;
+            }
         }
-        else
+    }
+
+    /**
+     *  Computes the range-squared, azimuth and elevation from one origin to each of a set of
+     *  target platforms in a single pass, using the platforms' cached Earth-centered unit
+     *  vectors.  Only the origin's unit vector and local axes require trig.  The azimuth is
+     *  the bearing of the target's unit vector projected onto the origin's local horizontal
+     *  plane, which is the initial great circle bearing.
+     *
+     * @param  origin     origin point in LLA.
+     * @param  targets    target platforms.
+     * @param  count      number of targets to process.
+     * @param  k          Earth factor for the elevation angles.
+     * @param  range_sq   receives the square of the line of site distances in nmi-squared, or null.
+     * @param  azimuth    receives the azimuth angles between +/- PI in radians, or null.
+     * @param  elevation  receives the elevation angles in radians, or null.
+     */
+    public final void bulkGeometry(Double3D origin, Platform[] targets,
+        int count, EarthFactor k, double[] range_sq, double[] azimuth,
+        double[] elevation)
+    {
+        final double sin_lat = Math.sin(origin.getX());
+        final double cos_lat = Math.cos(origin.getX());
+        final double sin_lon = Math.sin(origin.getY());
+        final double cos_lon = Math.cos(origin.getY());
+
+        //  Origin unit vector, and its local east and north axes.
+        final double ux = cos_lat * cos_lon;
+        final double uy = cos_lat * sin_lon;
+        final double uz = sin_lat;
+        final double ex = -sin_lon;
+        final double ey = cos_lon;
+        final double nx = -sin_lat * cos_lon;
+        final double ny = -sin_lat * sin_lon;
+        final double nz = cos_lat;
+
+        final double h0 = EARTH_RADIUS_NMI + origin.getZ();
+        final double rh0 = EARTH_RADIUS_NMI * k.value() + origin.getZ();
+
+        for (int i = 0; i < count; i++)
         {
-            final double arc = gcAlpha(pt1, pt2);
-            final double h1 = pt1.getZ() + EARTH_RADIUS_NMI;
-            final double h2 = pt2.getZ() + EARTH_RADIUS_NMI;
+            final Double3D u = targets[i].getEarthUnitVector();
+            final double z = targets[i].getLocation().getZ();
+            final double h = EARTH_RADIUS_NMI + z;
+
+            final double dx = h * u.getX() - h0 * ux;
+            final double dy = h * u.getY() - h0 * uy;
+            final double dz = h * u.getZ() - h0 * uz;
+            final double d_sq = dx * dx + dy * dy + dz * dz;
 
-            distSq = h1 * h1 + h2 * h2 - 2. * h1 * h2 * Math.cos(arc);
+            if (range_sq != null)
+            {
+                range_sq[i] = d_sq;
+            }
+            if (azimuth != null)
+            {
+                final double east = u.getX() * ex + u.getY() * ey;
+                final double north = u.getX() * nx + u.getY() * ny + u.getZ() *
+                    nz;
+                azimuth[i] = AngleUnit.normalizeAngle(Math.atan2(east, north),
+                    -Math.PI);
+            }
+            if (elevation != null)
+            {
+                final double distance = Math.sqrt(d_sq);
+                final double rh = EARTH_RADIUS_NMI * k.value() + z;
+                elevation[i] = Math.acos((rh0 * rh0 + d_sq - rh * rh) / 2. /
+                    rh0 / distance) - Math.PI / 2.;
+            }
         }
-        return distSq;
+    }
+
+    /**
+     *  Computes the unit vector from the Earth's center through an LLA point.
+     *
+     * @param  pt  LLA coordinates of the point.
+     * @param  u   receives the unit vector in Earth-centered, Earth-fixed axes.
+     */
+    public static void unitVector(Double3D pt, MutableDouble3D u)
+    {
+        final double cos_lat = Math.cos(pt.getX());
+
+        u.setXYZ(cos_lat * Math.cos(pt.getY()), cos_lat * Math.sin(pt.getY()),
+            Math.sin(pt.getX()));
     }
 
     /**
@@ -180,11 +340,7 @@ public class RoundEarth implements IEarthModel
     {
         //	From distance calcs worksheet
         final double angular_dist = gcAlpha(pt1, pt2);
-        double td = this.true_dist;
-        if (td < 0.)
-        {
-            td = trueDistance(pt1, pt2);
-        }
+        final double td = Math.sqrt(trueDistanceSq(pt1, pt2, angular_dist));
 
 //        double fraction = Math.min(1., distance / (angular_dist * 180. * 60. / Math.PI));
         //  This fraction is the fraction of the 3D distance, while the one commented out above is the fraction
@@ -260,11 +416,7 @@ public class RoundEarth implements IEarthModel
     {
         double arc = -1.;
 
-        if (this.arc_pt1.equals(pt1) && this.arc_pt2.equals(pt2))
-        {
-            arc = this.arc_angle;
-        }
-        else if (pt1 != null && pt2 != null)
+        if (pt1 != null && pt2 != null)
         {
             final double x1 = pt1.getX();
             final double x2 = pt2.getX();
@@ -283,11 +435,6 @@ public class RoundEarth implements IEarthModel
             final double cosy21 = Math.cos(pt2.getY() - pt1.getY());
             arc = Math.acos(0.5 * ((1 + cosy21) * Math.cos(x1 - x2) + (cosy21 -
                 1) * Math.cos(x1 + x2)));
-
-            this.arc_angle = arc;
-            this.true_dist = -1;
-            this.arc_pt1.setXYZ(pt1);
-            this.arc_pt2.setXYZ(pt2);
         }
         return arc;
     }
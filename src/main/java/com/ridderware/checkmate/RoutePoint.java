@@ -52,6 +52,9 @@ public class RoutePoint implements IXML
 
     private double orbit_time;
 
+    //  Coordinate system in which the point is written to XML.
+    private String coordinate_system = "ENU";
+
     /** Creates a new instance of RoutePoint */
     public RoutePoint()
     {
@@ -234,6 +237,16 @@ public class RoutePoint implements IXML
         }
     }
 
+    /**
+     * Sets the coordinate system ("ENU" or "LLA") in which the point is written
+     * to XML.
+     * @param coordinate_system coordinate system of the world.
+     */
+    public void setCoordinateSystem(String coordinate_system)
+    {
+        this.coordinate_system = coordinate_system;
+    }
+
     /**
      * Creates XML nodes containing the points attributes.
      *
@@ -250,7 +263,7 @@ public class RoutePoint implements IXML
 
         //  Create elephants
 
-        if (CMWorld.getEarthModel().getCoordinateSystem().equalsIgnoreCase("LLA"))
+        if (coordinate_system.equalsIgnoreCase("LLA"))
         {
             //  We're going to write out as DD
             e = CMWorld.createPoint3DNode(new Double3D(AngleUnit.RADIANS.convert(point.getX(), AngleUnit.DD),
@@ -140,7 +140,7 @@ public abstract class RoutePointsBehavior extends MovePlatformBehavior
 
             if (route.getRoutePoints().size() > 1)
             {
-                getPlatform().setHeading(CMWorld.getEarthModel().
+                getPlatform().setHeading(getPlatform().getWorld().getGeometry().
                     azimuthAngle(getPlatform().getLocation(), route.getRoutePoints().
                     get(1).getPoint()));
             }
@@ -272,7 +272,7 @@ public abstract class RoutePointsBehavior extends MovePlatformBehavior
         double distance = 0.;
         for (int i = 0; i < route.getRoutePoints().size() - 1; i++)
         {
-            distance += CMWorld.getEarthModel().trueDistance(route.getRoutePoints().
+            distance += getPlatform().getWorld().getGeometry().trueDistance(route.getRoutePoints().
                 get(i).getPoint(),
                 route.getRoutePoints().get(i + 1).getPoint());
         }
@@ -830,7 +830,7 @@ public class SAMBattalion extends TargetAssignmentC2
                 double xmax = 0.0;
                 double ymin = 0.0;
                 double ymax = 0.0;
-                if (CMWorld.getEarthModel().getCoordinateSystem().
+                if (getWorld().getGeometry().getCoordinateSystem().
                     equalsIgnoreCase("ENU"))
                 {
                     xmin = space.getXmin();
@@ -843,7 +843,7 @@ public class SAMBattalion extends TargetAssignmentC2
                 }
                 else
                 {
-                    if (CMWorld.getEarthModel().getCoordinateSystem().
+                    if (getWorld().getGeometry().getCoordinateSystem().
                         equalsIgnoreCase("LLA"))
                     {
                         xmin = space.getYmin();
@@ -863,18 +863,18 @@ public class SAMBattalion extends TargetAssignmentC2
                     Double2D centroid = rpg.getCentroid();
                     Double3D centroid3D = new Double3D(centroid);
                     double d =
-                        CMWorld.getEarthModel().trueDistance(getLocation(),
+                        getWorld().getGeometry().trueDistance(getLocation(),
                         centroid3D);
                     if (d > 0.)
                     {
-                        double centroid_heading = CMWorld.getEarthModel().
+                        double centroid_heading = getWorld().getGeometry().
                             azimuthAngle(getLocation(), centroid3D);
                         double sigma = rpg.getRandomRadius() / d * Math.PI / 2.;
                         double angle = centroid_heading + getRNG().nextGaussian() *
                             sigma;
 
                         double distance = getRNG().nextDouble() * max_distance;
-                        Double3D new_loc = CMWorld.getEarthModel().
+                        Double3D new_loc = getWorld().getGeometry().
                             projectLocation(getLocation(), distance, angle);
                         destination_location =
                             new Double2D(new_loc.getX(),
@@ -33,15 +33,22 @@ public class SAMFlyoutBehavior extends MovePlatformBehavior
 {
     private double start_kinematic_update_period;
 
-    private static boolean bThrottled;
-
     private boolean imThrottled;
 
-    private static int samsThrottled;
-
     private static final Logger logger =
         LogManager.getLogger(SAMFlyoutBehavior.class);
 
+    /**
+     * Missile throttling state shared by all SAM flyouts in a world.  While any
+     * missile is in its endgame, kinematic updates are run at a faster rate.
+     */
+    public static class ThrottleState
+    {
+        private boolean bThrottled;
+
+        private int samsThrottled;
+    }
+
     /** Creates a new instance of SAMFlyoutBehavior
      * @param platform SAM object controlled by this behavior.
      */
@@ -58,15 +65,26 @@ public class SAMFlyoutBehavior extends MovePlatformBehavior
     {
         super.initialize();
 
-        if (bThrottled)
+        ThrottleState throttle = getThrottleState();
+
+        if (throttle.bThrottled)
         {
             this.setKinematicUpdatePeriod(start_kinematic_update_period);
         }
-        bThrottled = false;
-        samsThrottled = 0;
+        throttle.bThrottled = false;
+        throttle.samsThrottled = 0;
         imThrottled = false;
     }
 
+    /**
+     * Returns the throttling state of the world in which the SAM plays.
+     * @return throttle state.
+     */
+    private ThrottleState getThrottleState()
+    {
+        return getPlatform().getWorld().getSAMThrottleState();
+    }
+
     /**
      * Updates the guidance mode based on current conditions.
      * @param time current time.
@@ -187,7 +205,7 @@ public class SAMFlyoutBehavior extends MovePlatformBehavior
         if (target != null && target instanceof MobilePlatform)
         {
             prev_angle =
-                CMWorld.getEarthModel().azimuthAngle(p.getLocation(),
+                getPlatform().getWorld().getGeometry().azimuthAngle(p.getLocation(),
                 target.getLocation());
             ((MobilePlatform) target).movePlatform(time);
         }
@@ -218,7 +236,7 @@ public class SAMFlyoutBehavior extends MovePlatformBehavior
         //     detonation and Pk roll of dice.
 
         //  Distance to target
-        double dt = CMWorld.getEarthModel().trueDistance(p.getLocation(),
+        double dt = getPlatform().getWorld().getGeometry().trueDistance(p.getLocation(),
             target.getLocation());
 
         p.accrueDistanceMoved(distance);
@@ -238,7 +256,7 @@ public class SAMFlyoutBehavior extends MovePlatformBehavior
                     p.getSpeed());
 
                 double angle_to_target =
-                    CMWorld.getEarthModel().azimuthAngle(p.getLocation(),
+                    getPlatform().getWorld().getGeometry().azimuthAngle(p.getLocation(),
                     target.getLocation());
 
                 double diff_angle = angle_to_target - p.getHeading();
@@ -278,8 +296,8 @@ public class SAMFlyoutBehavior extends MovePlatformBehavior
 
                 p.setHeading(new_heading);
 
-                p.setElevationAngle(CMWorld.getEarthModel().elevationAngle(p.getLocation(),
-                    target.getLocation(), IEarthModel.EarthFactor.REAL_EARTH) - CMWorld.getEarthModel().
+                p.setElevationAngle(getPlatform().getWorld().getGeometry().elevationAngle(p.getLocation(),
+                    target.getLocation(), IEarthModel.EarthFactor.REAL_EARTH) - getPlatform().getWorld().getGeometry().
                     elevationAngle(p.getLocation(), new Double3D(target.getLocation().
                     getX(), target.getLocation().getY(),
                     p.getLocation().getZ()), IEarthModel.EarthFactor.REAL_EARTH));
@@ -287,7 +305,7 @@ public class SAMFlyoutBehavior extends MovePlatformBehavior
             case BALLISTIC:
                 //  Heading does not change...fly the heading.
                 double xydist = distance * Math.cos(p.getElevationAngle());
-                MutableDouble3D new_loc = new MutableDouble3D(CMWorld.getEarthModel().
+                MutableDouble3D new_loc = new MutableDouble3D(getPlatform().getWorld().getGeometry().
                     projectLocation(p.getLocation(), xydist, p.getHeading()));
 
                 new_loc.setZ(p.getLocation().getZ() + distance *
@@ -304,9 +322,9 @@ public class SAMFlyoutBehavior extends MovePlatformBehavior
             //  This is a hack because the heading may change suddenly due to the pure pursuit
             //  course we are flying.  Would be better to up the turn rate prior to hitting the target,
             //  anticipating the end game.
-            p.setHeading(CMWorld.getEarthModel().azimuthAngle(p.getLocation(),
+            p.setHeading(getPlatform().getWorld().getGeometry().azimuthAngle(p.getLocation(),
                 target.getLocation()));
-            p.setElevationAngle(CMWorld.getEarthModel().elevationAngle(p.getLocation(),
+            p.setElevationAngle(getPlatform().getWorld().getGeometry().elevationAngle(p.getLocation(),
                 target.getLocation(), IEarthModel.EarthFactor.REAL_EARTH));
             p.setLocation(target.getLocation());
 
@@ -337,16 +355,18 @@ public class SAMFlyoutBehavior extends MovePlatformBehavior
 
             p.killWeapon();
 
+            ThrottleState throttle = getThrottleState();
+
             if (imThrottled)
             {
-                samsThrottled--;
+                throttle.samsThrottled--;
                 imThrottled = false;
             }
 
-            if (bThrottled && samsThrottled == 0)
+            if (throttle.bThrottled && throttle.samsThrottled == 0)
             {
                 this.setKinematicUpdatePeriod(this.start_kinematic_update_period);
-                bThrottled = false;
+                throttle.bThrottled = false;
             }
         }
         else
@@ -365,14 +385,16 @@ public class SAMFlyoutBehavior extends MovePlatformBehavior
 
             if (dt < 0.15 * p.getLethalRange() && !imThrottled)
             {
-                samsThrottled++;
+                ThrottleState throttle = getThrottleState();
+
+                throttle.samsThrottled++;
                 imThrottled = true;
 
-                if (!bThrottled)
+                if (!throttle.bThrottled)
                 {
                     this.setKinematicUpdatePeriod(0.1 *
                         this.start_kinematic_update_period);
-                    bThrottled = true;
+                    throttle.bThrottled = true;
                 }
             }
         }
@@ -1322,7 +1322,7 @@ public class SAMSite extends TargetAssignmentC2
 
                     //  Schedule TT activation.
                     //  Estimate time to impact and schedule TTR for the future.
-                    double d = CMWorld.getEarthModel().trueDistance(getLocation(), engaged_target.getTarget().
+                    double d = getWorld().getGeometry().trueDistance(getLocation(), engaged_target.getTarget().
                         getLocation());
                     double v = 0.;
                     for (Platform p : this.engaged_target.getShooter().
@@ -1821,7 +1821,7 @@ public class SAMSite extends TargetAssignmentC2
                 double xmax = 0.0;
                 double ymin = 0.0;
                 double ymax = 0.0;
-                if (CMWorld.getEarthModel().getCoordinateSystem().
+                if (getWorld().getGeometry().getCoordinateSystem().
                     equalsIgnoreCase("ENU"))
                 {
                     xmin = space.getXmin();
@@ -1831,7 +1831,7 @@ public class SAMSite extends TargetAssignmentC2
                 }
                 else
                 {
-                    if (CMWorld.getEarthModel().getCoordinateSystem().
+                    if (getWorld().getGeometry().getCoordinateSystem().
                         equalsIgnoreCase("LLA"))
                     {
                         xmin = space.getYmin();
@@ -1847,18 +1847,18 @@ public class SAMSite extends TargetAssignmentC2
                     Double2D centroid = rpg.getCentroid();
                     Double3D centroid3D = new Double3D(centroid);
                     double d =
-                        CMWorld.getEarthModel().trueDistance(getLocation(),
+                        getWorld().getGeometry().trueDistance(getLocation(),
                         centroid3D);
                     if (d > 0.)
                     {
-                        double centroid_heading = CMWorld.getEarthModel().
+                        double centroid_heading = getWorld().getGeometry().
                             azimuthAngle(getLocation(), centroid3D);
                         double sigma = rpg.getRandomRadius() / d * Math.PI / 2.;
                         double angle = centroid_heading + getRNG().nextGaussian() *
                             sigma;
 
                         double distance = getRNG().nextDouble() * max_distance;
-                        Double3D new_loc = CMWorld.getEarthModel().
+                        Double3D new_loc = getWorld().getGeometry().
                             projectLocation(getLocation(), distance, angle);
                         destination_location = new Double2D(new_loc.getX(),
                             new_loc.getY());
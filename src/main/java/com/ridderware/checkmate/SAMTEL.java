@@ -108,12 +108,12 @@ public class SAMTEL extends UncertainLocationPlatform implements IShooterContain
             }
 
             Double3D loc = null;
-            if (CMWorld.getEarthModel().getCoordinateSystem().
+            if (getWorld().getGeometry().getCoordinateSystem().
                 equalsIgnoreCase("ENU"))
             {
                 loc = this.getLocation();
             }
-            else if (CMWorld.getEarthModel().getCoordinateSystem().
+            else if (getWorld().getGeometry().getCoordinateSystem().
                 equalsIgnoreCase("LLA"))
             {
                 loc = new Double3D(getLocation().getY(), getLocation().getX(), getLocation().
@@ -243,7 +243,7 @@ public class SAMTEL extends UncertainLocationPlatform implements IShooterContain
                     {
                         engageability =
                             Math.min(engageability,
-                            CMWorld.getEarthModel().trueDistance(getLocation(),
+                            getWorld().getGeometry().trueDistance(getLocation(),
                             target.getLocation()) / s.getLethalRange());
                     }
                 }
@@ -89,37 +89,37 @@ public class SensitivityReceiver extends Receiver
 
         getTracks().clear();
 
+        //  The signal test draws a random gain, so there is no range beyond which
+        //  a radar cannot be detected.  It is made after the pipeline.
+        DetectionPipeline pipeline = getDetectionPipeline();
+
         for (Radar r : getWorld().getRadars())
         {
-            if (r.getParent().getStatus() == Platform.Status.ACTIVE && getWorld().
-                getEMLOSUtil().hasLOS(getParent(), r.getParent()))
+            if (pipeline.status(r.getParent()) && pipeline.emitting(r) &&
+                pipeline.classification(r.getFrequency() >= getFreqLow() &&
+                r.getFrequency() <= getFreqHigh()) &&
+                pipeline.los(getWorld().getEMLOSUtil(), getParent(),
+                r.getParent()))
             {
-                if (r.isEmitting())
+                //  Do signal strength calc && sensitivity test.
+                double distance = getWorld().getPairGeometry().
+                    trueDistance(getParent(), r.getParent());
+
+                double gain = r.getSidelobeGain() + getRNG().
+                    nextGaussian() * 6.;
+
+                double signal =
+                    DBUnit.dB(r.getPower()) + gain + 30. - 3. -
+                    (21.98 +
+                    2. *
+                    DBUnit.dB(LengthUnit.NAUTICAL_MILES.convert(distance,
+                    LengthUnit.METERS)) - 2. * DBUnit.dB(300. /
+                    r.getFrequency()));
+
+                if (signal > getSensitivity())
                 {
-                    if (r.getFrequency() >= getFreqLow() && r.getFrequency() <=
-                        getFreqHigh())
-                    {
-                        //  Do signal strength calc && sensitivity test.
-                        double distance = CMWorld.getEarthModel().
-                            trueDistance(getParent().getLocation(), r.getParent().
-                            getLocation());
-
-                        double gain = r.getSidelobeGain() + getRNG().
-                            nextGaussian() * 6.;
-
-                        double signal =
-                            DBUnit.dB(r.getPower()) + gain + 30. - 3. -
-                            (21.98 +
-                            2. *
-                            DBUnit.dB(LengthUnit.NAUTICAL_MILES.convert(distance,
-                            LengthUnit.METERS)) - 2. * DBUnit.dB(300. /
-                            r.getFrequency()));
-
-                        if (signal > getSensitivity())
-                        {
-                            getTracks().add(r);
-                        }
-                    }
+                    pipeline.detected();
+                    getTracks().add(r);
                 }
             }
         }
@@ -0,0 +1,180 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import java.util.Arrays;
+
+/**
+ * Sparse line-of-site cache used by {@link LOSUtil} when the number of
+ * platforms makes a dense whiteboard too large.  Only pairs that are actually
+ * queried are stored, in an open-addressing table of primitive longs of fixed
+ * size.  Each pair may live in any of a short window of slots starting at its
+ * hash; when the window is full, one of its slots is evicted round-robin.
+ * <p>
+ * Each entry records the cell generations of both platforms at the time the
+ * LOS was computed, and is only trusted while both generations still match.
+ *
+ * @author Jeff Ridder
+ */
+public class SparseLOSCache
+{
+    private static final int WINDOW = 8;
+
+    private final int mask;
+
+    //  Pair keys, 0 for an empty slot.  The higher index is never 0, so no
+    //  valid key is 0.
+    private final long[] keys;
+
+    //  Generation of the lower index, generation of the higher index (31 bits), LOS
+    private final long[] values;
+
+    private int victim = 0;
+
+    private int size = 0;
+
+    private long evictions = 0;
+
+    /**
+     * Creates a new instance of SparseLOSCache.
+     * @param capacity maximum number of pairs held, rounded up to a power of two.
+     */
+    public SparseLOSCache(int capacity)
+    {
+        int slots = Integer.highestOneBit(Math.max(capacity - 1, WINDOW)) << 1;
+        this.mask = slots - 1;
+        this.keys = new long[slots];
+        this.values = new long[slots];
+    }
+
+    /**
+     * Empties the cache.
+     */
+    public void clear()
+    {
+        Arrays.fill(keys, 0L);
+        size = 0;
+        victim = 0;
+    }
+
+    /**
+     * Returns the cached LOS between two platforms.
+     * @param lo the lower LOS index, strictly less than hi.
+     * @param hi the higher LOS index.
+     * @param gen_lo current cell generation of the lower platform.
+     * @param gen_hi current cell generation of the higher platform.
+     * @return 1 for LOS, 0 for no LOS, -1 if the pair is absent or stale.
+     */
+    public int get(int lo, int hi, int gen_lo, int gen_hi)
+    {
+        long key = key(lo, hi);
+        int slot = hash(key);
+        for (int k = 0; k < WINDOW; k++)
+        {
+            int s = (slot + k) & mask;
+            if (keys[s] == key)
+            {
+                long v = values[s];
+                if (v >>> 1 == stamp(gen_lo, gen_hi))
+                {
+                    return (int) (v & 1L);
+                }
+                return -1;
+            }
+            else if (keys[s] == 0L)
+            {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Stores the LOS between two platforms, evicting another pair if needed.
+     * @param lo the lower LOS index.
+     * @param hi the higher LOS index.
+     * @param gen_lo current cell generation of the lower platform.
+     * @param gen_hi current cell generation of the higher platform.
+     * @param los the line-of-site.
+     */
+    public void put(int lo, int hi, int gen_lo, int gen_hi, boolean los)
+    {
+        long key = key(lo, hi);
+        long value = (stamp(gen_lo, gen_hi) << 1) | (los ? 1L : 0L);
+        int slot = hash(key);
+        for (int k = 0; k < WINDOW; k++)
+        {
+            int s = (slot + k) & mask;
+            if (keys[s] == key)
+            {
+                values[s] = value;
+                return;
+            }
+            else if (keys[s] == 0L)
+            {
+                keys[s] = key;
+                values[s] = value;
+                size++;
+                return;
+            }
+        }
+
+        //  The window is full.  Evict.
+        int s = (slot + victim) & mask;
+        victim = (victim + 1) % WINDOW;
+        keys[s] = key;
+        values[s] = value;
+        evictions++;
+    }
+
+    /**
+     * Returns the number of pairs held.
+     * @return size.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the number of pairs evicted since creation.
+     * @return evictions.
+     */
+    public long getEvictions()
+    {
+        return evictions;
+    }
+
+    private static long key(int lo, int hi)
+    {
+        return ((long) lo << 32) | (hi & 0xffffffffL);
+    }
+
+    private static long stamp(int gen_lo, int gen_hi)
+    {
+        return ((gen_lo & 0xffffffffL) << 31) | (gen_hi & 0x7fffffffL);
+    }
+
+    private int hash(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+}
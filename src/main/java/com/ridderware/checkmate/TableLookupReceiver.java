@@ -48,6 +48,9 @@ public class TableLookupReceiver extends Receiver
 
     private double[] range_array;
 
+    //  Greatest detection range of any classification.
+    private double max_range = 0.;
+
     /**
      * Creates a new instance of TableLookupReceiver
      * @param name name of the receiver.
@@ -87,9 +90,11 @@ public class TableLookupReceiver extends Receiver
 
         range_array = new double[max_i + 1];
 
+        max_range = 0.;
         for (int i : classifications)
         {
             range_array[i] = detection_ranges.get(i);
+            max_range = Math.max(max_range, range_array[i]);
         }
     }
 
@@ -134,30 +139,22 @@ public class TableLookupReceiver extends Receiver
     {
         getTracks().clear();
 
-        Double3D myLocation = getParent().getLocation();
-
-        Set<Radar> radars = getWorld().getRadars();
+        DetectionPipeline pipeline = getDetectionPipeline();
 
-        for (Radar r : radars)
+        for (Radar r : getScanRadars(max_range))
         {
-            int classification = r.getClassification();
-
             Platform r_parent = r.getParent();
 
-            double range = range_array[classification];
+            double range = range_array[r.getClassification()];
 
-            if (r_parent.getStatus() == Platform.Status.ACTIVE && range > 0. && getWorld().
-                getEMLOSUtil().hasLOS(getParent(), r_parent))
+            if (pipeline.status(r_parent) && pipeline.emitting(r) &&
+                pipeline.classification(range > 0.) &&
+                pipeline.range(getWorld().getPairGeometry().trueDistanceSq(
+                getParent(), r_parent), range * range) &&
+                pipeline.los(getWorld().getEMLOSUtil(), getParent(), r_parent))
             {
-                if (r.isEmitting())
-                {
-                    //  Get distance, and check whether within range
-                    if (CMWorld.getEarthModel().trueDistanceSq(myLocation,
-                        r_parent.getLocation()) <= range * range)
-                    {
-                        getTracks().add(r);
-                    }
-                }
+                pipeline.detected();
+                getTracks().add(r);
             }
         }
     }
@@ -330,7 +327,7 @@ public class TableLookupReceiver extends Receiver
                     String.valueOf(time) + "\t1");
 
                 Space s = getWorld().getSpace();
-                double beamLength = CMWorld.getEarthModel().trueDistance(new Double3D(s.getXmin(), s.getYmin(), s.getZmin()),
+                double beamLength = getWorld().getGeometry().trueDistance(new Double3D(s.getXmin(), s.getYmin(), s.getZmin()),
                     new Double3D(s.getXmax(), s.getYmax(), s.getZmax()));
 
                 pw.println("BeamData\t" + beamID + "\t" + time +
@@ -24,6 +24,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Set;
 import com.ridderware.fuse.Double3D;
 import com.ridderware.fuse.Space;
@@ -56,6 +57,15 @@ public class ThreeLevelTableLookupReceiver extends Receiver
 
     private DetectionRanges[] range_array;
 
+    //  Greatest mainlobe detection range of any classification.
+    private double max_range = 0.;
+
+    //  Scratch arrays holding the radar platforms and their ranges for the
+    //  current scan.  These are grown as needed and reused from scan to scan.
+    private Platform[] scan_platforms = new Platform[0];
+
+    private double[] scan_range_sq = new double[0];
+
     /**
      * Creates a new instance of ThreeLevelTableLookupReceiver
      * @param name name of the receiver.
@@ -98,9 +108,12 @@ public class ThreeLevelTableLookupReceiver extends Receiver
 
         range_array = new DetectionRanges[max_i + 1];
 
+        max_range = 0.;
         for (int i : classifications)
         {
             range_array[i] = detection_ranges.get(i);
+            max_range = Math.max(max_range,
+                range_array[i].getMainlobeDetectionRange());
         }
     }
 
@@ -211,66 +224,91 @@ public class ThreeLevelTableLookupReceiver extends Receiver
     {
         getTracks().clear();
 
-        Double3D myLocation = getParent().getLocation();
+        //  No radar can be detected beyond its mainlobe detection range.
+        List<Radar> radars = getScanRadars(max_range);
 
-        Set<Radar> radars = getWorld().getRadars();
+        //  Range to every candidate radar in one pass.
+        int n = radars.size();
+        if (scan_platforms.length < n)
+        {
+            scan_platforms = new Platform[n];
+            scan_range_sq = new double[n];
+        }
 
-        for (Radar r : radars)
+        for (int i = 0; i < n; i++)
         {
-            int classification = r.getClassification();
+            scan_platforms[i] = radars.get(i).getParent();
+        }
+
+        getWorld().getGeometry().bulkGeometry(getParent().getLocation(),
+            scan_platforms, n, IEarthModel.EarthFactor.EM_EARTH, scan_range_sq,
+            null, null);
+
+        DetectionPipeline pipeline = getDetectionPipeline();
+
+        for (int i = 0; i < n; i++)
+        {
+            Radar r = radars.get(i);
 
             Platform r_parent = r.getParent();
 
-            //  Need to first determine which lobe we're in, and then pull the appropriate detection range for that
+            double range_sq = scan_range_sq[i];
 
-            if (r_parent.getStatus() == Platform.Status.ACTIVE && r.isEmitting() && getWorld().
-                getEMLOSUtil().hasLOS(r_parent, getParent()))
+            DetectionRanges drange = null;
+            if (range_array != null)
             {
-                double distance =
-                    CMWorld.getEarthModel().trueDistance(
-                    r_parent.getLocation(),
-                    myLocation);
-
-                DetectionRanges drange = null;
-                if (range_array != null)
-                {
-                    drange = range_array[classification];
-                }
+                drange = range_array[r.getClassification()];
+            }
 
-                double range = 0.;
-                if (drange != null && distance <=
-                    drange.getMainlobeDetectionRange())
-                {
-                    switch (this.getAntennaLobe(r))
-                    {
-                        case 0:
-                        {
-                            //  mainlobe
-                            range = drange.getMainlobeDetectionRange();
-                            break;
-                        }
-                        case 1:
-                        {
-                            //  sidelobe
-                            range = drange.getSidelobeDetectionRange();
-                            break;
-                        }
-                        case 2:
-                        default:
-                        {
-                            //  average sidelobe
-                            range = drange.getAverageSidelobeDetectionRange();
-                        }
-                    }
-                }
+            //  No lobe is detected beyond the mainlobe range, so that is checked
+            //  before determining which lobe we're in and pulling the
+            //  appropriate detection range for that.
+            if (pipeline.status(r_parent) && pipeline.emitting(r) &&
+                pipeline.classification(drange != null) &&
+                pipeline.range(range_sq, drange.getMainlobeDetectionRange() *
+                drange.getMainlobeDetectionRange()) &&
+                pipeline.lobe(range_sq <= lobeDetectionRangeSq(r, drange)) &&
+                pipeline.los(getWorld().getEMLOSUtil(), r_parent, getParent()))
+            {
+                pipeline.detected();
+                getTracks().add(r);
+            }
+        }
+    }
 
-                if (distance <= range)
-                {
-                    //  Get distance, and check whether within range
-                    getTracks().add(r);
-                }
+    /**
+     * Returns the square of the detection range of a radar for the lobe of its
+     * antenna in which the receiver lies.
+     * @param r target radar.
+     * @param drange detection ranges of the classification of the radar.
+     * @return square of the detection range in nmi-squared.
+     */
+    private double lobeDetectionRangeSq(Radar r, DetectionRanges drange)
+    {
+        double range;
+        switch (this.getAntennaLobe(r))
+        {
+            case 0:
+            {
+                //  mainlobe
+                range = drange.getMainlobeDetectionRange();
+                break;
+            }
+            case 1:
+            {
+                //  sidelobe
+                range = drange.getSidelobeDetectionRange();
+                break;
+            }
+            case 2:
+            default:
+            {
+                //  average sidelobe
+                range = drange.getAverageSidelobeDetectionRange();
             }
         }
+
+        return range * range;
     }
 
     /**
@@ -294,19 +332,17 @@ public class ThreeLevelTableLookupReceiver extends Receiver
             if (r.getAntenna() != null)
             {
                 Antenna a = r.getAntenna();
-                Double3D my_location = this.getParent().getLocation();
-                Double3D radar_location = r.getParent().getLocation();
 
                 //  First, gotta update the antenna to my time.
                 r.moveAntenna(getUniverse().getCurrentTime());
 
                 //  Get angle theta and phi between radar and jammer, and compare to the antenna boresight.
                 double theta =
-                    CMWorld.getEarthModel().azimuthAngle(radar_location,
-                    my_location);
+                    getWorld().getPairGeometry().azimuthAngle(r.getParent(),
+                    getParent());
                 double phi =
-                    CMWorld.getEarthModel().elevationAngle(radar_location,
-                    my_location, IEarthModel.EarthFactor.EM_EARTH);
+                    getWorld().getPairGeometry().elevationAngle(r.getParent(),
+                    getParent(), IEarthModel.EarthFactor.EM_EARTH);
 
                 //  Get az and el angles relative to antenna boresight
                 double az = theta - a.getBoresight().getX();
@@ -553,7 +589,7 @@ public class ThreeLevelTableLookupReceiver extends Receiver
                     String.valueOf(time) + "\t1");
 
                 Space s = getWorld().getSpace();
-                double beamLength = CMWorld.getEarthModel().trueDistance(
+                double beamLength = getWorld().getGeometry().trueDistance(
                     new Double3D(s.getXmin(), s.getYmin(), s.getZmin()),
                     new Double3D(s.getXmax(), s.getYmax(), s.getZmax()));
 
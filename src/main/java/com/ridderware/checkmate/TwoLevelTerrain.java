@@ -19,44 +19,142 @@
  */
 package com.ridderware.checkmate;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import com.ridderware.fuse.Double3D;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.apache.logging.log4j.*;
 
 /**
- *  Terrain model that stores coarse and fine terrain grids in memory.  This is a port
- *  of the ARES terrain model, which does a fast first pass using coarse terrain to determine
- *  whether LOS definitely exists, definitely does not exist, or could exist.  If it is
- *  the latter condition, then the model uses fine terrain to determine LOS.
+ *  Terrain model that stores a fine terrain grid in memory, with pyramids of the highest
+ *  and lowest elevations over it.  This is a port of the ARES terrain model, which does a
+ *  fast first pass using coarse terrain to determine whether LOS definitely exists,
+ *  definitely does not exist, or could exist.  If it is the latter condition, then the
+ *  model walks the fine terrain, deciding whole spans of the path from the pyramids
+ *  where it can.
  *
  * @author Jeff Ridder
  */
 public class TwoLevelTerrain implements ITerrainModel, IXML
 {
+    private static final Logger logger =
+        LogManager.getLogger(TwoLevelTerrain.class);
+
+    //  Offsets of the header fields used from a DTED file.  The user header
+    //  label is 80 bytes, and the data set identification record begins at 80.
+    private static final int X_ORIGIN_OFFSET = 265;
+
+    private static final int Y_ORIGIN_OFFSET = 274;
+
+    private static final int Y_INTERVAL_OFFSET = 353;
+
+    private static final int X_INTERVAL_OFFSET = 357;
+
+    private static final int X_POINTS_OFFSET = 361;
+
+    private static final int Y_POINTS_OFFSET = 365;
+
+    //  Data records follow the user header label, data set identification
+    //  and accuracy description records.
+    private static final int DATA_OFFSET = 80 + 648 + 2700;
+
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    private static final int CHECKSUM_BYTES = 4;
+
+    //  "CMTERR02"
+    private static final long CACHE_MAGIC = 0x434D544552523032L;
+
+    private static final int CACHE_HEADER_BYTES = 128;
+
+    //  Fine cells per segment of a walk.  The path is located exactly at the
+    //  ends of each segment and followed in a straight line between them.
+    private static final int SEGMENT_CELLS = 8;
+
+    //  Bound on the number of segments tested at once against the max-elevation pyramid.
+    private static final int MAX_SKIP_SEGMENTS = 1 << 13;
+
+    //  Lowest pyramid level held over a tiled grid, whose cells are each
+    //  computed on first use.  Finer levels would hold a large part of the grid.
+    private static final int TILED_PYRAMID_LEVEL = 4;
+
+    //  Bound on the range of horizon profiles
+    private static final double MAX_PROFILE_RANGE_NMI = 250.;
+
+    //  Tiles held at once when the fine grid is read a tile at a time
+    private static final int DEFAULT_TILE_CACHE = 16;
+
+    //  Decoded tiles held at once when the fine grid is compressed
+    private static final int DEFAULT_DECODED_TILES = 64;
+
     //
     //  Terrain data
     //
-    //  High resolution elevation data (in meters)
-    private short[] fineElevation;
+    //  High resolution elevation data (in meters), held off the heap
+    private ElevationStore fineElevation;
+
+    //  Max- and min-elevation pyramids over the fine grid, built on first use.
+    //  Level k holds the highest (lowest) elevation in each 2^(k+1) by
+    //  2^(k+1) block of fine posts.
+    private ElevationStore[] max_pyramid = null;
+
+    private ElevationStore[] min_pyramid = null;
+
+    //  Cells per row and per column of each level.
+    private int[] pyramid_cols = null;
+
+    private int[] pyramid_rows = null;
+
+    //  Lowest level held, counting the fine grid as level 0.
+    private int pyramid_first = 0;
+
+    //  Whether each cell of each held level has been computed, or null if all have been.
+    private boolean[][] pyramid_known = null;
 
-    //  Low resolution elevation data (in meters) -- lowest elevation in a coarse grid cell.
-    private short[] coarseElevationMin;
+    //  Fine grid the pyramids were built from.
+    private ElevationStore pyramid_base = null;
 
-    //  Low resolution elevation data (in meters) -- highest elevation in a coarse grid cell.
-    private short[] coarseElevationMax;
+    //  Cell walk shared by every walk over the fine grid it was made for.
+    private CellWalk cell_walk = null;
 
-    //  Coarse and fine resolution
-    private int xPointsCoarse;
+    //  Tiles of the fine grid when it is read a tile at a time, else null.
+    private TileStore tiles = null;
+
+    //  Compressed fine grid and pyramids, or null if the grid is not compressed.
+    private CompressedGrid compressed = null;
+
+    //  Decoded tiles held by each reader of a compressed grid.
+    private int decoded_tiles = DEFAULT_DECODED_TILES;
+
+    //  Compressed grids by terrain hash, shared by the worlds of the process.
+    private static final Map<Long, WeakReference<CompressedGrid>>
+        compressed_grids = new HashMap<>();
 
     //  longitude for LLA
     private int yPointsFine;
@@ -64,6 +162,7 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
     //  latitude for LLA
     private int xPointsFine;
 
+    //  Length of each stretch of a path bounded at once by the coarse pass
     private double coarseRes;
 
     //  Lat res for LLA
@@ -86,14 +185,73 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
     //  Max long
     private double yMax = Double.MIN_VALUE;
 
+    //  Command line arguments used to locate the terrain files.
+    private final ArgsHandler args_handler;
+
+    //  Identifies the loaded terrain for persistent caches.
+    private long terrain_hash = 0L;
+
+    //  Counts how LOS checks were decided.
+    private final LOSStatistics statistics = new LOSStatistics();
+
+    //  Earth model of the world, bound when the scenario is loaded.
+    private IEarthModel earth_model = new FlatEarth();
+
     /**
      *  Creates a new instance of TwoLevelTerrain
      */
     public TwoLevelTerrain()
     {
+        this(ArgsHandler.getInstance());
+    }
+
+    /**
+     *  Creates a new instance of TwoLevelTerrain
+     *
+     * @param args_handler command line arguments used to locate the terrain
+     * files.
+     */
+    public TwoLevelTerrain(ArgsHandler args_handler)
+    {
+        this.args_handler = args_handler;
         fineElevation = null;
     }
 
+    /**
+     * Returns a hash identifying the loaded terrain.  The hash covers the paths,
+     * sizes and modification times of the terrain files read (or the data
+     * itself when loaded directly) and the fine resolution they were read at,
+     * so it changes whenever the contents of the terrain directory change.
+     *
+     * @return terrain hash.
+     */
+    public long getTerrainHash()
+    {
+        return this.terrain_hash;
+    }
+
+    /**
+     * Returns the counters of how LOS checks over this terrain were decided.
+     * The world clears them at the start of each run.
+     *
+     * @return LOS statistics.
+     */
+    public LOSStatistics getStatistics()
+    {
+        return this.statistics;
+    }
+
+    /**
+     *  Binds the Earth model used for LOS computations.
+     *
+     * @param  earth_model  Earth model of the world.
+     */
+    @Override
+    public void setEarthModel(IEarthModel earth_model)
+    {
+        this.earth_model = earth_model;
+    }
+
     /**
      *  Returns the terrain elevation at the specified point.  This uses the fine
      *  terrain grid.
@@ -108,9 +266,11 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
         double el = 0.;
         if (x >= xMin && x <= xMax && y >= yMin && y <= yMax)
         {
-            int i = terrainCell(x, y);
-
-            el = (double) fineElevation[i];
+            long i = fineIndex(x, y);
+            if (i >= 0)
+            {
+                el = (double) fineElevation.get(i);
+            }
         }
 
         return el;
@@ -124,19 +284,34 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
      * @return terrain cell index (or -1 if not applicable or outside terrain bounds).
      */
     @Override
-    public int terrainCell(double x, double y)
+    public long terrainCell(double x, double y)
+    {
+        return fineIndex(x, y);
+    }
+
+    /**
+     * Returns the index of the fine terrain post covering the specified point.
+     * @param  x x-coordinate in n.mi. (ENU) or lat radians (LLA)
+     * @param  y y-coordinate in n.mi. (ENU) or long radians (LLA)
+     * @return post index (or -1 if outside terrain bounds).
+     */
+    private long fineIndex(double x, double y)
     {
-        int i = -1;
+        long i = -1;
         if (fineElevation != null)
         {
             int yIndex = (int) ((y + 0.5 * yFineRes - yMin) / yFineRes);
             int xIndex = (int) ((x + 0.5 * xFineRes - xMin) / xFineRes);
 
-            i = yIndex * xPointsFine + xIndex;
-
-            if (i < 0 || i >= fineElevation.length)
+            //  Posts past the end of a row must not wrap into the next row.
+            if (xIndex >= 0 && xIndex < xPointsFine && yIndex >= 0)
             {
-                i = -1;
+                i = (long) yIndex * xPointsFine + xIndex;
+
+                if (i >= fineElevation.size())
+                {
+                    i = -1;
+                }
             }
         }
 
@@ -144,112 +319,92 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
     }
 
     /**
-     * Returns the min coarse grid elevation at the specified point.
-     * @param  x
-     * @param  y
-     * @return terrain elevation in meters
+     *  Check for unobstructed Line Of Sight between two points on earth.
+     *
+     * @param  location1    Location to check line of sight from.
+     * @param  location2    Location to check line of sight to.
+     * @param  k            Earth Factor.
+     * @return true if Line Of Sight is unobstructed, false otherwise
      */
-    private double minCoarseElevation(double x, double y)
+    @Override
+    public boolean hasLOS(Double3D location1, Double3D location2,
+        IEarthModel.EarthFactor k)
     {
-        double el = 0.;
-        if (x >= xMin && x <= xMax && y >= yMin && y <= yMax)
-        {
-            //  We may wish to store these two as member variables.
-//            double xRes = (xMax - xMin)/colsCoarse;
-//            double yRes = (yMax - yMin)/rowsCoarse;
-
-//            int yIndex = (int) ((y + 0.5 * coarseRes - yMin) / coarseRes);
-//            int xIndex = (int) ((x + 0.5 * coarseRes - xMin) / coarseRes);
-            int yIndex = (int) Math.floor((y - yMin) / coarseRes);
-            int xIndex = (int) Math.floor((x - xMin) / coarseRes);
-
-            int i = yIndex * xPointsCoarse + xIndex;
+        boolean los = true;
 
-            el = (double) coarseElevationMin[i];
+        if (earth_model.getCoordinateSystem().equalsIgnoreCase(
+            "LLA"))
+        {
+            los = roundEarthLOS(location1, location2, k, null) != null;
         }
-
-        return el;
-    }
-
-    /**
-     * Returns the max coarse grid elevation at the specified point.
-     * @param  x
-     * @param  y
-     * @return terrain elevation in meters
-     */
-    private double maxCoarseElevation(double x, double y)
-    {
-        double el = 0.;
-        if (x >= xMin && x <= xMax && y >= yMin && y <= yMax)
+        else if (earth_model.getCoordinateSystem().
+            equalsIgnoreCase("ENU"))
         {
-            //  We may wish to store these two as member variables.
-//            double xRes = (xMax - xMin)/colsCoarse;
-//            double yRes = (yMax - yMin)/rowsCoarse;
-
-//            int yIndex = (int) ((y + 0.5 * coarseRes - yMin) / coarseRes);
-//            int xIndex = (int) ((x + 0.5 * coarseRes - xMin) / coarseRes);
-            int yIndex = (int) Math.floor((y - yMin) / coarseRes);
-            int xIndex = (int) Math.floor((x - xMin) / coarseRes);
-
-            int i = yIndex * xPointsCoarse + xIndex;
-
-            el = (double) coarseElevationMax[i];
+            los = flatEarthLOS(location1, location2);
         }
-
-        return el;
+        return los;
     }
 
     /**
-     *  Check for unobstructed Line Of Sight between two points on earth.
+     *  Checks for unobstructed Line Of Sight between two points for every Earth
+     *  factor at once.  On a round earth the great circle and the coarse terrain
+     *  along it are found once for both factors, and the electromagnetic Earth
+     *  is only decided when the real Earth is obstructed.  A flat earth has no
+     *  curvature, so a single check serves both.
      *
      * @param  location1    Location to check line of sight from.
      * @param  location2    Location to check line of sight to.
-     * @param  k            Earth Factor.
-     * @return true if Line Of Sight is unobstructed, false otherwise
+     * @return the smallest Earth factor with Line Of Sight, or null if there is none
      */
     @Override
-    public boolean hasLOS(Double3D location1, Double3D location2,
-        IEarthModel.EarthFactor k)
+    public IEarthModel.EarthFactor losEarthFactor(Double3D location1,
+        Double3D location2)
     {
-        boolean los = true;
+        IEarthModel.EarthFactor los = IEarthModel.EarthFactor.REAL_EARTH;
 
-        if (CMWorld.getEarthModel().getCoordinateSystem().equalsIgnoreCase(
+        if (earth_model.getCoordinateSystem().equalsIgnoreCase(
             "LLA"))
         {
-            los = roundEarthLOS(location1, location2, k);
+            los = roundEarthLOS(location1, location2,
+                IEarthModel.EarthFactor.REAL_EARTH,
+                IEarthModel.EarthFactor.EM_EARTH);
         }
-        else if (CMWorld.getEarthModel().getCoordinateSystem().
+        else if (earth_model.getCoordinateSystem().
             equalsIgnoreCase("ENU"))
         {
-            los = flatEarthLOS(location1, location2);
+            los = flatEarthLOS(location1, location2) ?
+                IEarthModel.EarthFactor.REAL_EARTH : null;
         }
         return los;
     }
 
     /**
      *  Check for unobstructed Line Of Sight between two points on a round earth.
+     *  If a second, larger Earth factor is given, it is checked as well when the
+     *  first is obstructed, reusing the coarse pass along the great circle.
      *
      * @param  location1    Location to check line of sight from.
      * @param  location2    Location to check line of sight to.
      * @param  k            Earth Factor.
-     * @return true if Line Of Sight is unobstructed, false otherwise
+     * @param  k_next       larger Earth Factor to check if k is obstructed, or null.
+     * @return the Earth factor with Line Of Sight, or null if it is obstructed for both
      */
-    private boolean roundEarthLOS(Double3D location1, Double3D location2,
-        IEarthModel.EarthFactor k)
+    private IEarthModel.EarthFactor roundEarthLOS(Double3D location1,
+        Double3D location2, IEarthModel.EarthFactor k,
+        IEarthModel.EarthFactor k_next)
     {
-        boolean los = true;
+        IEarthModel.EarthFactor los = k;
 
         double alpha = 0.;
-        double terrain_elevation = 0.;
-        if (CMWorld.getEarthModel() instanceof RoundEarth)
+        if (earth_model instanceof RoundEarth)
         {
-            alpha = ((RoundEarth) CMWorld.getEarthModel()).gcAlpha(location1,
+            alpha = ((RoundEarth) earth_model).gcAlpha(location1,
                 location2);
         }
 
         if (alpha > 0.)
         {
-            double distance = CMWorld.getEarthModel().trueDistance(location1,
+            double distance = earth_model.trueDistance(location1,
                 location2);
 
             //  Read off the coords for efficiency.
@@ -274,10 +429,13 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
                 (j1 >= yPointsFine && j2 >= yPointsFine))
             {
                 //  No terrain between us.  Use radar horizon to figure out LOS
+                statistics.horizon_checks++;
                 if (distance >= 82.89750 * Math.sqrt(k.value()) *
                     (Math.sqrt(z1) + Math.sqrt(z2)))
                 {
-                    los = false;
+                    los = k_next != null && distance < 82.89750 *
+                        Math.sqrt(k_next.value()) * (Math.sqrt(z1) +
+                        Math.sqrt(z2)) ? k_next : null;
                 }
             }
             else
@@ -285,245 +443,186 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
                 //  There IS terrain between us...figure it out.
 
                 //	This is the interesting case.  Do as follows:
-                //	1) Using coarse terrain, find the max terrain elevation between us
+                //	1) Using the pyramids, find the max terrain elevation between us, and
+                //	   if some stretch of the path lies wholly below the terrain beneath it, then bLOS = false
                 //	2) Use second derivative of LOS elevation between us to determine
                 //	   the point of closest approach (a') of the LOS vector to the smooth earth.
                 //	   Ensure that a' is between 0 and gc_alpha by the following:
                 //	      a' = __max(0, a').  a' = __min(gc_alpha, a')
                 //	3) solve for h' = h(a'), then:
                 //         a) If h' < local terrain_elevation, then bLOS = false
-                //	   b) If h' > max_terrain_elevation (from coarse grid), then bLOS = true
+                //	   b) If h' > max_terrain_elevation (from the pyramids), then bLOS = true
                 //	   c) If neither a) nor b), the LOS is ambiguous...proceed to step 4).
                 //	4) If LOS is ambiguous at this point, then iterate a from a' one terrain
                 //	   cell at a time (in both directions) until either:
                 //	   a) h = h(a) < local terrain_elevation, then bLOS = false
-                //	   b) h > max_terrain_elevation (from coarse grid), then bLOS = true
+                //	   b) h > max_terrain_elevation (from the pyramids), then bLOS = true
                 //	   c) a = 0 or gc_alpha, then bLOS = true
                 //
 
                 //
-                //	Step 1) Using coarse terrain, find the max and min terrain elevation between 1 and 2
+                //	Step 1) Using the pyramids, find the max terrain elevation between 1 and 2
                 //
 
                 //  Develop an estimate of the number of coarse cells between the points.  This is not
                 //  exact and does not need to be exact.
                 int number_of_coarse_cells = (int) Math.ceil(alpha / coarseRes);
-                double coarse_delta_alpha = alpha / number_of_coarse_cells;
+                double half_delta_alpha = 0.5 * alpha / number_of_coarse_cells;
 
-                double rk = RoundEarth.EARTH_RADIUS_NMI * k.value();
-                double rh1 = rk + z1;
-
-                double coslat1 = Math.cos(x1);
-                double sinlat1 = Math.sin(x1);
-                double bearing =
-                    CMWorld.getEarthModel().azimuthAngle(location1, location2);
-                double elevation_angle = CMWorld.getEarthModel().
-                    elevationAngle(location1, location2, k);
-                double cosbearing = Math.cos(bearing);
-                double half_pi = Math.PI / 2.;
+                double azimuth = earth_model.azimuthAngle(location1, location2);
+                RoundEarthPath path = new RoundEarthPath(location1, k, azimuth,
+                    earth_model.elevationAngle(location1, location2, k));
 
                 double max_terrain_elevation = Double.NEGATIVE_INFINITY;
-                double min_terrain_elevation = Double.POSITIVE_INFINITY;
+                boolean obstructed = false;
+                double los0 = path.losElevation(0.);
+                //  Step along the path by rotation so that the sines and cosines of
+                //  local_alpha need not be recomputed for each sample.  Each coarse
+                //  cell is bounded from its ends and its midpoint.  The LOS
+                //  elevation is highest at one end of a coarse cell, since it is
+                //  lowest at the point of closest approach.
+                double cos_delta = Math.cos(half_delta_alpha);
+                double sin_delta = Math.sin(half_delta_alpha);
+                double cos_alpha = 1.;
+                double sin_alpha = 0.;
+                double lat0 = path.lat(cos_alpha, sin_alpha);
+                double lon0 = path.lon(cos_alpha, sin_alpha);
+                double mid_lat = lat0;
+                double mid_long = lon0;
                 int i;
-                for (i = 0; i <= number_of_coarse_cells; i++)
+                for (i = 1; i <= 2 * number_of_coarse_cells; i++)
                 {
-                    double local_alpha = i * coarse_delta_alpha;
+                    double next_cos = cos_alpha * cos_delta - sin_alpha *
+                        sin_delta;
+                    sin_alpha = sin_alpha * cos_delta + cos_alpha * sin_delta;
+                    cos_alpha = next_cos;
 
                     //	Find the terrain location of the current local_alpha...lat and long, then i and j
-                    double arg1 =
-                        Math.cos(Math.abs(local_alpha + x1 - half_pi)) - (1. -
-                        cosbearing) * coslat1 * Math.sin(local_alpha);
-                    double local_lat = Math.asin(Math.max(Math.min(arg1, 1.),
-                        -1.));
-
-                    double dellong = 0.;
-                    double part1 = (Math.cos(local_alpha) - sinlat1 *
-                        Math.sin(local_lat));
-                    part1 *= 1. / coslat1 / Math.cos(local_lat);
-                    part1 = Math.max(Math.min(part1, 1.), -1.);
-                    part1 = Math.abs(Math.acos(part1));
-                    dellong = part1;
-
-                    double local_long = 0;
-                    if (bearing >= Math.PI)
+                    double local_lat = path.lat(cos_alpha, sin_alpha);
+                    double local_long = path.lon(cos_alpha, sin_alpha);
+
+                    if (i % 2 == 1)
                     {
-                        local_long = y1 - dellong;
+                        mid_lat = local_lat;
+                        mid_long = local_long;
                     }
                     else
                     {
-                        local_long = y1 + dellong;
+                        double cell_max = spanElevation(true, lat0, lon0,
+                            local_lat, local_long, mid_lat, mid_long);
+                        max_terrain_elevation = Math.max(max_terrain_elevation,
+                            cell_max);
+
+                        double los1 = path.losElevation(i * half_delta_alpha);
+                        double los_max = Math.max(los0, los1);
+                        if (!obstructed && los_max < cell_max && los_max <
+                            spanElevation(false, lat0, lon0, local_lat,
+                            local_long, mid_lat, mid_long))
+                        {
+                            obstructed = true;
+                            statistics.coarse_rejects++;
+                        }
+                        los0 = los1;
+                        lat0 = local_lat;
+                        lon0 = local_long;
                     }
-
-                    double terrain_el =
-                        maxCoarseElevation(local_lat, local_long);
-                    max_terrain_elevation = Math.max(max_terrain_elevation,
-                        terrain_el);
-
-                    terrain_el = minCoarseElevation(local_lat, local_long);
-                    min_terrain_elevation = Math.min(min_terrain_elevation,
-                        terrain_el);
-                }
-
-                //
-                //	Step 2) Use second derivative of LOS elevation between us to determine
-                //	   the point of closest approach (a') of the LOS vector to the smooth earth.
-                //	   Ensure that a' is between 0 and alpha by the following:
-                //	   a' = max(0, a').  a' = min(alpha, a')
-                //
-                double alpha_prime = Math.max(0, Math.min(alpha,
-                    -elevation_angle * k.value()));
-
-                //	Step 3) solve for h' = h(a'), then:
-                //         a) If h' < local terrain_elevation, then bLOS = false
-                //	   b) If h' > max_terrain_elevation (from coarse grid), then bLOS = true
-                //	   c) If neither a) nor b), the LOS is ambiguous...proceed to step 4).
-
-                double los_elevation =
-                    LengthUnit.NAUTICAL_MILES.convert(rh1 * Math.sin(half_pi +
-                    elevation_angle) /
-                    Math.sin(half_pi - elevation_angle - alpha_prime / k.value()) -
-                    rk, LengthUnit.METERS);
-
-                //	Find the terrain location of the current local_alpha...lat and long, then i and j
-                double arg1 = Math.cos(Math.abs(alpha_prime + x1 - half_pi)) -
-                    (1. - cosbearing) * coslat1 * Math.sin(alpha_prime);
-                double local_lat = Math.asin(Math.max(Math.min(arg1, 1.), -1.));
-
-                double dellong = 0.;
-                double part1 = (Math.cos(alpha_prime) - sinlat1 *
-                    Math.sin(local_lat));
-                part1 *= 1. / coslat1 / Math.cos(local_lat);
-                part1 = Math.max(Math.min(part1, 1.), -1.);
-                part1 = Math.abs(Math.acos(part1));
-                dellong = part1;
-
-                double local_long = 0;
-                if (bearing >= Math.PI)
-                {
-                    local_long = y1 - dellong;
-                }
-                else
-                {
-                    local_long = y1 + dellong;
                 }
 
-                terrain_elevation = elevation(local_lat, local_long);
+                int number_of_cells = Math.max(1,
+                    (int) Math.sqrt((i2 - i1) * (i2 - i1) + (j2 - j1) *
+                    (j2 - j1)));
 
-                if (los_elevation < terrain_elevation)
+                //  The rest of the coarse pass still bounds the terrain for k_next.
+                if (obstructed || !roundEarthLOS(path, alpha, number_of_cells,
+                    max_terrain_elevation))
                 {
-                    //	Case a) above
-                    los = false;
-                }
-                else if (los_elevation > max_terrain_elevation)
-                {
-                    //	Case b) above
-                    los = true;
-                }
-                else
-                {
-                    //	Case c) ambiguous
-
-                    //	4) If LOS is ambiguous at this point, then iterate a from a' one terrain
-                    //	   cell at a time (in both directions) until either:
-                    //	   a) h = h(a) < local terrain_elevation, then los = false
-                    //	   b) h > max_terrain_elevation (from coarse grid), then los = true
-                    //	   c) a = 0 or alpha, then los = true
-
-                    int number_of_cells =
-                        (int) Math.sqrt((i2 - i1) * (i2 - i1) + (j2 - j1) *
-                        (j2 - j1));
-                    double delta_alpha = alpha / number_of_cells;
-
-                    double local_alpha = alpha_prime + delta_alpha;
-                    while (local_alpha <= alpha && los_elevation <
-                        max_terrain_elevation && los == true)
+                    los = null;
+                    if (k_next != null)
                     {
-                        //	Find the terrain location of the current local_alpha...lat and long, then i and j
-                        double arg2 = Math.cos(Math.abs(local_alpha + x1 -
-                            half_pi)) - (1. - cosbearing) * coslat1 *
-                            Math.sin(local_alpha);
-                        local_lat = Math.asin(Math.max(Math.min(arg2, 1.), -1.));
-
-                        dellong = 0.;
-
-                        part1 = (Math.cos(local_alpha) - sinlat1 *
-                            Math.sin(local_lat));
-                        part1 *= 1. / coslat1 / Math.cos(local_lat);
-                        part1 = Math.max(Math.min(part1, 1.), -1.);
-                        part1 = Math.abs(Math.acos(part1));
-                        dellong = part1;
-
-                        local_long = 0;
-                        if (bearing >= Math.PI)
-                        {
-                            local_long = y1 - dellong;
-                        }
-                        else
-                        {
-                            local_long = y1 + dellong;
-                        }
-
-                        terrain_elevation = elevation(local_lat, local_long);
-
-                        los_elevation = LengthUnit.NAUTICAL_MILES.convert(rh1 *
-                            Math.sin(half_pi + elevation_angle) /
-                            Math.sin(half_pi - elevation_angle - local_alpha /
-                            k.value()) - rk, LengthUnit.METERS);
-
-                        if (los_elevation < terrain_elevation)
+                        //  The great circle is the same for any Earth factor.
+                        RoundEarthPath next_path = new RoundEarthPath(
+                            location1, k_next, azimuth, earth_model.
+                            elevationAngle(location1, location2, k_next));
+                        if (roundEarthLOS(next_path, alpha, number_of_cells,
+                            max_terrain_elevation))
                         {
-                            los = false;
+                            los = k_next;
                         }
-
-                        local_alpha += delta_alpha;
                     }
+                }
+            }
+        }
+        return los;
+    }
 
-                    local_alpha = alpha_prime - delta_alpha;
-                    while (local_alpha >= 0. && los_elevation <
-                        max_terrain_elevation && los == true)
-                    {
-                        //	Find the terrain location of the current local_alpha...lat and long, then i and j
-                        double arg2 = Math.cos(Math.abs(local_alpha + x1 -
-                            half_pi)) - (1. - cosbearing) * coslat1 *
-                            Math.sin(local_alpha);
-                        local_lat = Math.asin(Math.max(Math.min(arg2, 1.), -1.));
-
-                        dellong = 0.;
-
-                        part1 = (Math.cos(local_alpha) - sinlat1 *
-                            Math.sin(local_lat));
-                        part1 *= 1. / coslat1 / Math.cos(local_lat);
-                        part1 = Math.max(Math.min(part1, 1.), -1.);
-                        part1 = Math.abs(Math.acos(part1));
-                        dellong = part1;
-
-                        local_long = 0;
-                        if (bearing >= Math.PI)
-                        {
-                            local_long = y1 - dellong;
-                        }
-                        else
-                        {
-                            local_long = y1 + dellong;
-                        }
+    /**
+     *  Decides Line Of Sight along a round earth path once the coarse terrain
+     *  along it is known.
+     *
+     * @param  path         the LOS path.
+     * @param  alpha        great circle angle between the points.
+     * @param  number_of_cells estimated number of fine cells between the points.
+     * @param  max_terrain_elevation maximum terrain elevation along the path.
+     * @return true if Line Of Sight is unobstructed, false otherwise
+     */
+    private boolean roundEarthLOS(RoundEarthPath path, double alpha,
+        int number_of_cells, double max_terrain_elevation)
+    {
+        boolean los;
+
+        //
+        //	Step 2) Use second derivative of LOS elevation between us to determine
+        //	   the point of closest approach (a') of the LOS vector to the smooth earth.
+        //	   Ensure that a' is between 0 and alpha by the following:
+        //	   a' = max(0, a').  a' = min(alpha, a')
+        //
+        double alpha_prime = Math.max(0, Math.min(alpha,
+            -path.elevation_angle * path.k));
 
-                        terrain_elevation = elevation(local_lat, local_long);
+        //	Step 3) solve for h' = h(a'), then:
+        //         a) If h' < local terrain_elevation, then bLOS = false
+        //	   b) If h' > max_terrain_elevation (from the pyramids), then bLOS = true
+        //	   c) If neither a) nor b), the LOS is ambiguous...proceed to step 4).
 
-                        los_elevation = LengthUnit.NAUTICAL_MILES.convert(rh1 *
-                            Math.sin(half_pi + elevation_angle) /
-                            Math.sin(half_pi - elevation_angle - local_alpha /
-                            k.value()) - rk, LengthUnit.METERS);
+        double los_elevation = path.losElevation(alpha_prime);
 
-                        if (los_elevation < terrain_elevation)
-                        {
-                            los = false;
-                        }
+        //	Find the terrain location of the current local_alpha...lat and long, then i and j
+        double terrain_elevation = elevation(path.lat(alpha_prime),
+            path.lon(alpha_prime));
 
-                        local_alpha -= delta_alpha;
-                    }
-                }
-            }
+        if (los_elevation < terrain_elevation)
+        {
+            //	Case a) above
+            los = false;
+            statistics.coarse_rejects++;
+        }
+        else if (los_elevation > max_terrain_elevation)
+        {
+            //	Case b) above
+            los = true;
+            statistics.coarse_accepts++;
+        }
+        else
+        {
+            //	Case c) ambiguous
+            statistics.fine_walks++;
+
+            //	4) If LOS is ambiguous at this point, then walk the terrain cells
+            //	   crossed by the path from a' (in both directions) until either:
+            //	   a) h = h(a) < local terrain_elevation, then los = false
+            //	   b) h > max_terrain_elevation (from the pyramids), then los = true
+            //	   c) a = 0 or alpha, then los = true
+
+            double segment_alpha = SEGMENT_CELLS * alpha /
+                number_of_cells;
+
+            //  Both walks start from h' at a'.
+            los = !Double.isNaN(roundEarthWalk(path, alpha_prime, alpha,
+                segment_alpha, los_elevation, max_terrain_elevation)) &&
+                !Double.isNaN(roundEarthWalk(path, alpha_prime, 0.,
+                segment_alpha, los_elevation, max_terrain_elevation));
         }
+
         return los;
     }
 
@@ -541,7 +640,7 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
 
         //  TODO:  Need to adapt this for Flat earth.
         //  For flat Earth, the concept of alpha can be replaced by distance.
-        double distance = CMWorld.getEarthModel().trueDistance(location1,
+        double distance = earth_model.trueDistance(location1,
             location2);
 
         double terrain_elevation = 0.;
@@ -570,6 +669,7 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
                 (j1 >= yPointsFine && j2 >= yPointsFine))
             {
                 //  No terrain between us.  Use radar horizon to figure out LOS
+                statistics.horizon_checks++;
                 if (distance >= 95.72179262 * (Math.sqrt(z1) + Math.sqrt(z2)))
                 {
                     los = false;
@@ -580,48 +680,66 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
                 //  There IS terrain between us...figure it out.
 
                 //	This is the interesting case.  Do as follows:
-                //	1) Using coarse terrain, find the max terrain elevation between us
+                //	1) Using the pyramids, find the max terrain elevation between us, and
+                //	   if some stretch of the path lies wholly below the terrain beneath it, then los = false
                 //	2) Start at the point (1 or 2) with the lowest height.
                 //	3) solve for h' = h(a'), then:
                 //         a) If h' < local terrain_elevation, then los = false
-                //	   b) If h' > max_terrain_elevation (from coarse grid), then los = true
+                //	   b) If h' > max_terrain_elevation (from the pyramids), then los = true
                 //	   c) If neither a) nor b), the los is ambiguous...proceed to step 4).
                 //	4) If LOS is ambiguous at this point, then iterate a from a' one terrain
                 //	   cell at a time (in both directions) until either:
                 //	   a) h = h(a) < local terrain_elevation, then bLOS = false
-                //	   b) h > max_terrain_elevation (from coarse grid), then bLOS = true
+                //	   b) h > max_terrain_elevation (from the pyramids), then bLOS = true
                 //	   c) a = 0 or distance, then los = true
                 //
 
                 //
-                //	Step 1) Using coarse terrain, find the max and min terrain elevation between 1 and 2
+                //	Step 1) Using the pyramids, find the max terrain elevation between 1 and 2
                 //
 
                 //  Develop an estimate of the number of coarse cells between the points.  This is not
                 //  exact and does not need to be exact.
                 int number_of_coarse_cells = (int) Math.ceil(distance /
                     coarseRes);
-                double coarse_delta_dist = distance / number_of_coarse_cells;
+
+                //  The LOS elevation is straight, so it is highest at one end
+                //  of a coarse cell.
+                double h1 = LengthUnit.NAUTICAL_MILES.convert(z1,
+                    LengthUnit.METERS);
+                double h2 = LengthUnit.NAUTICAL_MILES.convert(z2,
+                    LengthUnit.METERS);
 
                 double max_terrain_elevation = Double.NEGATIVE_INFINITY;
-                double min_terrain_elevation = Double.POSITIVE_INFINITY;
+                boolean obstructed = false;
+                double x0 = x1;
+                double y0 = y1;
+                double los0 = h1;
                 int i;
-                for (i = 0; i <= number_of_coarse_cells; i++)
+                for (i = 1; i <= number_of_coarse_cells; i++)
                 {
-                    double local_dist = i * coarse_delta_dist;
-
-                    Double3D local_pt = CMWorld.getEarthModel().
-                        interpolateLocation(location1, location2, local_dist);
-
-                    double terrain_el = maxCoarseElevation(local_pt.getX(),
-                        local_pt.getY());
+                    double frac = (double) i / number_of_coarse_cells;
+                    double local_x = x1 + frac * (x2 - x1);
+                    double local_y = y1 + frac * (y2 - y1);
+                    double mid_x = 0.5 * (x0 + local_x);
+                    double mid_y = 0.5 * (y0 + local_y);
+
+                    double cell_max = spanElevation(true, x0, y0, local_x,
+                        local_y, mid_x, mid_y);
                     max_terrain_elevation = Math.max(max_terrain_elevation,
-                        terrain_el);
+                        cell_max);
 
-                    terrain_el = minCoarseElevation(local_pt.getX(),
-                        local_pt.getY());
-                    min_terrain_elevation = Math.min(min_terrain_elevation,
-                        terrain_el);
+                    double los1 = h1 + frac * (h2 - h1);
+                    double los_max = Math.max(los0, los1);
+                    if (!obstructed && los_max < cell_max && los_max <
+                        spanElevation(false, x0, y0, local_x, local_y, mid_x,
+                        mid_y))
+                    {
+                        obstructed = true;
+                    }
+                    los0 = los1;
+                    x0 = local_x;
+                    y0 = local_y;
                 }
 
                 //
@@ -644,7 +762,7 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
 
                 //	Step 3) solve for h' = h(a'), then:
                 //         a) If h' < local terrain_elevation, then bLOS = false
-                //	   b) If h' > max_terrain_elevation (from coarse grid), then bLOS = true
+                //	   b) If h' > max_terrain_elevation (from the pyramids), then bLOS = true
                 //	   c) If neither a) nor b), the LOS is ambiguous...proceed to step 4).
 
                 double h_prime =
@@ -653,53 +771,36 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
 
                 terrain_elevation = elevation(test_pt.getX(), test_pt.getY());
 
-                if (h_prime < terrain_elevation)
+                if (obstructed || h_prime < terrain_elevation)
                 {
                     //	Case a) above
                     los = false;
+                    statistics.coarse_rejects++;
                 }
                 else if (h_prime > max_terrain_elevation)
                 {
                     //	Case b) above
                     los = true;
+                    statistics.coarse_accepts++;
                 }
                 else
                 {
                     //	Case c) ambiguous
+                    statistics.fine_walks++;
 
-                    //	4) If LOS is ambiguous at this point, then iterate a from a' one terrain
-                    //	   cell at a time (in both directions) until either:
+                    //	4) If LOS is ambiguous at this point, then walk the terrain cells
+                    //	   crossed by the path from the lower point until either:
                     //	   a) h = h(a) < local terrain_elevation, then los = false
-                    //	   b) h > max_terrain_elevation (from coarse grid), then los = true
-                    //	   c) a = 0 or alpha, then los = true
+                    //	   b) h > max_terrain_elevation (from the pyramids), then los = true
+                    //	   c) a = distance, then los = true
 
-                    int number_of_cells =
+                    int number_of_cells = Math.max(1,
                         (int) Math.sqrt((i2 - i1) * (i2 - i1) + (j2 - j1) *
-                        (j2 - j1));
-                    double delta_dist = distance / number_of_cells;
-
-                    double local_dist = delta_dist;
-                    while (local_dist <= distance && h_prime <
-                        max_terrain_elevation && los == true)
-                    {
-                        //	Find the terrain location of the current local_alpha...lat and long, then i and j
-                        Double3D interp_pt = CMWorld.getEarthModel().
-                            interpolateLocation(test_pt, far_pt, local_dist);
-
-                        terrain_elevation = elevation(interp_pt.getX(),
-                            interp_pt.getY());
-
-                        h_prime =
-                            LengthUnit.NAUTICAL_MILES.convert(interp_pt.getZ(),
-                            LengthUnit.METERS);
+                        (j2 - j1)));
 
-                        if (h_prime < terrain_elevation)
-                        {
-                            los = false;
-                        }
-
-                        local_dist += delta_dist;
-                    }
+                    los = !Double.isNaN(flatEarthWalk(test_pt, far_pt,
+                        (double) SEGMENT_CELLS / number_of_cells, h_prime,
+                        max_terrain_elevation));
                 }
             }
         }
@@ -707,160 +808,902 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
     }
 
     /**
-     * Loads terrain from the specified array and determines all necessary terrain parameters.
+     * Walks the fine terrain cells crossed by a round Earth path, outward from
+     * the point of closest approach, until the terrain obstructs the path, the
+     * path clears the maximum terrain elevation, or the end of the path is
+     * reached.  The path is located exactly at the ends of segments of
+     * SEGMENT_CELLS cells and followed in a straight line of latitude and
+     * longitude between them.  That line strays from the great circle by
+     * about L^2 tan(lat) / 8 for a segment of length L, which is well under a
+     * hundredth of a cell at DTED resolutions.  Since the LOS elevation rises
+     * monotonically away from the point of closest approach, each cell is
+     * tested where the path enters it, and a run of segments whose first LOS
+     * elevation clears the max-elevation pyramid is skipped in a single test.
+     * No run is tested against the min-elevation pyramid: it starts where the
+     * walk has shown the path clear, and its LOS elevation only rises.
      *
-     * @param terrain_data an array of fine resolution terrain elevation data in meters above sea level.
-     * @param xMin the x-coordinate of the left boundary of the terrain box.  This is in n.mi. for ENU and radians longitude for LLA.
-     * @param xMax the x-coordinate of the right boundary of the terrain box.  This is in n.mi. for ENU and radians longitude for LLA.
-     * @param yMin the y-coordinate of the lower boundary of the terrain box.  This is in n.mi. for ENU and radians latitude for LLA.
-     * @param yMax the y-coordinate of the upper boundary of the terrain box.  This is in n.mi. for ENU and radians latitude for LLA.
-     * @param rowsFine the number of rows of terrain data on the fine grid (covering the vertical, y-direction of the terrain box).
-     * @param colsFine the number of columns of terrain data on the fine grid (covering the horizontal, x-direction of the terrain box).
-     * @param coarseRes the resolution to use to compute the coarse terrain grid.
-     *          This is in n.mi. for ENU and radians for LLA (same in both x and y directions).
+     * @param path the LOS path.
+     * @param start_alpha great circle angle at which to start.
+     * @param end_alpha great circle angle at which to stop, less than
+     * start_alpha to walk toward point 1.
+     * @param segment_alpha great circle angle spanned by a segment.
+     * @param los_elevation LOS elevation in meters before the walk.
+     * @param max_terrain_elevation maximum terrain elevation along the path.
+     * @return LOS elevation where the walk stopped, or NaN if the path is obstructed.
      */
-    public void loadTerrain(short[] terrain_data, double xMin, double xMax,
-        double yMin, double yMax, int rowsFine, int colsFine, double coarseRes)
+    private double roundEarthWalk(RoundEarthPath path, double start_alpha,
+        double end_alpha, double segment_alpha, double los_elevation,
+        double max_terrain_elevation)
     {
-        this.xMin = xMin;
-        this.xMax = xMax;
-        this.yMin = yMin;
-        this.yMax = yMax;
-        this.yPointsFine = rowsFine;
-        this.xPointsFine = colsFine;
-
-        assert (terrain_data.length == rowsFine * colsFine) : "Input rows(" +
-            rowsFine + ") and cols(" + colsFine +
-            ") doesn't match actual terrain data size(" + terrain_data.length +
-            ").";
-
-        this.fineElevation = new short[terrain_data.length];
-        for (int i = 0; i < terrain_data.length; i++)
+        CellWalk walk = cellWalk();
+        double direction = end_alpha < start_alpha ? -1. : 1.;
+
+        double alpha0 = start_alpha;
+        double lat0 = path.lat(alpha0);
+        double lon0 = path.lon(alpha0);
+        int span = 1;
+        while (direction * (end_alpha - alpha0) > 0. &&
+            los_elevation < max_terrain_elevation)
         {
-            fineElevation[i] = terrain_data[i];
-        }
+            double alpha1 = alpha0 + direction * span * segment_alpha;
+            if (direction * (alpha1 - end_alpha) > 0.)
+            {
+                alpha1 = end_alpha;
+            }
+            double lat1 = path.lat(alpha1);
+            double lon1 = path.lon(alpha1);
 
-        //  Now compute the fine resolution
-        this.xFineRes = (xMax - xMin) / colsFine;
-        this.yFineRes = (yMax - yMin) / rowsFine;
+            double mid_alpha = 0.5 * (alpha0 + alpha1);
+            if (path.losElevation(alpha0) >= spanElevation(true, lat0, lon0,
+                lat1, lon1, path.lat(mid_alpha), path.lon(mid_alpha)))
+            {
+                statistics.skipped_steps += (long) Math.ceil(SEGMENT_CELLS *
+                    Math.abs(alpha1 - alpha0) / segment_alpha);
+                los_elevation = path.losElevation(alpha1);
+                span = Math.min(2 * span, MAX_SKIP_SEGMENTS);
+            }
+            else if (span > 1)
+            {
+                span /= 2;
+                continue;
+            }
+            else
+            {
+                los_elevation = roundEarthSegment(path, walk, alpha0, alpha1,
+                    lat0, lon0, lat1, lon1, max_terrain_elevation);
+                if (Double.isNaN(los_elevation))
+                {
+                    return Double.NaN;
+                }
+            }
 
-        this.computeCoarseTerrain(coarseRes);
+            alpha0 = alpha1;
+            lat0 = lat1;
+            lon0 = lon1;
+        }
+        return los_elevation;
     }
 
     /**
-     * Computes the coarse terrain at the specified resolution from the fine terrain.
-     * The fine terrain must exist first before this method can be called.
-     * @param coarseRes the resolution to use to compute the coarse terrain grid.
-     *          This is in n.mi. for ENU and radians for LLA (same in both x and y directions).
+     * Walks the fine terrain cells crossed by one segment of a round Earth
+     * path.  The cells are stepped through by their boundaries, and the LOS
+     * elevation is expanded about the start of the segment, so no
+     * trigonometry is done per cell.
+     *
+     * @param path the LOS path.
+     * @param walk cell walk to use.
+     * @param alpha0 great circle angle at the start of the segment.
+     * @param alpha1 great circle angle at the end of the segment.
+     * @param lat0 latitude at the start of the segment.
+     * @param lon0 longitude at the start of the segment.
+     * @param lat1 latitude at the end of the segment.
+     * @param lon1 longitude at the end of the segment.
+     * @param max_terrain_elevation maximum terrain elevation along the path.
+     * @return LOS elevation where the walk stopped, or NaN if the path is obstructed.
      */
-    private void computeCoarseTerrain(double coarseRes)
+    private double roundEarthSegment(RoundEarthPath path, CellWalk walk,
+        double alpha0, double alpha1, double lat0, double lon0, double lat1,
+        double lon1, double max_terrain_elevation)
     {
-        this.coarseRes = coarseRes;
-        //  Now compute the number of coarse columns.
-        this.xPointsCoarse = (int) Math.ceil((xMax - xMin) / coarseRes);
-
-        //  local variable
-        int yPointsCoarse = (int) Math.ceil((yMax - yMin) / coarseRes);
-
-        this.coarseElevationMax = new short[xPointsCoarse * yPointsCoarse];
-        this.coarseElevationMin = new short[xPointsCoarse * yPointsCoarse];
-
-        //  Now need to figure this out.
+        double angle = path.elevation_angle + alpha0 / path.k;
+        double cos_angle = Math.cos(angle);
+        double sin_angle = Math.sin(angle);
+        double delta = (alpha1 - alpha0) / path.k;
 
-        //  1) What if colsCoarse results in coarse xMax > fine xMax?  live with it, or try to average it out?  Or simply
-        //     truncate the last col and row?  I think the latter.
-        //  2) Looking for max and min in each coarse cell.
-        for (int i = 0; i < xPointsCoarse; i++)
+        walk.start(lat0, lon0, lat1, lon1);
+        do
         {
-            for (int j = 0; j < yPointsCoarse; j++)
+            double los_elevation = path.losElevation(cos_angle, sin_angle,
+                walk.t_enter * delta);
+
+            statistics.fine_steps++;
+            if (los_elevation < walk.elevation())
+            {
+                return Double.NaN;
+            }
+            else if (los_elevation >= max_terrain_elevation)
             {
-                double x1 = xMin + i * coarseRes;
-                double x2 = Math.min(xMax, x1 + coarseRes);
-                double y1 = yMin + j * coarseRes;
-                double y2 = Math.min(yMax, y1 + coarseRes);
+                return los_elevation;
+            }
+        }
+        while (walk.next());
 
-                double x = x1;
-                short el_max = Short.MIN_VALUE;
-                short el_min = Short.MAX_VALUE;
+        return path.losElevation(cos_angle, sin_angle, delta);
+    }
 
-                while (x < x2)
+    /**
+     * Walks the fine terrain cells crossed by a flat Earth path from the lower
+     * point toward the higher one, in segments as in roundEarthWalk.  The path
+     * is straight, so the cell walk is exact.
+     *
+     * @param test_pt the lower point.
+     * @param far_pt the higher point.
+     * @param segment_frac fraction of the path spanned by a segment.
+     * @param h_prime LOS elevation in meters at test_pt.
+     * @param max_terrain_elevation maximum terrain elevation along the path.
+     * @return LOS elevation where the walk stopped, or NaN if the path is obstructed.
+     */
+    private double flatEarthWalk(Double3D test_pt, Double3D far_pt,
+        double segment_frac, double h_prime, double max_terrain_elevation)
+    {
+        CellWalk walk = cellWalk();
+
+        double x = test_pt.getX();
+        double y = test_pt.getY();
+        double dx = far_pt.getX() - x;
+        double dy = far_pt.getY() - y;
+        double h = LengthUnit.NAUTICAL_MILES.convert(test_pt.getZ(),
+            LengthUnit.METERS);
+        double dh = LengthUnit.NAUTICAL_MILES.convert(far_pt.getZ(),
+            LengthUnit.METERS) - h;
+
+        double frac0 = 0.;
+        int span = 1;
+        while (frac0 < 1. && h_prime < max_terrain_elevation)
+        {
+            double frac1 = Math.min(1., frac0 + span * segment_frac);
+            double x0 = x + frac0 * dx;
+            double y0 = y + frac0 * dy;
+            double x1 = x + frac1 * dx;
+            double y1 = y + frac1 * dy;
+
+            if (h + frac0 * dh >= spanElevation(true, x0, y0, x1, y1, 0.5 *
+                (x0 + x1), 0.5 * (y0 + y1)))
+            {
+                statistics.skipped_steps += (long) Math.ceil(SEGMENT_CELLS *
+                    (frac1 - frac0) / segment_frac);
+                h_prime = h + frac1 * dh;
+                span = Math.min(2 * span, MAX_SKIP_SEGMENTS);
+            }
+            else if (span > 1)
+            {
+                span /= 2;
+                continue;
+            }
+            else
+            {
+                walk.start(x0, y0, x1, y1);
+                do
                 {
-                    double y = y1;
-                    while (y < y2)
+                    h_prime = h + (frac0 + walk.t_enter * (frac1 - frac0)) * dh;
+
+                    statistics.fine_steps++;
+                    if (h_prime < walk.elevation())
                     {
-                        int index = terrainCell(x, y);
-                        if (index >= 0)
-                        {
-                            short el = fineElevation[index];
+                        return Double.NaN;
+                    }
+                    else if (h_prime >= max_terrain_elevation)
+                    {
+                        return h_prime;
+                    }
+                }
+                while (walk.next());
 
-                            //
-                            el_max = el > el_max ? el : el_max;
-                            el_min = el < el_min ? el : el_min;
-                        }
+                h_prime = h + frac1 * dh;
+            }
 
-                        //
-                        y += yFineRes;
+            frac0 = frac1;
+        }
+        return h_prime;
+    }
+
+    /**
+     * Returns the cell walk over the fine grid, making a new one when the
+     * grid has changed since the last walk.
+     * @return the cell walk.
+     */
+    private CellWalk cellWalk()
+    {
+        if (cell_walk == null || cell_walk.grid != fineElevation)
+        {
+            cell_walk = new CellWalk();
+        }
+        return cell_walk;
+    }
+
+    /**
+     * Returns a bound on the fine terrain elevation of every step along a span
+     * of a path: the highest elevation of any step, or the lowest.  The
+     * bounding box of the span's fine posts is widened by one post, and by
+     * twice the distance of the span's midpoint from the chord between its
+     * ends to allow for the curvature of great circles.  Steps on the edge of
+     * the grid are at sea level beyond the terrain bounds, as elevation() is,
+     * so a box reaching the edge is bounded by sea level as well as by its
+     * posts.
+     *
+     * @param max true for the highest elevation, false for the lowest.
+     * @param x1 x-coordinate of the first step.
+     * @param y1 y-coordinate of the first step.
+     * @param x2 x-coordinate of the last step.
+     * @param y2 y-coordinate of the last step.
+     * @param xm x-coordinate of the span's midpoint.
+     * @param ym y-coordinate of the span's midpoint.
+     * @return bound in meters.
+     */
+    private double spanElevation(boolean max, double x1, double y1, double x2,
+        double y2, double xm, double ym)
+    {
+        double fx1 = (x1 + 0.5 * xFineRes - xMin) / xFineRes;
+        double fy1 = (y1 + 0.5 * yFineRes - yMin) / yFineRes;
+        double fx2 = (x2 + 0.5 * xFineRes - xMin) / xFineRes;
+        double fy2 = (y2 + 0.5 * yFineRes - yMin) / yFineRes;
+        double fxm = (xm + 0.5 * xFineRes - xMin) / xFineRes;
+        double fym = (ym + 0.5 * yFineRes - yMin) / yFineRes;
+
+        double sx = 2. * Math.abs(fxm - 0.5 * (fx1 + fx2));
+        double sy = 2. * Math.abs(fym - 0.5 * (fy1 + fy2));
+
+        double ix0 = Math.floor(Math.min(Math.min(fx1, fx2), fxm) - sx) - 1.;
+        double ix1 = Math.floor(Math.max(Math.max(fx1, fx2), fxm) + sx) + 1.;
+        double iy0 = Math.floor(Math.min(Math.min(fy1, fy2), fym) - sy) - 1.;
+        double iy1 = Math.floor(Math.max(Math.max(fy1, fy2), fym) + sy) + 1.;
+
+        //  Cells the cell walk reads straight from the grid, as in CellWalk.
+        double i_max = Math.min(xPointsFine - 2, Math.floor((xMax - xMin) /
+            xFineRes - 0.5));
+        double j_max = Math.min(yPointsFine - 2, Math.floor((yMax - yMin) /
+            yFineRes - 0.5));
+
+        double el = max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        if (ix1 >= 0. && iy1 >= 0. && ix0 <= xPointsFine - 1 && iy0 <=
+            yPointsFine - 1)
+        {
+            el = boxElevation(max, (int) Math.max(0., ix0), (int) Math.min(
+                xPointsFine - 1, ix1), (int) Math.max(0., iy0), (int) Math.min(
+                yPointsFine - 1, iy1));
+        }
+
+        if (ix0 < 1. || iy0 < 1. || ix1 > i_max || iy1 > j_max)
+        {
+            el = max ? Math.max(0., el) : Math.min(0., el);
+        }
+        return el;
+    }
+
+    /**
+     * Returns the highest or lowest fine elevation over a rectangle of fine
+     * posts, reading at most four cells of a pyramid.  Over a tiled grid no
+     * level finer than TILED_PYRAMID_LEVEL is held, so a small rectangle
+     * reads that level and its bound is looser.
+     *
+     * @param max true for the highest elevation, false for the lowest.
+     * @param ix0 first x index.
+     * @param ix1 last x index.
+     * @param iy0 first y index.
+     * @param iy1 last y index.
+     * @return elevation in meters.
+     */
+    private double boxElevation(boolean max, int ix0, int ix1, int iy0,
+        int iy1)
+    {
+        if (pyramid_base != fineElevation)
+        {
+            buildPyramid();
+        }
+
+        //  Smallest level whose cells are at least as wide as the rectangle.
+        int extent = Math.max(ix1 - ix0, iy1 - iy0) + 1;
+        int level = Math.max(Math.min(32 - Integer.numberOfLeadingZeros(
+            extent - 1), max_pyramid.length), pyramid_first);
+
+        ElevationStore store = level == 0 ? fineElevation : max ?
+            max_pyramid[level - 1] : min_pyramid[level - 1];
+        int cols = level == 0 ? xPointsFine : pyramid_cols[level - 1];
+
+        short el = max ? Short.MIN_VALUE : Short.MAX_VALUE;
+        for (int j = iy0 >> level; j <= iy1 >> level; j++)
+        {
+            for (int i = ix0 >> level; i <= ix1 >> level; i++)
+            {
+                if (pyramid_known != null && level > 0 &&
+                    !pyramid_known[level - 1][j * cols + i])
+                {
+                    computePyramidCell(level, i, j);
+                }
+
+                short post = store.get((long) j * cols + i);
+                el = max ? (short) Math.max(el, post) : (short) Math.min(el,
+                    post);
+            }
+        }
+        return el;
+    }
+
+    /**
+     * Computes a cell of the pyramids over a tiled grid from the cells below
+     * it, or from the fine posts at the lowest level held.
+     *
+     * @param level pyramid level, counting the fine grid as level 0.
+     * @param i x index of the cell.
+     * @param j y index of the cell.
+     */
+    private void computePyramidCell(int level, int i, int j)
+    {
+        short el_max = Short.MIN_VALUE;
+        short el_min = Short.MAX_VALUE;
+
+        if (level == pyramid_first)
+        {
+            int i0 = i << level;
+            int i1 = Math.min((i + 1) << level, xPointsFine);
+            int j1 = Math.min((j + 1) << level, yPointsFine);
+            short[] row = new short[i1 - i0];
+            for (int fj = j << level; fj < j1; fj++)
+            {
+                fineElevation.get((long) fj * xPointsFine + i0, row, 0,
+                    row.length);
+                for (short el : row)
+                {
+                    el_max = el > el_max ? el : el_max;
+                    el_min = el < el_min ? el : el_min;
+                }
+            }
+        }
+        else
+        {
+            int below_cols = pyramid_cols[level - 2];
+            int below_rows = pyramid_rows[level - 2];
+            for (int bj = 2 * j; bj <= Math.min(2 * j + 1, below_rows - 1); bj++)
+            {
+                for (int bi = 2 * i; bi <= Math.min(2 * i + 1, below_cols - 1);
+                    bi++)
+                {
+                    int below = bj * below_cols + bi;
+                    if (!pyramid_known[level - 2][below])
+                    {
+                        computePyramidCell(level - 1, bi, bj);
                     }
-                    x += xFineRes;
+
+                    short el = max_pyramid[level - 2].get(below);
+                    el_max = el > el_max ? el : el_max;
+                    el = min_pyramid[level - 2].get(below);
+                    el_min = el < el_min ? el : el_min;
                 }
+            }
+        }
+
+        int cell = j * pyramid_cols[level - 1] + i;
+        ((BufferElevationStore) max_pyramid[level - 1]).put(cell, el_max);
+        ((BufferElevationStore) min_pyramid[level - 1]).put(cell, el_min);
+        pyramid_known[level - 1][cell] = true;
+    }
+
+    /**
+     * Builds the max- and min-elevation pyramids over the fine grid.  A
+     * compressed grid reads the compressed pyramids built with it, and a
+     * tiled grid gets pyramids whose cells are computed on first use, from
+     * TILED_PYRAMID_LEVEL up, so that only the tiles in use are read.
+     */
+    private void buildPyramid()
+    {
+        pyramid_cols = levelWidths(xPointsFine, yPointsFine);
+        pyramid_rows = levelWidths(yPointsFine, xPointsFine);
+        int levels = pyramid_cols.length;
+        pyramid_first = Math.min(1, levels);
+        pyramid_known = null;
 
-                this.coarseElevationMax[j * xPointsCoarse + i] = el_max;
-                this.coarseElevationMin[j * xPointsCoarse + i] = el_min;
+        if (compressed != null)
+        {
+            max_pyramid = new ElevationStore[levels];
+            min_pyramid = new ElevationStore[levels];
+            for (int k = 0; k < levels; k++)
+            {
+                max_pyramid[k] = compressed.max_pyramid[k].reader(
+                    decoded_tiles);
+                min_pyramid[k] = compressed.min_pyramid[k].reader(
+                    decoded_tiles);
             }
         }
+        else if (tiles != null)
+        {
+            pyramid_first = Math.min(TILED_PYRAMID_LEVEL, levels);
+            max_pyramid = new ElevationStore[levels];
+            min_pyramid = new ElevationStore[levels];
+            pyramid_known = new boolean[levels][];
+            for (int k = Math.max(0, pyramid_first - 1); k < levels; k++)
+            {
+                int cells = pyramid_cols[k] * pyramid_rows[k];
+                max_pyramid[k] = BufferElevationStore.allocate(cells);
+                min_pyramid[k] = BufferElevationStore.allocate(cells);
+                pyramid_known[k] = new boolean[cells];
+            }
+        }
+        else
+        {
+            ElevationStore[][] built = pyramidLevels(fineElevation,
+                xPointsFine, yPointsFine);
+            max_pyramid = built[0];
+            min_pyramid = built[1];
+        }
+        pyramid_base = fineElevation;
+
+        logger.debug("Built elevation pyramids of " + levels + " levels");
     }
 
-    public void readFiles(String directory)
+    /**
+     * Computes the levels of the max- and min-elevation pyramids over a grid
+     * of posts.  Each level holds the highest and lowest elevation of each 2
+     * by 2 block of the level below, down to a single cell, and is computed
+     * two rows of the level below at a time.
+     *
+     * @param posts the grid.
+     * @param cols posts per row.
+     * @param rows number of rows.
+     * @return the levels of the max-elevation pyramid and of the
+     * min-elevation pyramid, finest first.
+     */
+    private static ElevationStore[][] pyramidLevels(ElevationStore posts,
+        int cols, int rows)
     {
-        //  First, discover all files in this location.
-        FilenameFilter f = new FilenameFilter()
+        int[] level_cols = levelWidths(cols, rows);
+        int[] level_rows = levelWidths(rows, cols);
+        ElevationStore[] max_levels = new ElevationStore[level_cols.length];
+        ElevationStore[] min_levels = new ElevationStore[level_cols.length];
+
+        //  Two rows of each pyramid of the level below, and a row of this level.
+        short[] max0 = new short[cols];
+        short[] max1 = new short[cols];
+        short[] min0 = new short[cols];
+        short[] min1 = new short[cols];
+        short[] row_max = new short[(cols + 1) / 2];
+        short[] row_min = new short[(cols + 1) / 2];
+
+        ElevationStore below_max = posts;
+        ElevationStore below_min = posts;
+        int below_cols = cols;
+        int below_rows = rows;
+        for (int k = 0; k < level_cols.length; k++)
         {
-            @Override
-            public boolean accept(File dir, String name)
+            BufferElevationStore level_max = BufferElevationStore.allocate(
+                (long) level_cols[k] * level_rows[k]);
+            BufferElevationStore level_min = BufferElevationStore.allocate(
+                (long) level_cols[k] * level_rows[k]);
+            for (int j = 0; j < level_rows[k]; j++)
             {
-                return name.contains(".dt");
+                long r0 = (long) 2 * j * below_cols;
+                long r1 = (long) Math.min(2 * j + 1, below_rows - 1) *
+                    below_cols;
+                below_max.get(r0, max0, 0, below_cols);
+                below_max.get(r1, max1, 0, below_cols);
+
+                //  The fine grid is the level below both pyramids.
+                short[] lo0 = max0;
+                short[] lo1 = max1;
+                if (below_min != below_max)
+                {
+                    below_min.get(r0, min0, 0, below_cols);
+                    below_min.get(r1, min1, 0, below_cols);
+                    lo0 = min0;
+                    lo1 = min1;
+                }
+
+                for (int i = 0; i < level_cols[k]; i++)
+                {
+                    int i0 = 2 * i;
+                    int i1 = Math.min(2 * i + 1, below_cols - 1);
+                    row_max[i] = (short) Math.max(Math.max(max0[i0], max0[i1]),
+                        Math.max(max1[i0], max1[i1]));
+                    row_min[i] = (short) Math.min(Math.min(lo0[i0], lo0[i1]),
+                        Math.min(lo1[i0], lo1[i1]));
+                }
+                level_max.put((long) j * level_cols[k], row_max, 0,
+                    level_cols[k]);
+                level_min.put((long) j * level_cols[k], row_min, 0,
+                    level_cols[k]);
             }
+            max_levels[k] = level_max;
+            min_levels[k] = level_min;
+
+            below_max = level_max;
+            below_min = level_min;
+            below_cols = level_cols[k];
+            below_rows = level_rows[k];
+        }
+
+        return new ElevationStore[][]
+        {
+            max_levels, min_levels
         };
+    }
 
-        Collection<File> files = listFiles(new File(directory), f, true);
+    /**
+     * Returns the number of cells per row of each level of a pyramid over a
+     * grid, finest first.  Swapping the arguments gives the number of rows.
+     *
+     * @param cols posts per row of the grid.
+     * @param rows number of rows of the grid.
+     * @return cells per row of each level.
+     */
+    private static int[] levelWidths(int cols, int rows)
+    {
+        ArrayList<Integer> widths = new ArrayList<>();
+        while (cols > 1 || rows > 1)
+        {
+            cols = (cols + 1) / 2;
+            rows = (rows + 1) / 2;
+            widths.add(cols);
+        }
 
-        ArrayList<TerrainFile> tfs = new ArrayList<TerrainFile>();
+        int[] w = new int[widths.size()];
+        for (int k = 0; k < w.length; k++)
+        {
+            w[k] = widths.get(k);
+        }
+        return w;
+    }
+
+    /**
+     * Computes the horizon profile of a fixed site from the fine terrain within
+     * MAX_PROFILE_RANGE_NMI of it.  A grid read a tile at a time gets no
+     * profiles, since a profile reads far more tiles than are held at once.
+     *
+     * @param site location of the site.
+     * @param k Earth factor.
+     * @return the profile, or null if the site is not over the terrain grid
+     * or the grid is tiled.
+     */
+    public HorizonProfile computeHorizonProfile(Double3D site,
+        IEarthModel.EarthFactor k)
+    {
+        if (fineElevation == null || tiles != null ||
+            terrainCell(site.getX(), site.getY()) < 0)
+        {
+            return null;
+        }
+
+        boolean round = earth_model.getCoordinateSystem().equalsIgnoreCase(
+            "LLA");
+
+        double x = site.getX();
+        double y = site.getY();
+
+        //  Ranges in n.mi. per unit of each coordinate
+        double x_scale = round ? RoundEarth.EARTH_RADIUS_NMI : 1.;
+        double y_scale = round ? RoundEarth.EARTH_RADIUS_NMI : 1.;
+
+        double max_range = MAX_PROFILE_RANGE_NMI;
+        if (!round)
+        {
+            //  No terrain lies beyond the farthest corner of the grid.
+            max_range = Math.min(max_range, Math.max(Math.hypot(Math.max(x -
+                xMin, xMax - x), Math.max(y - yMin, yMax - y)), 1.));
+        }
+        HorizonProfile profile = new HorizonProfile(site, round, k, max_range);
+
+        //  Bounds of the fine posts that may lie within range.
+        double x_radius = max_range / x_scale + xFineRes;
+        double y_radius = max_range / y_scale + yFineRes;
+        double cos_far = 1.;
+        if (round)
+        {
+            cos_far = Math.cos(Math.min(Math.abs(x) + x_radius, 0.5 *
+                Math.PI - xFineRes));
+            y_radius = Math.min(Math.PI, y_radius / cos_far);
+        }
+        int i0 = Math.max(0, (int) Math.floor((x - x_radius - xMin) /
+            xFineRes));
+        int i1 = Math.min(xPointsFine - 1, (int) Math.ceil((x + x_radius -
+            xMin) / xFineRes));
+        int j0 = Math.max(0, (int) Math.floor((y - y_radius - yMin) /
+            yFineRes));
+        int j1 = Math.min(yPointsFine - 1, (int) Math.ceil((y + y_radius -
+            yMin) / yFineRes));
+
+        for (int i = i0; i <= i1; i++)
+        {
+            double px = xMin + i * xFineRes;
+
+            //  Longitude spacing is widest toward the equator.
+            double cos_lat = round ? Math.cos(Math.max(0., Math.abs(px) -
+                xFineRes)) : 1.;
+            double half_diagonal = 0.505 * Math.hypot(x_scale * xFineRes,
+                y_scale * yFineRes * cos_lat);
+
+            for (int j = j0; j <= j1; j++)
+            {
+                double py = yMin + j * yFineRes;
+
+                double range = profile.groundRange(px, py);
+                if (range - half_diagonal >= max_range)
+                {
+                    continue;
+                }
+
+                double half_width = half_diagonal < range ? Math.asin(
+                    half_diagonal / range) : Math.PI;
+
+                profile.add(profile.azimuth(px, py), half_width, Math.max(0.,
+                    range - half_diagonal), range + half_diagonal,
+                    fineElevation.get((long) j * xPointsFine + i));
+            }
+        }
+
+        //  Range within which every point is on the grid.
+        double grid_range = Math.min(Math.min(x - xMin, xMax - x) * x_scale,
+            Math.min(y - yMin, yMax - y) * y_scale * cos_far);
+        profile.finish(Math.max(0., grid_range));
+
+        logger.debug("Computed horizon profile of " + profile.getBytes() +
+            " bytes to " + max_range + " n.mi.");
+
+        return profile;
+    }
+
+    /**
+     * Loads terrain from the specified array and determines all necessary terrain parameters.
+     *
+     * @param terrain_data an array of fine resolution terrain elevation data in meters above sea level.
+     * @param xMin the x-coordinate of the left boundary of the terrain box.  This is in n.mi. for ENU and radians longitude for LLA.
+     * @param xMax the x-coordinate of the right boundary of the terrain box.  This is in n.mi. for ENU and radians longitude for LLA.
+     * @param yMin the y-coordinate of the lower boundary of the terrain box.  This is in n.mi. for ENU and radians latitude for LLA.
+     * @param yMax the y-coordinate of the upper boundary of the terrain box.  This is in n.mi. for ENU and radians latitude for LLA.
+     * @param rowsFine the number of rows of terrain data on the fine grid (covering the vertical, y-direction of the terrain box).
+     * @param colsFine the number of columns of terrain data on the fine grid (covering the horizontal, x-direction of the terrain box).
+     * @param coarseRes the length of each stretch of a path bounded at once by the coarse pass.
+     *          This is in n.mi. for ENU and radians for LLA.
+     */
+    public void loadTerrain(short[] terrain_data, double xMin, double xMax,
+        double yMin, double yMax, int rowsFine, int colsFine, double coarseRes)
+    {
+        this.xMin = xMin;
+        this.xMax = xMax;
+        this.yMin = yMin;
+        this.yMax = yMax;
+        this.yPointsFine = rowsFine;
+        this.xPointsFine = colsFine;
+
+        assert (terrain_data.length == rowsFine * colsFine) : "Input rows(" +
+            rowsFine + ") and cols(" + colsFine +
+            ") doesn't match actual terrain data size(" + terrain_data.length +
+            ").";
+
+        this.fineElevation = BufferElevationStore.copyOf(terrain_data);
+        this.tiles = null;
+        this.compressed = null;
+        this.terrain_hash = PersistentLOSCache.mix(rowsFine) ^ colsFine;
+        for (int i = 0; i < terrain_data.length; i++)
+        {
+            terrain_hash = PersistentLOSCache.mix(terrain_hash) ^ terrain_data[i];
+        }
+        terrain_hash = PersistentLOSCache.mix(terrain_hash ^
+            Double.doubleToLongBits(xMin)) ^ Double.doubleToLongBits(xMax);
+        terrain_hash = PersistentLOSCache.mix(terrain_hash ^
+            Double.doubleToLongBits(yMin)) ^ Double.doubleToLongBits(yMax);
+
+        //  Now compute the fine resolution
+        this.xFineRes = (xMax - xMin) / colsFine;
+        this.yFineRes = (yMax - yMin) / rowsFine;
+
+        this.setCoarseRes(coarseRes);
+    }
+
+    /**
+     * Replaces the fine terrain grid with a compressed copy, which is read
+     * through a cache of decoded tiles.  LOS is unchanged, and typical terrain
+     * takes well under half the memory.  The elevation pyramids over a
+     * compressed grid are built from the uncompressed grid and compressed
+     * too.  The compressed grid is shared by every world in the process that
+     * loads the same terrain, and each world reads it through its own cache.
+     * A grid mapped from the terrain cache is left as it is, since its pages
+     * are already shared with every process mapping the cache.
+     * @param decoded_tiles number of decoded tiles to hold.
+     */
+    public void compressFineTerrain(int decoded_tiles)
+    {
+        if (fineElevation == null || tiles != null || compressed != null)
+        {
+            return;
+        }
+
+        if (fineElevation instanceof BufferElevationStore &&
+            ((BufferElevationStore) fineElevation).isShared())
+        {
+            logger.info("Fine terrain is mapped from the terrain cache; " +
+                "not compressing");
+            return;
+        }
+
+        this.decoded_tiles = decoded_tiles;
+        this.compressed = sharedGrid(terrain_hash, fineElevation, xPointsFine,
+            yPointsFine);
+        this.fineElevation = compressed.fine.reader(decoded_tiles);
+    }
+
+    /**
+     * Returns the compressed grid of the terrain of the specified hash,
+     * compressing the specified posts and their pyramids if no world holds it.
+     * @param hash terrain hash.
+     * @param posts fine grid.
+     * @param cols posts per row.
+     * @param rows number of rows.
+     * @return the compressed grid.
+     */
+    private static CompressedGrid sharedGrid(long hash, ElevationStore posts,
+        int cols, int rows)
+    {
+        synchronized (compressed_grids)
+        {
+            WeakReference<CompressedGrid> ref = compressed_grids.get(hash);
+            CompressedGrid grid = ref != null ? ref.get() : null;
+            if (grid == null || grid.fine.size() != posts.size())
+            {
+                ElevationStore[][] levels = pyramidLevels(posts, cols, rows);
+                int[] level_cols = levelWidths(cols, rows);
+                int[] level_rows = levelWidths(rows, cols);
+                CompressedElevationStore[] max_pyramid =
+                    new CompressedElevationStore[level_cols.length];
+                CompressedElevationStore[] min_pyramid =
+                    new CompressedElevationStore[level_cols.length];
+                for (int k = 0; k < level_cols.length; k++)
+                {
+                    max_pyramid[k] = CompressedElevationStore.compress(
+                        levels[0][k], level_cols[k], level_rows[k]);
+                    min_pyramid[k] = CompressedElevationStore.compress(
+                        levels[1][k], level_cols[k], level_rows[k]);
+                }
+
+                grid = new CompressedGrid(CompressedElevationStore.compress(
+                    posts, cols, rows), max_pyramid, min_pyramid);
+                compressed_grids.put(hash, new WeakReference<>(grid));
+
+                logger.info("Compressed fine terrain from " + 2 * posts.size() +
+                    " to " + grid.fine.getCompressedBytes() + " bytes");
+            }
+            return grid;
+        }
+    }
+
+    /**
+     * Sets the resolution of the coarse pass, which bounds the terrain beneath
+     * a path from the elevation pyramids a stretch of this length at a time.
+     * @param coarseRes the length of each stretch.
+     *          This is in n.mi. for ENU and radians for LLA.
+     */
+    void setCoarseRes(double coarseRes)
+    {
+        this.coarseRes = coarseRes;
+    }
+
+    /**
+     * Reads all DTED files found under the specified directory into the fine
+     * terrain grid.  The files are parsed in parallel and then copied into the
+     * grid one elevation column at a time.
+     * @param directory directory to search, recursively, for DTED files.
+     */
+    public void readFiles(String directory)
+    {
+        this.readFiles(directory, 0.);
+    }
+
+    /**
+     * Reads all DTED files found under the specified directory into a fine
+     * terrain grid of about the specified resolution.  The grid spacing is the
+     * nearest whole multiple of the spacing of the files, and each post takes
+     * the highest elevation of the file posts it stands for, so that LOS over
+     * the grid is never clearer than over the files.  The full resolution grid
+     * is never built.
+     * @param directory directory to search, recursively, for DTED files.
+     * @param fine_res resolution of the fine grid in radians, or 0 for the
+     * resolution of the files.
+     */
+    public void readFiles(String directory, double fine_res)
+    {
+        //  First, discover all files in this location.
+        Collection<File> files = listTerrainFiles(directory);
+
+        this.terrain_hash = hashFine(hashListing(directory, files), fine_res);
 
         this.xMin = Double.POSITIVE_INFINITY;
         this.xMax = Double.NEGATIVE_INFINITY;
         this.yMin = Double.POSITIVE_INFINITY;
         this.yMax = Double.NEGATIVE_INFINITY;
 
-        for (File file : files)
+        //  Parse the files in parallel.  Each parse only touches its own terrain file.
+        ArrayList<Callable<TerrainFile>> parses = new ArrayList<>();
+        for (final File file : files)
         {
-            TerrainFile tf = this.readFile(file);
-            if (tf != null)
+            parses.add(new Callable<TerrainFile>()
             {
-                tfs.add(tf);
+                @Override
+                public TerrainFile call()
+                {
+                    return parseFile(file);
+                }
+            });
+        }
+
+        ArrayList<TerrainFile> tfs = new ArrayList<TerrainFile>();
+        try
+        {
+            for (Future<TerrainFile> parse : ForkJoinPool.commonPool().
+                invokeAll(parses))
+            {
+                TerrainFile tf = parse.get();
+                if (tf != null)
+                {
+                    this.addBounds(tf);
+                    tfs.add(tf);
+                }
             }
         }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted reading terrain files",
+                ex);
+        }
+        catch (ExecutionException ex)
+        {
+            throw new IllegalStateException("Unable to read terrain files", ex.
+                getCause());
+        }
 
         //  1. Create the fine res array of appropriate dimension...this automatically inits it with zeros.
         this.xPointsFine = (int) Math.ceil((xMax - xMin) / xFineRes + 1.0);
         this.yPointsFine = (int) Math.ceil((yMax - yMin) / yFineRes + 1.0);
-        this.fineElevation = new short[xPointsFine * yPointsFine];
+
+        //  Posts are merged in blocks of factor_x by factor_y for a coarser grid.
+        int factor_x = fine_res > 0. ? Math.max(1, (int) Math.round(fine_res /
+            xFineRes)) : 1;
+        int factor_y = fine_res > 0. ? Math.max(1, (int) Math.round(fine_res /
+            yFineRes)) : 1;
+        double file_x_res = xFineRes;
+        double file_y_res = yFineRes;
+        this.xPointsFine = (xPointsFine + factor_x - 2) / factor_x + 1;
+        this.yPointsFine = (yPointsFine + factor_y - 2) / factor_y + 1;
+        this.xFineRes *= factor_x;
+        this.yFineRes *= factor_y;
+
+        BufferElevationStore fine = BufferElevationStore.allocate((long)
+            xPointsFine * yPointsFine);
+        this.fineElevation = fine;
+        this.tiles = null;
+        this.compressed = null;
 
         //  Sort terrain files -- this isn't necessary, but it helps with debugging so that I can better track what's what.
+        //  Where files share edge posts, the later file wins.
         Collections.sort(tfs, new TFComparator());
 
-        //  2. For each terrain file, compute x, y coords for each point, lookup master terrain file index, and stuff in the value.
-        for (TerrainFile tf : tfs)
+        if (factor_x > 1 || factor_y > 1)
         {
-            for (int i = 0; i < tf.getXPointsFine(); i++)
-            {
-                double lat = tf.getXMin() + (double) i * tf.getXFineRes();
+            this.resample(fine, tfs, file_x_res, file_y_res, factor_x,
+                factor_y);
 
+            logger.info("Resampled terrain by " + factor_x + " x " + factor_y +
+                " to " + xPointsFine + " x " + yPointsFine + " posts");
+        }
+        else
+        {
+            //  2. For each terrain file, copy each elevation column into its place in the master terrain.
+            for (TerrainFile tf : tfs)
+            {
+                int cols = tf.getXPointsFine();
                 for (int j = 0; j < tf.getYPointsFine(); j++)
                 {
                     double lon = tf.getYMin() + (double) j * tf.getYFineRes();
 
-                    this.fineElevation[this.terrainCell(lat, lon)] = tf.
-                        getFineElevation()[tf.terrainCell(lat, lon)];
+                    fine.put(this.fineIndex(tf.getXMin(), lon),
+                        tf.getFineElevation(), j * cols, cols);
                 }
             }
         }
@@ -868,6 +1711,413 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
         tfs.clear();
     }
 
+    /**
+     * Merges the posts of terrain files into a fine grid whose spacing is a
+     * whole multiple of theirs.  Each grid post takes the highest of the file
+     * posts that are nearest to some point it is nearest to, so no point of
+     * the grid is lower than the files make it.  Grid posts no file reaches
+     * are at sea level, as they would be at full resolution.
+     * @param fine the fine grid.
+     * @param tfs terrain files.
+     * @param file_x_res x spacing of the file posts.
+     * @param file_y_res y spacing of the file posts.
+     * @param factor_x grid spacing in file posts along x.
+     * @param factor_y grid spacing in file posts along y.
+     */
+    private void resample(BufferElevationStore fine,
+        ArrayList<TerrainFile> tfs, double file_x_res, double file_y_res,
+        int factor_x, int factor_y)
+    {
+        long size = fine.size();
+        for (long n = 0; n < size; n++)
+        {
+            fine.put(n, Short.MIN_VALUE);
+        }
+
+        int half_x = factor_x / 2;
+        int half_y = factor_y / 2;
+        for (TerrainFile tf : tfs)
+        {
+            int cols = tf.getXPointsFine();
+            short[] posts = tf.getFineElevation();
+            int col0 = (int) ((tf.getXMin() + 0.5 * file_x_res - xMin) /
+                file_x_res);
+            for (int j = 0; j < tf.getYPointsFine(); j++)
+            {
+                double lon = tf.getYMin() + (double) j * tf.getYFineRes();
+                int row = (int) ((lon + 0.5 * file_y_res - yMin) / file_y_res);
+
+                //  Grid rows within half a grid spacing of the file row.
+                int j0 = Math.max(0, -Math.floorDiv(half_y - row, factor_y));
+                int j1 = Math.min(yPointsFine - 1, Math.floorDiv(row + half_y,
+                    factor_y));
+                for (int k = 0; k < cols; k++)
+                {
+                    int col = col0 + k;
+                    int i0 = Math.max(0, -Math.floorDiv(half_x - col, factor_x));
+                    int i1 = Math.min(xPointsFine - 1, Math.floorDiv(col +
+                        half_x, factor_x));
+
+                    short el = posts[j * cols + k];
+                    for (int gj = j0; gj <= j1; gj++)
+                    {
+                        for (int gi = i0; gi <= i1; gi++)
+                        {
+                            long index = (long) gj * xPointsFine + gi;
+                            if (el > fine.get(index))
+                            {
+                                fine.put(index, el);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        for (long n = 0; n < size; n++)
+        {
+            if (fine.get(n) == Short.MIN_VALUE)
+            {
+                fine.put(n, (short) 0);
+            }
+        }
+    }
+
+    /**
+     * Indexes the DTED files found under the specified directory as tiles of
+     * the fine terrain grid, reading only their headers.  Each tile's
+     * elevations are read the first time a post of it is needed, and at most
+     * max_tiles tiles are held at once, so a scenario over a small part of a
+     * large directory reads and holds only the tiles it uses.  The grid is the
+     * same as readFiles would build from the directory.
+     * @param directory directory to search, recursively, for DTED files.
+     * @param max_tiles most tiles to hold at once.
+     */
+    public void indexFiles(String directory, int max_tiles)
+    {
+        Collection<File> files = listTerrainFiles(directory);
+
+        this.terrain_hash = hashListing(directory, files);
+
+        this.xMin = Double.POSITIVE_INFINITY;
+        this.xMax = Double.NEGATIVE_INFINITY;
+        this.yMin = Double.POSITIVE_INFINITY;
+        this.yMax = Double.NEGATIVE_INFINITY;
+
+        ArrayList<TerrainFile> tfs = new ArrayList<>();
+        ArrayList<File> tile_files = new ArrayList<>();
+        for (File file : files)
+        {
+            TerrainFile tf = this.parseHeader(file);
+            if (tf != null)
+            {
+                this.addBounds(tf);
+                tfs.add(tf);
+                tile_files.add(file);
+            }
+        }
+
+        this.xPointsFine = (int) Math.ceil((xMax - xMin) / xFineRes + 1.0);
+        this.yPointsFine = (int) Math.ceil((yMax - yMin) / yFineRes + 1.0);
+
+        ArrayList<Tile> list = new ArrayList<>();
+        for (int k = 0; k < tfs.size(); k++)
+        {
+            TerrainFile tf = tfs.get(k);
+            list.add(new Tile(tile_files.get(k), tf,
+                (int) ((tf.getXMin() + 0.5 * xFineRes - xMin) / xFineRes),
+                (int) ((tf.getYMin() + 0.5 * yFineRes - yMin) / yFineRes)));
+        }
+
+        //  Where tiles share edge posts, the later tile wins.
+        final TFComparator order = new TFComparator();
+        Collections.sort(list, new Comparator<Tile>()
+        {
+            @Override
+            public int compare(Tile o1, Tile o2)
+            {
+                return order.compare(o1.header, o2.header);
+            }
+        });
+
+        this.tiles = new TileStore(list, Math.max(1, max_tiles));
+        this.fineElevation = this.tiles;
+        this.compressed = null;
+
+        logger.info("Indexed " + list.size() + " terrain tiles in " +
+            directory);
+    }
+
+    /**
+     * Returns the DTED files found under the specified directory.
+     * @param directory directory to search, recursively.
+     * @return collection of DTED files.
+     */
+    private static Collection<File> listTerrainFiles(String directory)
+    {
+        FilenameFilter f = new FilenameFilter()
+        {
+            @Override
+            public boolean accept(File dir, String name)
+            {
+                return name.contains(".dt");
+            }
+        };
+
+        return listFiles(new File(directory), f, true);
+    }
+
+    /**
+     * Hashes the paths, sizes and modification times of the specified files,
+     * so that caches keyed by the terrain are invalidated when any file is
+     * added, removed, moved or changed.  Paths are taken relative to the DTED
+     * directory, since DTED keeps tiles of the same name in different
+     * longitude directories.
+     * @param directory DTED directory.
+     * @param files terrain files under the directory.
+     * @return hash of the listing.
+     */
+    private static long hashListing(String directory, Collection<File> files)
+    {
+        Path root = new File(directory).getAbsoluteFile().toPath();
+        ArrayList<String> listing = new ArrayList<>();
+        for (File file : files)
+        {
+            //  Separators are normalised so the hash is the same on every platform.
+            String path = root.relativize(file.getAbsoluteFile().toPath()).
+                toString().replace(File.separatorChar, '/');
+            listing.add(path + ":" + file.length() + ":" + file.lastModified());
+        }
+        Collections.sort(listing);
+
+        long hash = 0L;
+        for (String entry : listing)
+        {
+            hash = PersistentLOSCache.mix(hash ^ entry.hashCode());
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the hash of terrain read at the specified fine resolution from
+     * files of the specified hash.  Terrain at the resolution of the files
+     * keeps the hash of the files.
+     * @param hash hash of the files.
+     * @param fine_res fine resolution, or 0 for the resolution of the files.
+     * @return terrain hash.
+     */
+    private static long hashFine(long hash, double fine_res)
+    {
+        return fine_res > 0. ? PersistentLOSCache.mix(hash ^
+            Double.doubleToLongBits(fine_res)) : hash;
+    }
+
+    /**
+     * Loads the fine grid and its elevation pyramids from the binary terrain
+     * cache of the specified DTED directory, if one exists and is current.
+     * The cache is memory-mapped read-only, and the grid and pyramids are
+     * used in place, so every process using the cache shares their pages.
+     * @param directory DTED directory.
+     * @param fine_res fine resolution in radians, or 0 for that of the files.
+     * @return true if the terrain was loaded from the cache.
+     */
+    private boolean readCache(String directory, double fine_res)
+    {
+        long hash = hashFine(hashListing(directory, listTerrainFiles(
+            directory)), fine_res);
+        File file = cacheFile(hash);
+        if (!file.isFile())
+        {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ))
+        {
+            if (channel.size() < CACHE_HEADER_BYTES)
+            {
+                return false;
+            }
+
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+                0, CACHE_HEADER_BYTES);
+
+            if (bytes.getLong(0) != CACHE_MAGIC || bytes.getLong(8) != hash)
+            {
+                return false;
+            }
+
+            bytes.position(16);
+            double cxMin = bytes.getDouble();
+            double cxMax = bytes.getDouble();
+            double cyMin = bytes.getDouble();
+            double cyMax = bytes.getDouble();
+            double cxFineRes = bytes.getDouble();
+            double cyFineRes = bytes.getDouble();
+            int cxPointsFine = bytes.getInt();
+            int cyPointsFine = bytes.getInt();
+
+            int[] level_cols = levelWidths(cxPointsFine, cyPointsFine);
+            int[] level_rows = levelWidths(cyPointsFine, cxPointsFine);
+            long fine = (long) cxPointsFine * cyPointsFine;
+            long cells = 0L;
+            for (int k = 0; k < level_cols.length; k++)
+            {
+                cells += (long) level_cols[k] * level_rows[k];
+            }
+            if (channel.size() != CACHE_HEADER_BYTES + 2 * (fine + 2 * cells))
+            {
+                return false;
+            }
+
+            long position = CACHE_HEADER_BYTES;
+            ElevationStore cfine = BufferElevationStore.map(channel, position,
+                fine);
+            position += 2 * fine;
+
+            //  All levels of the max pyramid, then all of the min pyramid.
+            ElevationStore[] cmax = new ElevationStore[level_cols.length];
+            ElevationStore[] cmin = new ElevationStore[level_cols.length];
+            for (ElevationStore[] levels : new ElevationStore[][]
+                {
+                    cmax, cmin
+                })
+            {
+                for (int k = 0; k < levels.length; k++)
+                {
+                    long size = (long) level_cols[k] * level_rows[k];
+                    levels[k] = BufferElevationStore.map(channel, position,
+                        size);
+                    position += 2 * size;
+                }
+            }
+
+            this.xMin = cxMin;
+            this.xMax = cxMax;
+            this.yMin = cyMin;
+            this.yMax = cyMax;
+            this.xFineRes = cxFineRes;
+            this.yFineRes = cyFineRes;
+            this.xPointsFine = cxPointsFine;
+            this.yPointsFine = cyPointsFine;
+            this.fineElevation = cfine;
+            this.tiles = null;
+            this.compressed = null;
+            this.max_pyramid = cmax;
+            this.min_pyramid = cmin;
+            this.pyramid_cols = level_cols;
+            this.pyramid_rows = level_rows;
+            this.pyramid_first = Math.min(1, level_cols.length);
+            this.pyramid_known = null;
+            this.pyramid_base = cfine;
+            this.terrain_hash = hash;
+
+            logger.info("Read terrain cache " + file.getPath());
+            return true;
+        }
+        catch (IOException | BufferUnderflowException ex)
+        {
+            logger.warn("Unable to read terrain cache " + file.getPath() + ": " +
+                ex);
+            return false;
+        }
+    }
+
+    /**
+     * Writes the fine grid and its elevation pyramids to the binary terrain
+     * cache of the terrain read last.  The cache is written to a
+     * temporary file and then renamed, so that concurrent launches never see
+     * a partial cache.  Only a fine grid read from the files into buffers is
+     * cached.
+     */
+    private void writeCache()
+    {
+        if (!(this.fineElevation instanceof BufferElevationStore))
+        {
+            return;
+        }
+
+        if (pyramid_base != fineElevation)
+        {
+            buildPyramid();
+        }
+
+        File file = cacheFile(this.terrain_hash);
+        File tmp = new File(file.getPath() + "." + System.nanoTime() + ".tmp");
+
+        try
+        {
+            try (FileOutputStream fos = new FileOutputStream(tmp);
+                DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(fos)))
+            {
+                out.writeLong(CACHE_MAGIC);
+                out.writeLong(this.terrain_hash);
+                out.writeDouble(this.xMin);
+                out.writeDouble(this.xMax);
+                out.writeDouble(this.yMin);
+                out.writeDouble(this.yMax);
+                out.writeDouble(this.xFineRes);
+                out.writeDouble(this.yFineRes);
+                out.writeInt(this.xPointsFine);
+                out.writeInt(this.yPointsFine);
+                for (int i = out.size(); i < CACHE_HEADER_BYTES; i++)
+                {
+                    out.writeByte(0);
+                }
+                out.flush();
+
+                ((BufferElevationStore) this.fineElevation).writeTo(
+                    fos.getChannel());
+                for (ElevationStore level : this.max_pyramid)
+                {
+                    ((BufferElevationStore) level).writeTo(fos.getChannel());
+                }
+                for (ElevationStore level : this.min_pyramid)
+                {
+                    ((BufferElevationStore) level).writeTo(fos.getChannel());
+                }
+            }
+
+            Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+            logger.info("Wrote terrain cache " + file.getPath());
+        }
+        catch (IOException ex)
+        {
+            logger.warn("Unable to write terrain cache " + file.getPath() + ": " +
+                ex);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Returns the binary terrain cache file for the specified terrain hash.
+     * The cache lives in the terrain cache directory of the command line
+     * arguments, and in the temporary directory if that is not writable.
+     * The DTED directory is never written to.
+     * @param hash terrain hash.
+     * @return cache file.
+     */
+    private File cacheFile(long hash)
+    {
+        String name = String.format("terrain-%016x.cmt", hash);
+        File tmp = new File(System.getProperty("java.io.tmpdir"));
+        File dir = args_handler != null ?
+            args_handler.getTerrainCacheDirectory() : tmp;
+        if (!dir.isDirectory())
+        {
+            dir.mkdirs();
+        }
+        if (!dir.canWrite())
+        {
+            dir = tmp;
+        }
+        return new File(dir, name);
+    }
+
     /**
      * Returns a collection of files within a directory.
      * @param directory Directory from which to read the files.
@@ -914,96 +2164,84 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
      */
     public TerrainFile readFile(File file)
     {
-        TerrainFile tf = null;
-        //  First, read the binary file into a memory stream of bytes.
-        try
+        TerrainFile tf = this.parseFile(file);
+        if (tf != null)
         {
-            FileInputStream s = new FileInputStream(file);
-            int n = s.available();
-            byte[] bytes = new byte[n];
-
-            s.read(bytes, 0, n);
-            s.close();
-
-            ByteArrayInputStream bstream = new ByteArrayInputStream(bytes);
-            bstream.reset();
-
-            tf = new TerrainFile();
-
-            // consume a uhl record
-            readBytes(bstream, 3 + 1 + 8 + 8 + 4 + 4 + 4 + 3 + 12 + 4 + 4 + 1 +
-                24);
-
-            // read DSI record and the first part of the WGS84 record
-            readBytes(bstream, 3 + 1 + 2 + 27 + 26 + 5 + 15 + 8 + 2 + 1 + 4 + 4 +
-                4 + 8 + 16 + 9 + 2 + 4 + 3 + 5 + 10 + 4 + 22);
-
-            double xMinDeg = AngleUnit.DMS.convert(parseLat(bstream, 9),
-                AngleUnit.DD);
-            double yMinDeg = AngleUnit.DMS.convert(parseLon(bstream, 10),
-                AngleUnit.DD);
-            tf.setXMin(AngleUnit.DD.convert(xMinDeg, AngleUnit.RADIANS));
-            tf.setYMin(AngleUnit.DD.convert(yMinDeg, AngleUnit.RADIANS));
-
-            this.yMin = Math.min(this.yMin, tf.getYMin());
-            this.xMin = Math.min(this.xMin, tf.getXMin());
-
-            readBytes(bstream, 4 * 15 + 9);
-
-            // Decimal Implied after the 3rd digit, hence the /10.0 - p14
-            double lonDataIntervalInSeconds = parseDouble(bstream, 4) / 10.0;
-            double latDataIntervalInSeconds = parseDouble(bstream, 4) / 10.0;
+            this.addBounds(tf);
+        }
+        return tf;
+    }
 
-            tf.setYFineRes(AngleUnit.DD.convert(lonDataIntervalInSeconds /
-                3600.0, AngleUnit.RADIANS));
-            tf.setXFineRes(AngleUnit.DD.convert(latDataIntervalInSeconds /
-                3600.0, AngleUnit.RADIANS));
+    /**
+     * Widens the terrain bounds to cover the specified terrain file and takes
+     * its resolution.
+     * @param tf terrain file.
+     */
+    private void addBounds(TerrainFile tf)
+    {
+        this.yMin = Math.min(this.yMin, tf.getYMin());
+        this.xMin = Math.min(this.xMin, tf.getXMin());
+        this.yMax = Math.max(this.yMax, tf.getYMax());
+        this.xMax = Math.max(this.xMax, tf.getXMax());
+
+        //  This assumes all files are of the same res -- they better be!
+        this.xFineRes = tf.getXFineRes();
+        this.yFineRes = tf.getYFineRes();
+    }
 
-            //  This assumes all files are of the same res -- they better be!
-            this.xFineRes = tf.getXFineRes();
-            this.yFineRes = tf.getYFineRes();
+    /**
+     * Parses a DTED file without changing the state of the terrain, so that
+     * files may be parsed concurrently.  The file is memory-mapped and each
+     * elevation column is read in bulk.
+     * @param file file to read.
+     * @return A terrain file object, or null if the file could not be read.
+     */
+    private TerrainFile parseFile(File file)
+    {
+        TerrainFile tf = null;
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ))
+        {
+            //  DTED is big-endian, the default byte order of a buffer.
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+                0, channel.size());
 
-            tf.setXPointsFine(parseInt(bstream, 4));
-            tf.setYPointsFine(parseInt(bstream, 4));
+            tf = this.parseHeader(bytes);
             tf.setFineElevation(new short[tf.getYPointsFine() * tf.
                 getXPointsFine()]);
-            int pctCover = parseInt(bstream, 2);
 
-            tf.setYMax(AngleUnit.DD.convert(yMinDeg + (tf.getYPointsFine() - 1) *
-                lonDataIntervalInSeconds / 3600., AngleUnit.RADIANS));
-            tf.setXMax(AngleUnit.DD.convert(xMinDeg + (tf.getXPointsFine() - 1) *
-                latDataIntervalInSeconds / 3600., AngleUnit.RADIANS));
+            //  Each data record is a sentinel, block count, longitude and latitude counts,
+            //  one elevation per point, and a checksum.
+            int cols = tf.getXPointsFine();
+            int record_length = RECORD_HEADER_BYTES + 2 * cols + CHECKSUM_BYTES;
+            short[] column = new short[cols];
+            short[] elevations = tf.getFineElevation();
 
-            this.yMax = Math.max(this.yMax, tf.getYMax());
-            this.xMax = Math.max(this.xMax, tf.getXMax());
-
-            readBytes(bstream, 101 + 100 + 156);
-            readBytes(bstream, 2700);
-            //
-            //            int[][] heights = new int[numLonLines][];
-            //            for(int i = 0; i < numLonLines; i++)
-            //            {
-            //                heights[i] = new int[numLatLines];
-            //            }
+            bytes.position(DATA_OFFSET);
+            ShortBuffer posts = bytes.slice().asShortBuffer();
 
             for (int yIndex = 0; yIndex < tf.getYPointsFine(); yIndex++)
             {
-                byte b = (byte) bstream.read();
+                int record = yIndex * record_length;
 
-                int blockNum = parseBinaryInt(bstream, 3);
+                int lonCount = bytes.getShort(DATA_OFFSET + record + 4) &
+                    0xffff;
 
-                int lonCount = parseBinaryInt(bstream, 2);
-                int latCount = parseBinaryInt(bstream, 2);
+                posts.position((record + RECORD_HEADER_BYTES) / 2);
+                posts.get(column);
 
-                double lon = tf.getYMin() + (double) lonCount * tf.getYFineRes();
+                int offset = lonCount * cols;
 
                 short lastElevation = -100;
-                for (int xIndex = 0; xIndex < tf.getXPointsFine(); xIndex++)
+                for (int xIndex = 0; xIndex < cols; xIndex++)
                 {
-                    double lat = tf.getXMin() + (double) xIndex *
-                        tf.getXFineRes();
+                    //  Elevations are stored as signed magnitude.
+                    short elevation = column[xIndex];
+                    if (elevation < 0)
+                    {
+                        elevation = (short) (-1 * (elevation & Short.MAX_VALUE));
+                    }
 
-                    short elevation = parseSignedShort(bstream);
                     if (elevation > 30000)
                     {
                         elevation = (short) (-1 *
@@ -1025,77 +2263,109 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
                         elevation = lastElevation;
                     }
 
-                    tf.getFineElevation()[tf.terrainCell(lat, lon)] = elevation;
+                    elevations[offset + xIndex] = elevation;
 
                     lastElevation = elevation;
                 }
-
-                //Console.Write("CheckSum = ");
-                bstream.read();
-                bstream.read();
-                bstream.read();
-                bstream.read();
             }
-
-            bstream.close();
-
         }
-        catch (IOException e)
+        catch (IOException | IndexOutOfBoundsException |
+            BufferUnderflowException e)
         {
+            logger.warn("Unable to read terrain file " + file.getPath() + ": " +
+                e);
+            tf = null;
         }
 
         return tf;
     }
 
-    private static short parseSignedShort(ByteArrayInputStream stream)
+    /**
+     * Parses the header of a DTED file, leaving its elevations unread.  Files
+     * too short to hold the elevations their header describes are rejected.
+     * @param file file to read.
+     * @return A terrain file object without elevations, or null if the file
+     * could not be read.
+     */
+    private TerrainFile parseHeader(File file)
     {
-        short retVal = 0;
-        short b1 = (short) stream.read();
-        short b2 = (short) stream.read();
-
-        short x = (short) (b1 & 0x80);
-        if (x > 0)
-        {
-            short mask = (short) 0x7f;
-            short b1Prime = (short) (b1 & mask);
-            retVal = (short) (-1 * (short) ((short) (b1Prime << 8) + b2));
-        }
-        else
+        TerrainFile tf = null;
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ))
         {
-            retVal = (short) ((short) (b1 << 8) + b2);
-        }
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+                0, Math.min(channel.size(), DATA_OFFSET));
 
+            tf = this.parseHeader(bytes);
 
-        if (retVal < -20000)
+            long record_length = RECORD_HEADER_BYTES + 2 * tf.getXPointsFine() +
+                CHECKSUM_BYTES;
+            if (channel.size() < DATA_OFFSET + tf.getYPointsFine() *
+                record_length)
+            {
+                throw new BufferUnderflowException();
+            }
+        }
+        catch (IOException | IndexOutOfBoundsException |
+            BufferUnderflowException e)
         {
-            //  throw new Exception();
+            logger.warn("Unable to read terrain file " + file.getPath() + ": " +
+                e);
+            tf = null;
         }
-        return retVal;
-    }
 
-    private static int parseBinaryInt(ByteArrayInputStream stream, int num)
-    {
-        int x = 0;
-        for (int i = 0; i < num; i++)
-        {
-            byte b = (byte) stream.read();
+        return tf;
+    }
 
-            x = (x << 8) + (int) b;
-        }
+    /**
+     * Reads the origin, post spacing and post counts from the header records
+     * of a DTED file.
+     * @param bytes the file.
+     * @return A terrain file object without elevations.
+     */
+    private TerrainFile parseHeader(ByteBuffer bytes)
+    {
+        TerrainFile tf = new TerrainFile();
+
+        double xMinDeg = AngleUnit.DMS.convert(parseLat(bytes,
+            X_ORIGIN_OFFSET, 9), AngleUnit.DD);
+        double yMinDeg = AngleUnit.DMS.convert(parseLon(bytes,
+            Y_ORIGIN_OFFSET, 10), AngleUnit.DD);
+        tf.setXMin(AngleUnit.DD.convert(xMinDeg, AngleUnit.RADIANS));
+        tf.setYMin(AngleUnit.DD.convert(yMinDeg, AngleUnit.RADIANS));
+
+        // Decimal Implied after the 3rd digit, hence the /10.0 - p14
+        double lonDataIntervalInSeconds = parseDouble(bytes,
+            Y_INTERVAL_OFFSET, 4) / 10.0;
+        double latDataIntervalInSeconds = parseDouble(bytes,
+            X_INTERVAL_OFFSET, 4) / 10.0;
+
+        tf.setYFineRes(AngleUnit.DD.convert(lonDataIntervalInSeconds /
+            3600.0, AngleUnit.RADIANS));
+        tf.setXFineRes(AngleUnit.DD.convert(latDataIntervalInSeconds /
+            3600.0, AngleUnit.RADIANS));
+
+        tf.setXPointsFine(parseInt(bytes, X_POINTS_OFFSET, 4));
+        tf.setYPointsFine(parseInt(bytes, Y_POINTS_OFFSET, 4));
+
+        tf.setYMax(AngleUnit.DD.convert(yMinDeg + (tf.getYPointsFine() - 1) *
+            lonDataIntervalInSeconds / 3600., AngleUnit.RADIANS));
+        tf.setXMax(AngleUnit.DD.convert(xMinDeg + (tf.getXPointsFine() - 1) *
+            latDataIntervalInSeconds / 3600., AngleUnit.RADIANS));
 
-        return (x);
+        return tf;
     }
 
     /**
-     * Reads the latitude from the stream and returns it in DMS
-     * @param stream stream to read from
+     * Reads the latitude from the buffer and returns it in DMS
+     * @param bytes buffer to read from
+     * @param offset offset of the first byte
      * @param count number of bytes to read
      * @return latitude in DMS
      */
-    private static double parseLat(ByteArrayInputStream stream, int count)
+    private static double parseLat(ByteBuffer bytes, int offset, int count)
     {
-        char[] buff = readBytes(stream, count);
-        String latString = new String(buff);
+        String latString = readString(bytes, offset, count);
         double val = parseDMS(latString);
         if (latString.charAt(count - 1) == 'S')
         {
@@ -1105,10 +2375,9 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
         return (val);
     }
 
-    private static double parseLon(ByteArrayInputStream stream, int count)
+    private static double parseLon(ByteBuffer bytes, int offset, int count)
     {
-        char[] buff = readBytes(stream, count);
-        String lonString = new String(buff);
+        String lonString = readString(bytes, offset, count);
         double val = parseDMS(lonString);
         if (lonString.charAt(count - 1) == 'W')
         {
@@ -1141,27 +2410,26 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
         return (val);
     }
 
-    private static double parseDouble(ByteArrayInputStream stream, int num)
+    private static double parseDouble(ByteBuffer bytes, int offset, int num)
     {
-        return (Double.parseDouble(new String(readBytes(stream, num))));
+        return (Double.parseDouble(readString(bytes, offset, num)));
     }
 
-    private static int parseInt(ByteArrayInputStream stream, int num)
+    private static int parseInt(ByteBuffer bytes, int offset, int num)
     {
-        return (Integer.parseInt(new String(readBytes(stream, num))));
+        return (Integer.parseInt(readString(bytes, offset, num)));
     }
 
-    private static char[] readBytes(ByteArrayInputStream stream, int num)
+    private static String readString(ByteBuffer bytes, int offset, int num)
     {
         char[] buff = new char[num];
 
-        for (int i = 0; i <
-            num; i++)
+        for (int i = 0; i < num; i++)
         {
-            buff[i] = (char) stream.read();
+            buff[i] = (char) (bytes.get(offset + i) & 0xff);
         }
 
-        return buff;
+        return new String(buff);
     }
 
     @Override
@@ -1171,7 +2439,11 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
         NodeList children = node.getChildNodes();
         Double value = null;
         String units = null;
+        Double fine_value = null;
+        String fine_units = null;
         String directory = null;
+        int tile_cache = 0;
+        int compressed_tiles = 0;
         for (int i = 0; i < children.getLength(); i++)
         {
             Node child = children.item(i);
@@ -1190,12 +2462,26 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
                     units = p.getTextContent();
                 }
             }
+            else if (child.getNodeName().equalsIgnoreCase("fine-resolution"))
+            {
+                Node f = child.getAttributes().getNamedItem("value");
+                if (f != null)
+                {
+                    fine_value = Double.parseDouble(f.getTextContent());
+                }
+
+                Node p = child.getAttributes().getNamedItem("units");
+                if (p != null)
+                {
+                    fine_units = p.getTextContent();
+                }
+            }
             else if (child.getNodeName().equalsIgnoreCase("directory"))
             {
                 URL scenarioURL = null;
                 try
                 {
-                    scenarioURL = new URL(ArgsHandler.getInstance().
+                    scenarioURL = new URL(args_handler.
                         getScenarioURL());
                 }
                 catch (Exception ex)
@@ -1209,16 +2495,32 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
                 }
                 else
                 {
-                    directory = ArgsHandler.getInstance().getWorkingDirectory() +
+                    directory = args_handler.getWorkingDirectory() +
                         java.io.File.separator + scenarioURL.getPath().substring(0, scenarioURL.getPath().
                         lastIndexOf("/") + 1) + child.getTextContent();
                 }
             }
+            else if (child.getNodeName().equalsIgnoreCase("tile-cache"))
+            {
+                tile_cache = DEFAULT_TILE_CACHE;
+                Node t = child.getAttributes().getNamedItem("tiles");
+                if (t != null)
+                {
+                    tile_cache = Integer.parseInt(t.getTextContent());
+                }
+            }
+            else if (child.getNodeName().equalsIgnoreCase("compressed-tiles"))
+            {
+                compressed_tiles = DEFAULT_DECODED_TILES;
+                Node t = child.getAttributes().getNamedItem("cache");
+                if (t != null)
+                {
+                    compressed_tiles = Integer.parseInt(t.getTextContent());
+                }
+            }
         }
         if (value != null && directory != null)
         {
-            this.readFiles(directory);
-
             if (units != null)
             {
                 value = AngleUnit.valueOf(units).convert(value,
@@ -1233,7 +2535,40 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
 //                }
             }
 
-            this.computeCoarseTerrain(value);
+            double fine_res = 0.;
+            if (fine_value != null)
+            {
+                fine_res = fine_units != null ? AngleUnit.valueOf(fine_units).
+                    convert(fine_value, AngleUnit.RADIANS) : fine_value;
+            }
+
+            //  The binary cache holds the fine grid and its pyramids, so a
+            //  cache hit skips reading the DTED files and building the
+            //  pyramids.  A tiled grid is read a tile at a time instead, and
+            //  is never cached.
+            if (tile_cache > 0)
+            {
+                if (fine_res > 0. || compressed_tiles > 0)
+                {
+                    logger.warn("Tiled terrain is read at the resolution of " +
+                        "its files and uncompressed; ignoring fine-resolution " +
+                        "and compressed-tiles");
+                }
+                this.indexFiles(directory, tile_cache);
+            }
+            else if (!this.readCache(directory, fine_res))
+            {
+                this.readFiles(directory, fine_res);
+
+                this.writeCache();
+            }
+
+            this.setCoarseRes(value);
+
+            if (compressed_tiles > 0)
+            {
+                this.compressFineTerrain(compressed_tiles);
+            }
         }
     }
 
@@ -1472,6 +2807,537 @@ public class TwoLevelTerrain implements ITerrainModel, IXML
         }
     }
 
+    /**
+     * Great circle LOS path from a point, with the quantities needed to find
+     * the location and LOS elevation at any angle along it.  The path is
+     * parametrised once as a rotation of the unit vector of the point toward
+     * the tangent along the bearing, in a frame turned to the point's
+     * longitude.
+     */
+    private static class RoundEarthPath
+    {
+        private static final double half_pi = Math.PI / 2.;
+
+        private final double y1;
+
+        //  Unit vector of point 1 and unit tangent along the bearing.
+        private final double ux;
+
+        private final double uz;
+
+        private final double tx;
+
+        private final double ty;
+
+        private final double tz;
+
+        private final double elevation_angle;
+
+        private final double cos_elevation;
+
+        private final double rk;
+
+        private final double rh1;
+
+        private final double k;
+
+        private RoundEarthPath(Double3D location1, IEarthModel.EarthFactor k,
+            double bearing, double elevation_angle)
+        {
+            double coslat1 = Math.cos(location1.getX());
+            double sinlat1 = Math.sin(location1.getX());
+            double cosbearing = Math.cos(bearing);
+
+            this.y1 = location1.getY();
+            this.ux = coslat1;
+            this.uz = sinlat1;
+            this.tx = -cosbearing * sinlat1;
+            this.ty = Math.sin(bearing);
+            this.tz = cosbearing * coslat1;
+            this.elevation_angle = elevation_angle;
+            this.cos_elevation = Math.cos(elevation_angle);
+            this.rk = RoundEarth.EARTH_RADIUS_NMI * k.value();
+            this.rh1 = rk + location1.getZ();
+            this.k = k.value();
+        }
+
+        //  Latitude at the great circle angle whose cosine and sine are given.
+        private double lat(double cos_alpha, double sin_alpha)
+        {
+            double arg = cos_alpha * uz + sin_alpha * tz;
+            return Math.asin(Math.max(Math.min(arg, 1.), -1.));
+        }
+
+        //  Longitude at the great circle angle whose cosine and sine are given.
+        private double lon(double cos_alpha, double sin_alpha)
+        {
+            return y1 + Math.atan2(sin_alpha * ty, cos_alpha * ux + sin_alpha *
+                tx);
+        }
+
+        private double lat(double local_alpha)
+        {
+            return lat(Math.cos(local_alpha), Math.sin(local_alpha));
+        }
+
+        private double lon(double local_alpha)
+        {
+            return lon(Math.cos(local_alpha), Math.sin(local_alpha));
+        }
+
+        //  LOS elevation in meters at great circle angle local_alpha.
+        private double losElevation(double local_alpha)
+        {
+            return LengthUnit.NAUTICAL_MILES.convert(rh1 * Math.sin(half_pi +
+                elevation_angle) / Math.sin(half_pi - elevation_angle -
+                local_alpha / k) - rk, LengthUnit.METERS);
+        }
+
+        //  LOS elevation in meters a small angle delta (as great circle angle / k)
+        //  beyond an angle whose elevation_angle + alpha / k has the cosine
+        //  and sine given, by series to delta^5.
+        private double losElevation(double cos_angle, double sin_angle,
+            double delta)
+        {
+            double delta_sq = delta * delta;
+            double cos_delta = 1. - 0.5 * delta_sq * (1. - delta_sq / 12.);
+            double sin_delta = delta * (1. - delta_sq / 6. * (1. - delta_sq /
+                20.));
+
+            return LengthUnit.NAUTICAL_MILES.convert(rh1 * cos_elevation /
+                (cos_angle * cos_delta - sin_angle * sin_delta) - rk,
+                LengthUnit.METERS);
+        }
+    }
+
+    /**
+     * Steps through the fine terrain cells crossed by a straight line in the
+     * terrain coordinates, by the cell boundaries it crosses (Amanatides and
+     * Woo).  The line is parametrised by t from 0 to 1.  A cell on the edge of
+     * the grid is stepped through in parts where the line crosses the terrain
+     * bounds within it, so that each step has the single elevation elevation()
+     * gives all along it: the cell's post inside the bounds and sea level
+     * beyond them.
+     */
+    private class CellWalk
+    {
+        //  Fine grid the walk was made for.
+        private final ElevationStore grid = fineElevation;
+
+        //  Last cell indices whose posts lie wholly inside the terrain bounds.
+        private final int i_max = Math.min(xPointsFine - 2,
+            (int) Math.floor((xMax - xMin) / xFineRes - 0.5));
+
+        private final int j_max = Math.min(yPointsFine - 2,
+            (int) Math.floor((yMax - yMin) / yFineRes - 0.5));
+
+        private double x0, y0, dx, dy;
+
+        private int i, j, di, dj;
+
+        private double t_max_i, t_max_j, t_delta_i, t_delta_j;
+
+        //  Parameters at which the line enters and leaves the terrain bounds.
+        private double t_in, t_out;
+
+        //  Parameter at which the line leaves the current cell.
+        private double t_cell_exit;
+
+        //  Parameters at which the current step starts and ends.
+        private double t_enter, t_exit;
+
+        //  Whether the current step is inside the terrain bounds.
+        private boolean inside;
+
+        private void start(double x0, double y0, double x1, double y1)
+        {
+            this.x0 = x0;
+            this.y0 = y0;
+            this.dx = x1 - x0;
+            this.dy = y1 - y0;
+
+            double u = (x0 + 0.5 * xFineRes - xMin) / xFineRes;
+            double v = (y0 + 0.5 * yFineRes - yMin) / yFineRes;
+            double du = dx / xFineRes;
+            double dv = dy / yFineRes;
+
+            i = (int) Math.floor(u);
+            j = (int) Math.floor(v);
+            di = du > 0. ? 1 : -1;
+            dj = dv > 0. ? 1 : -1;
+            t_delta_i = du != 0. ? Math.abs(1. / du) : Double.POSITIVE_INFINITY;
+            t_delta_j = dv != 0. ? Math.abs(1. / dv) : Double.POSITIVE_INFINITY;
+            t_max_i = du > 0. ? (i + 1 - u) / du : du < 0. ? (u - i) / -du :
+                Double.POSITIVE_INFINITY;
+            t_max_j = dv > 0. ? (j + 1 - v) / dv : dv < 0. ? (v - j) / -dv :
+                Double.POSITIVE_INFINITY;
+
+            //  Clip the line to the terrain bounds.
+            t_in = Double.NEGATIVE_INFINITY;
+            t_out = Double.POSITIVE_INFINITY;
+            clip(x0, dx, xMin, xMax);
+            clip(y0, dy, yMin, yMax);
+
+            t_enter = 0.;
+            t_cell_exit = Math.min(Math.min(t_max_i, t_max_j), 1.);
+            step();
+        }
+
+        //  Narrows the parameters within the terrain bounds to those at which
+        //  one coordinate of the line is within its bounds.
+        private void clip(double c0, double dc, double c_min, double c_max)
+        {
+            if (dc != 0.)
+            {
+                double ta = (c_min - c0) / dc;
+                double tb = (c_max - c0) / dc;
+                t_in = Math.max(t_in, Math.min(ta, tb));
+                t_out = Math.min(t_out, Math.max(ta, tb));
+            }
+            else if (c0 < c_min || c0 > c_max)
+            {
+                t_in = Double.POSITIVE_INFINITY;
+            }
+        }
+
+        //  Ends the step that starts at t_enter in the current cell.
+        private void step()
+        {
+            t_exit = t_cell_exit;
+            inside = true;
+            if (i < 1 || i > i_max || j < 1 || j > j_max)
+            {
+                if (t_enter < t_in)
+                {
+                    inside = false;
+                    t_exit = Math.min(t_exit, t_in);
+                }
+                else if (t_enter >= t_out)
+                {
+                    inside = false;
+                }
+                else
+                {
+                    t_exit = Math.min(t_exit, t_out);
+                }
+            }
+        }
+
+        //  Moves to the next step, returning false at the end of the line.
+        private boolean next()
+        {
+            if (t_exit < t_cell_exit)
+            {
+                t_enter = t_exit;
+                step();
+                return true;
+            }
+
+            if (t_cell_exit >= 1.)
+            {
+                return false;
+            }
+
+            if (t_max_i <= t_max_j)
+            {
+                i += di;
+                t_max_i += t_delta_i;
+            }
+            else
+            {
+                j += dj;
+                t_max_j += t_delta_j;
+            }
+
+            t_enter = t_cell_exit;
+            t_cell_exit = Math.min(Math.min(t_max_i, t_max_j), 1.);
+            step();
+            return true;
+        }
+
+        //  Terrain elevation of the current step.
+        private double elevation()
+        {
+            double el = 0.;
+            if (inside && i >= 0 && i < xPointsFine && j >= 0)
+            {
+                long index = (long) j * xPointsFine + i;
+                if (index < fineElevation.size())
+                {
+                    el = fineElevation.get(index);
+                }
+            }
+            return el;
+        }
+    }
+
+    /**
+     * A DTED file indexed as a tile of the fine terrain grid.
+     */
+    private static class Tile
+    {
+        private final File file;
+
+        //  Header of the file, without elevations.
+        private final TerrainFile header;
+
+        //  Fine grid indices of the tile's first post, and its posts per row and column.
+        private final int col0, row0, cols, rows;
+
+        //  Precedence where tiles share posts; the higher wins.
+        private int rank = 0;
+
+        //  Whether the tile owns every post of its grid box but the last
+        //  column and row, so that no other tile need be searched for them.
+        private boolean owns_interior = true;
+
+        //  Elevations in the order read from the file, or null if not held.
+        private short[] posts = null;
+
+        private long last_used = 0L;
+
+        private Tile(File file, TerrainFile header, int col0, int row0)
+        {
+            this.file = file;
+            this.header = header;
+            this.col0 = col0;
+            this.row0 = row0;
+            this.cols = header.getXPointsFine();
+            this.rows = header.getYPointsFine();
+        }
+
+        private boolean contains(int i, int j)
+        {
+            return i >= col0 && i < col0 + cols && j >= row0 && j < row0 + rows;
+        }
+
+        private boolean overlaps(int i0, int i1, int j0, int j1)
+        {
+            return i0 < col0 + cols && i1 >= col0 && j0 < row0 + rows &&
+                j1 >= row0;
+        }
+    }
+
+    /**
+     * Compressed fine grid of a terrain and its elevation pyramids, which are
+     * immutable and so shared by the worlds of the process.
+     */
+    private static final class CompressedGrid
+    {
+        private final CompressedElevationStore fine;
+
+        //  Levels of the pyramids, finest first.
+        private final CompressedElevationStore[] max_pyramid;
+
+        private final CompressedElevationStore[] min_pyramid;
+
+        private CompressedGrid(CompressedElevationStore fine,
+            CompressedElevationStore[] max_pyramid,
+            CompressedElevationStore[] min_pyramid)
+        {
+            this.fine = fine;
+            this.max_pyramid = max_pyramid;
+            this.min_pyramid = min_pyramid;
+        }
+    }
+
+    /**
+     * Fine terrain grid held as the DTED tiles covering it.  A tile's file is
+     * read the first time one of its posts is needed, and the least recently
+     * used tile is dropped when too many are held.  Tiles are found through a
+     * lattice of cells the size of a tile.  The grid is read-only.
+     */
+    private class TileStore implements ElevationStore
+    {
+        //  Tiles in order of precedence, lowest first.
+        private final Tile[] tiles;
+
+        //  Tiles overlapping each lattice cell, highest precedence first.
+        private final Tile[][] lattice;
+
+        private final int lattice_cols, lattice_rows, step_i, step_j;
+
+        private final int max_tiles;
+
+        private final ArrayList<Tile> held = new ArrayList<>();
+
+        //  Tile of the last post read.
+        private Tile last = null;
+
+        private long clock = 0L;
+
+        private TileStore(ArrayList<Tile> tiles, int max_tiles)
+        {
+            this.tiles = tiles.toArray(new Tile[tiles.size()]);
+            this.max_tiles = max_tiles;
+
+            int si = Integer.MAX_VALUE;
+            int sj = Integer.MAX_VALUE;
+            for (int k = 0; k < this.tiles.length; k++)
+            {
+                Tile tile = this.tiles[k];
+                tile.rank = k;
+                si = Math.min(si, tile.cols - 1);
+                sj = Math.min(sj, tile.rows - 1);
+            }
+            this.step_i = Math.max(1, si);
+            this.step_j = Math.max(1, sj);
+            this.lattice_cols = xPointsFine / step_i + 1;
+            this.lattice_rows = yPointsFine / step_j + 1;
+
+            ArrayList<ArrayList<Tile>> cells = new ArrayList<>();
+            for (int c = 0; c < lattice_cols * lattice_rows; c++)
+            {
+                cells.add(new ArrayList<Tile>());
+            }
+            for (int k = this.tiles.length - 1; k >= 0; k--)
+            {
+                Tile tile = this.tiles[k];
+                for (int c : cellsOf(tile))
+                {
+                    cells.get(c).add(tile);
+                }
+            }
+
+            this.lattice = new Tile[cells.size()][];
+            for (int c = 0; c < lattice.length; c++)
+            {
+                lattice[c] = cells.get(c).toArray(new Tile[cells.get(c).size()]);
+            }
+
+            //  A tile owns its interior unless a later tile overlaps it.
+            for (int k = 0; k < this.tiles.length; k++)
+            {
+                Tile tile = this.tiles[k];
+                for (int c : cellsOf(tile))
+                {
+                    for (Tile other : lattice[c])
+                    {
+                        if (other != tile && other.overlaps(tile.col0,
+                            tile.col0 + tile.cols - 2, tile.row0, tile.row0 +
+                            tile.rows - 2) && other.rank > tile.rank)
+                        {
+                            tile.owns_interior = false;
+                        }
+                    }
+                }
+            }
+        }
+
+        private ArrayList<Integer> cellsOf(Tile tile)
+        {
+            ArrayList<Integer> cells = new ArrayList<>();
+            int c1 = Math.min(lattice_cols - 1, (tile.col0 + tile.cols - 1) /
+                step_i);
+            int r1 = Math.min(lattice_rows - 1, (tile.row0 + tile.rows - 1) /
+                step_j);
+            for (int r = Math.max(0, tile.row0 / step_j); r <= r1; r++)
+            {
+                for (int c = Math.max(0, tile.col0 / step_i); c <= c1; c++)
+                {
+                    cells.add(r * lattice_cols + c);
+                }
+            }
+            return cells;
+        }
+
+        @Override
+        public long size()
+        {
+            return (long) xPointsFine * yPointsFine;
+        }
+
+        @Override
+        public short get(long index)
+        {
+            int j = (int) (index / xPointsFine);
+            int i = (int) (index - (long) j * xPointsFine);
+
+            Tile tile = last;
+            if (tile == null || !tile.owns_interior || i < tile.col0 ||
+                i >= tile.col0 + tile.cols - 1 || j < tile.row0 || j >=
+                tile.row0 + tile.rows - 1)
+            {
+                tile = find(i, j);
+                if (tile == null)
+                {
+                    return 0;
+                }
+                use(tile);
+            }
+
+            return tile.posts[(j - tile.row0) * tile.cols + i - tile.col0];
+        }
+
+        @Override
+        public void get(long index, short[] dst, int offset, int length)
+        {
+            for (int k = 0; k < length; k++)
+            {
+                dst[offset + k] = get(index + k);
+            }
+        }
+
+        /**
+         * Returns the tile of highest precedence holding a post.
+         * @param i x index of the post.
+         * @param j y index of the post.
+         * @return the tile, or null if no tile holds the post.
+         */
+        private Tile find(int i, int j)
+        {
+            for (Tile tile : lattice[Math.min(lattice_rows - 1, j / step_j) *
+                lattice_cols + Math.min(lattice_cols - 1, i / step_i)])
+            {
+                if (tile.contains(i, j))
+                {
+                    return tile;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Marks a tile as the most recently used, reading it if it is not
+         * held.
+         * @param tile tile to use.
+         */
+        private void use(Tile tile)
+        {
+            if (tile.posts == null)
+            {
+                if (held.size() >= max_tiles)
+                {
+                    Tile lru = held.get(0);
+                    for (Tile t : held)
+                    {
+                        lru = t.last_used < lru.last_used ? t : lru;
+                    }
+                    lru.posts = null;
+                    held.remove(lru);
+                }
+
+                TerrainFile tf = parseFile(tile.file);
+                if (tf != null && tf.getXPointsFine() == tile.cols &&
+                    tf.getYPointsFine() == tile.rows)
+                {
+                    tile.posts = tf.getFineElevation();
+                }
+                else
+                {
+                    tile.posts = new short[tile.cols * tile.rows];
+                }
+                held.add(tile);
+
+                logger.debug("Read terrain tile " + tile.file.getPath() +
+                    ", holding " + held.size());
+            }
+
+            tile.last_used = ++clock;
+            last = tile;
+        }
+    }
+
     /**
      * A comparator for supporting sorting of the terrain files on location.
      */
@@ -129,9 +129,9 @@ public class TwoWayRoutePointsBehavior extends RoutePointsBehavior
 
             if (destination != null)
             {
-                p.setHeading(CMWorld.getEarthModel().azimuthAngle(location,
+                p.setHeading(getPlatform().getWorld().getGeometry().azimuthAngle(location,
                     destination.getPoint()));
-                p.setElevationAngle(CMWorld.getEarthModel().elevationAngle(location,
+                p.setElevationAngle(getPlatform().getWorld().getGeometry().elevationAngle(location,
                     destination.getPoint(), IEarthModel.EarthFactor.REAL_EARTH));
 
             }
@@ -209,7 +209,7 @@ public class TwoWayRoutePointsBehavior extends RoutePointsBehavior
             }
 
             double dist_to_dest =
-                CMWorld.getEarthModel().trueDistance(location,
+                getPlatform().getWorld().getGeometry().trueDistance(location,
                 destination.getPoint());
 
             if (distance >= dist_to_dest)
@@ -264,7 +264,7 @@ public class TwoWayRoutePointsBehavior extends RoutePointsBehavior
                 if (destination != null && destination.getPoint() != location)
                 {
                     dist_to_dest =
-                        CMWorld.getEarthModel().trueDistance(location,
+                        getPlatform().getWorld().getGeometry().trueDistance(location,
                         destination.getPoint());
                 }
                 else
@@ -275,7 +275,7 @@ public class TwoWayRoutePointsBehavior extends RoutePointsBehavior
 
             if (dist_to_dest > 0.)
             {
-                Double3D new_loc = CMWorld.getEarthModel().
+                Double3D new_loc = getPlatform().getWorld().getGeometry().
                     interpolateLocation(location, destination.getPoint(),
                     distance);
                 p.setLocation(new_loc);
@@ -284,11 +284,11 @@ public class TwoWayRoutePointsBehavior extends RoutePointsBehavior
             //  Set heading
             if (p.getStatus() == Platform.Status.ACTIVE && destination != null)
             {
-                p.setHeading(CMWorld.getEarthModel().azimuthAngle(location,
+                p.setHeading(getPlatform().getWorld().getGeometry().azimuthAngle(location,
                     destination.getPoint()));
                 //  The elevation must be corrected by subtracting the elevation for the destination point, but at the same height as current location.
-                p.setElevationAngle(CMWorld.getEarthModel().elevationAngle(location,
-                    destination.getPoint(), IEarthModel.EarthFactor.REAL_EARTH) - CMWorld.getEarthModel().
+                p.setElevationAngle(getPlatform().getWorld().getGeometry().elevationAngle(location,
+                    destination.getPoint(), IEarthModel.EarthFactor.REAL_EARTH) - getPlatform().getWorld().getGeometry().
                     elevationAngle(location, new Double3D(destination.getPoint().
                     getX(), destination.getPoint().getY(),
                     location.getZ()), IEarthModel.EarthFactor.REAL_EARTH));
@@ -172,9 +172,9 @@ public abstract class Weapon extends MobilePlatform
         this.setStatus(Platform.Status.ACTIVE);
         this.launch_location = launch_location;
         this.setTarget(target);
-        this.setHeading(CMWorld.getEarthModel().azimuthAngle(launch_location,
+        this.setHeading(getWorld().getGeometry().azimuthAngle(launch_location,
             target.getLocation()));
-        this.setElevationAngle(CMWorld.getEarthModel().elevationAngle(launch_location,
+        this.setElevationAngle(getWorld().getGeometry().elevationAngle(launch_location,
             target.getLocation(), IEarthModel.EarthFactor.REAL_EARTH));
         this.setLocation(new MutableDouble3D(launch_location));
         if (getMovePlatformBehavior() != null)
@@ -0,0 +1,237 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import com.ridderware.fuse.Double3D;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the reactive assignment policies of the assignments jammer.
+ *
+ * @author Jeff Ridder
+ */
+public class AssignmentsJammerTest
+{
+    //  Classifications of radars with a reactive assignment.
+    private static final int CLASSIFICATIONS = 6;
+
+    @Test
+    public void testKnapsackIsBestThatFits()
+    {
+        Random rng = new Random(20260417L);
+        for (int trial = 0; trial < 300; trial++)
+        {
+            CMWorld world = new CMWorld();
+            ArrayList<Radar> radars = addRadars(world, 1 + rng.nextInt(12),
+                rng);
+            AssignmentsJammer jammer = addJammer(world, rng,
+                AssignmentsJammer.ReactivePolicy.KNAPSACK, rng.nextInt(12));
+
+            jammer.checkForReactiveAssignments(new LinkedHashSet<>(radars));
+            assertTrue(jammer.getNumResources() <= jammer.getTotalResources());
+
+            //  The best total priority of any set of eligible tracks that
+            //  fits.
+            ArrayList<JammingAssignment> eligible = new ArrayList<>();
+            for (Radar r : radars)
+            {
+                if (reactive(jammer, r) != null)
+                {
+                    eligible.add(reactive(jammer, r));
+                }
+            }
+            double best = 0.;
+            for (int set = 0; set < 1 << eligible.size(); set++)
+            {
+                int resources = 0;
+                double priority = 0.;
+                for (int n = 0; n < eligible.size(); n++)
+                {
+                    if ((set & 1 << n) != 0)
+                    {
+                        resources += eligible.get(n).getResourcesRequired();
+                        priority += eligible.get(n).getPriority();
+                    }
+                }
+                if (resources <= jammer.getTotalResources())
+                {
+                    best = Math.max(best, priority);
+                }
+            }
+
+            double jammed = 0.;
+            for (Radar r : radars)
+            {
+                if (jammer.canJam(r))
+                {
+                    jammed += reactive(jammer, r).getPriority();
+                }
+            }
+            assertEquals("trial " + trial, best, jammed, 1.e-9);
+        }
+    }
+
+    @Test
+    public void testKnapsackNeverExceedsResources()
+    {
+        Random rng = new Random(11L);
+        for (int trial = 0; trial < 100; trial++)
+        {
+            CMWorld world = new CMWorld();
+            ArrayList<Radar> radars = addRadars(world, 30, rng);
+            AssignmentsJammer jammer = addJammer(world, rng,
+                AssignmentsJammer.ReactivePolicy.KNAPSACK, rng.nextInt(20));
+
+            //  Tracks come and go between checks.
+            for (int check = 0; check < 20; check++)
+            {
+                LinkedHashSet<Radar> tracks = new LinkedHashSet<>();
+                for (Radar r : radars)
+                {
+                    if (rng.nextInt(3) == 0)
+                    {
+                        tracks.add(r);
+                    }
+                }
+                jammer.checkForReactiveAssignments(tracks);
+
+                int resources = 0;
+                for (Radar r : radars)
+                {
+                    if (jammer.canJam(r))
+                    {
+                        assertTrue(tracks.contains(r));
+                        resources += reactive(jammer, r).getResourcesRequired();
+                    }
+                }
+                assertEquals(resources, jammer.getNumResources());
+                assertTrue(resources <= jammer.getTotalResources());
+            }
+        }
+    }
+
+    @Test
+    public void testUnlimitedKnapsackMatchesTrackOrder()
+    {
+        for (long seed = 0; seed < 50; seed++)
+        {
+            HashSet<String> knapsack = jammedWithAmpleResources(seed,
+                AssignmentsJammer.ReactivePolicy.KNAPSACK);
+            HashSet<String> track_order = jammedWithAmpleResources(seed,
+                AssignmentsJammer.ReactivePolicy.TRACK_ORDER);
+            assertEquals(track_order, knapsack);
+        }
+    }
+
+    /**
+     * Runs a sequence of checks with resources for every track, and returns
+     * the names of the radars jammed after each check.
+     */
+    private static HashSet<String> jammedWithAmpleResources(long seed,
+        AssignmentsJammer.ReactivePolicy policy)
+    {
+        Random rng = new Random(seed);
+        CMWorld world = new CMWorld();
+        ArrayList<Radar> radars = addRadars(world, 20, rng);
+        AssignmentsJammer jammer = addJammer(world, rng, policy,
+            4 * radars.size());
+
+        HashSet<String> jammed = new HashSet<>();
+        for (int check = 0; check < 10; check++)
+        {
+            LinkedHashSet<Radar> tracks = new LinkedHashSet<>();
+            for (Radar r : radars)
+            {
+                if (rng.nextBoolean())
+                {
+                    tracks.add(r);
+                }
+            }
+            jammer.checkForReactiveAssignments(tracks);
+
+            for (Radar r : radars)
+            {
+                if (jammer.canJam(r))
+                {
+                    jammed.add(check + ":" + r.getName());
+                }
+            }
+        }
+        return jammed;
+    }
+
+    /**
+     * Adds radars of random classification to the world, some of which have
+     * no reactive assignment.
+     */
+    private static ArrayList<Radar> addRadars(CMWorld world, int count,
+        Random rng)
+    {
+        ArrayList<Radar> radars = new ArrayList<>();
+        for (int n = 0; n < count; n++)
+        {
+            Platform site = TestWorld.addSite(world, "site" + n, new Double3D(
+                10. * n, 0., 0.));
+            Radar radar = new Radar("radar" + n, world);
+            radar.setParent(site);
+            radar.setClassification(rng.nextInt(CLASSIFICATIONS + 1));
+            world.addRadar(radar);
+            radars.add(radar);
+        }
+        return radars;
+    }
+
+    /**
+     * Adds an assignments jammer on an aircraft to the world, with a reactive
+     * assignment of random resources and priority for every classification
+     * but the last.
+     */
+    private static AssignmentsJammer addJammer(CMWorld world, Random rng,
+        AssignmentsJammer.ReactivePolicy policy, int total_resources)
+    {
+        JammerAircraft ac = TestWorld.addAircraft(world, new JammerAircraft(
+            "jammer", world, 0), new Double3D(0., 50., 5.));
+        AssignmentsJammer jammer = new AssignmentsJammer("jammer", world);
+        ac.addJammer(jammer);
+        jammer.setReactivePolicy(policy);
+        jammer.setTotalResources(total_resources);
+
+        for (int c = 0; c < CLASSIFICATIONS; c++)
+        {
+            JammingAssignment ra = new JammingAssignment();
+            ra.addCoverage(c, 0.5, 100.);
+            ra.setResourcesRequired(1 + rng.nextInt(4));
+            ra.setPriority(rng.nextInt(10) + rng.nextDouble());
+            jammer.addReactiveAssignment(ra);
+        }
+        return jammer;
+    }
+
+    private static JammingAssignment reactive(AssignmentsJammer jammer,
+        Radar r)
+    {
+        return jammer.getReactiveAssignments().get(r.getClassification());
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Round-trip tests of the compressed elevation store: every post read back
+ * through a reader must equal the post that was compressed.
+ *
+ * @author Jeff Ridder
+ */
+public class CompressedElevationStoreTest
+{
+    @Test
+    public void testRandomGrids()
+    {
+        Random rng = new Random(20260417L);
+        int[][] shapes = {{1, 1}, {1, 40}, {40, 1}, {16, 16}, {17, 33},
+            {64, 48}, {100, 77}, {255, 129}};
+        for (int[] shape : shapes)
+        {
+            short[] posts = new short[shape[0] * shape[1]];
+            for (int n = 0; n < posts.length; n++)
+            {
+                posts[n] = (short) rng.nextInt(1 << 16);
+            }
+            assertRoundTrip(posts, shape[0], shape[1]);
+        }
+    }
+
+    @Test
+    public void testSmoothGrid()
+    {
+        Random rng = new Random(7L);
+        int cols = 301;
+        int rows = 203;
+        short[] posts = new short[cols * rows];
+        for (int j = 0; j < rows; j++)
+        {
+            for (int i = 0; i < cols; i++)
+            {
+                posts[j * cols + i] = (short) (800. * Math.sin(0.03 * i) *
+                    Math.cos(0.05 * j) + rng.nextInt(8));
+            }
+        }
+        assertRoundTrip(posts, cols, rows);
+    }
+
+    @Test
+    public void testEdgeBlocks()
+    {
+        int cols = 35;
+        int rows = 35;
+        short[] posts = new short[cols * rows];
+        for (int j = 0; j < rows; j++)
+        {
+            for (int i = 0; i < cols; i++)
+            {
+                short el;
+                if (j < 16 && i < 16)
+                {
+                    //  A flat tile packs at zero bits per difference.
+                    el = 1234;
+                }
+                else if (j < 16)
+                {
+                    //  The widest differences: alternating extremes.
+                    el = (i + j) % 2 == 0 ? Short.MIN_VALUE : Short.MAX_VALUE;
+                }
+                else if (i < 16)
+                {
+                    el = (short) (j * 16 + i - 32768);
+                }
+                else
+                {
+                    el = (short) -(i * j);
+                }
+                posts[j * cols + i] = el;
+            }
+        }
+        assertRoundTrip(posts, cols, rows);
+    }
+
+    @Test
+    public void testReadersAreIndependent()
+    {
+        Random rng = new Random(11L);
+        int cols = 70;
+        int rows = 50;
+        short[] posts = new short[cols * rows];
+        for (int n = 0; n < posts.length; n++)
+        {
+            posts[n] = (short) (rng.nextInt(2000) - 500);
+        }
+
+        CompressedElevationStore store = CompressedElevationStore.compress(
+            BufferElevationStore.copyOf(posts), cols, rows);
+        ElevationStore r1 = store.reader(1);
+        ElevationStore r2 = store.reader(4);
+        for (int k = 0; k < 20000; k++)
+        {
+            int n1 = rng.nextInt(posts.length);
+            int n2 = rng.nextInt(posts.length);
+            assertEquals(posts[n1], r1.get(n1));
+            assertEquals(posts[n2], r2.get(n2));
+        }
+    }
+
+    /**
+     * Compresses a grid and checks every post read back in order, in
+     * random order through a single-tile cache so that tiles are decoded
+     * again and again, and in runs that cross tiles and rows.
+     */
+    private static void assertRoundTrip(short[] posts, int cols, int rows)
+    {
+        CompressedElevationStore store = CompressedElevationStore.compress(
+            BufferElevationStore.copyOf(posts), cols, rows);
+        assertEquals(posts.length, store.size());
+
+        ElevationStore reader = store.reader(64);
+        assertEquals(posts.length, reader.size());
+        for (int n = 0; n < posts.length; n++)
+        {
+            assertEquals("post " + n + " of " + cols + " x " + rows, posts[n],
+                reader.get(n));
+        }
+
+        Random rng = new Random(cols * 31L + rows);
+        ElevationStore single = store.reader(1);
+        for (int k = 0; k < 4 * posts.length; k++)
+        {
+            int n = rng.nextInt(posts.length);
+            assertEquals("post " + n + " of " + cols + " x " + rows, posts[n],
+                single.get(n));
+        }
+
+        short[] run = new short[posts.length];
+        for (int k = 0; k < 200; k++)
+        {
+            int n = rng.nextInt(posts.length);
+            int length = rng.nextInt(posts.length - n);
+            single.get(n, run, 1, length);
+            for (int m = 0; m < length; m++)
+            {
+                assertEquals("run at " + n + " of " + cols + " x " + rows,
+                    posts[n + m], run[1 + m]);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import com.ridderware.fuse.Double3D;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the scans of directional radars.
+ *
+ * @author Jeff Ridder
+ */
+public class DirectionalRadarTest
+{
+    @Test
+    public void testStandOffJammerIsTracked()
+    {
+        CMWorld world = new CMWorld();
+        Platform site = TestWorld.addSite(world, "site",
+            new Double3D(0., 0., 0.));
+
+        DirectionalRadar radar = new DirectionalRadar("ew", world);
+        radar.setParent(site);
+        radar.setFunction(Radar.Function.EW);
+        radar.setReferenceRange(20.);
+        radar.getAntenna().setMainlobeAz(0.05);
+        radar.getAntenna().setMainlobeEl(0.05);
+        radar.getAntenna().setBoresight(0., 0.05);
+        world.addRadar(radar);
+
+        //  Well beyond burn-through, but within the beam and the horizon.
+        JammerAircraft soj = TestWorld.addAircraft(world,
+            new JammerAircraft("soj", world, 0), new Double3D(60., 0., 1.));
+        soj.addJammer(new BasicJammer("soj_jammer", world, 0.5, 0.5, 200.));
+
+        TestWorld.prepare(world);
+
+        radar.scanRadar(0.);
+        assertTrue(radar.getBlips().contains(soj));
+        assertFalse(radar.getTracks().contains(soj));
+
+        //  Two consecutive blips make a track.
+        radar.scanRadar(1.);
+        assertTrue(radar.getTracks().contains(soj));
+        assertTrue(radar.getJammedRange() < radar.getReferenceRange());
+    }
+}
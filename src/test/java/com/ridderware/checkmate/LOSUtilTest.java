@@ -0,0 +1,262 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import com.ridderware.fuse.Double3D;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that every cache of LOSUtil answers as the terrain does: the
+ * whiteboard, the sparse cache, the ground site cache across runs, and the
+ * horizon profiles of fixed sites.
+ *
+ * @author Jeff Ridder
+ */
+public class LOSUtilTest
+{
+    @Test
+    public void testWhiteboardHitsMatchTerrain()
+    {
+        Random rng = new Random(20260417L);
+        CMWorld world = hillyWorld(rng);
+        ArrayList<Platform> platforms = new ArrayList<>();
+        for (int n = 0; n < 40; n++)
+        {
+            platforms.add(TestWorld.addSite(world, "site" + n, randomPoint(rng,
+                0.)));
+        }
+        for (int n = 0; n < 20; n++)
+        {
+            platforms.add(TestWorld.addAircraft(world, new Aircraft("ac" + n,
+                world, 0), randomPoint(rng, 0.05 + 0.5 * rng.nextDouble())));
+        }
+
+        for (int run = 0; run < 3; run++)
+        {
+            TestWorld.prepare(world);
+            for (int step = 0; step < 3; step++)
+            {
+                assertAllPairs(world, platforms, platforms.size());
+                moveAircraft(world, platforms, rng);
+            }
+        }
+
+        LOSStatistics em = world.getEMLOSUtil().getStatistics();
+        LOSStatistics real = world.getRealLOSUtil().getStatistics();
+        assertTrue(em.getWhiteboardHits() > 0 && real.getWhiteboardHits() > 0);
+        assertTrue(em.getPairHits() + real.getPairHits() > 0);
+        assertTrue(em.getSiteHits() + real.getSiteHits() > 0);
+    }
+
+    @Test
+    public void testSparseHitsMatchTerrain()
+    {
+        Random rng = new Random(11L);
+        CMWorld world = hillyWorld(rng);
+        ArrayList<Platform> platforms = new ArrayList<>();
+        for (int n = 0; n <= LOSUtil.SPARSE_THRESHOLD; n++)
+        {
+            platforms.add(TestWorld.addSite(world, "site" + n, randomPoint(rng,
+                0.)));
+        }
+        for (int n = 0; n < 40; n++)
+        {
+            platforms.add(TestWorld.addAircraft(world, new Aircraft("ac" + n,
+                world, 0), randomPoint(rng, 0.05 + 0.5 * rng.nextDouble())));
+        }
+
+        //  The aircraft and a few sites, so that pairs are asked again.
+        ArrayList<Platform> queried = new ArrayList<>(platforms.subList(
+            platforms.size() - 80, platforms.size()));
+        for (int run = 0; run < 2; run++)
+        {
+            TestWorld.prepare(world);
+            for (int step = 0; step < 3; step++)
+            {
+                assertAllPairs(world, queried, queried.size());
+                moveAircraft(world, queried, rng);
+            }
+        }
+
+        LOSStatistics em = world.getEMLOSUtil().getStatistics();
+        LOSStatistics real = world.getRealLOSUtil().getStatistics();
+        assertTrue(em.getWhiteboardHits() > 0 && real.getWhiteboardHits() > 0);
+        assertTrue(em.getSiteHits() + real.getSiteHits() > 0);
+    }
+
+    @Test
+    public void testEvictedSitePairsMatchTerrain()
+    {
+        //  More pairs of sites than the ground site cache holds, asked in the
+        //  same order every run, so that each run asks for evicted pairs.
+        Random rng = new Random(3L);
+        CMWorld world = hillyWorld(rng);
+        ArrayList<Platform> platforms = new ArrayList<>();
+        for (int n = 0; n < 370; n++)
+        {
+            platforms.add(TestWorld.addSite(world, "site" + n, randomPoint(rng,
+                0.)));
+        }
+
+        for (int run = 0; run < 2; run++)
+        {
+            TestWorld.prepare(world);
+            assertAllPairs(world, platforms, platforms.size());
+        }
+    }
+
+    @Test
+    public void testProfileHitsMatchTerrain()
+    {
+        Random rng = new Random(5L);
+        CMWorld world = hillyWorld(rng);
+        ArrayList<Platform> platforms = new ArrayList<>();
+        for (int n = 0; n < 4; n++)
+        {
+            platforms.add(TestWorld.addSite(world, "site" + n, randomPoint(rng,
+                0.)));
+        }
+        for (int n = 0; n < 30; n++)
+        {
+            platforms.add(TestWorld.addAircraft(world, new Aircraft("ac" + n,
+                world, 0), randomPoint(rng, 0.05 + 0.5 * rng.nextDouble())));
+        }
+
+        //  Enough misses at each site for it to be taken as a fixed site.
+        TestWorld.prepare(world);
+        for (int step = 0; step * 30 < 2 * LOSUtil.PROFILE_MIN_QUERIES; step++)
+        {
+            assertAllPairs(world, platforms, 4);
+            moveAircraft(world, platforms, rng);
+        }
+
+        for (int run = 0; run < 2; run++)
+        {
+            TestWorld.prepare(world);
+            world.getEMLOSUtil().placeSites();
+            world.getRealLOSUtil().placeSites();
+            for (int step = 0; step < 20; step++)
+            {
+                assertAllPairs(world, platforms, 4);
+                moveAircraft(world, platforms, rng);
+            }
+        }
+
+        LOSStatistics em = world.getEMLOSUtil().getStatistics();
+        LOSStatistics real = world.getRealLOSUtil().getStatistics();
+        assertTrue(em.getProfileHits() + real.getProfileHits() > 0);
+    }
+
+    /**
+     * Returns a world over a flat Earth with hilly terrain, 50 n.mi. on a
+     * side.
+     */
+    private static CMWorld hillyWorld(Random rng)
+    {
+        int cols = 100;
+        int rows = 100;
+        short[] posts = new short[cols * rows];
+        for (int j = 0; j < rows; j++)
+        {
+            for (int i = 0; i < cols; i++)
+            {
+                posts[j * cols + i] = (short) (300. + 250. * Math.sin(0.19 * i +
+                    0.11 * j) + 150. * Math.cos(0.31 * j) + rng.nextInt(100));
+            }
+        }
+
+        TwoLevelTerrain terrain = new TwoLevelTerrain();
+        terrain.loadTerrain(posts, 0., 50., 0., 50., rows, cols, 5.);
+
+        CMWorld world = new CMWorld();
+        world.setTerrainModel(terrain);
+        return world;
+    }
+
+    private static Double3D randomPoint(Random rng, double z)
+    {
+        return new Double3D(50. * rng.nextDouble(), 50. * rng.nextDouble(), z);
+    }
+
+    /**
+     * Moves every aircraft into a different terrain cell, since the
+     * whiteboard is only meant to answer anew when a platform changes cells.
+     */
+    private static void moveAircraft(CMWorld world,
+        ArrayList<Platform> platforms, Random rng)
+    {
+        ITerrainModel terrain = world.getTerrainModel();
+        for (Platform p : platforms)
+        {
+            if (p.getPlatformType() == Platform.PlatformType.GROUND)
+            {
+                continue;
+            }
+
+            Double3D from = p.getLocation();
+            Double3D to;
+            do
+            {
+                to = randomPoint(rng, from.getZ());
+            }
+            while (terrain.terrainCell(to.getX(), to.getY()) == terrain.
+                terrainCell(from.getX(), from.getY()));
+            p.setLocation(to);
+        }
+    }
+
+    /**
+     * Asks both utilities of the world, twice, for LOS between the first
+     * platforms and every platform, and checks each answer against the
+     * terrain.
+     */
+    private static void assertAllPairs(CMWorld world,
+        ArrayList<Platform> platforms, int first)
+    {
+        ITerrainModel terrain = world.getTerrainModel();
+        for (int pass = 0; pass < 2; pass++)
+        {
+            for (int m = 0; m < first; m++)
+            {
+                Platform p1 = platforms.get(m);
+                for (Platform p2 : platforms)
+                {
+                    if (p1 == p2)
+                    {
+                        continue;
+                    }
+
+                    Double3D l1 = p1.getLocation();
+                    Double3D l2 = p2.getLocation();
+                    String pair = p1.getName() + " - " + p2.getName();
+                    assertEquals(pair, terrain.hasLOS(l1, l2,
+                        IEarthModel.EarthFactor.EM_EARTH), world.
+                        getEMLOSUtil().hasLOS(p1, p2));
+                    assertEquals(pair, terrain.hasLOS(l1, l2,
+                        IEarthModel.EarthFactor.REAL_EARTH), world.
+                        getRealLOSUtil().hasLOS(p1, p2));
+                }
+            }
+        }
+    }
+}
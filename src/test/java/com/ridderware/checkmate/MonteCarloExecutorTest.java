@@ -0,0 +1,63 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import java.io.File;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the evaluations of a scenario do not depend on the number of
+ * threads that run them.
+ *
+ * @author Jeff Ridder
+ */
+public class MonteCarloExecutorTest
+{
+    private static final String SCENARIO =
+        "src/main/resources/scenarios/flatdirectional/fd_scenario.xml";
+
+    @Test
+    public void testOutcomesDoNotDependOnThreads() throws Exception
+    {
+        EvaluationOutcome[] serial = run(1);
+        EvaluationOutcome[] parallel = run(4);
+
+        assertEquals(serial.length, parallel.length);
+        for (int i = 0; i < serial.length; i++)
+        {
+            assertEquals(serial[i].toString(), parallel[i].toString());
+        }
+    }
+
+    /**
+     * Runs the scenario with a fixed base seed.
+     */
+    private static EvaluationOutcome[] run(int threads) throws Exception
+    {
+        ArgsHandler args_handler = new ArgsHandler();
+        args_handler.processArgs(new String[]
+            {
+                "-it", "6", "-threads", String.valueOf(threads), "-seed",
+                "20260417", new File(SCENARIO).toURI().toURL().toString()
+            });
+        return new MonteCarloExecutor(args_handler).execute();
+    }
+}
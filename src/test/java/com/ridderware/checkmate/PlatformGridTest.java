@@ -0,0 +1,152 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import com.ridderware.fuse.Double3D;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the platforms a grid finds within range of a point are those a
+ * search of every platform finds.
+ *
+ * @author Jeff Ridder
+ */
+public class PlatformGridTest
+{
+    @Test
+    public void testRoundEarthAcrossDateLine()
+    {
+        CMWorld world = new CMWorld();
+        world.setEarthModel(new RoundEarth());
+        Random rng = new Random(20260417L);
+
+        //  Clustered about the date line, from the equator to near the pole.
+        ArrayList<Aircraft> aircraft = new ArrayList<>();
+        for (int n = 0; n < 600; n++)
+        {
+            aircraft.add(TestWorld.addAircraft(world, new Aircraft("ac" + n,
+                world, 0), nearDateLine(rng)));
+        }
+
+        PlatformGrid<Aircraft> grid = new PlatformGrid<>(world.getGeometry());
+        for (Aircraft ac : aircraft)
+        {
+            grid.add(ac);
+        }
+
+        for (int step = 0; step < 3; step++)
+        {
+            for (int n = 0; n < 300; n++)
+            {
+                assertInRange(world, grid, aircraft, nearDateLine(rng),
+                    rng.nextDouble() * (rng.nextBoolean() ? 100. : 1000.));
+            }
+
+            //  Moves across the date line and between cells.
+            for (Aircraft ac : aircraft)
+            {
+                ac.setLocation(nearDateLine(rng));
+                grid.update(ac);
+            }
+        }
+        assertEquals(aircraft.size(), grid.size());
+    }
+
+    @Test
+    public void testFlatEarth()
+    {
+        CMWorld world = new CMWorld();
+        Random rng = new Random(7L);
+
+        ArrayList<Aircraft> aircraft = new ArrayList<>();
+        for (int n = 0; n < 600; n++)
+        {
+            aircraft.add(TestWorld.addAircraft(world, new Aircraft("ac" + n,
+                world, 0), new Double3D(-300. + 600. * rng.nextDouble(), -300. +
+                600. * rng.nextDouble(), 10. * rng.nextDouble())));
+        }
+
+        PlatformGrid<Aircraft> grid = new PlatformGrid<>(world.getGeometry());
+        for (Aircraft ac : aircraft)
+        {
+            grid.add(ac);
+        }
+
+        for (int n = 0; n < 300; n++)
+        {
+            assertInRange(world, grid, aircraft, new Double3D(-400. + 800. *
+                rng.nextDouble(), -400. + 800. * rng.nextDouble(), 0.),
+                rng.nextDouble() * (rng.nextBoolean() ? 50. : 500.));
+        }
+    }
+
+    /**
+     * Returns a point within ten degrees of longitude of the date line, at
+     * up to ten n.mi. of altitude.
+     */
+    private static Double3D nearDateLine(Random rng)
+    {
+        double lat = Math.toRadians(89. * rng.nextDouble());
+        double lon = Math.toRadians(170. + 20. * rng.nextDouble());
+        if (lon > Math.PI)
+        {
+            lon -= 2. * Math.PI;
+        }
+        return new Double3D(lat, lon, 10. * rng.nextDouble());
+    }
+
+    /**
+     * Checks that the platforms the grid finds within range of a point, once
+     * tested for range, are those within range of it.
+     */
+    private static void assertInRange(CMWorld world,
+        PlatformGrid<Aircraft> grid, ArrayList<Aircraft> aircraft,
+        Double3D origin, double range)
+    {
+        HashSet<Aircraft> expected = new HashSet<>();
+        for (Aircraft ac : aircraft)
+        {
+            if (world.getEarthModel().trueDistance(origin, ac.getLocation()) <=
+                range)
+            {
+                expected.add(ac);
+            }
+        }
+
+        ArrayList<Aircraft> collected = new ArrayList<>();
+        grid.collect(origin, range, collected);
+        HashSet<Aircraft> found = new HashSet<>();
+        for (Aircraft ac : collected)
+        {
+            if (world.getEarthModel().trueDistance(origin, ac.getLocation()) <=
+                range)
+            {
+                found.add(ac);
+            }
+        }
+
+        assertEquals(collected.size(), new HashSet<>(collected).size());
+        assertEquals(expected, found);
+    }
+}
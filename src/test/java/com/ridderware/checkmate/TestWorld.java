@@ -0,0 +1,86 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import com.ridderware.fuse.Double3D;
+
+/**
+ * Builds small worlds for tests without reading a scenario or running a
+ * universe: the world keeps its default flat Earth and bald terrain unless a
+ * test sets others, and platforms are added to it directly.
+ *
+ * @author Jeff Ridder
+ */
+final class TestWorld
+{
+    private TestWorld()
+    {
+    }
+
+    /**
+     * Adds a ground platform to the world as a target.
+     * @param world world to which the platform is added.
+     * @param name name of the platform.
+     * @param location location of the platform.
+     * @return the platform.
+     */
+    static Platform addSite(CMWorld world, String name, Double3D location)
+    {
+        Platform site = new Platform(name, world, 0);
+        site.setLocation(location);
+        world.getPlatforms().add(site);
+        world.addTarget(site);
+        return site;
+    }
+
+    /**
+     * Adds an active aircraft to the world.
+     * @param world world to which the aircraft is added.
+     * @param ac aircraft, which adds itself to the aircraft of the world.
+     * @param location location of the aircraft.
+     * @return the aircraft.
+     */
+    static <T extends Aircraft> T addAircraft(CMWorld world, T ac,
+        Double3D location)
+    {
+        ac.setStatus(Platform.Status.ACTIVE);
+        ac.setLocation(location);
+        world.getPlatforms().add(ac);
+        return ac;
+    }
+
+    /**
+     * Does what populateUniverse does to the world's caches before a run,
+     * with no universe, so that cached entries are keyed to time 0.
+     * @param world world to be prepared.
+     */
+    static void prepare(CMWorld world)
+    {
+        int los_index = 0;
+        for (Platform p : world.getPlatforms())
+        {
+            p.setLOSIndex(los_index++);
+        }
+        world.getEMLOSUtil().reset();
+        world.getRealLOSUtil().reset();
+        world.getPairGeometry().reset(null);
+        world.getJammingMatrix().reset(null);
+    }
+}
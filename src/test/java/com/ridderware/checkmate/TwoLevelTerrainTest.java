@@ -0,0 +1,237 @@
+/*
+ * 
+ * Coadaptive Heterogeneous simulation Engine for Combat Kill-webs and 
+ * Multi-Agent Training Environment (CHECKMATE)
+ *
+ * Copyright 2006 Jeff Ridder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ridderware.checkmate;
+
+import com.ridderware.fuse.Double3D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of LOS over the terrain grid.
+ *
+ * @author Jeff Ridder
+ */
+public class TwoLevelTerrainTest
+{
+    private static final String DTED =
+        "src/main/resources/scenarios/rounddirectional/DATData/California/DTED";
+
+    //  Bounds of the DTED files in degrees.
+    private static final double LAT_MIN = 32.;
+
+    private static final double LAT_MAX = 42.;
+
+    private static final double LON_MIN = -125.;
+
+    private static final double LON_MAX = -115.;
+
+    @Test
+    public void testResampledIsNeverClearer()
+    {
+        TwoLevelTerrain files = readTerrain(0.);
+        for (double seconds : new double[]
+            {
+                60., 90., 150.
+            })
+        {
+            TwoLevelTerrain resampled = readTerrain(Math.toRadians(seconds /
+                3600.));
+
+            //  Pairs near the edge of the files and past it as well as inside.
+            Random rng = new Random(20260417L);
+            for (int n = 0; n < 4000; n++)
+            {
+                double lat = LAT_MIN - 0.2 + rng.nextDouble() * (LAT_MAX -
+                    LAT_MIN + 0.4);
+                double lon = LON_MIN - 0.2 + rng.nextDouble() * (LON_MAX -
+                    LON_MIN + 0.4);
+                double range = rng.nextDouble() * (rng.nextBoolean() ? 0.3 :
+                    1.5);
+                double bearing = 2. * Math.PI * rng.nextDouble();
+                double lat2 = lat + range * Math.cos(bearing);
+                double lon2 = lon + range * Math.sin(bearing);
+
+                Double3D p1 = groundPoint(files, lat, lon, 0.003 +
+                    (rng.nextInt(4) == 0 ? 0.05 * rng.nextDouble() : 0.));
+                Double3D p2 = rng.nextBoolean() ? groundPoint(files, lat2,
+                    lon2, 0.005) : new Double3D(Math.toRadians(lat2),
+                    Math.toRadians(lon2), 0.02 + 3. * rng.nextDouble());
+
+                for (IEarthModel.EarthFactor k : IEarthModel.EarthFactor.
+                    values())
+                {
+                    assertFalse("pair " + n + " at " + seconds + " seconds",
+                        resampled.hasLOS(p1, p2, k) && !files.hasLOS(p1, p2,
+                        k));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCellWalkMatchesSampling()
+    {
+        //  Rough terrain of ridges and noise, with a shelf below sea level and
+        //  walls along the edges, so that paths graze many posts.
+        Random rng = new Random(7L);
+        int cols = 200;
+        int rows = 150;
+        short[] posts = new short[cols * rows];
+        for (int j = 0; j < rows; j++)
+        {
+            for (int i = 0; i < cols; i++)
+            {
+                if (i == 0 || j == 0 || i == cols - 1 || j == rows - 1)
+                {
+                    posts[j * cols + i] = (short) (1200 + rng.nextInt(600));
+                }
+                else
+                {
+                    posts[j * cols + i] = (short) (i < 20 ? -50 : 600. + 500. *
+                        Math.sin(0.21 * i + 0.13 * j) + 300. * Math.cos(0.37 *
+                        j) + rng.nextInt(200));
+                }
+            }
+        }
+
+        TwoLevelTerrain terrain = new TwoLevelTerrain();
+        terrain.loadTerrain(posts, 0., 100., 0., 75., rows, cols, 5.);
+        terrain.setEarthModel(new FlatEarth());
+
+        //  The first point is on the grid, and the second anywhere near it.
+        int clear = 0;
+        for (int n = 0; n < 20000; n++)
+        {
+            Double3D p1 = new Double3D(100. * rng.nextDouble(), 75. *
+                rng.nextDouble(), 0.05 + 1.1 * rng.nextDouble());
+            Double3D p2 = new Double3D(-10. + 120. * rng.nextDouble(), -10. +
+                95. * rng.nextDouble(), 0.05 + 1.1 * rng.nextDouble());
+
+            boolean los = sampledLOS(terrain, p1, p2, 0.5);
+            assertEquals("pair " + n, los, terrain.hasLOS(p1, p2,
+                IEarthModel.EarthFactor.REAL_EARTH));
+            if (los)
+            {
+                clear++;
+            }
+        }
+        assertTrue(clear > 2000 && clear < 18000);
+    }
+
+    /**
+     * Decides LOS over a flat Earth by sampling the terrain beneath a path
+     * between every pair of successive places where it changes: where the
+     * path crosses the boundary of a cell of a post or the terrain bounds.
+     * The path is tested at both ends of each piece, where it is lowest.
+     */
+    private static boolean sampledLOS(TwoLevelTerrain terrain, Double3D p1,
+        Double3D p2, double spacing)
+    {
+        double dx = p2.getX() - p1.getX();
+        double dy = p2.getY() - p1.getY();
+        ArrayList<Double> crossings = new ArrayList<>();
+        crossings.add(0.);
+        crossings.add(1.);
+        addCrossings(crossings, p1.getX(), dx, spacing, 0., 100.);
+        addCrossings(crossings, p1.getY(), dy, spacing, 0., 75.);
+        Collections.sort(crossings);
+
+        for (int n = 1; n < crossings.size(); n++)
+        {
+            double t0 = crossings.get(n - 1);
+            double t1 = crossings.get(n);
+            double t = 0.5 * (t0 + t1);
+            double el = terrain.elevation(p1.getX() + t * dx, p1.getY() + t *
+                dy);
+            double z = Math.min(p1.getZ() + t0 * (p2.getZ() - p1.getZ()),
+                p1.getZ() + t1 * (p2.getZ() - p1.getZ()));
+            if (LengthUnit.NAUTICAL_MILES.convert(z, LengthUnit.METERS) < el)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the parameters between 0 and 1 at which one coordinate of a path
+     * crosses a cell boundary or a bound of the terrain.
+     */
+    private static void addCrossings(ArrayList<Double> crossings, double c0,
+        double dc, double spacing, double c_min, double c_max)
+    {
+        if (dc == 0.)
+        {
+            return;
+        }
+
+        int k0 = (int) Math.floor((Math.min(c0, c0 + dc) - c_min) / spacing) -
+            1;
+        int k1 = (int) Math.ceil((Math.max(c0, c0 + dc) - c_min) / spacing) +
+            1;
+        for (int k = k0; k <= k1; k++)
+        {
+            double t = (c_min + (k + 0.5) * spacing - c0) / dc;
+            if (t > 0. && t < 1.)
+            {
+                crossings.add(t);
+            }
+        }
+        for (double c : new double[]
+            {
+                c_min, c_max
+            })
+        {
+            double t = (c - c0) / dc;
+            if (t > 0. && t < 1.)
+            {
+                crossings.add(t);
+            }
+        }
+    }
+
+    /**
+     * Reads the DTED files onto a round Earth at the specified resolution.
+     */
+    private static TwoLevelTerrain readTerrain(double fine_res)
+    {
+        TwoLevelTerrain terrain = new TwoLevelTerrain();
+        terrain.readFiles(DTED, fine_res);
+        terrain.setCoarseRes(Math.toRadians(0.1));
+        terrain.setEarthModel(new RoundEarth());
+        return terrain;
+    }
+
+    /**
+     * Returns a point the specified height in n.mi. above the terrain of the
+     * files.
+     */
+    private static Double3D groundPoint(TwoLevelTerrain terrain, double lat,
+        double lon, double height)
+    {
+        double x = Math.toRadians(lat);
+        double y = Math.toRadians(lon);
+        return new Double3D(x, y, LengthUnit.METERS.convert(terrain.elevation(
+            x, y), LengthUnit.NAUTICAL_MILES) + height);
+    }
+}